@@ -10,6 +10,9 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class UserStorageTest extends BaseCleanStartedEachTest {
@@ -40,6 +43,28 @@ public class UserStorageTest extends BaseCleanStartedEachTest {
         assertEquals(time, storage.getLastSeenTime());
     }
 
+    @Test
+    public void testUserStorageIsShared() {
+        UserStorage storage = UserStorage.create(mContext, 3);
+        assertSame(storage, UserStorage.create(mContext, 3));
+        assertSame(storage, ConfigManager.getUserStorage(mContext, 3));
+        assertTrue(UserStorage.getMpIdSet(mContext).contains(3L));
+
+        //callers get a copy of the MPID set
+        UserStorage.getMpIdSet(mContext).remove(3L);
+        assertTrue(UserStorage.getMpIdSet(mContext).contains(3L));
+
+        storage.deleteUserConfig(mContext, 3);
+        assertFalse(UserStorage.getMpIdSet(mContext).contains(3L));
+        UserStorage recreated = UserStorage.create(mContext, 3);
+        assertNotSame(storage, recreated);
+        assertTrue(UserStorage.getMpIdSet(mContext).contains(3L));
+
+        MParticle.reset(mContext);
+        assertFalse(UserStorage.getMpIdSet(mContext).contains(3L));
+        assertNotSame(recreated, UserStorage.create(mContext, 3));
+    }
+
     interface UserConfigRunnable {
         void run(UserStorage userStorage);
     }
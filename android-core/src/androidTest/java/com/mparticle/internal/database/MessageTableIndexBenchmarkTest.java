@@ -0,0 +1,147 @@
+package com.mparticle.internal.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.util.Log;
+
+import com.mparticle.internal.Constants;
+import com.mparticle.internal.database.services.MessageService;
+import com.mparticle.internal.database.services.SQLiteOpenHelperWrapper;
+import com.mparticle.internal.database.tables.BaseTableTest;
+import com.mparticle.internal.database.tables.MParticleDatabaseHelper;
+import com.mparticle.internal.database.tables.MessageTable;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the message table queries run on every upload pass against 50k queued rows, on the version 9 schema
+ * (no secondary indexes, no message length column) and again after upgrading to the current version.
+ *
+ * Results are written to logcat under the "mParticle-Benchmark" tag, e.g.:
+ * adb logcat -s mParticle-Benchmark
+ */
+public class MessageTableIndexBenchmarkTest extends BaseTableTest {
+    private static final String TAG = "mParticle-Benchmark";
+    private static final int ROW_COUNT = 50000;
+    private static final int READY_ROW_COUNT = 2000;
+    private static final int SESSION_COUNT = 50;
+    private static final long MPID = 1234;
+
+    static final String V9_CREATE_MESSAGES_DDL =
+            "CREATE TABLE IF NOT EXISTS " + MessageTable.MessageTableColumns.TABLE_NAME + " (" + BaseColumns._ID +
+                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    MessageTable.MessageTableColumns.SESSION_ID + " STRING NOT NULL, " +
+                    MessageTable.MessageTableColumns.API_KEY + " STRING NOT NULL, " +
+                    MessageTable.MessageTableColumns.MESSAGE + " TEXT, " +
+                    MessageTable.MessageTableColumns.STATUS + " INTEGER, " +
+                    MessageTable.MessageTableColumns.CREATED_AT + " INTEGER NOT NULL, " +
+                    MessageTable.MessageTableColumns.MESSAGE_TYPE + " TEXT, " +
+                    MessageTable.MessageTableColumns.CF_UUID + " TEXT, " +
+                    MessageTable.MessageTableColumns.MP_ID + " INTEGER, " +
+                    MessageTable.MessageTableColumns.DATAPLAN_ID + " TEXT," +
+                    MessageTable.MessageTableColumns.DATAPLAN_VERSION + " INTEGER" +
+                    ");";
+
+    private final MParticleDatabaseHelper helper = new MParticleDatabaseHelper(mContext);
+
+    @Test
+    public void benchmarkQueuedMessageQueries() throws InterruptedException {
+        SQLiteOpenHelperWrapper version9Helper = new SQLiteOpenHelperWrapper() {
+            @Override
+            public void onCreate(SQLiteDatabase database) {
+                database.execSQL(V9_CREATE_MESSAGES_DDL);
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+                helper.onUpgrade(database, oldVersion, newVersion);
+            }
+
+            @Override
+            public void onDowngrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+                helper.onDowngrade(database, oldVersion, newVersion);
+            }
+        };
+
+        TestSQLiteOpenHelper openHelper = new TestSQLiteOpenHelper(version9Helper, DB_NAME, 9);
+        SQLiteDatabase sqLiteDatabase = openHelper.getWritableDatabase();
+        populate(sqLiteDatabase);
+        Map<String, Long> before = runQueries(new MPDatabaseImpl(sqLiteDatabase), false);
+        openHelper.close();
+
+        openHelper = new TestSQLiteOpenHelper(version9Helper, DB_NAME, MParticleDatabaseHelper.DB_VERSION);
+        sqLiteDatabase = openHelper.getWritableDatabase();
+        Map<String, Long> after = runQueries(new MPDatabaseImpl(sqLiteDatabase), true);
+        openHelper.close();
+
+        Log.i(TAG, "Message table queries with " + ROW_COUNT + " queued rows (ms, version 9 -> " + MParticleDatabaseHelper.DB_VERSION + ")");
+        for (Map.Entry<String, Long> entry : before.entrySet()) {
+            Log.i(TAG, entry.getKey() + ": " + entry.getValue() + " -> " + after.get(entry.getKey()));
+        }
+        deleteTestingDatabase();
+    }
+
+    private void populate(SQLiteDatabase database) {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        String message = "{\"dt\":\"e\",\"n\":\"" + payload + "\"}";
+        long now = System.currentTimeMillis() - ROW_COUNT;
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                ContentValues values = new ContentValues();
+                values.put(MessageTable.MessageTableColumns.SESSION_ID, "session-" + (i % SESSION_COUNT));
+                values.put(MessageTable.MessageTableColumns.API_KEY, "apiKey");
+                values.put(MessageTable.MessageTableColumns.MESSAGE, message);
+                values.put(MessageTable.MessageTableColumns.STATUS, i < ROW_COUNT - READY_ROW_COUNT ? Constants.Status.UPLOADED : Constants.Status.READY);
+                values.put(MessageTable.MessageTableColumns.CREATED_AT, now + i);
+                values.put(MessageTable.MessageTableColumns.MP_ID, MPID);
+                database.insert(MessageTable.MessageTableColumns.TABLE_NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private Map<String, Long> runQueries(MPDatabase database, boolean upgraded) {
+        Map<String, Long> timings = new LinkedHashMap<String, Long>();
+        long start = System.nanoTime();
+        assertEquals(SESSION_COUNT, MessageService.getSessionIds(database).size());
+        timings.put("getSessionIds", elapsedMillis(start));
+
+        start = System.nanoTime();
+        assertEquals(Constants.getMaxMessagePerBatch(), MessageService.getSessionHistory(database, "session-0").size());
+        timings.put("getSessionHistory", elapsedMillis(start));
+
+        start = System.nanoTime();
+        MessageService.hasMessagesForUpload(database);
+        timings.put("hasMessagesForUpload", elapsedMillis(start));
+
+        start = System.nanoTime();
+        MessageService.getMessagesForUpload(database);
+        timings.put("getMessagesForUpload", elapsedMillis(start));
+
+        start = System.nanoTime();
+        if (upgraded) {
+            assertEquals(0, MessageService.cleanupMessages(database));
+        } else {
+            //the version 9 cleanup query, there is no length column yet
+            assertEquals(0, database.delete(MessageTable.MessageTableColumns.TABLE_NAME, "length(" + MessageTable.MessageTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_MESSAGE_SIZE, null));
+        }
+        timings.put("cleanupMessages", elapsedMillis(start));
+        return timings;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+}
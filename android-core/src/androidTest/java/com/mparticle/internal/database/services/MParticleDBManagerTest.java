@@ -4,27 +4,170 @@ import android.os.Handler;
 import android.os.Looper;
 import androidx.annotation.Nullable;
 
+import com.mparticle.MParticle;
+import com.mparticle.MParticleOptions;
 import com.mparticle.UserAttributeListener;
+import com.mparticle.identity.MParticleUser;
+import com.mparticle.internal.Constants;
+import com.mparticle.internal.InternalSession;
+import com.mparticle.internal.database.MPDatabase;
+import com.mparticle.internal.messages.BaseMPMessage;
 import com.mparticle.testutils.AndroidUtils.Mutable;
 import com.mparticle.testutils.BaseCleanInstallEachTest;
 import com.mparticle.testutils.MPLatch;
 
 import junit.framework.Assert;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class MParticleDBManagerTest extends BaseCleanInstallEachTest{
 
+    @Test
+    public void testMessageJournalOrdering() throws Exception {
+        MParticleDBManager.getMessageJournalFile(mContext).delete();
+        MParticleOptions options = MParticleOptions.builder(mContext)
+                .credentials("key", "secret")
+                .messageJournalEnabled(true)
+                .build();
+        MParticleDBManager manager = new MParticleDBManager(mContext, options);
+        InternalSession session = new InternalSession();
+        session.mSessionID = UUID.randomUUID().toString();
+        for (int i = 0; i < 10; i++) {
+            manager.insertMessage("apiKey", createMessage(session, i), null, null);
+        }
+        //nothing has been read yet, so the messages are still only in the journal
+        assertEquals(0, MessageService.getMessagesForUpload(manager.getDatabase()).size());
+
+        //reading flushes the journal first
+        assertTrue(manager.hasMessagesForUpload());
+        for (int i = 10; i < 20; i++) {
+            manager.insertMessage("apiKey", createMessage(session, i), null, null);
+        }
+        assertTrue(manager.hasMessagesForUpload());
+        List<MessageService.ReadyMessage> messages = MessageService.getMessagesForUpload(manager.getDatabase());
+        assertEquals(20, messages.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("event " + i, new JSONObject(messages.get(i).getMessage()).getString(Constants.MessageKey.NAME));
+        }
+
+        //messages which were journaled but not flushed before a restart are still stored, after the earlier ones
+        manager.insertMessage("apiKey", createMessage(session, 20), null, null);
+        manager = new MParticleDBManager(mContext, options);
+        manager.insertMessage("apiKey", createMessage(session, 21), null, null);
+        assertTrue(manager.hasMessagesForUpload());
+        messages = MessageService.getMessagesForUpload(manager.getDatabase());
+        assertEquals(22, messages.size());
+        for (int i = 20; i < 22; i++) {
+            assertEquals("event " + i, new JSONObject(messages.get(i).getMessage()).getString(Constants.MessageKey.NAME));
+        }
+    }
+
+    @Test
+    public void testMessageJournalCrashBeforeDiscard() throws Exception {
+        File journalFile = MParticleDBManager.getMessageJournalFile(mContext);
+        journalFile.delete();
+        MParticleOptions options = MParticleOptions.builder(mContext)
+                .credentials("key", "secret")
+                .messageJournalEnabled(true)
+                .build();
+        MParticleDBManager manager = new MParticleDBManager(mContext, options);
+        InternalSession session = new InternalSession();
+        session.mSessionID = UUID.randomUUID().toString();
+        for (int i = 0; i < 5; i++) {
+            manager.insertMessage("apiKey", createMessage(session, i), null, null);
+        }
+        byte[] journal = readFile(journalFile);
+        manager.flushMessageJournal();
+        assertEquals(5, MessageService.getMessagesForUpload(manager.getDatabase()).size());
+
+        //the process stopped after the records were committed, but before they were discarded from the journal
+        writeFile(journalFile, journal);
+        manager = new MParticleDBManager(mContext, options);
+        manager.insertMessage("apiKey", createMessage(session, 5), null, null);
+        List<MessageService.ReadyMessage> messages = MessageService.getMessagesForUpload(manager.getDatabase());
+        assertEquals(6, messages.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals("event " + i, new JSONObject(messages.get(i).getMessage()).getString(Constants.MessageKey.NAME));
+        }
+    }
+
+    @Test
+    public void testMessageJournalFlushInRolledBackTransaction() throws Exception {
+        MParticleDBManager.getMessageJournalFile(mContext).delete();
+        MParticleOptions options = MParticleOptions.builder(mContext)
+                .credentials("key", "secret")
+                .messageJournalEnabled(true)
+                .build();
+        MParticleDBManager manager = new MParticleDBManager(mContext, options);
+        InternalSession session = new InternalSession();
+        session.mSessionID = UUID.randomUUID().toString();
+        for (int i = 0; i < 5; i++) {
+            manager.insertMessage("apiKey", createMessage(session, i), null, null);
+        }
+        MPDatabase db = manager.getDatabase();
+        db.beginTransaction();
+        try {
+            manager.flushMessageJournal();
+            assertEquals(5, MessageService.getMessagesForUpload(db).size());
+            //flushing again within the same transaction does not insert them twice
+            manager.flushMessageJournal();
+            assertEquals(5, MessageService.getMessagesForUpload(db).size());
+        } finally {
+            db.endTransaction();
+        }
+
+        //the enclosing transaction was rolled back, so the records have to still be in the journal
+        assertTrue(manager.hasMessagesForUpload());
+        List<MessageService.ReadyMessage> messages = MessageService.getMessagesForUpload(manager.getDatabase());
+        assertEquals(5, messages.size());
+        assertEquals("event 0", new JSONObject(messages.get(0).getMessage()).getString(Constants.MessageKey.NAME));
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private void writeFile(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private BaseMPMessage createMessage(InternalSession session, int index) throws JSONException {
+        return new BaseMPMessage.Builder(Constants.MessageType.EVENT)
+                .name("event " + index)
+                .build(session, null, 1L);
+    }
+
     @Test
     public void testRemoveUserAttributes() throws Exception {
         MParticleDBManager manager = new MParticleDBManager(mContext);
@@ -102,6 +245,47 @@ public class MParticleDBManagerTest extends BaseCleanInstallEachTest{
         Assert.assertEquals(attributeList, attributes.get("foo"));
     }
 
+    @Test
+    public void testCachedUserAttributesMatchDatabase() throws Exception {
+        MParticleDBManager manager = new MParticleDBManager(mContext);
+        //warm the cache before any writes
+        assertEquals(0, manager.getUserAttributes(10).size());
+
+        MParticleDBManager.UserAttributeResponse newAttributes = new MParticleDBManager.UserAttributeResponse();
+        newAttributes.mpId = 10L;
+        newAttributes.attributeSingles = new HashMap<String, String>();
+        newAttributes.attributeSingles.put("foo", "bar");
+        newAttributes.attributeSingles.put("number", "1");
+        newAttributes.attributeLists = new HashMap<String, List<String>>();
+        List<String> attributeList = new ArrayList<String>();
+        attributeList.add("bar");
+        attributeList.add("baz");
+        newAttributes.attributeLists.put("list", attributeList);
+        manager.setUserAttribute(newAttributes);
+
+        //an attribute which changes from a single value to a list
+        newAttributes.attributeSingles.clear();
+        newAttributes.attributeLists.clear();
+        newAttributes.attributeLists.put("foo", attributeList);
+        manager.setUserAttribute(newAttributes);
+
+        MParticleDBManager.UserAttributeRemoval removal = new MParticleDBManager.UserAttributeRemoval();
+        removal.key = "number";
+        removal.mpId = 10L;
+        manager.removeUserAttribute(removal, null);
+
+        Map<String, Object> cached = manager.getUserAttributes(10);
+        assertEquals(2, cached.size());
+        assertEquals(attributeList, cached.get("foo"));
+        assertEquals(attributeList, cached.get("list"));
+        assertEquals(new MParticleDBManager(mContext).getUserAttributes(10), cached);
+
+        //callers get their own copy
+        manager.getUserAttributeLists(10).get("list").add("modified");
+        manager.getUserAttributeSingles(10).put("foo", "modified");
+        assertEquals(cached, manager.getUserAttributes(10));
+    }
+
     @Test
     public void testGetUserAttributesAsync() throws InterruptedException {
         startMParticle();
@@ -165,4 +349,33 @@ public class MParticleDBManagerTest extends BaseCleanInstallEachTest{
         //thread is know to not be an issue w/db access
         assertEquals("mParticleMessageHandler", dbAccessThread.value.getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetUserAttributesAsyncReadsQueuedChanges() throws InterruptedException {
+        startMParticle();
+        final MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
+        //warm the cache
+        assertEquals(0, user.getUserAttributes().size());
+
+        final MPLatch latch = new MPLatch(1);
+        final Mutable<Map<String, String>> received = new Mutable<Map<String, String>>(null);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                user.setUserAttribute("foo", "bar");
+                user.getUserAttributes(new UserAttributeListener() {
+                    @Override
+                    public void onUserAttributesReceived(@Nullable Map<String, String> userAttributes, @Nullable Map<String, List<String>> userAttributeLists, @Nullable Long mpid) {
+                        received.value = userAttributes;
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+        latch.await();
+
+        //the listener sees the attribute set just before it, even though the cache was already loaded
+        assertNotNull(received.value);
+        assertEquals("bar", received.value.get("foo"));
+    }
+}
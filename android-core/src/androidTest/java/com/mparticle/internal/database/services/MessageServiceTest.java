@@ -11,6 +11,8 @@ import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -182,6 +184,36 @@ public class MessageServiceTest extends BaseMPServiceTest {
         assertEquals(MessageService.getMessagesForUpload(database).size(), 20);
     }
 
+    @Test
+    public void testMaxEventCounter() throws JSONException {
+        String orphanSession = UUID.randomUUID().toString();
+        String otherSession = UUID.randomUUID().toString();
+        assertEquals(-1, MessageService.getMaxEventCounter(database, Collections.singletonList(orphanSession)));
+
+        for (int i = 0; i < 5; i++) {
+            MessageService.insertMessage(database, "apiKey", getEventMessage(orphanSession, i), mpid1, null, null);
+        }
+        MessageService.insertMessage(database, "apiKey", getEventMessage(otherSession, 20), mpid1, null, null);
+        MessageService.insertMessage(database, "apiKey", getMpMessage(orphanSession), mpid1, null, null);
+        //only events carry a counter which the next event continues from, the session-end total is not one of them
+        BaseMPMessage sessionEnd = getMpMessage(orphanSession);
+        sessionEnd.put(Constants.MessageKey.TYPE, Constants.MessageType.SESSION_END);
+        sessionEnd.put(Constants.MessageKey.EVENT_COUNTER, 30);
+        MessageService.insertMessage(database, "apiKey", sessionEnd, mpid1, null, null);
+
+        assertEquals(4, MessageService.getMaxEventCounter(database, Collections.singletonList(orphanSession)));
+        assertEquals(20, MessageService.getMaxEventCounter(database, Arrays.asList(orphanSession, otherSession)));
+        assertEquals(-1, MessageService.getMaxEventCounter(database, Collections.<String>emptyList()));
+    }
+
+    private BaseMPMessage getEventMessage(String sessionId, int eventCounter) throws JSONException {
+        InternalSession session = new InternalSession();
+        session.mSessionID = sessionId;
+        BaseMPMessage message = new BaseMPMessage.Builder(Constants.MessageType.EVENT).build(session, new Location("New York City"), mpid1);
+        message.put(Constants.MessageKey.EVENT_COUNTER, eventCounter);
+        return message;
+    }
+
     private int getMaxId(List<MessageService.ReadyMessage> messages) {
         int max = 0;
         for (MessageService.ReadyMessage message: messages) {
@@ -34,6 +34,7 @@ import com.mparticle.internal.Constants;
 import com.mparticle.internal.Constants.MessageKey;
 import com.mparticle.internal.Constants.PrefKeys;
 import com.mparticle.internal.DeviceAttributes;
+import com.mparticle.internal.EventCounter;
 import com.mparticle.internal.InternalSession;
 import com.mparticle.internal.KitFrameworkWrapper;
 import com.mparticle.internal.Logger;
@@ -42,6 +43,7 @@ import com.mparticle.internal.MPUtility;
 import com.mparticle.internal.MParticleJSInterface;
 import com.mparticle.internal.MessageManager;
 import com.mparticle.internal.PushRegistrationHelper;
+import com.mparticle.internal.UserStorage;
 import com.mparticle.internal.database.services.MParticleDBManager;
 import com.mparticle.internal.database.tables.MParticleDatabaseHelper;
 import com.mparticle.internal.listeners.ApiClass;
@@ -358,16 +360,21 @@ public class MParticle {
     }
 
     public void logEvent(@NonNull BaseEvent event) {
-        if (event instanceof MPEvent && event.isShouldUploadEvent()) {
-            logMPEvent((MPEvent)event);
-        } else if (event instanceof CommerceEvent && event.isShouldUploadEvent()) {
-            logCommerceEvent((CommerceEvent)event);
-        } else {
-            if (mConfigManager.isEnabled()) {
-                mAppStateManager.ensureActiveSession();
-                Logger.debug("Logged event - \n", event.toString());
-                mKitManager.logEvent(event);
+        boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logEvent()");
+        try {
+            if (event instanceof MPEvent && event.isShouldUploadEvent()) {
+                logMPEvent((MPEvent)event);
+            } else if (event instanceof CommerceEvent && event.isShouldUploadEvent()) {
+                logCommerceEvent((CommerceEvent)event);
+            } else {
+                if (mConfigManager.isEnabled()) {
+                    mAppStateManager.ensureActiveSession();
+                    Logger.debug("Logged event - \n", event.toString());
+                    mKitManager.logEvent(event);
+                }
             }
+        } finally {
+            KitFrameworkWrapper.untagApiCall(tagged);
         }
     }
 
@@ -477,8 +484,13 @@ public class MParticle {
             mMessageManager.logScreen(screenEvent, screenEvent.getNavigationDirection());
             Logger.debug("Logged screen: ", screenEvent.toString());
         }
-        if (screenEvent.getNavigationDirection()) {
-            mKitManager.logScreen(screenEvent);
+        boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logScreen()");
+        try {
+            if (screenEvent.getNavigationDirection()) {
+                mKitManager.logScreen(screenEvent);
+            }
+        } finally {
+            KitFrameworkWrapper.untagApiCall(tagged);
         }
     }
 
@@ -501,7 +513,12 @@ public class MParticle {
             mAppStateManager.ensureActiveSession();
             mMessageManager.logBreadcrumb(breadcrumb);
             Logger.debug("Logged breadcrumb: " + breadcrumb);
-            mKitManager.leaveBreadcrumb(breadcrumb);
+            boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.leaveBreadcrumb()");
+            try {
+                mKitManager.leaveBreadcrumb(breadcrumb);
+            } finally {
+                KitFrameworkWrapper.untagApiCall(tagged);
+            }
         }
     }
 
@@ -532,7 +549,12 @@ public class MParticle {
             Logger.debug("Logged error with message: " + (message == null ? "<none>" : message) +
                     " with data: " + (eventDataJSON == null ? "<none>" : eventDataJSON.toString())
             );
-            mKitManager.logError(message, errorAttributes);
+            boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logError()");
+            try {
+                mKitManager.logError(message, errorAttributes);
+            } finally {
+                KitFrameworkWrapper.untagApiCall(tagged);
+            }
         }
     }
 
@@ -540,7 +562,12 @@ public class MParticle {
         if (mConfigManager.isEnabled()) {
             mAppStateManager.ensureActiveSession();
             mMessageManager.logNetworkPerformanceEvent(startTime, method, url, length, bytesSent, bytesReceived, requestString);
-            mKitManager.logNetworkPerformance(url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
+            boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logNetworkPerformance()");
+            try {
+                mKitManager.logNetworkPerformance(url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
+            } finally {
+                KitFrameworkWrapper.untagApiCall(tagged);
+            }
         }
     }
 
@@ -607,7 +634,12 @@ public class MParticle {
                             " with data: " + (eventDataJSON == null ? "<none>" : eventDataJSON.toString()) +
                             " with exception: " + (exception == null ? "<none>" : exception.getMessage())
             );
-            mKitManager.logException(exception, eventData, message);
+            boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logException()");
+            try {
+                mKitManager.logException(exception, eventData, message);
+            } finally {
+                KitFrameworkWrapper.untagApiCall(tagged);
+            }
         }
     }
 
@@ -702,7 +734,12 @@ public class MParticle {
      */
     public void setLocation(@Nullable Location location) {
         mMessageManager.setLocation(location);
-        mKitManager.setLocation(location);
+        boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.setLocation()");
+        try {
+            mKitManager.setLocation(location);
+        } finally {
+            KitFrameworkWrapper.untagApiCall(tagged);
+        }
 
     }
 
@@ -781,7 +818,12 @@ public class MParticle {
 
                 Logger.debug("Set opt-out: " + optOutStatus);
             }
-            mKitManager.setOptOut(optOutStatus);
+            boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.setOptOut()");
+            try {
+                mKitManager.setOptOut(optOutStatus);
+            } finally {
+                KitFrameworkWrapper.untagApiCall(tagged);
+            }
         }
     }
 
@@ -1016,7 +1058,12 @@ public class MParticle {
         String oldInstanceId = mConfigManager.getPushInstanceId();
         mConfigManager.setPushRegistration(registration);
         mMessageManager.setPushRegistrationId(instanceId, true);
-        mKitManager.onPushRegistration(instanceId, senderId);
+        boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logPushRegistration()");
+        try {
+            mKitManager.onPushRegistration(instanceId, senderId);
+        } finally {
+            KitFrameworkWrapper.untagApiCall(tagged);
+        }
         updatePushToken(instanceId, oldInstanceId);
     }
 
@@ -1157,8 +1204,11 @@ public class MParticle {
                     file.delete();
                 }
             }
+            UserStorage.clearCache();
+            EventCounter.clear();
             if (deleteDatabase) {
                 context.deleteDatabase(MParticleDatabaseHelper.getDbName());
+                MParticleDBManager.getMessageJournalFile(context).delete();
             }
         }
     }
@@ -52,6 +52,11 @@ public class MParticleOptions {
     private MParticle.OperatingSystem mOperatingSystem = MParticle.OperatingSystem.ANDROID;
     private DataplanOptions mDataplanOptions;
     private Map<Class, List<Configuration>> mConfigurations = new HashMap();
+    private Integer mStoreMessageBatchSize = ConfigManager.DEFAULT_STORE_MESSAGE_BATCH_SIZE;
+    private Long mStoreMessageMaxLingerMillis = ConfigManager.DEFAULT_STORE_MESSAGE_LINGER_MILLIS;
+    private Boolean mMessageJournalEnabled = false;
+    private Integer mMessageQueueCapacity = ConfigManager.DEFAULT_MESSAGE_QUEUE_CAPACITY;
+    private MessageQueueOverflowPolicy mMessageQueueOverflowPolicy = MessageQueueOverflowPolicy.DROP_OLDEST;
 
     private MParticleOptions() {
     }
@@ -143,6 +148,33 @@ public class MParticleOptions {
         this.mDataplanVersion = builder.dataplanVersion;
         this.mDataplanOptions = builder.dataplanOptions;
         this.mConfigurations = builder.configurations;
+        if (builder.storeMessageBatchSize != null) {
+            if (builder.storeMessageBatchSize <= 0) {
+                Logger.warning("Store Message Batch Size must be a positive number, disregarding value.");
+            } else {
+                this.mStoreMessageBatchSize = builder.storeMessageBatchSize;
+            }
+        }
+        if (builder.storeMessageMaxLingerMillis != null) {
+            if (builder.storeMessageMaxLingerMillis < 0) {
+                Logger.warning("Store Message Max Linger must not be a negative number, disregarding value.");
+            } else {
+                this.mStoreMessageMaxLingerMillis = builder.storeMessageMaxLingerMillis;
+            }
+        }
+        if (builder.messageJournalEnabled != null) {
+            this.mMessageJournalEnabled = builder.messageJournalEnabled;
+        }
+        if (builder.messageQueueCapacity != null) {
+            if (builder.messageQueueCapacity < 0) {
+                Logger.warning("Message Queue Capacity must not be a negative number, disregarding value.");
+            } else {
+                this.mMessageQueueCapacity = builder.messageQueueCapacity;
+            }
+        }
+        if (builder.messageQueueOverflowPolicy != null) {
+            this.mMessageQueueOverflowPolicy = builder.messageQueueOverflowPolicy;
+        }
     }
 
     /**
@@ -341,6 +373,51 @@ public class MParticleOptions {
     }
 
 
+    /**
+     * Query the maximum number of messages which will be written to the database in a single transaction.
+     * @return the store message batch size, 1 if group commit is disabled
+     */
+    @NonNull
+    public Integer getStoreMessageBatchSize() {
+        return mStoreMessageBatchSize;
+    }
+
+    /**
+     * Query the maximum amount of time a message will wait for a batch to fill before being written.
+     * @return the max linger time, in milliseconds
+     */
+    @NonNull
+    public Long getStoreMessageMaxLingerMillis() {
+        return mStoreMessageMaxLingerMillis;
+    }
+
+    /**
+     * Query whether logged messages are written to a memory-mapped journal before the database.
+     * @return true if the message journal is enabled
+     */
+    @NonNull
+    public Boolean isMessageJournalEnabled() {
+        return mMessageJournalEnabled;
+    }
+
+    /**
+     * Query the maximum number of pending messages on the SDK's message thread.
+     * @return the message queue capacity, 0 if the queue is unbounded
+     */
+    @NonNull
+    public Integer getMessageQueueCapacity() {
+        return mMessageQueueCapacity;
+    }
+
+    /**
+     * Query what happens when a message is logged while the message queue is full.
+     * @return the overflow policy
+     */
+    @NonNull
+    public MessageQueueOverflowPolicy getMessageQueueOverflowPolicy() {
+        return mMessageQueueOverflowPolicy;
+    }
+
     @NonNull
     public <T> List<Configuration<T>> getConfigurationsForTarget(Class<T> clazz) {
         List list = mConfigurations.get(clazz);
@@ -379,6 +456,11 @@ public class MParticleOptions {
         private DataplanOptions dataplanOptions;
         private Map<Class, List<Configuration>> configurations = new HashMap();
         private boolean isAppDebuggable;
+        private Integer storeMessageBatchSize = null;
+        private Long storeMessageMaxLingerMillis = null;
+        private Boolean messageJournalEnabled = null;
+        private Integer messageQueueCapacity = null;
+        private MessageQueueOverflowPolicy messageQueueOverflowPolicy = null;
 
         private Builder(Context context) {
             this.context = context;
@@ -701,6 +783,88 @@ public class MParticleOptions {
             return this;
         }
 
+        /**
+         * Enable group commit of logged messages. Rather than writing each message to the database
+         * in its own transaction, up to this many pending messages will be written together in a single
+         * transaction. This reduces disk activity when many events are logged in quick succession.
+         *
+         * @param storeMessageBatchSize the maximum number of messages per transaction, 1 (the default) disables group commit
+         *
+         * @return the instance of the builder, for chaining calls
+         *
+         * @see #storeMessageMaxLingerMillis(long)
+         */
+        @NonNull
+        public Builder storeMessageBatchSize(int storeMessageBatchSize) {
+            this.storeMessageBatchSize = storeMessageBatchSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum time a logged message will be held in memory, waiting for a group commit batch
+         * to fill, before it is written to the database. With the default of 0, a batch contains whichever messages were
+         * already queued when the first one was processed.
+         *
+         * @param storeMessageMaxLingerMillis the maximum linger time, in milliseconds
+         *
+         * @return the instance of the builder, for chaining calls
+         *
+         * @see #storeMessageBatchSize(int)
+         */
+        @NonNull
+        public Builder storeMessageMaxLingerMillis(long storeMessageMaxLingerMillis) {
+            this.storeMessageMaxLingerMillis = storeMessageMaxLingerMillis;
+            return this;
+        }
+
+        /**
+         * Store logged messages in a memory-mapped journal file, rather than writing each one to the database.
+         * Journaled messages are moved into the database in a single transaction when the journal fills up,
+         * and before messages are prepared for upload. This is intended for apps which log at very high rates.
+         *
+         * @param messageJournalEnabled true to enable the message journal, disabled by default
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder messageJournalEnabled(boolean messageJournalEnabled) {
+            this.messageJournalEnabled = messageJournalEnabled;
+            return this;
+        }
+
+        /**
+         * Bound the number of messages waiting to be processed by the SDK's message thread. Logging calls are
+         * queued and written to the database on that thread, and if the disk is slow the queue can otherwise
+         * grow without limit. Once the queue is full, room is made for new messages according to the
+         * {@link MessageQueueOverflowPolicy}. Session, identity and user attribute messages are never dropped.
+         *
+         * @param messageQueueCapacity the maximum number of pending messages, 0 (the default) leaves the queue unbounded
+         *
+         * @return the instance of the builder, for chaining calls
+         *
+         * @see #messageQueueOverflowPolicy(MessageQueueOverflowPolicy)
+         */
+        @NonNull
+        public Builder messageQueueCapacity(int messageQueueCapacity) {
+            this.messageQueueCapacity = messageQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Set what happens when a message is logged while the message queue is full.
+         *
+         * @param messageQueueOverflowPolicy the overflow policy, {@link MessageQueueOverflowPolicy#DROP_OLDEST} by default
+         *
+         * @return the instance of the builder, for chaining calls
+         *
+         * @see #messageQueueCapacity(int)
+         */
+        @NonNull
+        public Builder messageQueueOverflowPolicy(@NonNull MessageQueueOverflowPolicy messageQueueOverflowPolicy) {
+            this.messageQueueOverflowPolicy = messageQueueOverflowPolicy;
+            return this;
+        }
+
         /**
          * Register a {@link com.mparticle.Configuration}n. Various implementations of Configuration can modify the behavior of
          * the SDK at runtime.
@@ -968,4 +1132,19 @@ public class MParticleOptions {
         @NonNull
         JSONObject onBatchCreated(@NonNull JSONObject batch);
     }
+
+    /**
+     * What to do when a message is logged while the message queue is full, see {@link Builder#messageQueueCapacity(int)}.
+     */
+    public enum MessageQueueOverflowPolicy {
+        /**
+         * Drop the oldest pending event, screen view, commerce event, error or breadcrumb.
+         */
+        DROP_OLDEST,
+        /**
+         * First discard pending messages which are made redundant by the new one, such as an earlier update to
+         * the same session's end time. If there are none, drop the oldest pending message as with {@link #DROP_OLDEST}.
+         */
+        COALESCE
+    }
 }
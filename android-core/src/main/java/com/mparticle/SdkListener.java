@@ -18,6 +18,9 @@ import java.util.List;
  *
  * SdkListener is a new feature which enables updates on and visibility into internal Events occuring
  * inside the SDK.
+ *
+ * Callbacks are delivered in the order the events occurred, on a single background thread, shortly after
+ * the event. If a listener is too slow to keep up, events are dropped rather than slowing down the SDK.
  */
 public class SdkListener {
     public static final String ERROR_MESSAGE = "message";
@@ -68,11 +71,24 @@ public class SdkListener {
 
     }
 
+    /**
+     * Indicates that a Network Request has finished. The default implementation calls
+     * {@link #onNetworkRequestFinished(Endpoint, String, JSONObject, int)}.
+     * @param type the type of network request, see {@link Endpoint}
+     * @param url the URL of the request
+     * @param response the response body in JSON form
+     * @param responseCode the HTTP response code
+     * @param durationMillis the time since the matching {@link #onNetworkRequestStarted(Endpoint, String, JSONObject)} event
+     */
+    public void onNetworkRequestFinished(@NonNull Endpoint type, @NonNull String url, @Nullable JSONObject response, int responseCode, long durationMillis) {
+        onNetworkRequestFinished(type, url, response, responseCode);
+    }
+
     /**
      * Indicates that a Kit method was invoked.
      * @param kitId the id of the kit, corresponds with a {@link com.mparticle.MParticle.ServiceProviders}
      * @param apiName the method name which was invoked
-     * @param invokingMethodName the SDK Api call which triggered the invocation, if there was one
+     * @param invokingMethodName the SDK Api call which triggered the invocation, for example "MParticle.logEvent()", if there was one. This is null if the Kit was invoked on a different thread, for example when a Kit was still starting when the event was logged
      * @param kitManagerMethodName the KitManager call which serverd as the intermediate trigger of the invocation, if there was one
      * @param objects the arguments passed
      * @param used whether a {@link com.mparticle.internal.database.services.ReportingService.ReportingMessage} was generated as a result of the invocation. {@link com.mparticle.internal.database.services.ReportingService.ReportingMessage} indicate that an argument was consumed by the Kit
@@ -126,6 +142,18 @@ public class SdkListener {
 
     }
 
+    /**
+     * Indicates that one of the SDK's worker threads has finished processing a message.
+     * @param handlerName the name of the Handler class, for example "com.mparticle.internal.MessageHandler"
+     * @param queueDepth the number of messages still waiting to be processed
+     * @param droppedCount the total number of messages dropped because the queue was full
+     * @param coalescedCount the total number of messages discarded because a newer message made them redundant
+     * @param latencyMillis the time between the message being due and it finishing processing
+     */
+    public void onThreadMessageProcessed(@NonNull String handlerName, int queueDepth, long droppedCount, long coalescedCount, long latencyMillis) {
+
+    }
+
     /**
      * Callback for {@link com.mparticle.identity.IdentityApi#aliasUsers(AliasRequest)} results.
      * @param aliasResponse
@@ -31,7 +31,8 @@ public final class ConsentState {
     }
 
     private ConsentState(Builder builder) {
-        gdprConsentState = builder.gdprConsentState;
+        //copied, so that the builder can be reused without changing a ConsentState it has already built
+        gdprConsentState = new HashMap<String, GDPRConsent>(builder.gdprConsentState);
         ccpaConsentState = builder.ccpaConsent;
     }
 
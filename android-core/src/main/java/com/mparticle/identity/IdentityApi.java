@@ -347,11 +347,9 @@ public class IdentityApi {
 
     private void reset() {
         identityStateListeners = new HashSet<IdentityStateListener>();
-        mBackgroundHandler.removeCallbacksAndMessages(null);
-        mBackgroundHandler.disable(true);
+        mBackgroundHandler.shutdown();
         if (mMainHandler != null) {
-            mMainHandler.disable(true);
-            mMainHandler.removeCallbacksAndMessages(null);
+            mMainHandler.shutdown();
         }
     }
 
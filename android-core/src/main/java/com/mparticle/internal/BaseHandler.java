@@ -3,21 +3,68 @@ package com.mparticle.internal;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 
 
+import androidx.annotation.NonNull;
+
+import com.mparticle.MParticleOptions;
 import com.mparticle.internal.listeners.InternalListenerManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BaseHandler extends Handler {
     private volatile boolean disabled;
     private volatile boolean handling;
-    private ConcurrentHashMap<Message, Boolean> messageQueue = new ConcurrentHashMap();
+    //guards disabled and handling, so a shutdown can tell whether a message is still being handled
+    private final Object handlingLock = new Object();
+    private Shutdown pendingShutdown;
+    private final Set<Message> messageQueue = Collections.newSetFromMap(new ConcurrentHashMap<Message, Boolean>());
+    //indexes of the pending messages, so the overflow policy never has to scan the whole queue. Guarded by queueLock
+    private final Object queueLock = new Object();
+    private final LinkedHashSet<Message> droppableMessages = new LinkedHashSet<Message>();
+    private final Map<Integer, Set<Message>> messagesByWhat = new HashMap<Integer, Set<Message>>();
+
+    /**
+     * When maxQueueSize is greater than 0, sending a message while that many are already pending will
+     * first try to make room according to the overflow policy. Messages which {@link #isDroppable(Message)}
+     * does not allow to be dropped are always queued, even if there is no room.
+     */
+    private volatile int maxQueueSize = 0;
+    private volatile MParticleOptions.MessageQueueOverflowPolicy overflowPolicy = MParticleOptions.MessageQueueOverflowPolicy.DROP_OLDEST;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
 
     public Set<Message> getMessageQueue() {
-        return messageQueue.keySet();
+        return messageQueue;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize, MParticleOptions.MessageQueueOverflowPolicy overflowPolicy) {
+        this.maxQueueSize = maxQueueSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getQueueDepth() {
+        return messageQueue.size();
+    }
+
+    public long getDroppedMessageCount() {
+        return droppedCount.get();
+    }
+
+    public long getCoalescedMessageCount() {
+        return coalescedCount.get();
     }
 
     public BaseHandler() {}
@@ -26,13 +73,58 @@ public class BaseHandler extends Handler {
         super(looper);
     }
 
+    /**
+     * @param disable true to stop processing messages, see {@link #shutdown()}, false to start again
+     */
     public void disable(boolean disable) {
-        this.disabled = disable;
-        removeCallbacksAndMessages(null);
-        while (handling) {}
+        if (disable) {
+            shutdown();
+        } else {
+            synchronized (handlingLock) {
+                this.disabled = false;
+                removeCallbacksAndMessages(null);
+            }
+        }
     }
 
+    /**
+     * Stop processing messages and discard any which are pending. The message currently being handled, if any,
+     * is given the chance to finish, after {@link #onShutdown()} has been called to cut it short.
+     *
+     * @return a handle which completes once no message is being handled, callers may wait on it or ignore it
+     */
+    @NonNull
+    public Shutdown shutdown() {
+        Shutdown shutdown;
+        synchronized (handlingLock) {
+            disabled = true;
+            removeCallbacksAndMessages(null);
+            synchronized (queueLock) {
+                messageQueue.clear();
+                droppableMessages.clear();
+                messagesByWhat.clear();
+            }
+            if (pendingShutdown != null) {
+                return pendingShutdown;
+            }
+            shutdown = new Shutdown();
+            //a handler can't wait for itself
+            if (handling && Looper.myLooper() != getLooper()) {
+                pendingShutdown = shutdown;
+            } else {
+                shutdown.complete();
+                return shutdown;
+            }
+        }
+        onShutdown();
+        return shutdown;
+    }
 
+    /**
+     * Override this to interrupt long running work, such as network requests, when the handler is shut down.
+     * This is called on the thread requesting the shutdown, while a message is being handled.
+     */
+    protected void onShutdown() {}
 
     public boolean isDisabled() {
         return disabled;
@@ -44,19 +136,23 @@ public class BaseHandler extends Handler {
 
     @Override
     public final void handleMessage(Message msg) {
-        if (disabled) {
-            Logger.error("Handler: " + getClass().getName() + " is destroyed! Message: \"" + msg.toString() + "\" will not be processed");
-            return;
+        synchronized (handlingLock) {
+            if (disabled) {
+                Logger.error("Handler: " + getClass().getName() + " is destroyed! Message: \"" + msg.toString() + "\" will not be processed");
+                return;
+            }
+            handling = true;
         }
-        handling = true;
+        long start = msg != null ? msg.getWhen() : 0;
         try {
-            if (msg != null) {
-                messageQueue.remove(msg);
+            if (msg != null && !dequeue(msg) && maxQueueSize > 0 && msg.what != -1) {
+                //the message was dropped to make room, after it had already been dequeued
+                return;
             }
             if (msg != null && msg.what == -1 && msg.obj instanceof CountDownLatch) {
                 ((CountDownLatch)msg.obj).countDown();
             } else {
-                if (InternalListenerManager.isEnabled()) {
+                if (InternalListenerManager.isGraphEnabled()) {
                     InternalListenerManager.getListener().onThreadMessage(getClass().getName(), msg, true);
                 }
                 try {
@@ -64,10 +160,19 @@ public class BaseHandler extends Handler {
                 } catch (OutOfMemoryError error) {
                     Logger.error("Out of memory");
                 }
+                if (InternalListenerManager.isEnabled()) {
+                    InternalListenerManager.getListener().onThreadMessageProcessed(getClass().getName(), getQueueDepth(), droppedCount.get(), coalescedCount.get(), SystemClock.uptimeMillis() - start);
+                }
             }
         }
         finally {
-            handling = false;
+            synchronized (handlingLock) {
+                handling = false;
+                if (pendingShutdown != null) {
+                    pendingShutdown.complete();
+                    pendingShutdown = null;
+                }
+            }
         }
     }
 
@@ -76,20 +181,118 @@ public class BaseHandler extends Handler {
         if (disabled) {
             return false;
         }
-        if (InternalListenerManager.isEnabled()) {
+        if (InternalListenerManager.isGraphEnabled()) {
             InternalListenerManager.getListener().onThreadMessage(getClass().getName(), msg, false);
         }
         if (msg != null) {
-            messageQueue.put(msg, true);
+            if (maxQueueSize > 0 && messageQueue.size() >= maxQueueSize) {
+                makeRoom(msg);
+            }
+            enqueue(msg);
         }
         return super.sendMessageAtTime(msg, uptimeMillis);
     }
 
+    private void enqueue(Message msg) {
+        boolean droppable = isDroppable(msg);
+        synchronized (queueLock) {
+            messageQueue.add(msg);
+            if (droppable) {
+                droppableMessages.add(msg);
+            }
+            Set<Message> messages = messagesByWhat.get(msg.what);
+            if (messages == null) {
+                messages = new HashSet<Message>();
+                messagesByWhat.put(msg.what, messages);
+            }
+            messages.add(msg);
+        }
+    }
+
+    /**
+     * @return false if the message was not pending, because it was dropped or already dequeued
+     */
+    private boolean dequeue(Message msg) {
+        synchronized (queueLock) {
+            if (!messageQueue.remove(msg)) {
+                return false;
+            }
+            droppableMessages.remove(msg);
+            Set<Message> messages = messagesByWhat.get(msg.what);
+            if (messages != null) {
+                messages.remove(msg);
+                if (messages.isEmpty()) {
+                    messagesByWhat.remove(msg.what);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Apply the overflow policy, the incoming message is queued regardless.
+     */
+    private void makeRoom(Message incoming) {
+        synchronized (queueLock) {
+            if (overflowPolicy == MParticleOptions.MessageQueueOverflowPolicy.COALESCE) {
+                boolean coalesced = false;
+                Set<Message> sameWhat = messagesByWhat.get(incoming.what);
+                if (sameWhat != null) {
+                    for (Message queued : new ArrayList<Message>(sameWhat)) {
+                        if (supersedes(incoming, queued)) {
+                            removeQueued(queued);
+                            coalescedCount.incrementAndGet();
+                            coalesced = true;
+                        }
+                    }
+                }
+                if (coalesced) {
+                    return;
+                }
+            }
+            Iterator<Message> droppable = droppableMessages.iterator();
+            if (!droppable.hasNext()) {
+                Logger.verbose("Handler: " + getClass().getName() + " queue is full, but none of the pending messages can be dropped.");
+                return;
+            }
+            removeQueued(droppable.next());
+            droppedCount.incrementAndGet();
+            Logger.warning("Handler: " + getClass().getName() + " queue is full, dropping the oldest pending message.");
+        }
+    }
+
+    private void removeQueued(Message message) {
+        int what = message.what;
+        Object obj = message.obj;
+        dequeue(message);
+        if (obj != null) {
+            super.removeMessages(what, obj);
+        }
+    }
+
+    /**
+     * Override this to allow a pending message to be discarded when the queue is full.
+     */
+    protected boolean isDroppable(Message msg) {
+        return false;
+    }
+
+    /**
+     * Override this to allow a pending message to be discarded because a newly sent message, with the same
+     * "what", makes it redundant.
+     */
+    protected boolean supersedes(Message incoming, Message queued) {
+        return false;
+    }
+
     public void removeMessage(int what) {
-        Set<Message> messages = messageQueue.keySet();
-        for (Message message: messages) {
-            if (message.what == what) {
-                messageQueue.remove(message);
+        synchronized (queueLock) {
+            Set<Message> messages = messagesByWhat.remove(what);
+            if (messages != null) {
+                for (Message message : messages) {
+                    messageQueue.remove(message);
+                    droppableMessages.remove(message);
+                }
             }
         }
         super.removeMessages(what);
@@ -97,4 +300,26 @@ public class BaseHandler extends Handler {
 
     //Override this in order to handle messages
     public void handleMessageImpl(Message msg) {}
+
+    /**
+     * The result of {@link #shutdown()}.
+     */
+    public static class Shutdown {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        void complete() {
+            latch.countDown();
+        }
+
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        /**
+         * @return true if the handler finished the message it was handling, false if the timeout elapsed first
+         */
+        public boolean await(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            return latch.await(timeout, unit);
+        }
+    }
 }
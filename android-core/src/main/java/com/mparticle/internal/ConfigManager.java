@@ -24,6 +24,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -44,10 +46,10 @@ public class ConfigManager {
     public static final String CONFIG_JSON = "json";
     public static final String KIT_CONFIG_PREFERENCES = "mparticle_config.json";
     public static final String CONFIG_JSON_TIMESTAMP = "json_timestamp";
-    private static final String KEY_TRIGGER_ITEMS = "tri";
-    private static final String KEY_MESSAGE_MATCHES = "mm";
-    private static final String KEY_TRIGGER_ITEM_HASHES = "evts";
-    private static final String KEY_INFLUENCE_OPEN = "pio";
+    static final String KEY_TRIGGER_ITEMS = "tri";
+    static final String KEY_MESSAGE_MATCHES = "mm";
+    static final String KEY_TRIGGER_ITEM_HASHES = "evts";
+    static final String KEY_INFLUENCE_OPEN = "pio";
     static final String KEY_OPT_OUT = "oo";
     public static final String KEY_UNHANDLED_EXCEPTIONS = "cue";
     public static final String KEY_PUSH_MESSAGES = "pmk";
@@ -59,7 +61,7 @@ public class ConfigManager {
     public static final String VALUE_CUE_CATCH = "forcecatch";
     public static final String PREFERENCES_FILE = "mp_preferences";
     public static final String KEY_INCLUDE_SESSION_HISTORY = "inhd";
-    private static final String KEY_DEVICE_PERFORMANCE_METRICS_DISABLED = "dpmd";
+    static final String KEY_DEVICE_PERFORMANCE_METRICS_DISABLED = "dpmd";
     public static final String WORKSPACE_TOKEN = "wst";
     static final String ALIAS_MAX_WINDOW = "alias_max_window";
     static final String KEY_RAMP = "rp";
@@ -106,6 +108,9 @@ public class ConfigManager {
     public static final int MINIMUM_CONNECTION_TIMEOUT_SECONDS = 1;
     public static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 60;
     public static final int DEFAULT_UPLOAD_INTERVAL = 600;
+    public static final int DEFAULT_STORE_MESSAGE_BATCH_SIZE = 1;
+    public static final long DEFAULT_STORE_MESSAGE_LINGER_MILLIS = 0;
+    public static final int DEFAULT_MESSAGE_QUEUE_CAPACITY = 0;
     private List<ConfigLoadedListener> configUpdatedListeners = new ArrayList<>();
 
     private ConfigManager() {
@@ -162,18 +167,47 @@ public class ConfigManager {
         restoreCoreConfig();
     }
 
+    /**
+     * Restore the stored configuration from its snapshot when there is one for the current ETag, and fall back
+     * to parsing the stored JSON otherwise.
+     */
     private void restoreCoreConfig() {
         String oldConfig = getConfig();
         if (!MPUtility.isEmpty(oldConfig)) {
+            String etag = getEtag();
+            File snapshotFile = getConfigSnapshotFile();
+            ConfigSnapshot snapshot = snapshotFile != null ? ConfigSnapshot.read(snapshotFile, etag, oldConfig) : null;
             try {
-                JSONObject oldConfigJson = new JSONObject(oldConfig);
-                reloadCoreConfig(oldConfigJson);
+                if (snapshot != null) {
+                    applyCoreConfig(snapshot, null, false);
+                } else {
+                    JSONObject oldConfigJson = new JSONObject(oldConfig);
+                    writeConfigSnapshot(updateCoreConfig(oldConfigJson, false), etag, oldConfig);
+                }
             } catch (Exception jse) {
 
             }
         }
     }
 
+    @Nullable
+    private File getConfigSnapshotFile() {
+        File filesDir = mContext.getFilesDir();
+        return filesDir != null ? new File(filesDir, ConfigSnapshot.FILE_NAME) : null;
+    }
+
+    private void writeConfigSnapshot(@NonNull ConfigSnapshot snapshot, @Nullable String etag, @Nullable String config) {
+        File snapshotFile = getConfigSnapshotFile();
+        if (snapshotFile == null || config == null) {
+            return;
+        }
+        try {
+            snapshot.write(snapshotFile, etag, config);
+        } catch (IOException ex) {
+            Logger.debug("Unable to write config snapshot: " + ex.getMessage());
+        }
+    }
+
     /**
      * This called on startup. The only thing that's completely necessary is that we fire up kits.
      */
@@ -337,6 +371,10 @@ public class ConfigManager {
                 .edit()
                 .remove(KIT_CONFIG_KEY)
                 .apply();
+        File snapshotFile = getConfigSnapshotFile();
+        if (snapshotFile != null) {
+            snapshotFile.delete();
+        }
     }
 
     public synchronized void updateConfig(JSONObject responseJSON) throws JSONException {
@@ -349,7 +387,8 @@ public class ConfigManager {
         }
         JSONArray kitConfig = responseJSON.has(KEY_EMBEDDED_KITS) ? (JSONArray) responseJSON.remove(KEY_EMBEDDED_KITS) : null;
         saveConfigJson(responseJSON, kitConfig, etag, lastModified, System.currentTimeMillis());
-        updateCoreConfig(responseJSON, true);
+        ConfigSnapshot snapshot = updateCoreConfig(responseJSON, true);
+        writeConfigSnapshot(snapshot, etag, getConfig());
         updateKitConfig(kitConfig);
     }
 
@@ -366,74 +405,59 @@ public class ConfigManager {
         }
     }
 
-    private synchronized void updateCoreConfig(JSONObject responseJSON, boolean newConfig) throws JSONException {
-        SharedPreferences.Editor editor = sPreferences.edit();
-        if (responseJSON.has(KEY_UNHANDLED_EXCEPTIONS)) {
-            mLogUnhandledExceptions = responseJSON.getString(KEY_UNHANDLED_EXCEPTIONS);
-        }
-
+    private synchronized ConfigSnapshot updateCoreConfig(JSONObject responseJSON, boolean newConfig) throws JSONException {
+        ConfigSnapshot snapshot = ConfigSnapshot.fromJson(responseJSON);
+        JSONArray pushKeys = null;
         if (responseJSON.has(KEY_PUSH_MESSAGES) && newConfig) {
-            sPushKeys = responseJSON.getJSONArray(KEY_PUSH_MESSAGES);
-            editor.putString(KEY_PUSH_MESSAGES, sPushKeys.toString());
+            pushKeys = responseJSON.getJSONArray(KEY_PUSH_MESSAGES);
         }
+        applyCoreConfig(snapshot, pushKeys, newConfig);
+        return snapshot;
+    }
 
-        mRampValue = responseJSON.optInt(KEY_RAMP, -1);
-
-        if (responseJSON.has(KEY_OPT_OUT)) {
-            mSendOoEvents = responseJSON.getBoolean(KEY_OPT_OUT);
-        } else {
-            mSendOoEvents = false;
+    private synchronized void applyCoreConfig(@NonNull ConfigSnapshot config, @Nullable JSONArray pushKeys, boolean newConfig) throws JSONException {
+        SharedPreferences.Editor editor = sPreferences.edit();
+        if (config.logUnhandledExceptions != null) {
+            mLogUnhandledExceptions = config.logUnhandledExceptions;
         }
 
-        if (responseJSON.has(ProviderPersistence.KEY_PERSISTENCE)) {
-            setProviderPersistence(new ProviderPersistence(responseJSON, mContext));
-        } else {
-            setProviderPersistence(null);
+        if (pushKeys != null) {
+            sPushKeys = pushKeys;
+            editor.putString(KEY_PUSH_MESSAGES, sPushKeys.toString());
         }
 
-        mSessionTimeoutInterval = responseJSON.optInt(KEY_SESSION_TIMEOUT, -1);
-        mUploadInterval = responseJSON.optInt(KEY_UPLOAD_INTERVAL, -1);
+        mRampValue = config.rampValue;
+        mSendOoEvents = config.sendOoEvents;
 
-        mTriggerMessageMatches = null;
-        mTriggerMessageHashes = null;
-        if (responseJSON.has(KEY_TRIGGER_ITEMS)) {
-            try {
-                JSONObject items = responseJSON.getJSONObject(KEY_TRIGGER_ITEMS);
-                if (items.has(KEY_MESSAGE_MATCHES)) {
-                    mTriggerMessageMatches = items.getJSONArray(KEY_MESSAGE_MATCHES);
-                }
-                if (items.has(KEY_TRIGGER_ITEM_HASHES)) {
-                    mTriggerMessageHashes = items.getJSONArray(KEY_TRIGGER_ITEM_HASHES);
-                }
-            } catch (JSONException jse) {
-
-            }
-
-        }
-
-        if (responseJSON.has(KEY_INFLUENCE_OPEN)) {
-            mInfluenceOpenTimeout = responseJSON.getLong(KEY_INFLUENCE_OPEN) * 60 * 1000;
+        if (config.providerPersistence != null) {
+            JSONObject persistence = new JSONObject().put(ProviderPersistence.KEY_PERSISTENCE, config.providerPersistence);
+            setProviderPersistence(new ProviderPersistence(persistence, mContext));
         } else {
-            mInfluenceOpenTimeout = 30 * 60 * 1000;
+            setProviderPersistence(null);
         }
 
-        mRestrictAAIDfromLAT = responseJSON.optBoolean(KEY_AAID_LAT, true);
-        mIncludeSessionHistory = responseJSON.optBoolean(KEY_INCLUDE_SESSION_HISTORY, true);
-        if (responseJSON.has(KEY_DEVICE_PERFORMANCE_METRICS_DISABLED)) {
-            MessageManager.devicePerformanceMetricsDisabled = responseJSON.optBoolean(KEY_DEVICE_PERFORMANCE_METRICS_DISABLED, false);
+        mSessionTimeoutInterval = config.sessionTimeoutInterval;
+        mUploadInterval = config.uploadInterval;
+        mTriggerMessageMatches = config.triggerMessageMatches;
+        mTriggerMessageHashes = config.triggerMessageHashes;
+        mInfluenceOpenTimeout = config.influenceOpenTimeout;
+        mRestrictAAIDfromLAT = config.restrictAAIDfromLAT;
+        mIncludeSessionHistory = config.includeSessionHistory;
+        if (config.devicePerformanceMetricsDisabled != null) {
+            MessageManager.devicePerformanceMetricsDisabled = config.devicePerformanceMetricsDisabled;
         }
-        if (responseJSON.has(WORKSPACE_TOKEN)) {
-            editor.putString(WORKSPACE_TOKEN, responseJSON.getString(WORKSPACE_TOKEN));
+        if (config.workspaceToken != null) {
+            editor.putString(WORKSPACE_TOKEN, config.workspaceToken);
         } else {
             editor.remove(WORKSPACE_TOKEN);
         }
-        if (responseJSON.has(ALIAS_MAX_WINDOW)) {
-            editor.putInt(ALIAS_MAX_WINDOW, responseJSON.getInt(ALIAS_MAX_WINDOW));
+        if (config.aliasMaxWindow != null) {
+            editor.putInt(ALIAS_MAX_WINDOW, config.aliasMaxWindow);
         } else {
             editor.remove(ALIAS_MAX_WINDOW);
         }
         if (!mIgnoreDataplanOptionsFromConfig) {
-            mDataplanOptions = parseDataplanOptions(responseJSON);
+            mDataplanOptions = config.dataplan != null ? parseDataplanOptions(new JSONObject().put(DATAPLAN_KEY, config.dataplan)) : null;
             MParticle instance = MParticle.getInstance();
             if (instance != null) {
                 instance.Internal().getKitManager().updateDataplan(mDataplanOptions);
@@ -802,6 +826,7 @@ public class ConfigManager {
 
     public static void clear() {
         sPreferences.edit().clear().apply();
+        UserStorage.clearCache();
     }
 
     private synchronized void setProviderPersistence(JSONObject persistence) {
@@ -1255,8 +1280,7 @@ public class ConfigManager {
     }
 
     public ConsentState getConsentState(long mpid) {
-        String serializedConsent = getUserStorage(mpid).getSerializedConsentState();
-        return ConsentState.withConsentState(serializedConsent).build();
+        return getUserStorage(mpid).getConsentState();
     }
 
     public void setConsentState(ConsentState state, long mpid) {
@@ -0,0 +1,241 @@
+package com.mparticle.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * The processed core configuration, in the form {@link ConfigManager} applies it, along with a compact
+ * binary encoding which is stored next to the JSON configuration.
+ *
+ * On startup the snapshot is read instead of parsing the stored JSON, as long as it was written for the
+ * same ETag and the same stored configuration. Scalar settings are stored as binary fields. The nested
+ * structures which most configurations do not have (provider persistence, triggers and the data plan)
+ * are stored as JSON strings, and are only parsed when they are present.
+ *
+ * The file is laid out as [version][ETag][config hash][config length][fields][CRC32 of everything before it].
+ * A snapshot which fails its checksum, or was written by a different version, is ignored.
+ */
+final class ConfigSnapshot {
+    static final String FILE_NAME = "mparticle_config_snapshot";
+    static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_SIZE = 1024 * 1024;
+
+    @Nullable String logUnhandledExceptions;
+    int rampValue = -1;
+    boolean sendOoEvents;
+    @Nullable JSONArray providerPersistence;
+    int sessionTimeoutInterval = -1;
+    int uploadInterval = -1;
+    @Nullable JSONArray triggerMessageMatches;
+    @Nullable JSONArray triggerMessageHashes;
+    long influenceOpenTimeout;
+    boolean restrictAAIDfromLAT = true;
+    boolean includeSessionHistory = true;
+    @Nullable Boolean devicePerformanceMetricsDisabled;
+    @Nullable String workspaceToken;
+    @Nullable Integer aliasMaxWindow;
+    @Nullable JSONObject dataplan;
+
+    @NonNull
+    static ConfigSnapshot fromJson(@NonNull JSONObject responseJSON) throws JSONException {
+        ConfigSnapshot snapshot = new ConfigSnapshot();
+        if (responseJSON.has(ConfigManager.KEY_UNHANDLED_EXCEPTIONS)) {
+            snapshot.logUnhandledExceptions = responseJSON.getString(ConfigManager.KEY_UNHANDLED_EXCEPTIONS);
+        }
+        snapshot.rampValue = responseJSON.optInt(ConfigManager.KEY_RAMP, -1);
+        if (responseJSON.has(ConfigManager.KEY_OPT_OUT)) {
+            snapshot.sendOoEvents = responseJSON.getBoolean(ConfigManager.KEY_OPT_OUT);
+        }
+        if (responseJSON.has(ProviderPersistence.KEY_PERSISTENCE)) {
+            snapshot.providerPersistence = responseJSON.getJSONArray(ProviderPersistence.KEY_PERSISTENCE);
+        }
+        snapshot.sessionTimeoutInterval = responseJSON.optInt(ConfigManager.KEY_SESSION_TIMEOUT, -1);
+        snapshot.uploadInterval = responseJSON.optInt(ConfigManager.KEY_UPLOAD_INTERVAL, -1);
+        if (responseJSON.has(ConfigManager.KEY_TRIGGER_ITEMS)) {
+            try {
+                JSONObject items = responseJSON.getJSONObject(ConfigManager.KEY_TRIGGER_ITEMS);
+                if (items.has(ConfigManager.KEY_MESSAGE_MATCHES)) {
+                    snapshot.triggerMessageMatches = items.getJSONArray(ConfigManager.KEY_MESSAGE_MATCHES);
+                }
+                if (items.has(ConfigManager.KEY_TRIGGER_ITEM_HASHES)) {
+                    snapshot.triggerMessageHashes = items.getJSONArray(ConfigManager.KEY_TRIGGER_ITEM_HASHES);
+                }
+            } catch (JSONException jse) {
+
+            }
+        }
+        if (responseJSON.has(ConfigManager.KEY_INFLUENCE_OPEN)) {
+            snapshot.influenceOpenTimeout = responseJSON.getLong(ConfigManager.KEY_INFLUENCE_OPEN) * 60 * 1000;
+        } else {
+            snapshot.influenceOpenTimeout = 30 * 60 * 1000;
+        }
+        snapshot.restrictAAIDfromLAT = responseJSON.optBoolean(ConfigManager.KEY_AAID_LAT, true);
+        snapshot.includeSessionHistory = responseJSON.optBoolean(ConfigManager.KEY_INCLUDE_SESSION_HISTORY, true);
+        if (responseJSON.has(ConfigManager.KEY_DEVICE_PERFORMANCE_METRICS_DISABLED)) {
+            snapshot.devicePerformanceMetricsDisabled = responseJSON.optBoolean(ConfigManager.KEY_DEVICE_PERFORMANCE_METRICS_DISABLED, false);
+        }
+        if (responseJSON.has(ConfigManager.WORKSPACE_TOKEN)) {
+            snapshot.workspaceToken = responseJSON.getString(ConfigManager.WORKSPACE_TOKEN);
+        }
+        if (responseJSON.has(ConfigManager.ALIAS_MAX_WINDOW)) {
+            snapshot.aliasMaxWindow = responseJSON.getInt(ConfigManager.ALIAS_MAX_WINDOW);
+        }
+        snapshot.dataplan = responseJSON.optJSONObject(ConfigManager.DATAPLAN_KEY);
+        return snapshot;
+    }
+
+    /**
+     * @param config the stored JSON configuration this snapshot was processed from
+     */
+    void write(@NonNull File file, @Nullable String etag, @NonNull String config) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        writeString(out, etag);
+        out.writeInt(config.hashCode());
+        out.writeInt(config.length());
+        writeString(out, logUnhandledExceptions);
+        out.writeInt(rampValue);
+        out.writeBoolean(sendOoEvents);
+        writeString(out, providerPersistence != null ? providerPersistence.toString() : null);
+        out.writeInt(sessionTimeoutInterval);
+        out.writeInt(uploadInterval);
+        writeString(out, triggerMessageMatches != null ? triggerMessageMatches.toString() : null);
+        writeString(out, triggerMessageHashes != null ? triggerMessageHashes.toString() : null);
+        out.writeLong(influenceOpenTimeout);
+        out.writeBoolean(restrictAAIDfromLAT);
+        out.writeBoolean(includeSessionHistory);
+        out.writeByte(devicePerformanceMetricsDisabled == null ? -1 : devicePerformanceMetricsDisabled ? 1 : 0);
+        writeString(out, workspaceToken);
+        out.writeBoolean(aliasMaxWindow != null);
+        out.writeInt(aliasMaxWindow != null ? aliasMaxWindow : 0);
+        writeString(out, dataplan != null ? dataplan.toString() : null);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        //write to a temporary file and rename it, so a crash can not leave a partial snapshot behind
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            bytes.writeTo(stream);
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to replace config snapshot.");
+        }
+    }
+
+    /**
+     * @return the snapshot, or null if there is none which was written for this ETag and stored configuration
+     */
+    @Nullable
+    static ConfigSnapshot read(@NonNull File file, @Nullable String etag, @NonNull String config) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            long length = file.length();
+            if (length < 12 || length > MAX_SIZE) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) length];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(bytes);
+            } finally {
+                in.close();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+            in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != VERSION ||
+                    !MPUtility.isEqual(etag, readString(in)) ||
+                    in.readInt() != config.hashCode() ||
+                    in.readInt() != config.length()) {
+                return null;
+            }
+            ConfigSnapshot snapshot = new ConfigSnapshot();
+            snapshot.logUnhandledExceptions = readString(in);
+            snapshot.rampValue = in.readInt();
+            snapshot.sendOoEvents = in.readBoolean();
+            String providerPersistence = readString(in);
+            snapshot.sessionTimeoutInterval = in.readInt();
+            snapshot.uploadInterval = in.readInt();
+            String triggerMessageMatches = readString(in);
+            String triggerMessageHashes = readString(in);
+            snapshot.influenceOpenTimeout = in.readLong();
+            snapshot.restrictAAIDfromLAT = in.readBoolean();
+            snapshot.includeSessionHistory = in.readBoolean();
+            byte devicePerformanceMetricsDisabled = in.readByte();
+            snapshot.devicePerformanceMetricsDisabled = devicePerformanceMetricsDisabled < 0 ? null : devicePerformanceMetricsDisabled == 1;
+            snapshot.workspaceToken = readString(in);
+            boolean hasAliasMaxWindow = in.readBoolean();
+            int aliasMaxWindow = in.readInt();
+            snapshot.aliasMaxWindow = hasAliasMaxWindow ? aliasMaxWindow : null;
+            String dataplan = readString(in);
+            if (in.readLong() != crc.getValue()) {
+                Logger.warning("Ignoring config snapshot which failed its checksum.");
+                return null;
+            }
+            //the nested structures are rare, only pay for parsing them when they are there
+            snapshot.providerPersistence = providerPersistence != null ? new JSONArray(providerPersistence) : null;
+            snapshot.triggerMessageMatches = triggerMessageMatches != null ? new JSONArray(triggerMessageMatches) : null;
+            snapshot.triggerMessageHashes = triggerMessageHashes != null ? new JSONArray(triggerMessageHashes) : null;
+            snapshot.dataplan = dataplan != null ? new JSONObject(dataplan) : null;
+            return snapshot;
+        } catch (IOException ex) {
+            Logger.warning("Unable to read config snapshot: " + ex.getMessage());
+        } catch (JSONException jse) {
+            Logger.warning("Unable to read config snapshot: " + jse.getMessage());
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Truncated config snapshot.");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
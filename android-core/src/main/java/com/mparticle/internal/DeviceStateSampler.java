@@ -0,0 +1,99 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+import android.telephony.TelephonyManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Samples the slow-to-query parts of the device state which is attached to every stored message.
+ *
+ * Available disk, system memory, GPS provider state, orientation and network type each require a call into a
+ * system service, and used to be queried for every single message. They are now captured in an immutable
+ * {@link Snapshot}, which is shared by every message until it is older than {@link #MAX_SNAPSHOT_AGE_MILLIS}, or
+ * until a connectivity or configuration change broadcast calls {@link #invalidate()}. The battery level is not
+ * part of the snapshot, it is kept up to date by its own broadcast.
+ */
+class DeviceStateSampler {
+    static final long MAX_SNAPSHOT_AGE_MILLIS = 30 * 1000;
+
+    private final Context mContext;
+    private TelephonyManager mTelephonyManager;
+    private volatile Snapshot mSnapshot;
+
+    DeviceStateSampler(@NonNull Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @param includeDisk whether the snapshot needs to contain the available disk space, which is only reported
+     *                    when device performance metrics are enabled
+     */
+    @NonNull
+    Snapshot getSnapshot(boolean includeDisk) {
+        Snapshot snapshot = mSnapshot;
+        long now = MPUtility.millitime();
+        if (snapshot == null || now - snapshot.sampledAt > MAX_SNAPSHOT_AGE_MILLIS || (includeDisk && !snapshot.hasDisk)) {
+            snapshot = sample(now, includeDisk);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Discard the current snapshot, the next message will trigger a new sample.
+     */
+    void invalidate() {
+        mSnapshot = null;
+    }
+
+    private Snapshot sample(long now, boolean includeDisk) {
+        if (mTelephonyManager == null) {
+            mTelephonyManager = (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
+        }
+        String gps = MPUtility.getGpsEnabled(mContext);
+        return new Snapshot(now,
+                includeDisk,
+                includeDisk ? MPUtility.getAvailableInternalDisk(mContext) : 0,
+                includeDisk ? MPUtility.getAvailableExternalDisk(mContext) : 0,
+                MPUtility.getAvailableMemory(mContext),
+                MessageManager.getTotalMemory(),
+                MPUtility.isSystemMemoryLow(mContext),
+                MessageManager.getSystemMemoryThreshold(),
+                gps == null ? null : Boolean.parseBoolean(gps),
+                MPUtility.getOrientation(mContext),
+                MPUtility.getNetworkType(mContext, mTelephonyManager));
+    }
+
+    static final class Snapshot {
+        final long sampledAt;
+        final boolean hasDisk;
+        final long availableInternalDisk;
+        final long availableExternalDisk;
+        final long availableMemory;
+        final long totalMemory;
+        final boolean memoryLow;
+        final long memoryThreshold;
+        @Nullable
+        final Boolean gpsEnabled;
+        final int orientation;
+        @Nullable
+        final Integer networkType;
+
+        Snapshot(long sampledAt, boolean hasDisk, long availableInternalDisk, long availableExternalDisk, long availableMemory, long totalMemory,
+                 boolean memoryLow, long memoryThreshold, @Nullable Boolean gpsEnabled, int orientation, @Nullable Integer networkType) {
+            this.sampledAt = sampledAt;
+            this.hasDisk = hasDisk;
+            this.availableInternalDisk = availableInternalDisk;
+            this.availableExternalDisk = availableExternalDisk;
+            this.availableMemory = availableMemory;
+            this.totalMemory = totalMemory;
+            this.memoryLow = memoryLow;
+            this.memoryThreshold = memoryThreshold;
+            this.gpsEnabled = gpsEnabled;
+            this.orientation = orientation;
+            this.networkType = networkType;
+        }
+    }
+}
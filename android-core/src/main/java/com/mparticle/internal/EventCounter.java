@@ -0,0 +1,100 @@
+package com.mparticle.internal;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The number of events logged in the current session, reported on each event and on the session-end message.
+ *
+ * The count is held in memory and only written to SharedPreferences periodically, when the app is backgrounded,
+ * and when it is reset at session end. Writing it on every event scheduled a rewrite of the entire preferences
+ * file each time, which Activity.onPause then has to wait on. If the process dies between writes, the count is
+ * recovered via {@link #recover(int)} when the orphaned session is ended on the next start, from the highest
+ * counter stored with that session's events.
+ */
+public class EventCounter {
+    static final long PERSIST_INTERVAL_MILLIS = 10 * 1000;
+
+    private static EventCounter sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final AtomicInteger mCount;
+    private volatile int mPersistedCount;
+    private volatile long mLastPersistTime;
+
+    EventCounter(@NonNull SharedPreferences preferences) {
+        mPreferences = preferences;
+        mPersistedCount = preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
+        mCount = new AtomicInteger(mPersistedCount);
+        mLastPersistTime = System.currentTimeMillis();
+    }
+
+    @NonNull
+    public static synchronized EventCounter getInstance(@NonNull SharedPreferences preferences) {
+        if (sInstance == null || sInstance.mPreferences != preferences) {
+            sInstance = new EventCounter(preferences);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drop the shared instance, so the next one is read from SharedPreferences again. Used when the SDK is
+     * reset, since the same SharedPreferences object may be handed back after it has been cleared.
+     */
+    public static synchronized void clear() {
+        sInstance = null;
+    }
+
+    public int get() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the counter value for the event being logged
+     */
+    public int getAndIncrement() {
+        int count = mCount.getAndIncrement();
+        if (System.currentTimeMillis() - mLastPersistTime >= PERSIST_INTERVAL_MILLIS) {
+            persist();
+        }
+        return count;
+    }
+
+    /**
+     * Reset the counter when a session ends.
+     *
+     * @return the final count for the session
+     */
+    public int getAndReset() {
+        int count = mCount.getAndSet(0);
+        persist();
+        return count;
+    }
+
+    /**
+     * Make sure the counter is at least nextCount, used on startup to account for events which were stored
+     * but never persisted to SharedPreferences because the process was killed.
+     */
+    public void recover(int nextCount) {
+        int current;
+        do {
+            current = mCount.get();
+            if (current >= nextCount) {
+                return;
+            }
+        } while (!mCount.compareAndSet(current, nextCount));
+        persist();
+    }
+
+    public synchronized void persist() {
+        mLastPersistTime = System.currentTimeMillis();
+        int count = mCount.get();
+        if (count != mPersistedCount) {
+            mPersistedCount = count;
+            mPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, count).apply();
+        }
+    }
+}
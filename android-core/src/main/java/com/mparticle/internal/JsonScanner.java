@@ -0,0 +1,143 @@
+package com.mparticle.internal;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A minimal, allocation-light scanner over serialized JSON objects. It is used when assembling
+ * upload batches, where we only need to peek at one or two top-level fields of a stored message
+ * and would otherwise have to parse (and later re-serialize) the entire thing.
+ */
+public final class JsonScanner {
+
+    private JsonScanner() { }
+
+    /**
+     * Find the value of a top-level String field in a serialized JSON object. Nested objects and arrays
+     * are skipped without being inspected.
+     *
+     * @param json the serialized JSON object
+     * @param key the name of the top-level field
+     * @return the value, or null if the field is not present, is not a String, contains escape sequences,
+     * or if the input is not a JSON object
+     */
+    @Nullable
+    public static String findTopLevelString(@Nullable String json, @Nullable String key) {
+        if (json == null || key == null) {
+            return null;
+        }
+        int length = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= length || json.charAt(i) != '{') {
+            return null;
+        }
+        i++;
+        while (i < length) {
+            i = skipWhitespace(json, i);
+            if (i >= length || json.charAt(i) != '"') {
+                return null;
+            }
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return null;
+            }
+            boolean match = keyEnd - i - 2 == key.length() && json.regionMatches(i + 1, key, 0, key.length());
+            i = skipWhitespace(json, keyEnd);
+            if (i >= length || json.charAt(i) != ':') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (i >= length) {
+                return null;
+            }
+            if (match) {
+                if (json.charAt(i) != '"') {
+                    return null;
+                }
+                int valueEnd = skipString(json, i);
+                if (valueEnd < 0) {
+                    return null;
+                }
+                String value = json.substring(i + 1, valueEnd - 1);
+                return value.indexOf('\\') >= 0 ? null : value;
+            }
+            i = skipValue(json, i);
+            if (i < 0) {
+                return null;
+            }
+            i = skipWhitespace(json, i);
+            if (i >= length || json.charAt(i) != ',') {
+                return null;
+            }
+            i++;
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(String json, int index) {
+        while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return the index immediately after the closing quote of the String starting at index, or -1
+     */
+    private static int skipString(String json, int index) {
+        int i = index + 1;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index immediately after the value starting at index, or -1
+     */
+    private static int skipValue(String json, int index) {
+        char first = json.charAt(index);
+        if (first == '"') {
+            return skipString(json, index);
+        }
+        if (first != '{' && first != '[') {
+            int i = index;
+            while (i < json.length()) {
+                char c = json.charAt(i);
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+        int depth = 0;
+        int i = index;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                i = skipString(json, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
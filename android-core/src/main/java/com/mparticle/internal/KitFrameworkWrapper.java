@@ -15,6 +15,7 @@ import com.mparticle.BaseEvent;
 import com.mparticle.MPEvent;
 import com.mparticle.MParticle;
 import com.mparticle.MParticleOptions;
+import com.mparticle.commerce.CommerceEvent;
 import com.mparticle.consent.ConsentState;
 import com.mparticle.identity.IdentityApiRequest;
 import com.mparticle.identity.MParticleUser;
@@ -32,6 +33,8 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class KitFrameworkWrapper implements KitManager {
     private final Context mContext;
@@ -42,10 +45,19 @@ public class KitFrameworkWrapper implements KitManager {
     private volatile boolean frameworkLoadAttempted = false;
     private static volatile boolean kitsLoaded = false;
 
-    private Queue eventQueue;
-    private Queue<AttributeChange> attributeQueue;
+    //events and attribute changes logged before kits have loaded, which are replayed to them once they have
+    static final long MAX_QUEUED_EVENT_BYTES = 512 * 1024;
+    private final Queue<Object> eventQueue = new ConcurrentLinkedQueue<Object>();
+    private final Queue<AttributeChange> attributeQueue = new ConcurrentLinkedQueue<AttributeChange>();
+    private final AtomicLong queuedEventBytes = new AtomicLong();
+    private final AtomicInteger queueWriters = new AtomicInteger();
+    private final AtomicLong replayedEventCount = new AtomicLong();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private volatile boolean queueing = true;
     private volatile boolean registerForPush = false;
     private static final List<KitsLoadedListener> kitsLoadedListeners = new ArrayList<>();
+    //the public api method which kits are being called from on the current thread, reported to SdkListeners
+    private static final ThreadLocal<String> invokingApiCall = new ThreadLocal<String>();
 
     public KitFrameworkWrapper(Context context, ReportingManager reportingManager, ConfigManager configManager, AppStateManager appStateManager, MParticleOptions options) {
         this(context, reportingManager, configManager, appStateManager, false, options);
@@ -95,11 +107,25 @@ public class KitFrameworkWrapper implements KitManager {
     }
 
     Queue getEventQueue() {
-        return eventQueue;
+        return eventQueue.isEmpty() ? null : eventQueue;
     }
 
     Queue<AttributeChange> getAttributeQueue() {
-        return attributeQueue;
+        return attributeQueue.isEmpty() ? null : attributeQueue;
+    }
+
+    /**
+     * @return the number of events logged before kits loaded which have been replayed to them
+     */
+    public long getReplayedEventCount() {
+        return replayedEventCount.get();
+    }
+
+    /**
+     * @return the number of events logged before kits loaded which were dropped, because too many were queued
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
     }
 
     void setKitManager(KitManager manager) {
@@ -126,6 +152,7 @@ public class KitFrameworkWrapper implements KitManager {
             replayAndDisableQueue();
         } else {
             disableQueuing();
+            queueing = true;
         }
         List<KitsLoadedListener> kitsLoadedListenersCopy = new ArrayList<>(kitsLoadedListeners);
         for (KitsLoadedListener kitsLoadedListener: kitsLoadedListenersCopy) {
@@ -136,17 +163,13 @@ public class KitFrameworkWrapper implements KitManager {
         kitsLoadedListeners.clear();
     }
 
-    synchronized void disableQueuing() {
-        if (eventQueue != null) {
-            eventQueue.clear();
-            eventQueue = null;
+    void disableQueuing() {
+        if (!eventQueue.isEmpty() || !attributeQueue.isEmpty()) {
             Logger.debug("Kit initialization complete. Disabling event queueing.");
         }
-
-        if (attributeQueue != null) {
-            attributeQueue.clear();
-            attributeQueue = null;
-        }
+        eventQueue.clear();
+        attributeQueue.clear();
+        queuedEventBytes.set(0);
     }
 
     void replayEvents() {
@@ -164,71 +187,157 @@ public class KitFrameworkWrapper implements KitManager {
             }
         }
 
-        if (eventQueue != null && eventQueue.size() > 0) {
+        if (!eventQueue.isEmpty()) {
             Logger.debug("Replaying events after receiving first kit configuration.");
-            for (Object event : eventQueue) {
-                if (event instanceof MPEvent) {
-                    MPEvent mpEvent = (MPEvent) event;
-                    if (mpEvent.isScreenEvent()) {
-                        mKitManager.logScreen(mpEvent);
-                    } else {
-                        mKitManager.logEvent(mpEvent);
-                    }
-                } else if (event instanceof BaseEvent) {
-                    mKitManager.logEvent((BaseEvent) event);
-                }
-            }
         }
+        replayQueuedEvents();
 
-        if (attributeQueue != null && attributeQueue.size() > 0) {
+        if (!attributeQueue.isEmpty()) {
             Logger.debug("Replaying user attributes after receiving first kit configuration.");
-            for (AttributeChange attributeChange : attributeQueue) {
-                switch (attributeChange.type) {
-                    case AttributeChange.SET_ATTRIBUTE:
-                        if (attributeChange.value == null) {
-                            mKitManager.setUserAttribute(attributeChange.key, null, attributeChange.mpid);
-                        } else if (attributeChange.value instanceof String) {
-                            mKitManager.setUserAttribute(attributeChange.key, (String) attributeChange.value, attributeChange.mpid);
-                        } else if (attributeChange.value instanceof List) {
-                            mKitManager.setUserAttributeList(attributeChange.key, (List<String>) attributeChange.value, attributeChange.mpid);
-                        }
-                        break;
-                    case AttributeChange.REMOVE_ATTRIBUTE:
-                        mKitManager.removeUserAttribute(attributeChange.key, attributeChange.mpid);
-                        break;
-                    case AttributeChange.INCREMENT_ATTRIBUTE:
-                        if (attributeChange.value instanceof String) {
-                            mKitManager.incrementUserAttribute(attributeChange.key, attributeChange.incrementedBy, (String)attributeChange.value, attributeChange.mpid);
-                        }
-                        break;
-                    case AttributeChange.TAG:
-                        mKitManager.setUserTag(attributeChange.key, attributeChange.mpid);
-                        break;
+        }
+        replayQueuedAttributes();
+    }
+
+    private void replayQueuedEvents() {
+        Object event;
+        while ((event = eventQueue.poll()) != null) {
+            if (event instanceof MPEvent) {
+                MPEvent mpEvent = (MPEvent) event;
+                if (mpEvent.isScreenEvent()) {
+                    mKitManager.logScreen(mpEvent);
+                } else {
+                    mKitManager.logEvent(mpEvent);
                 }
+            } else if (event instanceof BaseEvent) {
+                mKitManager.logEvent((BaseEvent) event);
             }
+            replayedEventCount.incrementAndGet();
         }
     }
 
-    synchronized public void replayAndDisableQueue() {
-        replayEvents();
+    /**
+     * Tag the kit calls made on this thread with the public api method they were made from, until {@link #untagApiCall(boolean)}.
+     * Nothing is tagged while no SdkListener is attached, or if an outer call has already been tagged.
+     *
+     * @param methodName for example "MParticle.logEvent()"
+     * @return whether the call was tagged, which has to be passed to {@link #untagApiCall(boolean)}
+     */
+    public static boolean tagApiCall(String methodName) {
+        if (!InternalListenerManager.isEnabled() || invokingApiCall.get() != null) {
+            return false;
+        }
+        invokingApiCall.set(methodName);
+        return true;
+    }
+
+    public static void untagApiCall(boolean tagged) {
+        if (tagged) {
+            invokingApiCall.remove();
+        }
+    }
+
+    private void replayQueuedAttributes() {
+        AttributeChange attributeChange;
+        while ((attributeChange = attributeQueue.poll()) != null) {
+            switch (attributeChange.type) {
+                case AttributeChange.SET_ATTRIBUTE:
+                    if (attributeChange.value == null) {
+                        mKitManager.setUserAttribute(attributeChange.key, null, attributeChange.mpid);
+                    } else if (attributeChange.value instanceof String) {
+                        mKitManager.setUserAttribute(attributeChange.key, (String) attributeChange.value, attributeChange.mpid);
+                    } else if (attributeChange.value instanceof List) {
+                        mKitManager.setUserAttributeList(attributeChange.key, (List<String>) attributeChange.value, attributeChange.mpid);
+                    }
+                    break;
+                case AttributeChange.REMOVE_ATTRIBUTE:
+                    mKitManager.removeUserAttribute(attributeChange.key, attributeChange.mpid);
+                    break;
+                case AttributeChange.INCREMENT_ATTRIBUTE:
+                    if (attributeChange.value instanceof String) {
+                        mKitManager.incrementUserAttribute(attributeChange.key, attributeChange.incrementedBy, (String)attributeChange.value, attributeChange.mpid);
+                    }
+                    break;
+                case AttributeChange.TAG:
+                    mKitManager.setUserTag(attributeChange.key, attributeChange.mpid);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Replay everything which was queued before kits loaded, as a single task on the kit thread. Queueing stays
+     * on until the queues have been drained, so events logged during the replay are still delivered after the
+     * ones logged before it.
+     */
+    public void replayAndDisableQueue() {
+        KitManager kitManager = mKitManager;
+        if (kitManager == null) {
+            replayEvents();
+            stopQueueing();
+            return;
+        }
+        kitManager.runOnKitThread(new Runnable() {
+            @Override
+            public void run() {
+                replayEvents();
+                stopQueueing();
+            }
+        });
+    }
+
+    private void stopQueueing() {
+        queueing = false;
+        //wait out any writer which saw queueing before it was turned off, then replay whatever it queued
+        while (queueWriters.get() > 0) {
+            Thread.yield();
+        }
+        if (mKitManager != null) {
+            replayQueuedEvents();
+            replayQueuedAttributes();
+        }
+        long dropped = droppedEventCount.get();
+        Logger.debug("Replayed " + replayedEventCount.get() + " events to kits" + (dropped > 0 ? ", dropped " + dropped : ""));
         disableQueuing();
     }
 
-    synchronized boolean queueEvent(Object event) {
-        if (getKitsLoaded()) {
-            return false;
+    boolean queueEvent(Object event) {
+        queueWriters.incrementAndGet();
+        try {
+            if (!queueing) {
+                return false;
+            }
+            long size = estimateSize(event);
+            if (queuedEventBytes.addAndGet(size) <= MAX_QUEUED_EVENT_BYTES) {
+                Logger.debug("Queuing Kit event while waiting for initial configuration.");
+                eventQueue.add(event);
+            } else {
+                queuedEventBytes.addAndGet(-size);
+                droppedEventCount.incrementAndGet();
+                Logger.warning("Dropping Kit event, too many events were logged while waiting for initial configuration.");
+            }
+            return true;
+        } finally {
+            queueWriters.decrementAndGet();
         }
+    }
 
-        if (eventQueue == null) {
-            eventQueue = new ConcurrentLinkedQueue<Object>();
+    /**
+     * A rough estimate of the memory an event holds on to, since only its size relative to the others matters.
+     */
+    static long estimateSize(Object event) {
+        long size = 64;
+        if (event instanceof MPEvent && ((MPEvent) event).getEventName() != null) {
+            size += 2 * ((MPEvent) event).getEventName().length();
         }
-        //It's an edge case to even need this, so 10
-        //should be enough.
-        if (eventQueue.size() < 10) {
-            Logger.debug("Queuing Kit event while waiting for initial configuration.");
-            eventQueue.add(event);
+        if (event instanceof CommerceEvent && ((CommerceEvent) event).getProducts() != null) {
+            size += 256 * ((CommerceEvent) event).getProducts().size();
         }
-        return true;
+        if (event instanceof BaseEvent && ((BaseEvent) event).getCustomAttributes() != null) {
+            for (Map.Entry<String, Object> attribute : ((BaseEvent) event).getCustomAttributes().entrySet()) {
+                size += 32 + 2 * String.valueOf(attribute.getKey()).length() + 2 * String.valueOf(attribute.getValue()).length();
+            }
+        }
+        return size;
     }
 
     boolean queueAttributeRemove(String key, long mpid) {
@@ -247,16 +356,17 @@ public class KitFrameworkWrapper implements KitManager {
         return queueAttribute(new AttributeChange(key, incrementedBy, newValue, mpid));
     }
 
-    synchronized boolean queueAttribute(AttributeChange change) {
-        if (getKitsLoaded()) {
-            return false;
-        }
-
-        if (attributeQueue == null) {
-            attributeQueue = new ConcurrentLinkedQueue<AttributeChange>();
+    boolean queueAttribute(AttributeChange change) {
+        queueWriters.incrementAndGet();
+        try {
+            if (!queueing) {
+                return false;
+            }
+            attributeQueue.add(change);
+            return true;
+        } finally {
+            queueWriters.decrementAndGet();
         }
-        attributeQueue.add(change);
-        return true;
     }
 
     static class AttributeChange {
@@ -474,6 +584,15 @@ public class KitFrameworkWrapper implements KitManager {
         return null;
     }
 
+    @Override
+    public void runOnKitThread(Runnable runnable) {
+        if (mKitManager != null) {
+            mKitManager.runOnKitThread(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
     @Override
     public KitsLoadedCallback updateKits(JSONArray kitConfiguration) {
         KitsLoadedCallback kitsLoadedCallback = new KitsLoadedCallback();
@@ -481,13 +600,13 @@ public class KitFrameworkWrapper implements KitManager {
             // we may have initialized the KitManagerImpl but didn't have a cached config to initialize
             // any kits with. In this case, we will wait until this next config update to replay + disable queueing
             if (!kitsLoaded) {
-                mKitManager
-                        .updateKits(kitConfiguration)
-                        .onKitsLoaded(() -> {
-                                    setKitsLoaded(true);
-                                    kitsLoadedCallback.setKitsLoaded();
-                                }
-                        );
+                KitsLoadedCallback callback = mKitManager.updateKits(kitConfiguration);
+                callback.onKitLoaded(kitsLoadedCallback::setKitLoaded);
+                callback.onKitsLoaded(() -> {
+                            setKitsLoaded(true);
+                            kitsLoadedCallback.setKitsLoaded();
+                        }
+                );
             } else {
                 return mKitManager.updateKits(kitConfiguration);
             }
@@ -749,13 +868,8 @@ public class KitFrameworkWrapper implements KitManager {
             }
 
             @Override
-            public void onKitApiCalled(int kitId, Boolean used, Object... objects) {
-                InternalListenerManager.getListener().onKitApiCalled(kitId, used, objects);
-            }
-
-            @Override
-            public void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects) {
-                InternalListenerManager.getListener().onKitApiCalled(methodName, kitId, used, objects);
+            public void onKitApiCalled(String methodName, String kitManagerMethodName, int kitId, Boolean used, Object... objects) {
+                InternalListenerManager.getListener().onKitApiCalled(methodName, invokingApiCall.get(), kitManagerMethodName, kitId, used, objects);
             }
         };
     }
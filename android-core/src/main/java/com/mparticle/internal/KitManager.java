@@ -78,6 +78,8 @@ public interface KitManager {
 
     Set<Integer> getSupportedKits();
 
+    void runOnKitThread(Runnable runnable);
+
     KitsLoadedCallback updateKits(JSONArray jsonArray);
 
     void updateDataplan(@NonNull MParticleOptions.DataplanOptions dataplanOptions);
@@ -3,6 +3,8 @@ package com.mparticle.internal
 class KitsLoadedCallback {
     @Volatile private var onKitsLoadedRunnable: OnKitManagerLoaded? = null
     @Volatile private var loaded: Boolean = false
+    private val loadedKits = mutableListOf<Int>()
+    private val onKitLoadedListeners = mutableListOf<OnKitLoaded>()
 
     fun setKitsLoaded() {
         synchronized(this) {
@@ -22,8 +24,35 @@ class KitsLoadedCallback {
             }
         }
     }
+
+    /**
+     * Called once for each kit started by this configuration update. Kits which are started on a
+     * background thread, or lazily, may start after [setKitsLoaded] has been called
+     */
+    fun setKitLoaded(kitId: Int) {
+        val listeners = synchronized(this) {
+            loadedKits.add(kitId)
+            onKitLoadedListeners.toList()
+        }
+        listeners.forEach { it.onKitLoaded(kitId) }
+    }
+
+    /**
+     * the listener is called immediately for each kit which has already started
+     */
+    fun onKitLoaded(listener: OnKitLoaded) {
+        val kitIds = synchronized(this) {
+            onKitLoadedListeners.add(listener)
+            loadedKits.toList()
+        }
+        kitIds.forEach { listener.onKitLoaded(it) }
+    }
 }
 
 interface OnKitManagerLoaded {
     fun onKitManagerLoaded()
 }
+
+interface OnKitLoaded {
+    fun onKitLoaded(kitId: Int)
+}
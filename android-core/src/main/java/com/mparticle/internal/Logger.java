@@ -29,6 +29,14 @@ public class Logger {
         return sMinLogLevel;
     }
 
+    /**
+     * Check whether a message at the given level would actually be printed. Use this to avoid building
+     * expensive log messages which would just be discarded.
+     */
+    public static boolean isLoggable(LogLevel priority) {
+        return getLogHandler().isLoggable(priority.logLevel);
+    }
+
     public static void verbose(String... messages) {
         verbose(null, messages);
     }
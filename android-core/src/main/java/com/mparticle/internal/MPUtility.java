@@ -41,11 +41,18 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -71,6 +78,7 @@ public class MPUtility {
     static final String NO_BLUETOOTH = "none";
     private static String sOpenUDID;
     private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    private static final int UTF8_CHUNK_SIZE = 8 * 1024;
 
     public static long getAvailableMemory(Context context) {
         ActivityManager.MemoryInfo mi = new ActivityManager.MemoryInfo();
@@ -261,6 +269,58 @@ public class MPUtility {
         return asHex(sha256_HMAC.doFinal(data.getBytes("utf-8")));
     }
 
+    /**
+     * Same as {@link #hmacSha256Encode(String, String)} over the concatenation of data and message, except that
+     * message, which may be an entire upload batch, is fed to the MAC in bounded chunks rather than copied.
+     */
+    public static String hmacSha256Encode(String key, String data, String message) throws NoSuchAlgorithmException,
+            InvalidKeyException, UnsupportedEncodingException {
+        final Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
+        SecretKeySpec secret_key = new SecretKeySpec(key.getBytes("utf-8"), "HmacSHA256");
+        sha256_HMAC.init(secret_key);
+        sha256_HMAC.update(data.getBytes("utf-8"));
+        try {
+            writeUtf8(message, new OutputStream() {
+                @Override
+                public void write(int b) {
+                    sha256_HMAC.update((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    sha256_HMAC.update(b, off, len);
+                }
+            });
+        } catch (IOException e) {
+            //the Mac stream never throws
+            throw new IllegalStateException(e);
+        }
+        return asHex(sha256_HMAC.doFinal());
+    }
+
+    /**
+     * Write a String to the stream as UTF-8, one bounded chunk at a time, instead of allocating a byte[]
+     * the size of the entire String with {@link String#getBytes()}.
+     */
+    public static void writeUtf8(String data, OutputStream outputStream) throws IOException {
+        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(data);
+        ByteBuffer bytes = ByteBuffer.allocate(UTF8_CHUNK_SIZE);
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, bytes, true);
+            outputStream.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        } while (result.isOverflow());
+        do {
+            result = encoder.flush(bytes);
+            outputStream.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        } while (result.isOverflow());
+    }
+
     private static String asHex(byte[] buf) {
         char[] chars = new char[2 * buf.length];
         for (int i = 0; i < buf.length; ++i) {
@@ -158,6 +158,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             Logger.verbose("Config request attempt:\n" +
                     "URL- " + mConfigUrl.toString());
 
+            long requestStart = System.nanoTime();
             if (InternalListenerManager.isEnabled()) {
                 InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.CONFIG, connection.getURL().toString(), new JSONObject());
             }
@@ -168,7 +169,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             int responseCode = connection.getResponseCode();
             try {
                 response = MPUtility.getJsonResponse(connection);
-                InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.CONFIG, connection.getURL().toString(), response, responseCode);
+                InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.CONFIG, connection.getURL().toString(), response, responseCode, requestStart);
             }
             catch (Exception ex) {}
             if (responseCode >= 200 && responseCode < 300) {
@@ -235,6 +236,9 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         connection.setConnectTimeout(mConfigManager.getConnectionTimeout());
         connection.setReadTimeout(mConfigManager.getConnectionTimeout());
         connection.setDoOutput(true);
+        //stream the compressed batch straight to the socket, rather than letting the connection
+        //buffer the entire body in memory in order to compute a Content-Length
+        connection.setChunkedStreamingMode(0);
         connection.setRequestMethod("POST");
         connection.setRequestProperty("Content-Type", "application/json");
         connection.setRequestProperty("Content-Encoding", "gzip");
@@ -251,25 +255,34 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
 
         addMessageSignature(connection, message);
 
-        logUpload(message);
+        //parsing, or even copying, the batch is only worth doing if someone is going to look at it
+        boolean verbose = Logger.isLoggable(MParticle.LogLevel.VERBOSE);
+        if (verbose) {
+            logUpload(message);
+        }
 
-        try {
-            InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, connection.getURL().toString(), new JSONObject(message), message);
-        } catch (Exception e) { }
+        long requestStart = System.nanoTime();
+        if (InternalListenerManager.isEnabled()) {
+            try {
+                InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, connection.getURL().toString(), new JSONObject(message), message);
+            } catch (Exception e) { }
+        }
 
         makeUrlRequest(Endpoint.EVENTS, connection, message, true);
 
         Logger.verbose("Upload request attempt:\n" +
                 "URL- " + mEventUrl.toString());
 
-        Logger.verbose(message);
+        if (verbose) {
+            Logger.verbose(message);
+        }
 
         int responseCode = connection.getResponseCode();
 
         if (responseCode >= 200 && responseCode < 300) {
             JSONObject response = MPUtility.getJsonResponse(connection);
             if (InternalListenerManager.isEnabled()) {
-                InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, connection.getURL().toString(), response, responseCode);
+                InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, connection.getURL().toString(), response, responseCode, requestStart);
             }
 
             Logger.verbose("Upload result response: \n" +
@@ -279,8 +292,10 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             parseCookies(response);
         } else {
             Logger.error("Upload request failed- " + responseCode + ": " + connection.getResponseMessage());
+            //consume the error body so the underlying keep-alive connection can be handed back to the pool
+            MPUtility.getJsonResponse(connection);
             try {
-                InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, connection.getURL().getFile(), new JSONObject().put(SdkListener.ERROR_MESSAGE, connection.getResponseMessage()), responseCode);
+                InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, connection.getURL().getFile(), new JSONObject().put(SdkListener.ERROR_MESSAGE, connection.getResponseMessage()), responseCode, requestStart);
             } catch (Exception e) { }
         }
         return connection.getResponseCode();
@@ -305,6 +320,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         addMessageSignature(connection, message);
 
         String url = "";
+        long requestStart = System.nanoTime();
         try {
             url = connection.getURL().toString();
             InternalListenerManager.getListener().onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, url, new JSONObject(message), message);
@@ -325,7 +341,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             }
             Logger.error("Alias Request failed- " + responseCode + ": " + error);
         }
-        InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, url, response, responseCode);
+        InternalListenerManager.getListener().onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, url, response, responseCode, requestStart);
         return new AliasNetworkResponse(responseCode, error);
     }
 
@@ -419,7 +435,11 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             MParticle instance = MParticle.getInstance();
             if (instance != null) {
                 Set<Integer> supportedKitIds = instance.Internal().getKitManager().getSupportedKits();
-                if (supportedKitIds != null && supportedKitIds.size() > 0) {
+                //the bundled kits don't change once the kit framework has loaded, so this is memoized even if
+                //there are none. Until it has loaded they are unknown (null), and are looked up again next time
+                if (supportedKitIds != null && supportedKitIds.isEmpty()) {
+                    sSupportedKits = "";
+                } else if (supportedKitIds != null) {
                     StringBuilder buffer = new StringBuilder(supportedKitIds.size() * 3);
                     Iterator<Integer> it = supportedKitIds.iterator();
                     while (it.hasNext()) {
@@ -438,7 +458,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         return sSupportedKits;
     }
 
-    public void setCookies(JSONObject serverCookies) {
+    public synchronized void setCookies(JSONObject serverCookies) {
         if (serverCookies != null) {
             try {
                 JSONObject localCookies = getCookies();
@@ -456,7 +476,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         }
     }
 
-    public JSONObject getCookies()  {
+    public synchronized JSONObject getCookies()  {
         if (mCurrentCookies == null){
             String currentCookies = mConfigManager.getUserStorage().getCookies();
             if (MPUtility.isEmpty(currentCookies)) {
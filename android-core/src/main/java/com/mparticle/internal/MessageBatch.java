@@ -16,11 +16,21 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 public class MessageBatch extends JSONObject {
     private long messageLengthBytes;
+    /**
+     * Stored messages which are spliced, as-is, into the serialized batch by {@link #toString()},
+     * rather than being parsed into the "msgs" and "sh" JSONArrays.
+     */
+    private List<String> rawMessages = new ArrayList<String>();
+    private List<String> rawSessionHistoryMessages = new ArrayList<String>();
+    private JSONObject userAttributeState;
+    private JSONArray identityState;
 
     protected MessageBatch() {
         super();
@@ -99,7 +109,136 @@ public class MessageBatch extends JSONObject {
         }
     }
 
+    /**
+     * Add a serialized message to the session history, without parsing it.
+     */
+    public void addSessionHistoryMessage(String message) {
+        addRawMessage(Constants.MessageKey.HISTORY, rawSessionHistoryMessages, message);
+    }
+
+    /**
+     * Add a serialized message to the batch, without parsing it.
+     */
+    public void addMessage(String message) {
+        addRawMessage(Constants.MessageKey.MESSAGES, rawMessages, message);
+    }
+
+    private void addRawMessage(String key, List<String> rawList, String message) {
+        String messageType = JsonScanner.findTopLevelString(message, Constants.MessageKey.TYPE);
+        if (messageType == null ||
+                Constants.MessageType.USER_ATTRIBUTE_CHANGE.equals(messageType) ||
+                Constants.MessageType.USER_IDENTITY_CHANGE.equals(messageType)) {
+            //user attribute and identity change messages carry the end-state of the user, which is pulled
+            //up to the batch level. These are rare enough that it's fine to parse them.
+            try {
+                JSONObject messageObject = new JSONObject(message);
+                extractUserState(messageObject);
+                message = messageObject.toString();
+            } catch (JSONException ignored) { }
+        }
+        if (has(key)) {
+            try {
+                getJSONArray(key).put(new JSONObject(message));
+            } catch (JSONException ignored) { }
+        } else {
+            rawList.add(message);
+        }
+    }
+
+    private void extractUserState(JSONObject message) {
+        String messageType = message.optString(Constants.MessageKey.TYPE);
+        if (Constants.MessageType.USER_ATTRIBUTE_CHANGE.equals(messageType)) {
+            JSONObject userAttributes = message.optJSONObject(Constants.MessageKey.USER_ATTRIBUTES);
+            if (userAttributes != null) {
+                userAttributeState = userAttributes;
+                message.remove(Constants.MessageKey.USER_ATTRIBUTES);
+            }
+        } else if (Constants.MessageType.USER_IDENTITY_CHANGE.equals(messageType)) {
+            JSONArray identities = message.optJSONArray(Constants.MessageKey.USER_IDENTITIES);
+            if (identities != null) {
+                identityState = identities;
+                message.remove(Constants.MessageKey.USER_IDENTITIES);
+            }
+        }
+    }
+
+    /**
+     * The user attributes from the last user attribute change message added with {@link #addMessage(String)}
+     * or {@link #addSessionHistoryMessage(String)}, if any.
+     */
+    public JSONObject getUserAttributeState() {
+        return userAttributeState;
+    }
+
+    /**
+     * The user identities from the last user identity change message added with {@link #addMessage(String)}
+     * or {@link #addSessionHistoryMessage(String)}, if any.
+     */
+    public JSONArray getIdentityState() {
+        return identityState;
+    }
+
+    /**
+     * Parse any messages which were added in serialized form, so that this batch can be inspected
+     * or modified as a regular JSONObject.
+     */
+    public void parseRawMessages() {
+        parseRawMessages(Constants.MessageKey.MESSAGES, rawMessages);
+        parseRawMessages(Constants.MessageKey.HISTORY, rawSessionHistoryMessages);
+    }
+
+    private void parseRawMessages(String key, List<String> rawList) {
+        if (rawList.isEmpty()) {
+            return;
+        }
+        try {
+            JSONArray messages = optJSONArray(key);
+            if (messages == null) {
+                messages = new JSONArray();
+                put(key, messages);
+            }
+            for (String message : rawList) {
+                messages.put(new JSONObject(message));
+            }
+        } catch (JSONException ignored) { }
+        rawList.clear();
+    }
+
+    @Override
+    public String toString() {
+        if (rawMessages.isEmpty() && rawSessionHistoryMessages.isEmpty()) {
+            return super.toString();
+        }
+        String header = super.toString();
+        StringBuilder builder = new StringBuilder((int) (header.length() + messageLengthBytes + rawMessages.size() + rawSessionHistoryMessages.size() + 32));
+        builder.append(header, 0, header.length() - 1);
+        appendRawMessages(builder, Constants.MessageKey.MESSAGES, rawMessages);
+        appendRawMessages(builder, Constants.MessageKey.HISTORY, rawSessionHistoryMessages);
+        return builder.append('}').toString();
+    }
+
+    private void appendRawMessages(StringBuilder builder, String key, List<String> rawList) {
+        if (rawList.isEmpty()) {
+            return;
+        }
+        if (builder.length() > 1) {
+            builder.append(',');
+        }
+        builder.append(JSONObject.quote(key)).append(":[");
+        for (int i = 0; i < rawList.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(rawList.get(i));
+        }
+        builder.append(']');
+    }
+
     public void addSessionHistoryMessage(JSONObject message) {
+        if (!rawSessionHistoryMessages.isEmpty()) {
+            rawSessionHistoryMessages.add(message.toString());
+            return;
+        }
         try {
             if (!has(Constants.MessageKey.HISTORY)) {
                 put(Constants.MessageKey.HISTORY, new JSONArray());
@@ -109,6 +248,10 @@ public class MessageBatch extends JSONObject {
     }
 
     public void addMessage(JSONObject message) {
+        if (!rawMessages.isEmpty()) {
+            rawMessages.add(message.toString());
+            return;
+        }
         try {
             if (!has(Constants.MessageKey.MESSAGES)) {
                 put(Constants.MessageKey.MESSAGES, new JSONArray());
@@ -7,6 +7,7 @@ import android.os.Message;
 import com.mparticle.MParticle;
 import com.mparticle.internal.Constants.MessageKey;
 import com.mparticle.internal.Constants.MessageType;
+import com.mparticle.internal.database.MPDatabase;
 import com.mparticle.internal.database.services.MParticleDBManager;
 import com.mparticle.internal.database.tables.SessionTable;
 import com.mparticle.internal.messages.BaseMPMessage;
@@ -15,6 +16,7 @@ import com.mparticle.internal.messages.MPAliasMessage;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -42,29 +44,55 @@ import java.util.UUID;
     public static final int INSTALL_REFERRER_UPDATED = 13;
     public static final int CLEAR_MESSAGES_FOR_UPLOAD = 14;
     public static final int STORE_ALIAS_MESSAGE = 15;
+    public static final int FLUSH_STORED_MESSAGES = 16;
 
     private final MessageManagerCallbacks mMessageManagerCallbacks;
     String mDataplanId;
     Integer mDataplanVersion;
 
+    /**
+     * When group commit is enabled (max batch size greater than 1), STORE_MESSAGE entries are
+     * held here until either the batch is full, or the linger period expires, and then they are
+     * written in a single transaction.
+     */
+    private final int mMaxStoreBatchSize;
+    private final long mMaxStoreLingerMillis;
+    private List<BaseMPMessage> mPendingStoreMessages = new ArrayList<BaseMPMessage>();
+    private boolean mFlushScheduled = false;
+
     /**
      * for unit testing only
      */
     MessageHandler(MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion) {
+        this(messageManager, context, dbManager, dataplanId, dataplanVersion, ConfigManager.DEFAULT_STORE_MESSAGE_BATCH_SIZE, ConfigManager.DEFAULT_STORE_MESSAGE_LINGER_MILLIS);
+    }
+
+    /**
+     * for unit testing only
+     */
+    MessageHandler(MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion, int maxStoreBatchSize, long maxStoreLingerMillis) {
         mMessageManagerCallbacks = messageManager;
         mContext = context;
         mMParticleDBManager = dbManager;
         mDataplanId = dataplanId;
         mDataplanVersion = dataplanVersion;
+        mMaxStoreBatchSize = maxStoreBatchSize;
+        mMaxStoreLingerMillis = maxStoreLingerMillis;
     }
 
     public MessageHandler(Looper looper, MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion) {
+        this(looper, messageManager, context, dbManager, dataplanId, dataplanVersion, ConfigManager.DEFAULT_STORE_MESSAGE_BATCH_SIZE, ConfigManager.DEFAULT_STORE_MESSAGE_LINGER_MILLIS);
+    }
+
+    public MessageHandler(Looper looper, MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager, String dataplanId, Integer dataplanVersion, int maxStoreBatchSize, long maxStoreLingerMillis) {
         super(looper);
         mMessageManagerCallbacks = messageManager;
         mContext = context;
         mMParticleDBManager = dbManager;
         mDataplanId = dataplanId;
         mDataplanVersion = dataplanVersion;
+        mMaxStoreBatchSize = maxStoreBatchSize;
+        mMaxStoreLingerMillis = maxStoreLingerMillis;
     }
 
     boolean databaseAvailable() {
@@ -86,35 +114,30 @@ import java.util.UUID;
         }catch (Exception e) {
             Logger.verbose(e.toString());
         }
+        if (msg.what != STORE_MESSAGE && msg.what != FLUSH_STORED_MESSAGES) {
+            //anything else in the queue may depend on messages that were logged before it,
+            //so make sure those have been written first
+            flushStoredMessages();
+        }
         switch (msg.what) {
             case STORE_MESSAGE:
+                BaseMPMessage storeMessage = (BaseMPMessage) msg.obj;
+                if (mMaxStoreBatchSize > 1) {
+                    enqueueStoreMessage(storeMessage);
+                    break;
+                }
                 try {
-                    BaseMPMessage message = (BaseMPMessage) msg.obj;
-                    message.put(MessageKey.STATE_INFO_KEY, MessageManager.getStateInfo());
-                    String messageType = message.getString(MessageKey.TYPE);
-                    // Handle the special case of session-start by creating the
-                    // session record first.
-                    if (MessageType.SESSION_START.equals(messageType)) {
-                        dbInsertSession(message);
-                    }else{
-                        mMParticleDBManager.updateSessionEndTime(message.getSessionId(), message.getLong(MessageKey.TIMESTAMP), 0);
-                        message.put(Constants.MessageKey.ID, UUID.randomUUID().toString());
-                    }
-                    if (MessageType.ERROR.equals(messageType)){
-                        mMParticleDBManager.appendBreadcrumbs(message);
-                    }
-                    try {
-                        mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), message, mDataplanId, mDataplanVersion);
-                    } catch (MParticleApiClientImpl.MPNoConfigException e) {
-                        Logger.error("Unable to process uploads, API key and/or API Secret are missing.");
-                        return;
+                    if (storeMessage(storeMessage, null)) {
+                        mMessageManagerCallbacks.checkForTrigger(storeMessage);
                     }
-                    mMessageManagerCallbacks.checkForTrigger(message);
-
                 } catch (Exception e) {
                     Logger.error(e, "Error saving message to mParticle DB.");
                 }
                 break;
+            case FLUSH_STORED_MESSAGES:
+                mFlushScheduled = false;
+                flushStoredMessages();
+                break;
             case INSTALL_REFERRER_UPDATED:
                 try {
                     mMParticleDBManager.updateSessionInstallReferrer((String) msg.obj, mMessageManagerCallbacks.getDeviceAttributes().getAppInfo(mContext, true));
@@ -181,6 +204,7 @@ import java.util.UUID;
                     // Find left-over sessions that exist during startup and end them.
                     Long mpid = (Long)msg.obj;
                     List<String> sessionIds = mMParticleDBManager.getOrphanSessionIds(mMessageManagerCallbacks.getApiKey());
+                    mMParticleDBManager.recoverEventCounter(sessionIds);
                     for (String sessionId: sessionIds) {
                         Map.Entry<String, Set<Long>> entry = new HashMap.SimpleEntry<String, Set<Long>>(sessionId, Collections.singleton(mpid));
                         sendMessage(obtainMessage(MessageHandler.CREATE_SESSION_END_MESSAGE, 0, 0, entry));
@@ -255,6 +279,141 @@ import java.util.UUID;
         }
     }
 
+    /**
+     * Only analytics data may be dropped when the queue is full. Session, identity, user attribute
+     * and configuration messages are always kept.
+     */
+    @Override
+    protected boolean isDroppable(Message msg) {
+        if (msg.what == STORE_BREADCRUMB) {
+            return true;
+        }
+        if (msg.what != STORE_MESSAGE || !(msg.obj instanceof BaseMPMessage)) {
+            return false;
+        }
+        String messageType = ((BaseMPMessage) msg.obj).getMessageType();
+        return MessageType.EVENT.equals(messageType) ||
+                MessageType.SCREEN_VIEW.equals(messageType) ||
+                MessageType.COMMERCE_EVENT.equals(messageType) ||
+                MessageType.ERROR.equals(messageType) ||
+                MessageType.BREADCRUMB.equals(messageType) ||
+                MessageType.NETWORK_PERFORMNACE.equals(messageType);
+    }
+
+    @Override
+    protected boolean supersedes(Message incoming, Message queued) {
+        switch (incoming.what) {
+            case UPDATE_SESSION_END:
+                //the session end time is read from the session when the message is handled
+                return incoming.obj == queued.obj;
+            case UPDATE_SESSION_ATTRIBUTES:
+                //each update contains the complete set of session attributes
+                return incoming.obj instanceof JSONObject && queued.obj instanceof JSONObject &&
+                        MPUtility.isEqual(((JSONObject) incoming.obj).optString(MessageKey.SESSION_ID), ((JSONObject) queued.obj).optString(MessageKey.SESSION_ID));
+            case CLEAR_MESSAGES_FOR_UPLOAD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes a single message to the database.
+     *
+     * @param sessionEndTimes when non-null, the session end time update is collapsed into this
+     *                        map (session id to latest timestamp) rather than written immediately
+     * @return false if the message could not be stored because the SDK has not been configured
+     */
+    private boolean storeMessage(BaseMPMessage message, Map<String, Long> sessionEndTimes) throws JSONException {
+        message.put(MessageKey.STATE_INFO_KEY, MessageManager.getStateInfo());
+        String messageType = message.getString(MessageKey.TYPE);
+        // Handle the special case of session-start by creating the
+        // session record first.
+        if (MessageType.SESSION_START.equals(messageType)) {
+            dbInsertSession(message);
+        }else{
+            long timestamp = message.getLong(MessageKey.TIMESTAMP);
+            if (sessionEndTimes == null) {
+                mMParticleDBManager.updateSessionEndTime(message.getSessionId(), timestamp, 0);
+            } else {
+                Long endTime = sessionEndTimes.get(message.getSessionId());
+                if (endTime == null || endTime < timestamp) {
+                    sessionEndTimes.put(message.getSessionId(), timestamp);
+                }
+            }
+            message.put(Constants.MessageKey.ID, UUID.randomUUID().toString());
+        }
+        if (MessageType.ERROR.equals(messageType)){
+            mMParticleDBManager.appendBreadcrumbs(message);
+        }
+        try {
+            mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), message, mDataplanId, mDataplanVersion);
+        } catch (MParticleApiClientImpl.MPNoConfigException e) {
+            Logger.error("Unable to process uploads, API key and/or API Secret are missing.");
+            return false;
+        }
+        return true;
+    }
+
+    private void enqueueStoreMessage(BaseMPMessage message) {
+        mPendingStoreMessages.add(message);
+        if (mPendingStoreMessages.size() >= mMaxStoreBatchSize) {
+            flushStoredMessages();
+        } else if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            scheduleFlush(mMaxStoreLingerMillis);
+        }
+    }
+
+    /**
+     * A flush posted with no delay lands behind every message already in the queue, so by the time
+     * it runs, all of the currently pending STORE_MESSAGEs will have been drained.
+     */
+    void scheduleFlush(long delayMillis) {
+        sendMessageDelayed(obtainMessage(FLUSH_STORED_MESSAGES), delayMillis);
+    }
+
+    /**
+     * Group commit: write all pending messages in one transaction, with a single session end time
+     * update per session.
+     */
+    void flushStoredMessages() {
+        if (mPendingStoreMessages.isEmpty()) {
+            return;
+        }
+        List<BaseMPMessage> pendingMessages = mPendingStoreMessages;
+        mPendingStoreMessages = new ArrayList<BaseMPMessage>();
+        List<BaseMPMessage> storedMessages = new ArrayList<BaseMPMessage>(pendingMessages.size());
+        Map<String, Long> sessionEndTimes = new HashMap<String, Long>();
+        MPDatabase db = mMParticleDBManager.getDatabase();
+        db.beginTransaction();
+        try {
+            for (BaseMPMessage message : pendingMessages) {
+                try {
+                    if (!storeMessage(message, sessionEndTimes)) {
+                        break;
+                    }
+                    storedMessages.add(message);
+                } catch (Exception e) {
+                    Logger.error(e, "Error saving message to mParticle DB.");
+                }
+            }
+            for (Map.Entry<String, Long> sessionEndTime : sessionEndTimes.entrySet()) {
+                mMParticleDBManager.updateSessionEndTime(sessionEndTime.getKey(), sessionEndTime.getValue(), 0);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Logger.error(e, "Error saving message batch to mParticle DB.");
+            storedMessages.clear();
+        } finally {
+            db.endTransaction();
+        }
+        //check triggers once the batch is committed, so a triggered upload will include it
+        for (BaseMPMessage message : storedMessages) {
+            mMessageManagerCallbacks.checkForTrigger(message);
+        }
+    }
+
     void setUserAttributes(MParticleDBManager.UserAttributeResponse response) {
         List<MParticleDBManager.AttributionChange> attributionChanges = mMParticleDBManager.setUserAttribute(response);
         for (MParticleDBManager.AttributionChange attributionChange : attributionChanges) {
@@ -17,7 +17,6 @@ import android.os.HandlerThread;
 import android.os.Message;
 import android.os.Process;
 import androidx.annotation.Nullable;
-import android.telephony.TelephonyManager;
 
 import com.mparticle.InstallReferrerHelper;
 import com.mparticle.MPEvent;
@@ -47,6 +46,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is primarily responsible for generating BaseMPMessage objects, and then adding them to a
@@ -62,6 +62,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
     private ConfigManager mConfigManager = null;
     private MParticleDBManager mMParticleDBManager;
     private MParticle.OperatingSystem mOperatingSystem;
+    static final long DISABLE_TIMEOUT_MILLIS = 5 * 1000;
 
 
     /**
@@ -124,9 +125,9 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
      */
     MParticle.InstallType mInstallType = MParticle.InstallType.AutoDetect;
     /**
-     * Batches/messages need to communicate the current telephony status when available.
+     * Provides the device state attached to each message, see {@link #getStateInfo()}.
      */
-    private static TelephonyManager sTelephonyManager;
+    private static DeviceStateSampler sDeviceStateSampler;
 
     private boolean delayedStartOccurred = false;
 
@@ -150,6 +151,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         mMessageHandler = messageHandler;
         mUploadHandler = uploadHandler;
         sPreferences = appContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        sDeviceStateSampler = new DeviceStateSampler(sContext);
         mInstallType = installType;
     }
 
@@ -162,19 +164,14 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         mAppStateManager = appStateManager;
         mAppStateManager.setMessageManager(this);
         mMParticleDBManager = dbManager;
-        mMessageHandler = new MessageHandler(sMessageHandlerThread.getLooper(), this, options.getContext(), dbManager, options.getDataplanId(), options.getDataplanVersion());
+        mMessageHandler = new MessageHandler(sMessageHandlerThread.getLooper(), this, options.getContext(), dbManager, options.getDataplanId(), options.getDataplanVersion(), options.getStoreMessageBatchSize(), options.getStoreMessageMaxLingerMillis());
+        mMessageHandler.setMaxQueueSize(options.getMessageQueueCapacity(), options.getMessageQueueOverflowPolicy());
         mUploadHandler = new UploadHandler(options.getContext(), sUploadHandlerThread.getLooper(), configManager, appStateManager, this, dbManager, kitFrameworkWrapper);
         sPreferences = options.getContext().getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        sDeviceStateSampler = new DeviceStateSampler(sContext);
         mInstallType = options.getInstallType();
     }
 
-    private static TelephonyManager getTelephonyManager() {
-        if (sTelephonyManager == null) {
-            sTelephonyManager = (TelephonyManager) sContext.getSystemService(Context.TELEPHONY_SERVICE);
-        }
-        return sTelephonyManager;
-    }
-
     public boolean isDevicePerformanceMetricsDisabled() {
         return devicePerformanceMetricsDisabled;
     }
@@ -183,35 +180,37 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         devicePerformanceMetricsDisabled = disabled;
     }
 
+    /**
+     * Builds the state info dictionary for a message. Values which are expensive to query are taken from
+     * the current {@link DeviceStateSampler} snapshot rather than being queried for each message.
+     */
     public static JSONObject getStateInfo() throws JSONException {
         JSONObject infoJson = new JSONObject();
         try {
+            DeviceStateSampler.Snapshot snapshot = getDeviceStateSampler().getSnapshot(!devicePerformanceMetricsDisabled);
             if (!devicePerformanceMetricsDisabled) {
-                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_DISK, MPUtility.getAvailableInternalDisk(sContext));
-                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_EXT_DISK, MPUtility.getAvailableExternalDisk(sContext));
+                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_DISK, snapshot.availableInternalDisk);
+                infoJson.put(MessageKey.STATE_INFO_AVAILABLE_EXT_DISK, snapshot.availableExternalDisk);
                 final Runtime rt = Runtime.getRuntime();
                 infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_USAGE, rt.totalMemory());
                 infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_AVAIL, rt.freeMemory());
                 infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_MAX, rt.maxMemory());
             }
-            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_MEMORY, MPUtility.getAvailableMemory(sContext));
-            infoJson.put(MessageKey.STATE_INFO_TOTAL_MEMORY, getTotalMemory());
+            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_MEMORY, snapshot.availableMemory);
+            infoJson.put(MessageKey.STATE_INFO_TOTAL_MEMORY, snapshot.totalMemory);
             infoJson.put(MessageKey.STATE_INFO_BATTERY_LVL, sBatteryLevel);
             infoJson.put(MessageKey.STATE_INFO_TIME_SINCE_START, MPUtility.millitime() - sStartTime);
 
-            String gps = MPUtility.getGpsEnabled(sContext);
-            if (gps != null) {
-                infoJson.put(MessageKey.STATE_INFO_GPS, Boolean.parseBoolean(gps));
+            if (snapshot.gpsEnabled != null) {
+                infoJson.put(MessageKey.STATE_INFO_GPS, snapshot.gpsEnabled.booleanValue());
             }
             infoJson.put(MessageKey.STATE_INFO_DATA_CONNECTION, sActiveNetworkName);
-            int orientation = MPUtility.getOrientation(sContext);
-            infoJson.put(MessageKey.STATE_INFO_ORIENTATION, orientation);
-            infoJson.put(MessageKey.STATE_INFO_BAR_ORIENTATION, orientation);
-            infoJson.put(MessageKey.STATE_INFO_MEMORY_LOW, MPUtility.isSystemMemoryLow(sContext));
-            infoJson.put(MessageKey.STATE_INFO_MEMORY_THRESHOLD, getSystemMemoryThreshold());
-            Integer networkType = MPUtility.getNetworkType(sContext, getTelephonyManager());
-            if (networkType != null) {
-                infoJson.put(MessageKey.STATE_INFO_NETWORK_TYPE, networkType);
+            infoJson.put(MessageKey.STATE_INFO_ORIENTATION, snapshot.orientation);
+            infoJson.put(MessageKey.STATE_INFO_BAR_ORIENTATION, snapshot.orientation);
+            infoJson.put(MessageKey.STATE_INFO_MEMORY_LOW, snapshot.memoryLow);
+            infoJson.put(MessageKey.STATE_INFO_MEMORY_THRESHOLD, snapshot.memoryThreshold);
+            if (snapshot.networkType != null) {
+                infoJson.put(MessageKey.STATE_INFO_NETWORK_TYPE, snapshot.networkType.intValue());
             }
 
         } catch (OutOfMemoryError error) {
@@ -220,6 +219,13 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         return infoJson;
     }
 
+    private static DeviceStateSampler getDeviceStateSampler() {
+        if (sDeviceStateSampler == null) {
+            sDeviceStateSampler = new DeviceStateSampler(sContext);
+        }
+        return sDeviceStateSampler;
+    }
+
     public static long getTotalMemory() {
         long total = sPreferences.getLong(Constants.MiscStorageKeys.TOTAL_MEMORY, -1);
         if (total < 0) {
@@ -339,9 +345,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                     message.put(MessageKey.CURRENT_ACTIVITY, currentActivity);
                 }
 
-                int count = sPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
-                message.put(MessageKey.EVENT_COUNTER, count);
-                sPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, ++count).apply();
+                message.put(MessageKey.EVENT_COUNTER, EventCounter.getInstance(sPreferences).getAndIncrement());
 
                 mMessageHandler.sendMessage(mMessageHandler.obtainMessage(MessageHandler.STORE_MESSAGE, message));
                 return message;
@@ -545,6 +549,9 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
     public BaseMPMessage logStateTransition(String stateTransInit, String currentActivity,
                                             String launchUri, String launchExtras, String launchSourcePackage, long previousForegroundTime, long suspendedTime, int interruptions) {
         if (!MPUtility.isEmpty(stateTransInit)) {
+            if (Constants.StateTransitionType.STATE_TRANS_BG.equals(stateTransInit)) {
+                EventCounter.getInstance(sPreferences).persist();
+            }
             try {
                 BaseMPMessage message = new BaseMPMessage.Builder(MessageType.APP_STATE_TRANSITION)
                         .timestamp(System.currentTimeMillis())
@@ -782,6 +789,8 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                 sStatusBroadcastReceiver = new StatusBroadcastReceiver();
                 // NOTE: if permissions are not correct all messages will be tagged as 'offline'
                 IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+                //orientation is part of the sampled device state
+                filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
                 if (MPUtility.checkPermission(sContext, android.Manifest.permission.ACCESS_NETWORK_STATE)) {
                     //same as with battery, get current connection so we don't have to wait for the next change
                     ConnectivityManager connectivityManager = (ConnectivityManager) sContext
@@ -988,10 +997,13 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                             .getSystemService(Context.CONNECTIVITY_SERVICE);
                     NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
                     MessageManager.this.setDataConnection(activeNetwork);
+                    getDeviceStateSampler().invalidate();
                 } else if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
                     int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
                     int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
                     sBatteryLevel = level / (double) scale;
+                } else if (Intent.ACTION_CONFIGURATION_CHANGED.equals(intent.getAction())) {
+                    getDeviceStateSampler().invalidate();
                 }
             }catch (Exception e){
                 //sometimes we're given a null intent,
@@ -1022,12 +1034,40 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         return mMParticleDBManager;
     }
 
+    /**
+     * Stop both handlers, and wait for the messages they are currently handling to finish, so neither of them
+     * touches the database or preferences once this returns. In-flight upload requests are cancelled, so this
+     * is normally quick. A warning is logged if a handler has not stopped after {@link #DISABLE_TIMEOUT_MILLIS}.
+     */
     public void disable() {
-        if (mMessageHandler != null) {
-            mMessageHandler.disable(true);
+        BaseHandler.Shutdown messageHandlerShutdown = mMessageHandler != null ? mMessageHandler.shutdown() : null;
+        BaseHandler.Shutdown uploadHandlerShutdown = mUploadHandler != null ? mUploadHandler.shutdown() : null;
+        awaitShutdown(messageHandlerShutdown, "message");
+        awaitShutdown(uploadHandlerShutdown, "upload");
+    }
+
+    private static void awaitShutdown(@Nullable BaseHandler.Shutdown shutdown, String name) {
+        if (shutdown == null) {
+            return;
+        }
+        boolean interrupted = false;
+        boolean warned = false;
+        while (true) {
+            try {
+                if (shutdown.await(DISABLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                if (!warned) {
+                    Logger.warning("Still waiting for the " + name + " handler to stop.");
+                    warned = true;
+                }
+            } catch (InterruptedException e) {
+                //the caller is about to delete what the handler may still be writing, it has to stop first
+                interrupted = true;
+            }
         }
-        if (mUploadHandler != null) {
-            mUploadHandler.disable(true);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
     public static void destroy() {
@@ -1037,6 +1077,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         if (sUploadHandlerThread != null) {
             sUploadHandlerThread.quit();
         }
+        EventCounter.clear();
         startThreads();
     }
 
@@ -14,6 +14,8 @@ import com.mparticle.identity.AliasResponse;
 import com.mparticle.internal.database.services.MParticleDBManager;
 import com.mparticle.internal.listeners.InternalListenerManager;
 import com.mparticle.internal.messages.MPAliasMessage;
+import com.mparticle.networking.MParticleBaseClientImpl;
+import com.mparticle.networking.NetworkOptions;
 import com.mparticle.segmentation.SegmentListener;
 
 import org.json.JSONException;
@@ -21,7 +23,16 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.SSLHandshakeException;
 
@@ -76,6 +87,14 @@ public class UploadHandler extends BaseHandler {
      */
     volatile boolean isNetworkConnected = true;
 
+    /**
+     * Worker pool used to upload several event batches at once, see {@link NetworkOptions#getMaxConcurrentUploads()}.
+     * Lazily created, and its threads are allowed to die off between uploads.
+     */
+    private ThreadPoolExecutor mUploadExecutor;
+
+    private static final long UPLOAD_WORKER_KEEP_ALIVE_SECONDS = 30;
+
     /**
      *
      * Only used for unit testing.
@@ -119,6 +138,15 @@ public class UploadHandler extends BaseHandler {
         }
     }
 
+    @Override
+    protected void onShutdown() {
+        //an upload may be blocked on the network for as long as the connection timeout
+        MParticleApiClient apiClient = mApiClient;
+        if (apiClient instanceof MParticleBaseClientImpl) {
+            ((MParticleBaseClientImpl) apiClient).cancelRequests();
+        }
+    }
+
     @Override
     public void handleMessageImpl(Message msg) {
         try {
@@ -220,6 +248,8 @@ public class UploadHandler extends BaseHandler {
                 mApiClient.fetchConfig();
             }
             final boolean includeSessionHistory = mConfigManager.getIncludeSessionHistory();
+            int maxConcurrentUploads = getMaxConcurrentUploads();
+            List<MParticleDBManager.ReadyUpload> concurrentUploads = new ArrayList<MParticleDBManager.ReadyUpload>();
             for (MParticleDBManager.ReadyUpload readyUpload : readyUploads) {
                 //This case actually shouldn't be needed anymore except for upgrade scenarios.
                 //As of version 4.9.0, upload batches for session history shouldn't even be created.
@@ -236,11 +266,16 @@ public class UploadHandler extends BaseHandler {
                     InternalListenerManager.getListener().onCompositeObjects(readyUpload, message);
                     if (readyUpload.isAliasRequest()) {
                         uploadAliasRequest(readyUpload.getId(), message);
+                    } else if (maxConcurrentUploads > 1) {
+                        concurrentUploads.add(readyUpload);
                     } else {
                         uploadMessage(readyUpload.getId(), message);
                     }
                 }
             }
+            if (concurrentUploads.size() > 0) {
+                uploadMessagesConcurrently(concurrentUploads, maxConcurrentUploads);
+            }
         } catch (MParticleApiClientImpl.MPThrottleException e) {
         } catch (SSLHandshakeException ssle) {
             Logger.debug("SSL handshake failed while preparing uploads - possible MITM attack detected.");
@@ -253,6 +288,72 @@ public class UploadHandler extends BaseHandler {
     }
 
     void uploadMessage(int id, String message) throws IOException, MParticleApiClientImpl.MPThrottleException {
+        if (sendMessageBatch(message)) {
+            forwardBatchToKits(message);
+            mParticleDBManager.deleteUpload(id);
+        } else {
+            Logger.warning("Upload failed and will be retried.");
+        }
+    }
+
+    /**
+     * Upload a list of event batches using up to maxConcurrentUploads workers. The network requests run
+     * in parallel, but the results are applied here, on the upload thread, in the original batch order - each
+     * upload row is only deleted once its own request has been accepted.
+     *
+     * Once any worker is throttled or fails with a connection error, batches which have not yet been
+     * started are skipped and left for the next upload pass, matching the serial behavior.
+     */
+    void uploadMessagesConcurrently(List<MParticleDBManager.ReadyUpload> readyUploads, int maxConcurrentUploads) throws InterruptedException {
+        ThreadPoolExecutor executor = getUploadExecutor(maxConcurrentUploads);
+        final AtomicBoolean halted = new AtomicBoolean(false);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(readyUploads.size());
+        for (final MParticleDBManager.ReadyUpload readyUpload : readyUploads) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    if (halted.get()) {
+                        return false;
+                    }
+                    try {
+                        return sendMessageBatch(readyUpload.getMessage());
+                    } catch (MParticleApiClientImpl.MPThrottleException e) {
+                        halted.set(true);
+                        return false;
+                    } catch (IOException e) {
+                        halted.set(true);
+                        throw e;
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < readyUploads.size(); i++) {
+            MParticleDBManager.ReadyUpload readyUpload = readyUploads.get(i);
+            boolean shouldDelete = false;
+            try {
+                shouldDelete = results.get(i).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SSLHandshakeException) {
+                    Logger.debug("SSL handshake failed while preparing uploads - possible MITM attack detected.");
+                } else {
+                    Logger.error(e.getCause(), "Error processing batch uploads in mParticle DB.");
+                }
+            }
+            if (shouldDelete) {
+                forwardBatchToKits(readyUpload.getMessage());
+                mParticleDBManager.deleteUpload(readyUpload.getId());
+            } else if (!halted.get()) {
+                Logger.warning("Upload failed and will be retried.");
+            }
+        }
+    }
+
+    /**
+     * Send a single event batch.
+     *
+     * @return true if the batch has been handled by the server (or this device is being sampled) and should be deleted
+     */
+    boolean sendMessageBatch(String message) throws IOException, MParticleApiClientImpl.MPThrottleException {
         int responseCode = -1;
         boolean sampling = false;
         try {
@@ -267,13 +368,31 @@ public class UploadHandler extends BaseHandler {
             Logger.error("API request failed " + e.toString());
             sampling = true;
         }
+        return sampling || shouldDelete(responseCode);
+    }
 
-        if (sampling || shouldDelete(responseCode)) {
-            forwardBatchToKits(message);
-            mParticleDBManager.deleteUpload(id);
-        } else {
-            Logger.warning("Upload failed and will be retried.");
+    private int getMaxConcurrentUploads() {
+        NetworkOptions networkOptions = mConfigManager.getNetworkOptions();
+        return networkOptions != null ? networkOptions.getMaxConcurrentUploads() : 1;
+    }
+
+    private ThreadPoolExecutor getUploadExecutor(int maxConcurrentUploads) {
+        if (mUploadExecutor == null || mUploadExecutor.getMaximumPoolSize() != maxConcurrentUploads) {
+            if (mUploadExecutor != null) {
+                mUploadExecutor.shutdown();
+            }
+            mUploadExecutor = new ThreadPoolExecutor(maxConcurrentUploads, maxConcurrentUploads,
+                    UPLOAD_WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            return new Thread(runnable, "mParticleUploadWorker");
+                        }
+                    });
+            mUploadExecutor.allowCoreThreadTimeOut(true);
         }
+        return mUploadExecutor;
     }
 
     void uploadAliasRequest(int id, String aliasRequestMessage) throws IOException, MParticleApiClientImpl.MPThrottleException {
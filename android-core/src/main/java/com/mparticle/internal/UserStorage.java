@@ -5,15 +5,19 @@ import android.content.SharedPreferences;
 import android.net.UrlQuerySanitizer;
 import android.os.Build;
 
+import com.mparticle.consent.ConsentState;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.mparticle.internal.ConfigManager.PREFERENCES_FILE;
 
@@ -40,8 +44,15 @@ public class UserStorage {
 
     static final int DEFAULT_BREADCRUMB_LIMIT = 50;
 
+    //UserStorage instances are shared by the whole process, one per MPID, and so is the set of known MPIDs,
+    //which is only written back to SharedPreferences when it changes
+    private static final Map<Long, UserStorage> sUserStorages = new ConcurrentHashMap<Long, UserStorage>();
+    private static Set<Long> sMpIds;
+    private static SharedPreferences sMpIdsPreferences;
+
     private long mpId;
     private SharedPreferences mPreferences;
+    private volatile ParsedConsentState mConsentState;
     private Context mContext;
 
     SharedPreferences messageManagerSharedPreferences;
@@ -56,6 +67,7 @@ public class UserStorage {
     }
 
     boolean deleteUserConfig(Context context, long mpId) {
+        sUserStorages.remove(mpId);
         if (Build.VERSION.SDK_INT >= 24) {
             context.deleteSharedPreferences(getFileName(mpId));
         } else {
@@ -65,7 +77,30 @@ public class UserStorage {
     }
 
     static UserStorage create(Context context, long mpid) {
-        return new UserStorage(context, mpid);
+        Context applicationContext = context.getApplicationContext();
+        if (applicationContext != null) {
+            context = applicationContext;
+        }
+        UserStorage userStorage = sUserStorages.get(mpid);
+        //a different Context, which only happens in tests, has its own SharedPreferences
+        if (userStorage != null && userStorage.mContext == context) {
+            return userStorage;
+        }
+        userStorage = new UserStorage(context, mpid);
+        sUserStorages.put(mpid, userStorage);
+        return userStorage;
+    }
+
+    /**
+     * Forget all cached UserStorage instances and MPIDs. This needs to be called whenever the SharedPreferences
+     * files are cleared out from under us, for example by {@link com.mparticle.MParticle#reset(Context)}
+     */
+    public static void clearCache() {
+        synchronized (UserStorage.class) {
+            sUserStorages.clear();
+            sMpIds = null;
+            sMpIdsPreferences = null;
+        }
     }
 
     public static void setNeedsToMigrate(Context context, boolean needsToMigrate) {
@@ -272,6 +307,19 @@ public class UserStorage {
         return mPreferences.getString(CONSENT_STATE, null);
     }
 
+    /**
+     * @return the ConsentState, parsed once per change to the serialized value, rather than on every call
+     */
+    ConsentState getConsentState() {
+        String serializedConsent = getSerializedConsentState();
+        ParsedConsentState parsed = mConsentState;
+        if (parsed == null || !MPUtility.isEqual(parsed.serialized, serializedConsent)) {
+            parsed = new ParsedConsentState(serializedConsent);
+            mConsentState = parsed;
+        }
+        return parsed.consentState;
+    }
+
     private boolean hasConsent() {
         return mPreferences.contains(CONSENT_STATE);
     }
@@ -326,23 +374,48 @@ public class UserStorage {
     }
 
     private SharedPreferences getPreferenceFile(long mpId) {
-        Set<Long> mpIds = getMpIdSet(mContext);
-        mpIds.add(mpId);
-        setMpIds(mpIds);
+        synchronized (UserStorage.class) {
+            Set<Long> mpIds = getCachedMpIds(mContext);
+            if (mpIds.add(mpId)) {
+                setMpIds(mContext, mpIds);
+            }
+        }
         return mContext.getSharedPreferences(getFileName(mpId), Context.MODE_PRIVATE);
     }
 
     private static boolean removeMpId(Context context, long mpid) {
-        Set<Long> mpids = getMpIdSet(context);
-        boolean removed = mpids.remove(mpid);
-        setMpIds(context, mpids);
-        return removed;
+        synchronized (UserStorage.class) {
+            Set<Long> mpids = getCachedMpIds(context);
+            boolean removed = mpids.remove(mpid);
+            if (removed) {
+                setMpIds(context, mpids);
+            }
+            return removed;
+        }
     }
 
     static Set<Long> getMpIdSet(Context context) {
+        synchronized (UserStorage.class) {
+            return new TreeSet<Long>(getCachedMpIds(context));
+        }
+    }
+
+    /**
+     * must be called while holding the UserStorage.class lock
+     */
+    private static Set<Long> getCachedMpIds(Context context) {
+        SharedPreferences preferences = getMParticleSharedPrefs(context);
+        if (sMpIds == null || sMpIdsPreferences != preferences) {
+            sMpIds = readMpIds(preferences);
+            sMpIdsPreferences = preferences;
+        }
+        return sMpIds;
+    }
+
+    private static Set<Long> readMpIds(SharedPreferences preferences) {
         JSONArray userConfigs = new JSONArray();
         try {
-            userConfigs = new JSONArray(getMParticleSharedPrefs(context).getString(USER_CONFIG_COLLECTION, new JSONArray().toString()));
+            userConfigs = new JSONArray(preferences.getString(USER_CONFIG_COLLECTION, new JSONArray().toString()));
         } catch (JSONException ignore) {}
         Set<Long> mpIds = new TreeSet<Long>();
         for (int i = 0; i < userConfigs.length(); i++) {
@@ -354,10 +427,6 @@ public class UserStorage {
         return mpIds;
     }
 
-    private void setMpIds(Set<Long> mpIds) {
-        setMpIds(mContext, mpIds);
-    }
-
     private static void setMpIds(Context context, Set<Long> mpIds) {
         JSONArray jsonArray = new JSONArray();
         for (Long mpId: mpIds) {
@@ -431,6 +500,16 @@ public class UserStorage {
      *
      **/
 
+    private static final class ParsedConsentState {
+        final String serialized;
+        final ConsentState consentState;
+
+        ParsedConsentState(String serialized) {
+            this.serialized = serialized;
+            this.consentState = ConsentState.withConsentState(serialized).build();
+        }
+    }
+
     private static class SharedPreferencesMigrator {
         private static final String NEEDS_TO_MIGRATE_TO_MPID_DEPENDENT = "mp::needs_to_migrate_to_mpid_dependent";
         private SharedPreferences messageManagerSharedPreferences;
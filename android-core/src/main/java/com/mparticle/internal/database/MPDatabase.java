@@ -25,5 +25,10 @@ public interface MPDatabase {
 
     void endTransaction();
 
+    /**
+     * @return whether the current thread has a transaction pending
+     */
+    boolean inTransaction();
+
     int update(String tableName, ContentValues contentValues, String s, String[] strings);
 }
@@ -39,11 +39,11 @@ public class MPDatabaseImpl implements MPDatabase {
     public Cursor query(String table, String[] columns, String selection,
                  String[] selectionArgs, String groupBy, String having,
                  String orderBy, String limit) {
-        if (InternalListenerManager.isEnabled()) {
+        if (InternalListenerManager.isGraphEnabled()) {
             columns = getColumnsWithId(columns);
         }
         Cursor cursor = sqLiteDatabase.query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
-        if (InternalListenerManager.isEnabled()) {
+        if (InternalListenerManager.isGraphEnabled()) {
             int columnIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
             if (columnIndex >= 0 && cursor.getCount() > 0) {
                 cursor.moveToFirst();
@@ -63,11 +63,11 @@ public class MPDatabaseImpl implements MPDatabase {
     public Cursor query(String table, String[] columns, String selection,
                         String[] selectionArgs, String groupBy, String having,
                         String orderBy) {
-        if (InternalListenerManager.isEnabled()) {
+        if (InternalListenerManager.isGraphEnabled()) {
             columns = getColumnsWithId(columns);
         }
         Cursor cursor = sqLiteDatabase.query(table, columns, selection, selectionArgs, groupBy, having, orderBy);
-        if (InternalListenerManager.isEnabled()) {
+        if (InternalListenerManager.isGraphEnabled()) {
             int columnIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
             if (columnIndex >= 0 && cursor.getCount() > 0) {
                 cursor.moveToFirst();
@@ -120,6 +120,11 @@ public class MPDatabaseImpl implements MPDatabase {
         sqLiteDatabase.endTransaction();
     }
 
+    @Override
+    public boolean inTransaction() {
+        return sqLiteDatabase.inTransaction();
+    }
+
     @Override
     public int update(String tableName, ContentValues contentValues, String s, String[] strings) {
         return sqLiteDatabase.update(tableName, contentValues, s, strings);
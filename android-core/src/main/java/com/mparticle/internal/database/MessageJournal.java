@@ -0,0 +1,372 @@
+package com.mparticle.internal.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.mparticle.internal.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, memory-mapped journal of stored messages, used in front of the messages table for apps
+ * which log at very high rates.
+ *
+ * Appending a message is a copy into a mapped segment file rather than a SQLite transaction. Journaled
+ * messages are moved into the messages table in a single transaction, see {@link #snapshot()} and {@link #discard(Snapshot)},
+ * whenever the segment fills up and before anything reads or modifies the messages table, so everything downstream
+ * of the table (sessions, batch assembly, the upload queue) behaves exactly as before.
+ *
+ * The file is laid out as [offset of the first live record][version][segment A][segment B]. Records are only ever
+ * appended to the segment the offset points into, and each one is laid out as [payload length][CRC32 of payload][payload].
+ * When the journal is opened, records are read from the offset until the first one which is incomplete or fails its
+ * checksum, and the remainder of the segment is discarded, so a torn write from a crash loses at most the message which
+ * was being written.
+ *
+ * Records which are still live when a snapshot is discarded are copied to the start of the other segment, and the
+ * offset is switched over only once the copy is complete. The offset is a single aligned int, so a crash at any
+ * point leaves it pointing at one complete, unmodified set of records.
+ *
+ * Each record is given an increasing sequence number when it is appended. Whoever commits the records records the
+ * last committed sequence number in the same transaction, so records which were committed but not yet discarded when
+ * the process stopped can be recognized and skipped, see {@link #setMinimumSequence(long)}.
+ */
+public class MessageJournal {
+    public static final String FILE_NAME = "mparticle_message_journal";
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    static final int FILE_HEADER_SIZE = 8;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final int mSegmentSize;
+    private MappedByteBuffer mBuffer;
+    private int mHead;
+    private int mCount;
+    private long mLastSequence;
+
+    public MessageJournal(@NonNull File file) {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MessageJournal(@NonNull File file, int segmentSize) {
+        mFile = file;
+        mSegmentSize = segmentSize;
+    }
+
+    /**
+     * @return false if there is not enough room left in the segment, in which case the journal should be drained first
+     */
+    public synchronized boolean append(@NonNull Entry entry) throws IOException {
+        MappedByteBuffer buffer = getBuffer();
+        long sequence = mLastSequence + 1;
+        byte[] payload = entry.toBytes(sequence);
+        int start = buffer.position();
+        if (getSegmentEnd(mHead) - start < HEADER_SIZE + payload.length + HEADER_SIZE) {
+            if (HEADER_SIZE + payload.length + HEADER_SIZE > mSegmentSize) {
+                throw new IOException("Message of size " + payload.length + " is too large for the message journal.");
+            }
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        //write the body first and the length last, so a partially written record is never seen as complete
+        buffer.position(start + HEADER_SIZE);
+        buffer.put(payload);
+        //terminate the log, in case the segment is being reused
+        buffer.putInt(buffer.position(), 0);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, payload.length);
+        mCount++;
+        mLastSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Make sure records appended from now on are numbered after sequence. Used with the last committed sequence
+     * number, since the journal itself does not remember it once every record has been discarded.
+     */
+    public synchronized void setMinimumSequence(long sequence) throws IOException {
+        getBuffer();
+        if (sequence > mLastSequence) {
+            mLastSequence = sequence;
+        }
+    }
+
+    public synchronized boolean isEmpty() throws IOException {
+        getBuffer();
+        return mCount == 0;
+    }
+
+    /**
+     * Read every record currently in the journal. Records may continue to be appended while the snapshot
+     * is being committed to the messages table, which is why they are removed separately, via {@link #discard(Snapshot)}.
+     */
+    @NonNull
+    public synchronized Snapshot snapshot() throws IOException {
+        MappedByteBuffer buffer = getBuffer();
+        List<Entry> entries = new ArrayList<Entry>(mCount);
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(mHead);
+        reader.limit(buffer.position());
+        while (reader.remaining() >= HEADER_SIZE) {
+            int length = reader.getInt();
+            reader.getInt();
+            if (length <= 0) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            reader.get(payload);
+            entries.add(Entry.fromBytes(payload));
+        }
+        return new Snapshot(entries, reader.position());
+    }
+
+    /**
+     * Remove the records in a snapshot, once they have been committed to the messages table. Any records
+     * appended after the snapshot was taken are moved to the start of the other segment.
+     */
+    public synchronized void discard(@NonNull Snapshot snapshot) throws IOException {
+        MappedByteBuffer buffer = getBuffer();
+        int remaining = buffer.position() - snapshot.end;
+        //skip the committed records first, from here on a crash can neither resurrect them nor lose the later ones
+        setHead(buffer, snapshot.end);
+        if (remaining > 0) {
+            int target = getSegmentStart(snapshot.end) == FILE_HEADER_SIZE ? FILE_HEADER_SIZE + mSegmentSize : FILE_HEADER_SIZE;
+            byte[] tail = new byte[remaining];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(snapshot.end);
+            reader.get(tail);
+            ByteBuffer writer = buffer.duplicate();
+            writer.position(target);
+            writer.put(tail);
+            writer.putInt(0);
+            //switch segments only once the copy is complete
+            setHead(buffer, target);
+            buffer.position(target + remaining);
+        } else {
+            int start = getSegmentStart(snapshot.end);
+            buffer.putInt(start, 0);
+            setHead(buffer, start);
+            buffer.position(start);
+        }
+        mCount -= snapshot.getEntries().size();
+    }
+
+    private void setHead(MappedByteBuffer buffer, int head) {
+        buffer.putInt(0, head);
+        mHead = head;
+    }
+
+    private int getSegmentStart(int offset) {
+        return offset < FILE_HEADER_SIZE + mSegmentSize ? FILE_HEADER_SIZE : FILE_HEADER_SIZE + mSegmentSize;
+    }
+
+    private int getSegmentEnd(int offset) {
+        return getSegmentStart(offset) + mSegmentSize;
+    }
+
+    private MappedByteBuffer getBuffer() throws IOException {
+        if (mBuffer == null) {
+            File parent = mFile.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            int size = FILE_HEADER_SIZE + 2 * mSegmentSize;
+            RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                if (file.length() < size) {
+                    file.setLength(size);
+                }
+                mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                file.close();
+            }
+            recover(mBuffer);
+        }
+        return mBuffer;
+    }
+
+    /**
+     * Position the buffer after the last intact record, truncating any torn tail.
+     */
+    private void recover(MappedByteBuffer buffer) {
+        int head = buffer.getInt(0);
+        if (buffer.getInt(4) != VERSION || head < FILE_HEADER_SIZE || head > getSegmentEnd(head) - HEADER_SIZE
+                || head >= FILE_HEADER_SIZE + 2 * mSegmentSize) {
+            //a new file, or one written in a different format
+            buffer.putInt(FILE_HEADER_SIZE, 0);
+            buffer.putInt(4, VERSION);
+            head = FILE_HEADER_SIZE;
+        }
+        setHead(buffer, head);
+        int segmentEnd = getSegmentEnd(head);
+        int position = head;
+        int count = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= segmentEnd) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segmentEnd - HEADER_SIZE) {
+                break;
+            }
+            int checksum = buffer.getInt(position + 4);
+            byte[] payload = new byte[length];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(position + HEADER_SIZE);
+            reader.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                Logger.warning("Discarding torn record at the end of the message journal.");
+                break;
+            }
+            position += HEADER_SIZE + length;
+            count++;
+            mLastSequence = Math.max(mLastSequence, Entry.fromBytes(payload).sequence);
+        }
+        if (position + 4 <= segmentEnd) {
+            buffer.putInt(position, 0);
+        }
+        buffer.position(position);
+        mCount = count;
+    }
+
+    public static class Snapshot {
+        private final List<Entry> entries;
+        private final int end;
+
+        Snapshot(List<Entry> entries, int end) {
+            this.entries = entries;
+            this.end = end;
+        }
+
+        @NonNull
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * A single journaled row of the messages table.
+     */
+    public static class Entry {
+        public static final long NO_SEQUENCE = -1;
+        public final String apiKey;
+        public final long createdAt;
+        public final String sessionId;
+        public final long mpId;
+        @Nullable
+        public final String dataplanId;
+        @Nullable
+        public final Integer dataplanVersion;
+        public final String message;
+        public final int status;
+        /**
+         * The session event counter carried by event messages, stored in its own column so it can be recovered at startup.
+         */
+        @Nullable
+        public final Integer eventCounter;
+        /**
+         * Assigned when the record is appended, {@link #NO_SEQUENCE} for entries which have not been journaled, and
+         * for records which were written before sequence numbers were.
+         */
+        public final long sequence;
+
+        public Entry(String apiKey, long createdAt, String sessionId, long mpId, @Nullable String dataplanId, @Nullable Integer dataplanVersion, String message, int status) {
+            this(apiKey, createdAt, sessionId, mpId, dataplanId, dataplanVersion, message, status, null);
+        }
+
+        public Entry(String apiKey, long createdAt, String sessionId, long mpId, @Nullable String dataplanId, @Nullable Integer dataplanVersion, String message, int status, @Nullable Integer eventCounter) {
+            this(apiKey, createdAt, sessionId, mpId, dataplanId, dataplanVersion, message, status, eventCounter, NO_SEQUENCE);
+        }
+
+        Entry(String apiKey, long createdAt, String sessionId, long mpId, @Nullable String dataplanId, @Nullable Integer dataplanVersion, String message, int status, @Nullable Integer eventCounter, long sequence) {
+            this.apiKey = apiKey;
+            this.createdAt = createdAt;
+            this.sessionId = sessionId;
+            this.mpId = mpId;
+            this.dataplanId = dataplanId;
+            this.dataplanVersion = dataplanVersion;
+            this.message = message;
+            this.status = status;
+            this.eventCounter = eventCounter;
+            this.sequence = sequence;
+        }
+
+        byte[] toBytes(long sequence) {
+            byte[] apiKeyBytes = getBytes(apiKey);
+            byte[] sessionIdBytes = getBytes(sessionId);
+            byte[] dataplanIdBytes = getBytes(dataplanId);
+            byte[] messageBytes = getBytes(message);
+            ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 4 + 1 + 4 + 4 * 4 +
+                    apiKeyBytes.length + sessionIdBytes.length + dataplanIdBytes.length + messageBytes.length + 1 + 4 + 8);
+            buffer.putLong(createdAt);
+            buffer.putLong(mpId);
+            buffer.putInt(status);
+            buffer.put((byte) (dataplanVersion != null ? 1 : 0));
+            buffer.putInt(dataplanVersion != null ? dataplanVersion : 0);
+            putBytes(buffer, apiKey == null ? null : apiKeyBytes);
+            putBytes(buffer, sessionId == null ? null : sessionIdBytes);
+            putBytes(buffer, dataplanId == null ? null : dataplanIdBytes);
+            putBytes(buffer, message == null ? null : messageBytes);
+            //fields added after the first version are appended, so records written before them can still be read
+            buffer.put((byte) (eventCounter != null ? 1 : 0));
+            buffer.putInt(eventCounter != null ? eventCounter : 0);
+            buffer.putLong(sequence);
+            return buffer.array();
+        }
+
+        static Entry fromBytes(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long createdAt = buffer.getLong();
+            long mpId = buffer.getLong();
+            int status = buffer.getInt();
+            boolean hasDataplanVersion = buffer.get() == 1;
+            int dataplanVersion = buffer.getInt();
+            String apiKey = getString(buffer);
+            String sessionId = getString(buffer);
+            String dataplanId = getString(buffer);
+            String message = getString(buffer);
+            Integer eventCounter = null;
+            if (buffer.remaining() >= 1 + 4) {
+                boolean hasEventCounter = buffer.get() == 1;
+                int value = buffer.getInt();
+                eventCounter = hasEventCounter ? value : null;
+            }
+            long sequence = buffer.remaining() >= 8 ? buffer.getLong() : NO_SEQUENCE;
+            return new Entry(apiKey, createdAt, sessionId, mpId, dataplanId, hasDataplanVersion ? dataplanVersion : null, message, status, eventCounter, sequence);
+        }
+
+        private static byte[] getBytes(String value) {
+            return value == null ? new byte[0] : value.getBytes(UTF_8);
+        }
+
+        private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+            if (bytes == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        private static String getString(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
@@ -17,6 +17,7 @@ import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.Constants;
 import com.mparticle.internal.DatabaseHelper;
 import com.mparticle.internal.DeviceAttributes;
+import com.mparticle.internal.EventCounter;
 import com.mparticle.internal.InternalSession;
 import com.mparticle.internal.JsonReportingMessage;
 import com.mparticle.internal.Logger;
@@ -26,6 +27,7 @@ import com.mparticle.internal.MessageManager;
 import com.mparticle.internal.MessageManagerCallbacks;
 import com.mparticle.internal.database.MPDatabase;
 import com.mparticle.internal.database.MPDatabaseImpl;
+import com.mparticle.internal.database.MessageJournal;
 import com.mparticle.internal.listeners.InternalListenerManager;
 import com.mparticle.internal.messages.BaseMPMessage;
 
@@ -33,6 +35,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -40,12 +44,17 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MParticleDBManager {
     private SharedPreferences mPreferences;
     private Context mContext;
     private DatabaseHelper mDatabaseHelper;
     private MParticleOptions options;
+    private MessageJournal mMessageJournal;
+    private final Object mMessageJournalLock = new Object();
+    private volatile boolean mMessageJournalFlushed;
+    private final Map<Long, UserAttributes> mUserAttributes = new ConcurrentHashMap<Long, UserAttributes>();
 
     MParticleDBManager() {
         //for unit testing
@@ -56,6 +65,13 @@ public class MParticleDBManager {
         this.options = options;
         mPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
         mDatabaseHelper = new DatabaseHelper(context);
+        if (options != null && options.isMessageJournalEnabled()) {
+            mMessageJournal = new MessageJournal(getMessageJournalFile(context));
+        }
+    }
+
+    public static File getMessageJournalFile(Context context) {
+        return new File(context.getFilesDir(), MessageJournal.FILE_NAME);
     }
 
     public MParticleDBManager(Context context) {
@@ -72,6 +88,7 @@ public class MParticleDBManager {
     }
 
     public void updateMpId(long oldMpId, long newMpId) {
+        flushMessageJournal();
         MPDatabase db = getDatabase();
         try {
             db.beginTransaction();
@@ -84,6 +101,8 @@ public class MParticleDBManager {
         }
         finally {
             db.endTransaction();
+            mUserAttributes.remove(oldMpId);
+            mUserAttributes.remove(newMpId);
         }
     }
 
@@ -116,16 +135,103 @@ public class MParticleDBManager {
      */
 
     public void cleanupMessages() {
+        flushMessageJournal();
         MessageService.cleanupMessages(getDatabase());
     }
 
     public void insertMessage(String apiKey, BaseMPMessage message, String dataplanId, Integer dataplanVersion) throws JSONException {
-        MessageService.insertMessage(getDatabase(), apiKey, message, message.getMpId(), dataplanId, dataplanVersion);
+        if (mMessageJournal == null || !appendToMessageJournal(apiKey, message, dataplanId, dataplanVersion)) {
+            MessageService.insertMessage(getDatabase(), apiKey, message, message.getMpId(), dataplanId, dataplanVersion);
+        }
         if (sMessageListener != null) {
             sMessageListener.onMessageStored(message);
         }
     }
 
+    /**
+     * @return false if the message could not be journaled, and should be inserted into the messages table directly
+     */
+    private boolean appendToMessageJournal(String apiKey, BaseMPMessage message, String dataplanId, Integer dataplanVersion) throws JSONException {
+        MessageJournal.Entry entry = MessageService.createEntry(apiKey, message, message.getMpId(), dataplanId, dataplanVersion);
+        if (entry == null) {
+            //the message was dropped
+            return true;
+        }
+        try {
+            //the journal has to be numbering its records after the last committed one before it is appended to
+            if (!mMessageJournalFlushed) {
+                flushMessageJournal();
+            }
+            if (mMessageJournal.append(entry)) {
+                return true;
+            }
+            flushMessageJournal();
+            return mMessageJournal.append(entry);
+        } catch (IOException e) {
+            Logger.warning("Unable to write to the message journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Move any journaled messages into the messages table. This needs to happen before anything reads or
+     * modifies the messages table, so it always reflects every stored message.
+     *
+     * The sequence number of the last moved record is written in the same transaction, and records at or below it
+     * are skipped, so records which are still in the journal after a crash are not inserted again. When called
+     * within an enclosing transaction, the records are only discarded from the journal by a later flush, since
+     * they are not committed until the enclosing transaction is.
+     */
+    public void flushMessageJournal() {
+        MessageJournal journal = mMessageJournal;
+        if (journal == null) {
+            return;
+        }
+        MPDatabase db = getDatabase();
+        boolean nested = db.inTransaction();
+        //the database transaction is always started before taking the lock, the message thread may already hold one
+        db.beginTransaction();
+        synchronized (mMessageJournalLock) {
+            MessageJournal.Snapshot snapshot = null;
+            try {
+                long committedSequence = MessageJournalService.getCommittedSequence(db);
+                journal.setMinimumSequence(committedSequence);
+                mMessageJournalFlushed = true;
+                if (journal.isEmpty()) {
+                    db.setTransactionSuccessful();
+                    return;
+                }
+                snapshot = journal.snapshot();
+                List<MessageJournal.Entry> entries = new ArrayList<MessageJournal.Entry>(snapshot.getEntries().size());
+                long lastSequence = committedSequence;
+                for (MessageJournal.Entry entry: snapshot.getEntries()) {
+                    if (entry.sequence != MessageJournal.Entry.NO_SEQUENCE && entry.sequence <= committedSequence) {
+                        continue;
+                    }
+                    entries.add(entry);
+                    lastSequence = Math.max(lastSequence, entry.sequence);
+                }
+                MessageService.insertMessages(db, entries);
+                if (lastSequence > committedSequence) {
+                    MessageJournalService.setCommittedSequence(db, lastSequence);
+                }
+                db.setTransactionSuccessful();
+            } catch (IOException e) {
+                Logger.error(e, "Unable to read the message journal.");
+                snapshot = null;
+            } finally {
+                db.endTransaction();
+            }
+            if (snapshot != null && !nested) {
+                try {
+                    journal.discard(snapshot);
+                } catch (IOException e) {
+                    Logger.error(e, "Unable to discard flushed messages from the message journal.");
+                }
+            }
+        }
+    }
+
     private static MessageListener sMessageListener;
 
     static void setMessageListener(MessageListener messageListener){
@@ -149,6 +255,7 @@ public class MParticleDBManager {
      */
 
     public void createSessionHistoryUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId) throws JSONException {
+        flushMessageJournal();
        MPDatabase db = getDatabase();
         db.beginTransaction();
         try {
@@ -173,11 +280,13 @@ public class MParticleDBManager {
     }
 
     public boolean hasMessagesForUpload() {
+        flushMessageJournal();
         MPDatabase db = getDatabase();
         return MessageService.hasMessagesForUpload(db);
     }
 
     public void createMessagesForUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled) throws JSONException {
+        flushMessageJournal();
        MPDatabase db = getDatabase();
         db.beginTransaction();
         try {
@@ -231,6 +340,7 @@ public class MParticleDBManager {
     }
 
     public void deleteMessagesAndSessions(String currentSessionId) {
+        flushMessageJournal();
        MPDatabase db = getDatabase();
        try {
            db.beginTransaction();
@@ -257,15 +367,16 @@ public class MParticleDBManager {
                 uploadMessage = createUploadMessage(configManager, true, batchId);
                 uploadMessagesByBatchId.put(batchId, uploadMessage);
             }
-            int messageLength = readyMessage.getMessage().length();
-            JSONObject msgObject = new JSONObject(readyMessage.getMessage());
+            String message = readyMessage.getMessage();
+            int messageLength = message.length();
             if (messageLength + uploadMessage.getMessageLengthBytes() > Constants.LIMIT_MAX_UPLOAD_SIZE) {
                 break;
             }
+            //the stored message text is spliced directly into the batch, no need to parse it
             if (isHistory) {
-                uploadMessage.addSessionHistoryMessage(msgObject);
+                uploadMessage.addSessionHistoryMessage(message);
             } else {
-                uploadMessage.addMessage(msgObject);
+                uploadMessage.addMessage(message);
             }
             InternalListenerManager.getListener().onCompositeObjects(readyMessage, uploadMessage);
             uploadMessage.incrementMessageLengthBytes(messageLength);
@@ -305,13 +416,21 @@ public class MParticleDBManager {
                 } else {
                     messages = uploadMessage.getMessages();
                 }
-                JSONArray identities = findIdentityState(configManager, messages, batchId.getMpid());
+                JSONArray identities = uploadMessage.getIdentityState();
+                if (identities == null) {
+                    identities = findIdentityState(configManager, messages, batchId.getMpid());
+                }
                 uploadMessage.setIdentities(identities);
-                JSONObject userAttributes = findUserAttributeState(messages, batchId.getMpid());
+                JSONObject userAttributes = uploadMessage.getUserAttributeState();
+                if (userAttributes == null) {
+                    userAttributes = findUserAttributeState(messages, batchId.getMpid());
+                }
                 uploadMessage.setUserAttributes(userAttributes);
 
                 JSONObject batch = uploadMessage;
                 if (options != null && options.getBatchCreationListener() != null) {
+                    //the listener expects a complete JSONObject it can inspect and modify
+                    uploadMessage.parseRawMessages();
                     try {
                         batch = options.getBatchCreationListener().onBatchCreated(batch);
                         if (batch == null || batch.length() == 0) {
@@ -342,6 +461,7 @@ public class MParticleDBManager {
      * @param currentSessionId
      */
     void cleanSessions(String currentSessionId) {
+        flushMessageJournal();
         MPDatabase database = getDatabase();
         Set<String> sessionIds = MessageService.getSessionIds(database);
         sessionIds.add(currentSessionId);
@@ -448,8 +568,7 @@ public class MParticleDBManager {
     }
 
     BaseMPMessage createMessageSessionEnd(String sessionId, long start, long end, long foregroundLength, JSONObject sessionAttributes, Location location, Set<Long> mpIds) throws JSONException{
-        int eventCounter = mPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
-        resetEventCounter();
+        int eventCounter = EventCounter.getInstance(mPreferences).getAndReset();
         InternalSession session = new InternalSession();
         session.mSessionID = sessionId;
         session.mSessionStartTime = start;
@@ -474,11 +593,18 @@ public class MParticleDBManager {
         return message;
     }
 
-    private void resetEventCounter(){
-        mPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, 0).apply();
+    /**
+     * Bring the in-memory event counter up to date with the events stored for the orphaned sessions, in case
+     * the process was killed before the counter was last persisted.
+     */
+    public void recoverEventCounter(List<String> orphanSessionIds) {
+        flushMessageJournal();
+        int maxEventCounter = MessageService.getMaxEventCounter(getDatabase(), orphanSessionIds);
+        if (maxEventCounter >= 0) {
+            EventCounter.getInstance(mPreferences).recover(maxEventCounter + 1);
+        }
     }
 
-
     public List<String> getOrphanSessionIds(String apiKey) {
         return SessionService.getOrphanSessionIds(getDatabase(), apiKey);
     }
@@ -550,19 +676,44 @@ public class MParticleDBManager {
      */
 
     public TreeMap<String, String> getUserAttributeSingles(long mpId) {
-        if (getDatabase() != null) {
-            return UserAttributesService.getUserAttributesSingles(getDatabase(), mpId);
+        UserAttributes attributes = getCachedUserAttributes(mpId);
+        if (attributes != null) {
+            return new TreeMap<String, String>(attributes.singles);
         }
         return null;
     }
 
     public TreeMap<String, List<String>> getUserAttributeLists(long mpId) {
-        if (getDatabase() != null) {
-            return UserAttributesService.getUserAttributesLists(getDatabase(), mpId);
+        UserAttributes attributes = getCachedUserAttributes(mpId);
+        if (attributes != null) {
+            return attributes.copyLists();
         }
         return null;
     }
 
+    /**
+     * The user's attributes are read from the database the first time they are needed, and kept up to
+     * date by {@link #setUserAttribute(UserAttributeResponse)} and {@link #removeUserAttribute(UserAttributeRemoval, MessageManagerCallbacks)}
+     * after that. Both only ever run on the message thread, so there is only ever one writer.
+     */
+    @Nullable
+    private UserAttributes getCachedUserAttributes(long mpId) {
+        UserAttributes attributes = mUserAttributes.get(mpId);
+        if (attributes == null) {
+            MPDatabase db = getDatabase();
+            if (db == null) {
+                return null;
+            }
+            attributes = new UserAttributes(UserAttributesService.getUserAttributesSingles(db, mpId), UserAttributesService.getUserAttributesLists(db, mpId));
+            //if the message thread has written to the cache in the meantime, our read may already be out of date
+            UserAttributes current = mUserAttributes.putIfAbsent(mpId, attributes);
+            if (current != null) {
+                attributes = current;
+            }
+        }
+        return attributes;
+    }
+
 
     public JSONObject getAllUserAttributesJson(long mpId)  {
         Map<String, Object> attributes = getUserAttributes(null, mpId);
@@ -613,6 +764,8 @@ public class MParticleDBManager {
             }
             return allUserAttributes;
         }else {
+            //even when the cache is warm, read on the message thread so that any attribute changes
+            //queued before this call are reflected in what the listener receives
             MParticle instance = MParticle.getInstance();
             if (instance != null) {
                 instance.Internal().getMessageManager().getMessageHandler().post(new Runnable() {
@@ -639,7 +792,13 @@ public class MParticleDBManager {
             return attributionChanges;
         }
         Map<String, Object> currentValues = getUserAttributes(null, userAttribute.mpId);
+        UserAttributes.Builder updated = null;
+        UserAttributes cached = mUserAttributes.get(userAttribute.mpId);
+        if (cached != null) {
+            updated = cached.newBuilder();
+        }
         MPDatabase db = getDatabase();
+        boolean successful = false;
         try {
             db.beginTransaction();
             long time = System.currentTimeMillis();
@@ -656,6 +815,9 @@ public class MParticleDBManager {
                     for (String attributeValue : attributeValues) {
                         UserAttributesService.insertAttribute(db, key, attributeValue, time, true, userAttribute.mpId);
                     }
+                    if (updated != null) {
+                        updated.putList(key, attributeValues);
+                    }
                     attributionChanges.add(new AttributionChange(key, attributeValues, oldValue, false, isNewAttribute, userAttribute.time, userAttribute.mpId));
                 }
             }
@@ -670,14 +832,19 @@ public class MParticleDBManager {
                     int deleted = UserAttributesService.deleteAttributes(db, key, userAttribute.mpId);
                     boolean isNewAttribute = deleted == 0;
                     UserAttributesService.insertAttribute(db, key, attributeValue, time, false, userAttribute.mpId);
+                    if (updated != null) {
+                        updated.putSingle(key, attributeValue);
+                    }
                     attributionChanges.add(new AttributionChange(key, attributeValue, oldValue, false, isNewAttribute, userAttribute.time, userAttribute.mpId));
                 }
             }
             db.setTransactionSuccessful();
+            successful = true;
         }catch (Exception e){
             Logger.error(e, "Error while adding user attributes: ", e.toString());
         } finally {
             db.endTransaction();
+            updateCachedUserAttributes(userAttribute.mpId, successful ? updated : null);
         }
         return attributionChanges;
     }
@@ -685,18 +852,41 @@ public class MParticleDBManager {
 
     public void removeUserAttribute(UserAttributeRemoval container, MessageManagerCallbacks callbacks) {
         Map<String, Object> currentValues = getUserAttributes(null, container.mpId);
+        UserAttributes.Builder updated = null;
+        UserAttributes cached = mUserAttributes.get(container.mpId);
+        if (cached != null) {
+            updated = cached.newBuilder();
+        }
         MPDatabase db = getDatabase();
+        boolean successful = false;
         try {
             db.beginTransaction();
             int deleted = UserAttributesService.deleteAttributes(db, container.key, container.mpId);
+            if (deleted > 0 && updated != null) {
+                updated.remove(container.key);
+            }
             if (callbacks != null && deleted > 0) {
                 callbacks.attributeRemoved(container.key, container.mpId);
                 callbacks.logUserAttributeChangeMessage(container.key, null, currentValues.get(container.key), true, false, container.time, container.mpId);
             }
             db.setTransactionSuccessful();
+            successful = true;
         } catch (Exception e) {
         } finally {
             db.endTransaction();
+            updateCachedUserAttributes(container.mpId, successful ? updated : null);
+        }
+    }
+
+    /**
+     * @param updated the cached attributes with the committed changes applied, or null if they couldn't be
+     *                applied, in which case they will be read from the database again the next time they're needed
+     */
+    private void updateCachedUserAttributes(long mpId, @Nullable UserAttributes.Builder updated) {
+        if (updated != null) {
+            mUserAttributes.put(mpId, updated.build());
+        } else {
+            mUserAttributes.remove(mpId);
         }
     }
 
@@ -773,6 +963,61 @@ public class MParticleDBManager {
         }
     }
 
+    /**
+     * An immutable snapshot of one user's attributes, which readers on any thread can use without locking.
+     * Keys are case insensitive, the same as the maps read out of the database.
+     */
+    static final class UserAttributes {
+        final TreeMap<String, String> singles;
+        final TreeMap<String, List<String>> lists;
+
+        UserAttributes(TreeMap<String, String> singles, TreeMap<String, List<String>> lists) {
+            this.singles = singles;
+            this.lists = lists;
+        }
+
+        TreeMap<String, List<String>> copyLists() {
+            TreeMap<String, List<String>> copy = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+            for (Map.Entry<String, List<String>> entry : lists.entrySet()) {
+                copy.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+            }
+            return copy;
+        }
+
+        Builder newBuilder() {
+            return new Builder(this);
+        }
+
+        static final class Builder {
+            private final TreeMap<String, String> singles;
+            private final TreeMap<String, List<String>> lists;
+
+            private Builder(UserAttributes attributes) {
+                singles = new TreeMap<String, String>(attributes.singles);
+                lists = new TreeMap<String, List<String>>(attributes.lists);
+            }
+
+            void putSingle(String key, String value) {
+                remove(key);
+                singles.put(key, value);
+            }
+
+            void putList(String key, List<String> values) {
+                remove(key);
+                lists.put(key, new ArrayList<String>(values));
+            }
+
+            void remove(String key) {
+                singles.remove(key);
+                lists.remove(key);
+            }
+
+            UserAttributes build() {
+                return new UserAttributes(singles, lists);
+            }
+        }
+    }
+
     public static class UserAttributeRemoval {
         public String key;
         public long time;
@@ -0,0 +1,44 @@
+package com.mparticle.internal.database.services;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.mparticle.internal.database.MPDatabase;
+import com.mparticle.internal.database.tables.MessageJournalTable;
+
+public class MessageJournalService extends MessageJournalTable {
+    private static final long ROW_ID = 1;
+
+    /**
+     * @return the sequence number of the last journal record committed to the messages table, or 0 if there is none
+     */
+    public static long getCommittedSequence(MPDatabase database) {
+        Cursor cursor = null;
+        try {
+            cursor = database.query(MessageJournalTableColumns.TABLE_NAME,
+                    new String[]{MessageJournalTableColumns.COMMITTED_SEQUENCE},
+                    MessageJournalTableColumns._ID + " = ?",
+                    new String[]{String.valueOf(ROW_ID)},
+                    null,
+                    null,
+                    null);
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(cursor.getColumnIndexOrThrow(MessageJournalTableColumns.COMMITTED_SEQUENCE));
+            }
+            return 0;
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
+    public static void setCommittedSequence(MPDatabase database, long sequence) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(MessageJournalTableColumns.COMMITTED_SEQUENCE, sequence);
+        if (database.update(MessageJournalTableColumns.TABLE_NAME, contentValues, MessageJournalTableColumns._ID + " = ?", new String[]{String.valueOf(ROW_ID)}) == 0) {
+            contentValues.put(MessageJournalTableColumns._ID, ROW_ID);
+            database.insert(MessageJournalTableColumns.TABLE_NAME, null, contentValues);
+        }
+    }
+}
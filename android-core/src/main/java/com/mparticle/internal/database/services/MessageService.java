@@ -3,9 +3,12 @@ package com.mparticle.internal.database.services;
 import android.content.ContentValues;
 import android.database.Cursor;
 
+import androidx.annotation.Nullable;
+
 import com.mparticle.internal.Constants;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.database.MPDatabase;
+import com.mparticle.internal.database.MessageJournal;
 import com.mparticle.internal.database.tables.MessageTable;
 import com.mparticle.internal.listeners.InternalListenerManager;
 import com.mparticle.internal.messages.BaseMPMessage;
@@ -114,7 +117,8 @@ public class MessageService extends MessageTable {
                     new String[]{Integer.toString(Constants.Status.UPLOADED), String.valueOf(Constants.TEMPORARY_MPID)},
                     null,
                     null,
-                    prepareOrderBy);
+                    prepareOrderBy,
+                    "1");
             return messageIds.getCount() > 0;
         }
         finally {
@@ -173,8 +177,35 @@ public class MessageService extends MessageTable {
         return readyMessages;
     }
 
+    /**
+     * @return the highest event counter stored for any of the sessions, or -1 if none of their stored events has one
+     */
+    public static int getMaxEventCounter(MPDatabase database, List<String> sessionIds) {
+        if (sessionIds.isEmpty()) {
+            return -1;
+        }
+        StringBuilder selection = new StringBuilder(MessageTableColumns.SESSION_ID).append(" IN (");
+        for (int i = 0; i < sessionIds.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(")");
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT MAX(" + MessageTableColumns.EVENT_COUNTER + ") FROM " + MessageTableColumns.TABLE_NAME +
+                    " WHERE " + selection, sessionIds.toArray(new String[0]));
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getInt(0);
+            }
+            return -1;
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
     public static int cleanupMessages(MPDatabase database) {
-        return database.delete(MessageTableColumns.TABLE_NAME, "length(" + MessageTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_MESSAGE_SIZE, null);
+        return database.delete(MessageTableColumns.TABLE_NAME, MessageTableColumns.MESSAGE_LENGTH + " > " + Constants.LIMIT_MAX_MESSAGE_SIZE, null);
     }
 
 
@@ -207,32 +238,71 @@ public class MessageService extends MessageTable {
     }
 
     public static void insertMessage(MPDatabase db, String apiKey, BaseMPMessage message, long mpId, String dataplanId, Integer dataplanVersion) throws JSONException {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MessageTableColumns.API_KEY, apiKey);
-        contentValues.put(MessageTableColumns.CREATED_AT, message.getLong(Constants.MessageKey.TIMESTAMP));
+        MessageJournal.Entry entry = createEntry(apiKey, message, mpId, dataplanId, dataplanVersion);
+        if (entry == null) {
+            return;
+        }
+        ContentValues contentValues = getContentValues(entry);
+        InternalListenerManager.getListener().onCompositeObjects(message, contentValues);
+        db.insert(MessageTableColumns.TABLE_NAME, null, contentValues);
+    }
+
+    /**
+     * Build the row which will be stored for a message.
+     *
+     * @return the row, or null if the message exceeds the maximum message size and should be dropped
+     */
+    @Nullable
+    public static MessageJournal.Entry createEntry(String apiKey, BaseMPMessage message, long mpId, String dataplanId, Integer dataplanVersion) throws JSONException {
         String sessionID = message.getSessionId();
-        contentValues.put(MessageTableColumns.SESSION_ID, sessionID);
-        contentValues.put(MessageTableColumns.MP_ID, mpId);
-        contentValues.put(MessageTableColumns.DATAPLAN_ID, dataplanId);
-        contentValues.put(MessageTableColumns.DATAPLAN_VERSION, dataplanVersion);
         if (Constants.NO_SESSION_ID.equals(sessionID)) {
             message.remove(Constants.MessageKey.SESSION_ID);
         }
         String messageString = message.toString();
         if (messageString.length() > Constants.LIMIT_MAX_MESSAGE_SIZE) {
             Logger.error("Message logged of size " + messageString.length() + " that exceeds maximum safe size of " + Constants.LIMIT_MAX_MESSAGE_SIZE + " bytes.");
-            return;
+            return null;
         }
-        contentValues.put(MessageTableColumns.MESSAGE, messageString);
-
+        int status;
         if (Constants.MessageType.FIRST_RUN.equals(message.getString(Constants.MessageKey.TYPE))) {
             // Force the first run message to be parsed immediately.
-            contentValues.put(MessageTableColumns.STATUS, Constants.Status.BATCH_READY);
+            status = Constants.Status.BATCH_READY;
         } else {
-            contentValues.put(MessageTableColumns.STATUS, Constants.Status.READY);
+            status = Constants.Status.READY;
         }
-        InternalListenerManager.getListener().onCompositeObjects(message, contentValues);
-        db.insert(MessageTableColumns.TABLE_NAME, null, contentValues);
+        Integer eventCounter = null;
+        if (Constants.MessageType.EVENT.equals(message.getMessageType()) && message.has(Constants.MessageKey.EVENT_COUNTER)) {
+            eventCounter = message.getInt(Constants.MessageKey.EVENT_COUNTER);
+        }
+        return new MessageJournal.Entry(apiKey, message.getLong(Constants.MessageKey.TIMESTAMP), sessionID, mpId, dataplanId, dataplanVersion, messageString, status, eventCounter);
+    }
+
+    /**
+     * Move messages from the {@link MessageJournal} into the messages table, in their original order.
+     */
+    public static void insertMessages(MPDatabase db, List<MessageJournal.Entry> entries) {
+        for (MessageJournal.Entry entry: entries) {
+            ContentValues contentValues = getContentValues(entry);
+            InternalListenerManager.getListener().onCompositeObjects(entry, contentValues);
+            db.insert(MessageTableColumns.TABLE_NAME, null, contentValues);
+        }
+    }
+
+    private static ContentValues getContentValues(MessageJournal.Entry entry) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(MessageTableColumns.API_KEY, entry.apiKey);
+        contentValues.put(MessageTableColumns.CREATED_AT, entry.createdAt);
+        contentValues.put(MessageTableColumns.SESSION_ID, entry.sessionId);
+        contentValues.put(MessageTableColumns.MP_ID, entry.mpId);
+        contentValues.put(MessageTableColumns.DATAPLAN_ID, entry.dataplanId);
+        contentValues.put(MessageTableColumns.DATAPLAN_VERSION, entry.dataplanVersion);
+        contentValues.put(MessageTableColumns.MESSAGE, entry.message);
+        contentValues.put(MessageTableColumns.MESSAGE_LENGTH, entry.message.length());
+        contentValues.put(MessageTableColumns.STATUS, entry.status);
+        if (entry.eventCounter != null) {
+            contentValues.put(MessageTableColumns.EVENT_COUNTER, entry.eventCounter);
+        }
+        return contentValues;
     }
 
     public static class ReadyMessage {
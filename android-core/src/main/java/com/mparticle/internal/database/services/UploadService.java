@@ -17,7 +17,7 @@ import java.util.List;
 public class UploadService extends UploadTable {
 
     public static int cleanupUploadMessages(MPDatabase database) {
-        return database.delete(UploadTableColumns.TABLE_NAME, "length(" + UploadTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_UPLOAD_SIZE, null);
+        return database.delete(UploadTableColumns.TABLE_NAME, UploadTableColumns.MESSAGE_LENGTH + " > " + Constants.LIMIT_MAX_UPLOAD_SIZE, null);
     }
 
     /**
@@ -30,7 +30,9 @@ public class UploadService extends UploadTable {
         ContentValues contentValues = new ContentValues();
         contentValues.put(UploadTableColumns.API_KEY, apiKey);
         contentValues.put(UploadTableColumns.CREATED_AT, message.optLong(Constants.MessageKey.TIMESTAMP, System.currentTimeMillis()));
-        contentValues.put(UploadTableColumns.MESSAGE, message.toString());
+        String messageString = message.toString();
+        contentValues.put(UploadTableColumns.MESSAGE, messageString);
+        contentValues.put(UploadTableColumns.MESSAGE_LENGTH, messageString.length());
         contentValues.put(UploadTableColumns.REQUEST_TYPE, UploadTable.UPLOAD_REQUEST);
         InternalListenerManager.getListener().onCompositeObjects(message, contentValues);
         database.insert(UploadTableColumns.TABLE_NAME, null, contentValues);
@@ -75,7 +77,9 @@ public class UploadService extends UploadTable {
         ContentValues contentValues = new ContentValues();
         contentValues.put(UploadTableColumns.API_KEY, apiKey);
         contentValues.put(UploadTableColumns.CREATED_AT, System.currentTimeMillis());
-        contentValues.put(UploadTableColumns.MESSAGE, request.toString());
+        String requestString = request.toString();
+        contentValues.put(UploadTableColumns.MESSAGE, requestString);
+        contentValues.put(UploadTableColumns.MESSAGE_LENGTH, requestString.length());
         contentValues.put(UploadTableColumns.REQUEST_TYPE, UploadTable.ALIAS_REQUEST);
         InternalListenerManager.getListener().onCompositeObjects(request, contentValues);
         return database.insert(UploadTableColumns.TABLE_NAME, null, contentValues);
@@ -23,7 +23,7 @@ import java.util.Iterator;
 
 public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
     private final Context mContext;
-    public static final int DB_VERSION = 9;
+    public static final int DB_VERSION = 12;
     private static String DB_NAME = "mparticle.db";
     public static String getDbName() {
         return DB_NAME;
@@ -46,6 +46,8 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
         db.execSQL(ReportingTable.CREATE_REPORTING_DDL);
         db.execSQL(UserAttributesTable.CREATE_USER_ATTRIBUTES_DDL);
+        db.execSQL(MessageJournalTable.CREATE_MESSAGE_JOURNAL_DDL);
+        createIndexes(db);
     }
 
     @Override
@@ -56,6 +58,7 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
         db.execSQL(ReportingTable.CREATE_REPORTING_DDL);
         db.execSQL(UserAttributesTable.CREATE_USER_ATTRIBUTES_DDL);
+        db.execSQL(MessageJournalTable.CREATE_MESSAGE_JOURNAL_DDL);
         try {
             if (oldVersion < 5) {
                 upgradeUserAttributes(db);
@@ -77,6 +80,23 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         } catch (Exception e) {
             Logger.warning("Exception while upgrading SQLite Database:\n" + e.getMessage() + "\nThis may have been caused by the database having been already upgraded");
         }
+        //rows without a message length would escape the length based cleanup, so this does not depend on the earlier steps
+        if (oldVersion < 10) {
+            addMessageLengthColumn(db, MessageTable.ADD_MESSAGE_LENGTH_COLUMN, MessageTable.POPULATE_MESSAGE_LENGTH);
+            addMessageLengthColumn(db, UploadTable.ADD_MESSAGE_LENGTH_COLUMN, UploadTable.POPULATE_MESSAGE_LENGTH);
+        }
+        if (oldVersion < 11) {
+            try {
+                db.execSQL(MessageTable.ADD_EVENT_COUNTER_COLUMN);
+            } catch (Exception e) {
+                Logger.warning("Exception while adding event counter column:\n" + e.getMessage() + "\nThis may have been caused by the database having been already upgraded");
+            }
+        }
+        try {
+            createIndexes(db);
+        } catch (Exception e) {
+            Logger.warning("Exception while creating SQLite Database indexes:\n" + e.getMessage());
+        }
     }
 
     @Override
@@ -87,6 +107,7 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL("DROP TABLE IF EXISTS " + BreadcrumbTable.BreadcrumbTableColumns.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + ReportingTable.ReportingTableColumns.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + UserAttributesTable.UserAttributesTableColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + MessageJournalTable.MessageJournalTableColumns.TABLE_NAME);
         onCreate(db);
     }
 
@@ -104,6 +125,29 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(MessageTable.ADD_DATAPLAN_VERSION_COLUMN);
     }
 
+    /**
+     * The column is populated even if adding it fails, since that is expected when the database has already been upgraded.
+     */
+    private void addMessageLengthColumn(SQLiteDatabase db, String addColumn, String populate) {
+        try {
+            db.execSQL(addColumn);
+        } catch (Exception e) {
+            Logger.warning("Exception while adding message length column:\n" + e.getMessage() + "\nThis may have been caused by the database having been already upgraded");
+        }
+        try {
+            db.execSQL(populate);
+        } catch (Exception e) {
+            Logger.warning("Exception while populating message length column:\n" + e.getMessage());
+        }
+    }
+
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(MessageTable.CREATE_STATUS_INDEX);
+        db.execSQL(MessageTable.CREATE_SESSION_ID_INDEX);
+        db.execSQL(MessageTable.CREATE_EVENT_COUNTER_INDEX);
+        db.execSQL(UploadTable.CREATE_CREATED_AT_INDEX);
+    }
+
     private void upgradeMpId(SQLiteDatabase db) {
         final String currentMpId = String.valueOf(ConfigManager.getMpid(mContext));
         String updateStatement = "ALTER TABLE %s ADD COLUMN %s INTEGER DEFAULT \'%s\'";
@@ -0,0 +1,22 @@
+package com.mparticle.internal.database.tables;
+
+import android.provider.BaseColumns;
+
+/**
+ * A single row holding the sequence number of the last {@link com.mparticle.internal.database.MessageJournal} record
+ * which was moved into the messages table. It is written in the same transaction as the records, so records which
+ * are still in the journal after a crash are never inserted twice.
+ */
+public class MessageJournalTable {
+
+    public interface MessageJournalTableColumns extends BaseColumns {
+        String TABLE_NAME = "message_journal";
+        String COMMITTED_SEQUENCE = "committed_sequence";
+    }
+
+    static final String CREATE_MESSAGE_JOURNAL_DDL =
+            "CREATE TABLE IF NOT EXISTS " + MessageJournalTableColumns.TABLE_NAME + " (" + BaseColumns._ID +
+                    " INTEGER PRIMARY KEY, " +
+                    MessageJournalTableColumns.COMMITTED_SEQUENCE + " INTEGER NOT NULL" +
+                    ");";
+}
@@ -8,6 +8,30 @@ public class MessageTable extends MpIdDependentTable {
             " ADD COLUMN " + MessageTableColumns.DATAPLAN_VERSION + " NUMBER";
     public static final String ADD_DATAPLAN_ID_COLUMN = "ALTER TABLE " + MessageTableColumns.TABLE_NAME +
             " ADD COLUMN " + MessageTableColumns.DATAPLAN_ID + " TEXT";
+    public static final String ADD_MESSAGE_LENGTH_COLUMN = "ALTER TABLE " + MessageTableColumns.TABLE_NAME +
+            " ADD COLUMN " + MessageTableColumns.MESSAGE_LENGTH + " INTEGER";
+    public static final String POPULATE_MESSAGE_LENGTH = "UPDATE " + MessageTableColumns.TABLE_NAME +
+            " SET " + MessageTableColumns.MESSAGE_LENGTH + " = length(" + MessageTableColumns.MESSAGE + ")" +
+            " WHERE " + MessageTableColumns.MESSAGE_LENGTH + " IS NULL";
+    public static final String ADD_EVENT_COUNTER_COLUMN = "ALTER TABLE " + MessageTableColumns.TABLE_NAME +
+            " ADD COLUMN " + MessageTableColumns.EVENT_COUNTER + " INTEGER";
+
+    /**
+     * Serves the session history selection (status = UPLOADED, filtered by mpid) and lets the status/mpid
+     * predicates of the upload queries be evaluated without touching the table rows.
+     */
+    public static final String CREATE_STATUS_INDEX = "CREATE INDEX IF NOT EXISTS messages_status_mpid_index ON " +
+            MessageTableColumns.TABLE_NAME + " (" + MessageTableColumns.STATUS + ", " + MessageTableColumns.MP_ID + ")";
+    /**
+     * Covering index for "SELECT DISTINCT session_id", which would otherwise read every (potentially large) row.
+     */
+    public static final String CREATE_SESSION_ID_INDEX = "CREATE INDEX IF NOT EXISTS messages_session_id_index ON " +
+            MessageTableColumns.TABLE_NAME + " (" + MessageTableColumns.SESSION_ID + ")";
+    /**
+     * Lets the highest event counter of a session be read from the index when the counter is recovered at startup.
+     */
+    public static final String CREATE_EVENT_COUNTER_INDEX = "CREATE INDEX IF NOT EXISTS messages_session_event_counter_index ON " +
+            MessageTableColumns.TABLE_NAME + " (" + MessageTableColumns.SESSION_ID + ", " + MessageTableColumns.EVENT_COUNTER + ")";
 
     @Override
     public String getTableName() {
@@ -26,6 +50,8 @@ public class MessageTable extends MpIdDependentTable {
         String MP_ID = MpIdDependentTable.MP_ID;
         String DATAPLAN_VERSION = "dataplan_version";
         String DATAPLAN_ID = "dataplan_id";
+        String MESSAGE_LENGTH = "message_length";
+        String EVENT_COUNTER = "event_counter";
     }
 
     static final String CREATE_MESSAGES_DDL =
@@ -40,7 +66,9 @@ public class MessageTable extends MpIdDependentTable {
                     MessageTableColumns.CF_UUID + " TEXT, " +
                     MessageTableColumns.MP_ID + " INTEGER, " +
                     MessageTableColumns.DATAPLAN_ID + " TEXT," +
-                    MessageTableColumns.DATAPLAN_VERSION + " INTEGER" +
+                    MessageTableColumns.DATAPLAN_VERSION + " INTEGER, " +
+                    MessageTableColumns.MESSAGE_LENGTH + " INTEGER, " +
+                    MessageTableColumns.EVENT_COUNTER + " INTEGER" +
                     ");";
 
 }
@@ -18,8 +18,20 @@ public class UploadTable {
          */
         String REQUEST_TYPE = "cfuuid";
         String SESSION_ID = "session_id";
+        String MESSAGE_LENGTH = "message_length";
     }
 
+    static final String ADD_MESSAGE_LENGTH_COLUMN = "ALTER TABLE " + UploadTableColumns.TABLE_NAME +
+            " ADD COLUMN " + UploadTableColumns.MESSAGE_LENGTH + " INTEGER";
+    static final String POPULATE_MESSAGE_LENGTH = "UPDATE " + UploadTableColumns.TABLE_NAME +
+            " SET " + UploadTableColumns.MESSAGE_LENGTH + " = length(" + UploadTableColumns.MESSAGE + ")" +
+            " WHERE " + UploadTableColumns.MESSAGE_LENGTH + " IS NULL";
+    /**
+     * Ready uploads are read back in creation order.
+     */
+    static final String CREATE_CREATED_AT_INDEX = "CREATE INDEX IF NOT EXISTS uploads_created_at_index ON " +
+            UploadTableColumns.TABLE_NAME + " (" + UploadTableColumns.CREATED_AT + ")";
+
 
     static final String CREATE_UPLOADS_DDL =
             "CREATE TABLE IF NOT EXISTS " + UploadTableColumns.TABLE_NAME + " (" + BaseColumns._ID +
@@ -28,6 +40,7 @@ public class UploadTable {
                     UploadTableColumns.MESSAGE + " TEXT, " +
                     UploadTableColumns.CREATED_AT + " INTEGER NOT NULL, " +
                     UploadTableColumns.REQUEST_TYPE + " TEXT, " +
-                    UploadTableColumns.SESSION_ID + " TEXT" +
+                    UploadTableColumns.SESSION_ID + " TEXT, " +
+                    UploadTableColumns.MESSAGE_LENGTH + " INTEGER" +
                     ");";
 }
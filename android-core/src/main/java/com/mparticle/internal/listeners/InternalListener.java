@@ -25,24 +25,18 @@ public interface InternalListener {
     void onApiCalled(Object... objects);
 
     /**
-     * To be called when a Kit's API method is invoked. This overloaded variant should be used when
-     * the name of the method containing this method's invocation (in KitManagerImpl) matches the name of the
-     * Kit's method being invoked
+     * To be called when a Kit's API method is invoked. The method names are passed in by the call site,
+     * rather than read off of the current stack trace, so that this is cheap enough to be called for every
+     * event forwarded to a kit
+     * @param methodName the name of the Kit's method being called, for example "logEvent()"
+     * @param invokingMethodName the public Api method the call was made from, for example "MParticle.logEvent()",
+     *                           or null if the kit was called from a different thread than that method ran on
+     * @param kitManagerMethodName the KitManager method which made the call, for example "KitManagerImpl.logEvent()"
      * @param kitId the Id of the kit
      * @param used whether the Kit's method returned ReportingMessages, or null if return type is void
      * @param objects the arguments supplied to the Kit
      */
-    void onKitApiCalled(int kitId, Boolean used, Object... objects);
-
-    /**
-     * to be called when a Kit's API method is invoked, and the name of the Kit's method is different
-     * then the method containing this method's invocation
-     * @param methodName the name of the Kit's method being called
-     * @param kitId the Id of the kit
-     * @param used whether the Kit's method returned ReportingMessages, or null if return type is void
-     * @param objects the arguments supplied to the Kit
-     */
-    void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects);
+    void onKitApiCalled(@NonNull String methodName, @Nullable String invokingMethodName, @Nullable String kitManagerMethodName, int kitId, @Nullable Boolean used, Object... objects);
 
     /**
      * establishes a child-parent relationship between two objects. It is not necessary to call this
@@ -62,6 +56,17 @@ public interface InternalListener {
      */
     void onThreadMessage(@NonNull String handlerName, @NonNull Message msg, boolean onNewThread);
 
+    /**
+     * indicates that a Handler has finished processing a message
+     *
+     * @param handlerName the Name of the Handler class
+     * @param queueDepth the number of messages still pending
+     * @param droppedCount the total number of messages dropped from the queue
+     * @param coalescedCount the total number of messages coalesced in the queue
+     * @param latencyMillis the time between the message being due and it finishing processing
+     */
+    void onThreadMessageProcessed(@NonNull String handlerName, int queueDepth, long droppedCount, long coalescedCount, long latencyMillis);
+
     /**
      * indicates that an entry has been stored in the Database
      * @param rowId the rowId denoted by the "_id" column value
@@ -85,8 +90,10 @@ public interface InternalListener {
      * @param url the request url
      * @param response the response body
      * @param responseCode the response code
+     * @param startNanos the {@link System#nanoTime()} at which the request was started. Requests to the same
+     *                   endpoint can be in flight at the same time, so the call site keeps track of it
      */
-    void onNetworkRequestFinished(SdkListener.Endpoint type, String url, JSONObject response, int responseCode);
+    void onNetworkRequestFinished(SdkListener.Endpoint type, String url, JSONObject response, int responseCode, long startNanos);
 
     /**
      * this should be called when the current Session changes, for example, it starts, stops or the
@@ -127,11 +134,10 @@ public interface InternalListener {
 
     InternalListener EMPTY = new InternalListener() {
         public void onApiCalled(Object... objects) { /* stub */}
-        public void onKitApiCalled(int kitId, Boolean used, Object... objects) { /* stub */}
-        public void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects) { /* stub */}
+        public void onKitApiCalled(String methodName, String invokingMethodName, String kitManagerMethodName, int kitId, Boolean used, Object... objects) { /* stub */}
         public void onEntityStored(Long rowId, String tableName, ContentValues contentValues) { /* stub */}
         public void onNetworkRequestStarted(SdkListener.Endpoint type, String url, JSONObject body, Object... objects) { /* stub */}
-        public void onNetworkRequestFinished(SdkListener.Endpoint type, String url, JSONObject response, int responseCode) { /* stub */}
+        public void onNetworkRequestFinished(SdkListener.Endpoint type, String url, JSONObject response, int responseCode, long startNanos) { /* stub */}
         public void onSessionUpdated(InternalSession internalSession) { /* stub */}
         public void onKitDetected(int kitId) { /* stub */}
         public void onKitConfigReceived(int kitId, String configuration) { /* stub */}
@@ -141,5 +147,6 @@ public interface InternalListener {
 
         public void onCompositeObjects(Object child, Object parent) { /* stub */}
         public void onThreadMessage(String handlerName, Message msg, boolean onNewThread) { /* stub */ }
+        public void onThreadMessageProcessed(String handlerName, int queueDepth, long droppedCount, long coalescedCount, long latencyMillis) { /* stub */ }
     };
 }
@@ -9,28 +9,42 @@ import androidx.annotation.Nullable;
 import com.mparticle.SdkListener;
 import com.mparticle.identity.AliasResponse;
 import com.mparticle.internal.InternalSession;
-import com.mparticle.internal.KitFrameworkWrapper;
 import com.mparticle.internal.MPUtility;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards the SDK's internal events to any attached {@link SdkListener}s. Call sites pass in everything
+ * the listeners are told about, and events are recorded into a {@link ListenerEventBuffer} and delivered
+ * on a background thread, so an attached listener costs the SDK's threads a few field writes per event.
+ *
+ * {@link GraphListener}s are the exception. They track object identity across threads, so they are called
+ * synchronously, and only do any work when one is attached.
+ */
 public class InternalListenerManager implements InternalListener {
     private static InternalListenerManager instance = null;
     private static final String INTERNAL_LISTENER_PROP = "debug.mparticle.listener";
     private Context context;
-    final List<WeakReference<SdkListener>> sdkListeners = new ArrayList<WeakReference<SdkListener>>();
-    final List<WeakReference<GraphListener>> graphListeners = new ArrayList<WeakReference<GraphListener>>();
-    private boolean thrown = false;
+    final List<WeakReference<SdkListener>> sdkListeners = new CopyOnWriteArrayList<WeakReference<SdkListener>>();
+    final List<WeakReference<GraphListener>> graphListeners = new CopyOnWriteArrayList<WeakReference<GraphListener>>();
+    private final ListenerEventBuffer events;
 
     private InternalListenerManager(Context context) {
         this.context = context;
+        this.events = new ListenerEventBuffer(new ListenerEventBuffer.Dispatcher() {
+            @Override
+            public void dispatch(ListenerEventBuffer.Event event) {
+                deliver(event);
+            }
+        });
     }
 
     @Nullable
@@ -47,6 +61,15 @@ public class InternalListenerManager implements InternalListener {
                 instance.hasListeners();
     }
 
+    /**
+     * @return true if a listener which tracks composite objects is attached. Work which is only needed to
+     * report composite objects, such as walking a Cursor, should be skipped otherwise
+     */
+    public static boolean isGraphEnabled() {
+        return instance != null &&
+                instance.graphListeners.size() > 0;
+    }
+
     @NonNull
     public static InternalListener getListener() {
         if (instance != null && isEnabled()) {
@@ -87,59 +110,15 @@ public class InternalListenerManager implements InternalListener {
     }
 
     @Override
-    public void onKitApiCalled(int kitId, Boolean used, Object... objects) {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-        String methodName = null;
-        for (int i = 0; i < stackTrace.length; i++) {
-            StackTraceElement element = stackTrace[i];
-            if (element.getClassName().equals(KitFrameworkWrapper.class.getName())) {
-                methodName = element.getMethodName() + "()";
-            }
-        }
-        onKitApiCalled(stackTrace, methodName, kitId, used, objects);
+    public void onKitApiCalled(String methodName, String invokingMethodName, String kitManagerMethodName, int kitId, Boolean used, Object... objects) {
+        events.recordKitApiCall(methodName, invokingMethodName, kitManagerMethodName, kitId, used, objects);
     }
 
-    @Override
-    public void onKitApiCalled(String methodName, int kitId, Boolean used, Object... objects) {
-        onKitApiCalled(Thread.currentThread().getStackTrace(), methodName, kitId, used, objects);
-    }
-
-    private void onKitApiCalled(StackTraceElement[] stackTrace, final String methodName, final int kitId, final boolean used, Object... objects) {
-        String invokingApiMethodName = null;
-        String kitManagerMethodName = null;
-        boolean foundInternal = false;
-        boolean foundExternal = false;
-        final List<Object> objectList = new ArrayList<Object>();
-        for (Object obj : objects) {
-            objectList.add(obj);
-        }
-        for (int i = 0; i < stackTrace.length; i++) {
-            if (!isExternalApiInvocation(stackTrace[i])) {
-                foundInternal = true;
-            }
-            if (foundInternal && !foundExternal) {
-                if (isExternalApiInvocation(stackTrace[i])) {
-                    invokingApiMethodName = getApiName(stackTrace[i - 1]);
-                    foundExternal = true;
-                }
-            }
-            if (stackTrace[i].getClassName().equals("com.mparticle.kits.KitManagerImpl")) {
-                kitManagerMethodName = getApiName(stackTrace[i]);
-            }
-        }
-        final String finalInvokingApiMethodName = invokingApiMethodName;
-        final String finalKitManagerMethodName = kitManagerMethodName;
-        broadcast(new SdkListenerRunnable() {
-            @Override
-            public void run(SdkListener listener) {
-                listener.onKitApiCalled(kitId, methodName, finalInvokingApiMethodName, finalKitManagerMethodName, objectList, used);
-            }
-        });
-    }
-
-
     @Override
     public void onCompositeObjects(final Object child, final Object parent) {
+        if (graphListeners.isEmpty()) {
+            return;
+        }
         broadcast(new SdkGraphListenerRunnable() {
             @Override
             public void run(GraphListener listener) {
@@ -150,6 +129,9 @@ public class InternalListenerManager implements InternalListener {
 
     @Override
     public void onThreadMessage(final String handlerName, final Message msg, final boolean onNewThread) {
+        if (graphListeners.isEmpty()) {
+            return;
+        }
         StackTraceElement[] stackTrace = null;
         if (!onNewThread) {
             stackTrace = Thread.currentThread().getStackTrace();
@@ -163,69 +145,42 @@ public class InternalListenerManager implements InternalListener {
         });
     }
 
+    @Override
+    public void onThreadMessageProcessed(final String handlerName, final int queueDepth, final long droppedCount, final long coalescedCount, final long latencyMillis) {
+        events.recordThreadMessageProcessed(handlerName, queueDepth, droppedCount, coalescedCount, latencyMillis);
+    }
+
     @Override
     public void onEntityStored(final Long primaryKey, final String tableName, ContentValues contentValues) {
         onCompositeObjects(contentValues, tableName + primaryKey);
-        final JSONObject jsonObject = new JSONObject();
-        SdkListener.DatabaseTable table = null;
-        try {
-            table = SdkListener.DatabaseTable.valueOf(tableName.toUpperCase());
-        } catch (IllegalArgumentException ex) {
-            table = SdkListener.DatabaseTable.UNKNOWN;
-        }
-        for (Map.Entry<String, Object> entry : contentValues.valueSet()) {
-            try {
-                if (entry.getValue() == null) {
-                    jsonObject.put(entry.getKey(), JSONObject.NULL);
-                } else {
-                    jsonObject.put(entry.getKey(), entry.getValue());
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        }
-        final SdkListener.DatabaseTable finalTable = table;
-        broadcast(new SdkListenerRunnable() {
-            @Override
-            public void run(SdkListener listener) {
-                listener.onEntityStored(finalTable, primaryKey, jsonObject);
-            }
-        });
+        //the caller is free to reuse its ContentValues once the row has been inserted
+        events.recordEntityStored(tableName, primaryKey, new ContentValues(contentValues));
     }
 
     @Override
     public void onNetworkRequestStarted(final SdkListener.Endpoint type, final String url, final JSONObject body, Object... objects) {
-        for (Object obj : objects) {
-            onCompositeObjects(obj, body);
-        }
-        final List<Object> objectList = new ArrayList<Object>();
-        for (Object obj : objects) {
-            objectList.add(obj);
-        }
-        broadcast(new SdkListenerRunnable() {
-            @Override
-            public void run(SdkListener listener) {
-                listener.onNetworkRequestStarted(type, url, body);
+        if (!graphListeners.isEmpty()) {
+            for (Object obj : objects) {
+                onCompositeObjects(obj, body);
             }
-        });
+        }
+        events.recordNetworkRequestStarted(type, url, body);
     }
 
     @Override
-    public void onNetworkRequestFinished(final SdkListener.Endpoint type, final String url, final JSONObject response, final int responseCode) {
-        broadcast(new SdkListenerRunnable() {
-            @Override
-            public void run(SdkListener listener) {
-                listener.onNetworkRequestFinished(type, url, response, responseCode);
-            }
-        });
+    public void onNetworkRequestFinished(final SdkListener.Endpoint type, final String url, final JSONObject response, final int responseCode, long startNanos) {
+        long durationMillis = (System.nanoTime() - startNanos) / 1000000;
+        events.recordNetworkRequestFinished(type, url, response, responseCode, durationMillis);
     }
 
     @Override
     public void onSessionUpdated(final InternalSession internalSession) {
+        //the session keeps changing while the update waits to be delivered
+        final InternalSession session = new InternalSession(internalSession);
         broadcast(new SdkListenerRunnable() {
             @Override
             public void run(SdkListener listener) {
-                listener.onSessionUpdated(new InternalSession(internalSession));
+                listener.onSessionUpdated(new InternalSession(session));
             }
         });
     }
@@ -287,7 +242,105 @@ public class InternalListenerManager implements InternalListener {
     }
 
     private void broadcast(SdkListenerRunnable runnable) {
-        for (WeakReference<SdkListener> listenerRef : new ArrayList<WeakReference<SdkListener>>(sdkListeners)) {
+        events.recordCallback(runnable);
+    }
+
+    private void deliver(ListenerEventBuffer.Event event) {
+        switch (event.type) {
+            case ListenerEventBuffer.KIT_API_CALL:
+                final int kitId = event.intValue;
+                final String methodName = event.name;
+                final String invokingMethodName = (String) event.value;
+                final String kitManagerMethodName = event.secondaryName;
+                final List<Object> objectList = new ArrayList<Object>(Arrays.asList(event.arguments));
+                final boolean used = Boolean.TRUE.equals(event.used);
+                dispatch(new SdkListenerRunnable() {
+                    @Override
+                    public void run(SdkListener listener) {
+                        listener.onKitApiCalled(kitId, methodName, invokingMethodName, kitManagerMethodName, objectList, used);
+                    }
+                });
+                break;
+            case ListenerEventBuffer.ENTITY_STORED:
+                final SdkListener.DatabaseTable table = getTable(event.name);
+                final long primaryKey = event.longValue;
+                final JSONObject jsonObject = toJson((ContentValues) event.value);
+                dispatch(new SdkListenerRunnable() {
+                    @Override
+                    public void run(SdkListener listener) {
+                        listener.onEntityStored(table, primaryKey, jsonObject);
+                    }
+                });
+                break;
+            case ListenerEventBuffer.NETWORK_REQUEST_STARTED:
+                final SdkListener.Endpoint startedType = (SdkListener.Endpoint) event.value;
+                final String startedUrl = event.name;
+                final JSONObject body = (JSONObject) event.secondaryValue;
+                dispatch(new SdkListenerRunnable() {
+                    @Override
+                    public void run(SdkListener listener) {
+                        listener.onNetworkRequestStarted(startedType, startedUrl, body);
+                    }
+                });
+                break;
+            case ListenerEventBuffer.NETWORK_REQUEST_FINISHED:
+                final SdkListener.Endpoint finishedType = (SdkListener.Endpoint) event.value;
+                final String finishedUrl = event.name;
+                final JSONObject response = (JSONObject) event.secondaryValue;
+                final int responseCode = event.intValue;
+                final long durationMillis = event.durationMillis;
+                dispatch(new SdkListenerRunnable() {
+                    @Override
+                    public void run(SdkListener listener) {
+                        listener.onNetworkRequestFinished(finishedType, finishedUrl, response, responseCode, durationMillis);
+                    }
+                });
+                break;
+            case ListenerEventBuffer.THREAD_MESSAGE_PROCESSED:
+                final String handlerName = event.name;
+                final int queueDepth = event.intValue;
+                final long droppedCount = event.longValue;
+                final long coalescedCount = event.secondaryLongValue;
+                final long latencyMillis = event.durationMillis;
+                dispatch(new SdkListenerRunnable() {
+                    @Override
+                    public void run(SdkListener listener) {
+                        listener.onThreadMessageProcessed(handlerName, queueDepth, droppedCount, coalescedCount, latencyMillis);
+                    }
+                });
+                break;
+            case ListenerEventBuffer.CALLBACK:
+                dispatch((SdkListenerRunnable) event.value);
+                break;
+        }
+    }
+
+    private SdkListener.DatabaseTable getTable(String tableName) {
+        try {
+            return SdkListener.DatabaseTable.valueOf(tableName.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            return SdkListener.DatabaseTable.UNKNOWN;
+        }
+    }
+
+    private JSONObject toJson(ContentValues contentValues) {
+        JSONObject jsonObject = new JSONObject();
+        for (Map.Entry<String, Object> entry : contentValues.valueSet()) {
+            try {
+                if (entry.getValue() == null) {
+                    jsonObject.put(entry.getKey(), JSONObject.NULL);
+                } else {
+                    jsonObject.put(entry.getKey(), entry.getValue());
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return jsonObject;
+    }
+
+    private void dispatch(SdkListenerRunnable runnable) {
+        for (WeakReference<SdkListener> listenerRef : sdkListeners) {
             SdkListener listener = listenerRef.get();
             if (listener == null) {
                 sdkListeners.remove(listenerRef);
@@ -298,7 +351,7 @@ public class InternalListenerManager implements InternalListener {
     }
 
     private void broadcast(SdkGraphListenerRunnable runnable) {
-        for (WeakReference<GraphListener> listenerRef : new ArrayList<WeakReference<GraphListener>>(graphListeners)) {
+        for (WeakReference<GraphListener> listenerRef : graphListeners) {
             GraphListener listener = listenerRef.get();
             if (listener == null) {
                 graphListeners.remove(listenerRef);
@@ -317,11 +370,6 @@ public class InternalListenerManager implements InternalListener {
     }
 
 
-    private String getApiName(StackTraceElement element) {
-        String classNameString = getClassName(element.getClassName(), element.getMethodName());
-        return getApiFormattedName(classNameString, element.getMethodName());
-    }
-
     public static String getApiFormattedName(String className, String methodName) {
         return new StringBuilder()
                 .append(className)
@@ -331,44 +379,6 @@ public class InternalListenerManager implements InternalListener {
                 .toString();
     }
 
-    private String getClassName(String className, String methodName) {
-        String[] packageNames = className.split("\\.");
-        String simpleClassName = packageNames[packageNames.length - 1];
-        if (isObfuscated(simpleClassName)) {
-            try {
-                List<Class> superClasses = new ArrayList<Class>();
-                Class clazz = Class.forName(className);
-                superClasses.add(clazz.getSuperclass());
-                for (Class interfce : clazz.getInterfaces()) {
-                    superClasses.add(interfce);
-                }
-                for (Class superClass : superClasses) {
-                    for (Method method : superClass.getMethods()) {
-                        if (method.getName().equals(methodName)) {
-                            String superClassName = getClassName(superClass.getName(), methodName);
-                            if (!isObfuscated(superClassName)) {
-                                return superClassName;
-                            }
-                        }
-                    }
-                }
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
-        return simpleClassName;
-    }
-
-    private boolean isObfuscated(@NonNull String className) {
-        return Character.isLowerCase(className.toCharArray()[0]) && className.length() <= 3;
-    }
-
-    private boolean isExternalApiInvocation(StackTraceElement element) {
-        return !element.getClassName().startsWith("com.mparticle") ||
-                (element.getClassName().startsWith(context.getApplicationContext().getPackageName()) &&
-                        context.getApplicationContext().getPackageName().length() > 1);
-    }
-
     private boolean hasListeners() {
         return instance.sdkListeners.size() > 0 || instance.graphListeners.size() > 0;
     }
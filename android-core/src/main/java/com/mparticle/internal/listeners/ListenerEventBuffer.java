@@ -0,0 +1,301 @@
+package com.mparticle.internal.listeners;
+
+import android.content.ContentValues;
+
+import com.mparticle.SdkListener;
+import com.mparticle.internal.Logger;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed size ring of instrumentation events, written to by the SDK's threads and drained to the
+ * {@link SdkListener}s on a single background thread.
+ *
+ * Recording an event fills in a preallocated slot under a short lock, so the thread which produced it
+ * never waits on a listener. Events are delivered in the order they were recorded. If the listeners
+ * fall behind and the ring fills up, new events are dropped, and the number dropped is logged.
+ */
+final class ListenerEventBuffer {
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final long DRAIN_KEEP_ALIVE_SECONDS = 30;
+
+    static final int KIT_API_CALL = 1;
+    static final int ENTITY_STORED = 2;
+    static final int NETWORK_REQUEST_STARTED = 3;
+    static final int NETWORK_REQUEST_FINISHED = 4;
+    static final int THREAD_MESSAGE_PROCESSED = 5;
+    static final int CALLBACK = 6;
+
+    interface Dispatcher {
+        void dispatch(Event event);
+    }
+
+    /**
+     * A single slot in the ring. Which fields are set depends on the event's type, and a slot is
+     * cleared as soon as it has been dispatched, so it must not be held on to.
+     */
+    static final class Event {
+        int type;
+        String name;
+        String secondaryName;
+        Object value;
+        Object secondaryValue;
+        Object[] arguments;
+        Boolean used;
+        int intValue;
+        long longValue;
+        long secondaryLongValue;
+        long durationMillis;
+
+        private void clear() {
+            type = 0;
+            name = null;
+            secondaryName = null;
+            value = null;
+            secondaryValue = null;
+            arguments = null;
+            used = null;
+            intValue = 0;
+            longValue = 0;
+            secondaryLongValue = 0;
+            durationMillis = 0;
+        }
+    }
+
+    private final Event[] mEvents;
+    private final int mMask;
+    private final Dispatcher mDispatcher;
+    private final Executor mExecutor;
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    //all guarded by this
+    private long mHead;
+    private long mTail;
+    private long mDropped;
+    private long mDroppedReported;
+    private boolean mDrainScheduled;
+
+    ListenerEventBuffer(Dispatcher dispatcher) {
+        this(DEFAULT_CAPACITY, dispatcher, newDrainExecutor());
+    }
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of 2
+     */
+    ListenerEventBuffer(int capacity, Dispatcher dispatcher, Executor executor) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mEvents = new Event[size];
+        for (int i = 0; i < size; i++) {
+            mEvents[i] = new Event();
+        }
+        mMask = size - 1;
+        mDispatcher = dispatcher;
+        mExecutor = executor;
+    }
+
+    void recordKitApiCall(String methodName, String invokingMethodName, String kitManagerMethodName, int kitId, Boolean used, Object[] arguments) {
+        boolean schedule;
+        synchronized (this) {
+            Event event = claim();
+            if (event == null) {
+                return;
+            }
+            event.type = KIT_API_CALL;
+            event.name = methodName;
+            event.value = invokingMethodName;
+            event.secondaryName = kitManagerMethodName;
+            event.intValue = kitId;
+            event.used = used;
+            event.arguments = arguments;
+            schedule = publish();
+        }
+        if (schedule) {
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    void recordEntityStored(String tableName, long rowId, ContentValues contentValues) {
+        boolean schedule;
+        synchronized (this) {
+            Event event = claim();
+            if (event == null) {
+                return;
+            }
+            event.type = ENTITY_STORED;
+            event.name = tableName;
+            event.longValue = rowId;
+            event.value = contentValues;
+            schedule = publish();
+        }
+        if (schedule) {
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    void recordNetworkRequestStarted(SdkListener.Endpoint type, String url, JSONObject body) {
+        boolean schedule;
+        synchronized (this) {
+            Event event = claim();
+            if (event == null) {
+                return;
+            }
+            event.type = NETWORK_REQUEST_STARTED;
+            event.name = url;
+            event.value = type;
+            event.secondaryValue = body;
+            schedule = publish();
+        }
+        if (schedule) {
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    void recordNetworkRequestFinished(SdkListener.Endpoint type, String url, JSONObject response, int responseCode, long durationMillis) {
+        boolean schedule;
+        synchronized (this) {
+            Event event = claim();
+            if (event == null) {
+                return;
+            }
+            event.type = NETWORK_REQUEST_FINISHED;
+            event.name = url;
+            event.value = type;
+            event.secondaryValue = response;
+            event.intValue = responseCode;
+            event.durationMillis = durationMillis;
+            schedule = publish();
+        }
+        if (schedule) {
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    void recordThreadMessageProcessed(String handlerName, int queueDepth, long droppedCount, long coalescedCount, long latencyMillis) {
+        boolean schedule;
+        synchronized (this) {
+            Event event = claim();
+            if (event == null) {
+                return;
+            }
+            event.type = THREAD_MESSAGE_PROCESSED;
+            event.name = handlerName;
+            event.intValue = queueDepth;
+            event.longValue = droppedCount;
+            event.secondaryLongValue = coalescedCount;
+            event.durationMillis = latencyMillis;
+            schedule = publish();
+        }
+        if (schedule) {
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    /**
+     * record an infrequent event, which is simpler to describe as a callback than as a set of fields
+     */
+    void recordCallback(Object callback) {
+        boolean schedule;
+        synchronized (this) {
+            Event event = claim();
+            if (event == null) {
+                return;
+            }
+            event.type = CALLBACK;
+            event.value = callback;
+            schedule = publish();
+        }
+        if (schedule) {
+            mExecutor.execute(mDrain);
+        }
+    }
+
+    synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    private Event claim() {
+        if (mTail - mHead > mMask) {
+            mDropped++;
+            return null;
+        }
+        return mEvents[(int) (mTail & mMask)];
+    }
+
+    /**
+     * @return true if a drain needs to be scheduled
+     */
+    private boolean publish() {
+        mTail++;
+        if (mDrainScheduled) {
+            return false;
+        }
+        mDrainScheduled = true;
+        return true;
+    }
+
+    /**
+     * Slots between the head and the tail are never written to, so they are dispatched outside of the lock,
+     * and only handed back once the whole batch has been delivered.
+     */
+    void drain() {
+        while (true) {
+            long head;
+            long tail;
+            long newlyDropped;
+            synchronized (this) {
+                head = mHead;
+                tail = mTail;
+                newlyDropped = mDropped - mDroppedReported;
+                mDroppedReported = mDropped;
+                if (head == tail) {
+                    mDrainScheduled = false;
+                }
+            }
+            if (newlyDropped > 0) {
+                Logger.warning(newlyDropped + " SdkListener events were dropped, because the listeners could not keep up");
+            }
+            if (head == tail) {
+                return;
+            }
+            for (long i = head; i < tail; i++) {
+                Event event = mEvents[(int) (i & mMask)];
+                try {
+                    mDispatcher.dispatch(event);
+                } catch (Exception e) {
+                    Logger.error(e, "SdkListener threw an exception");
+                }
+                event.clear();
+            }
+            synchronized (this) {
+                mHead = tail;
+            }
+        }
+    }
+
+    private static Executor newDrainExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                DRAIN_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "mParticleSdkListener");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -19,6 +19,12 @@ public interface MPConnection {
     void setReadTimeout(Integer readTimeout);
     void setRequestProperty(String key, String value);
 
+    /**
+     * Stream the request body rather than buffering it to compute a Content-Length. Implementations which
+     * can not stream may ignore this, the body is sent the same either way.
+     */
+    default void setChunkedStreamingMode(int chunkLength) {}
+
     MPUrl getURL();
     String getRequestMethod();
     String getHeaderField(String key);
@@ -33,4 +39,10 @@ public interface MPConnection {
 
     void setSSLSocketFactory(SSLSocketFactory factory);
     SSLSocketFactory getSSLSocketFactory();
+
+    /**
+     * Abort the request, any blocked read or write will fail with an IOException. Implementations which
+     * can not abort a request may ignore this.
+     */
+    default void disconnect() {}
 }
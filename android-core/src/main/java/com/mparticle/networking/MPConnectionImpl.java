@@ -52,6 +52,11 @@ class MPConnectionImpl implements MPConnection {
         httpURLConnection.setRequestProperty(key, value);
     }
 
+    @Override
+    public void setChunkedStreamingMode(int chunkLength) {
+        httpURLConnection.setChunkedStreamingMode(chunkLength);
+    }
+
     @Override
     public MPUrl getURL() {
         return url;
@@ -110,4 +115,9 @@ class MPConnectionImpl implements MPConnection {
     public SSLSocketFactory getSSLSocketFactory() {
         return ((HttpsURLConnection)httpURLConnection).getSSLSocketFactory();
     }
+
+    @Override
+    public void disconnect() {
+        httpURLConnection.disconnect();
+    }
 }
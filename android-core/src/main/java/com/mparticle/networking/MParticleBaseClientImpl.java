@@ -17,8 +17,13 @@ import java.net.MalformedURLException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class MParticleBaseClientImpl implements MParticleBaseClient {
 
@@ -34,6 +39,9 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
 
     protected static final String REQUEST_ID = "request_id";
 
+    //requests made by this client which may still be in flight, held weakly so completed connections don't need to be removed
+    private final Map<MPConnection, Boolean> mActiveConnections = Collections.synchronizedMap(new WeakHashMap<MPConnection, Boolean>());
+
     public MParticleBaseClientImpl(Context context, ConfigManager configManager) {
         mContext = context;
         mConfigManager = configManager;
@@ -63,9 +71,30 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
     }
 
     public MPConnection makeUrlRequest(Endpoint endpoint, MPConnection connection, String payload, boolean identity) throws IOException {
+        mActiveConnections.put(connection, true);
         return mRequestHandler.makeUrlRequest(endpoint, connection, payload, identity);
     }
 
+    /**
+     * Abort every request made by this client which may still be in flight. Used when the handler which owns
+     * the client is being shut down, so a slow upload doesn't hold up {@link com.mparticle.MParticle#reset(Context)}.
+     * Requests made by other clients, such as identity requests, are not affected.
+     */
+    public void cancelRequests() {
+        List<MPConnection> connections;
+        synchronized (mActiveConnections) {
+            connections = new ArrayList<MPConnection>(mActiveConnections.keySet());
+            mActiveConnections.clear();
+        }
+        for (MPConnection connection : connections) {
+            try {
+                connection.disconnect();
+            } catch (Exception e) {
+                Logger.debug("Unable to cancel request: " + e.getMessage());
+            }
+        }
+    }
+
     protected String getHeaderDateString() {
         SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
         return format.format(new Date());
@@ -74,16 +103,12 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
     protected String getHeaderHashString(MPConnection request, String date, String message, String apiSecret) throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException {
         String method = request.getRequestMethod();
         String path = request.getURL().getDefaultUrl().getFile();
-        StringBuilder hashString = new StringBuilder()
-                .append(method)
-                .append("\n")
-                .append(date)
-                .append("\n")
-                .append(path);
-        if (message != null) {
-            hashString.append(message);
+        String hashString = method + "\n" + date + "\n" + path;
+        if (message == null) {
+            return MPUtility.hmacSha256Encode(apiSecret, hashString);
         }
-        return MPUtility.hmacSha256Encode(apiSecret, hashString.toString());
+        //avoid copying the (potentially very large) message just to sign it
+        return MPUtility.hmacSha256Encode(apiSecret, hashString, message);
     }
 
     public long getNextRequestTime(Endpoint endpoint) {
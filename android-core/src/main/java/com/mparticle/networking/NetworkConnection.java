@@ -7,6 +7,7 @@ import com.mparticle.BuildConfig;
 import com.mparticle.MParticle;
 import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.Logger;
+import com.mparticle.internal.MPUtility;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
@@ -58,7 +59,7 @@ public class NetworkConnection extends BaseNetworkConnection {
             if (payload != null) {
                 OutputStream zos = getOutputStream(connection);
                 try {
-                    zos.write(payload.getBytes());
+                    MPUtility.writeUtf8(payload, zos);
                 } finally {
                     zos.close();
                 }
@@ -92,7 +93,7 @@ public class NetworkConnection extends BaseNetworkConnection {
     /**
      * Custom socket factory used for certificate pinning.
      */
-    protected SSLSocketFactory getSocketFactory(MParticleBaseClientImpl.Endpoint endpoint) throws Exception{
+    protected synchronized SSLSocketFactory getSocketFactory(MParticleBaseClientImpl.Endpoint endpoint) throws Exception{
         if (mSocketFactory == null){
             String keyStoreType = KeyStore.getDefaultType();
             KeyStore keyStore = KeyStore.getInstance(keyStoreType);
@@ -25,6 +25,9 @@ public class NetworkOptions {
 
     Map<Endpoint, DomainMapping> domainMappings = new HashMap<Endpoint, DomainMapping>();
     boolean pinningDisabledInDevelopment = false;
+    int maxConcurrentUploads = DEFAULT_MAX_CONCURRENT_UPLOADS;
+
+    static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 1;
 
     private NetworkOptions() {}
 
@@ -35,6 +38,13 @@ public class NetworkOptions {
         if (builder.pinningDisabledInDevelopment != null) {
             pinningDisabledInDevelopment = builder.pinningDisabledInDevelopment;
         }
+        if (builder.maxConcurrentUploads != null) {
+            if (builder.maxConcurrentUploads < 1) {
+                Logger.warning("Max concurrent uploads must be at least 1, user value: " + builder.maxConcurrentUploads + " will be ignored");
+            } else {
+                maxConcurrentUploads = builder.maxConcurrentUploads;
+            }
+        }
     }
 
     @NonNull
@@ -51,6 +61,7 @@ public class NetworkOptions {
         try {
             JSONObject jsonObject = new JSONObject(jsonString);
             builder.setPinningDisabledInDevelopment(jsonObject.optBoolean("disableDevPinning", false));
+            builder.setMaxConcurrentUploads(jsonObject.optInt("maxConcurrentUploads", DEFAULT_MAX_CONCURRENT_UPLOADS));
             JSONArray domainMappingsJson = jsonObject.getJSONArray("domainMappings");
             for (int i = 0; i < domainMappingsJson.length(); i++) {
                 builder.addDomainMapping(DomainMapping
@@ -92,6 +103,14 @@ public class NetworkOptions {
         return pinningDisabledInDevelopment;
     }
 
+    /**
+     * The number of event batches that may be in flight at the same time when the SDK is draining
+     * a backlog of uploads. Defaults to 1, which uploads batches one after another.
+     */
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
     DomainMapping getDomain(Endpoint endpoint) {
         return domainMappings.get(endpoint);
     }
@@ -108,6 +127,7 @@ public class NetworkOptions {
         try {
             JSONArray domainMappingsJson = new JSONArray();
             networkOptions.put("disableDevPinning", pinningDisabledInDevelopment);
+            networkOptions.put("maxConcurrentUploads", maxConcurrentUploads);
             networkOptions.put("domainMappings", domainMappingsJson);
             for (DomainMapping domainMapping: domainMappings.values()) {
                 domainMappingsJson.put(domainMapping.toString());
@@ -122,6 +142,7 @@ public class NetworkOptions {
     public static class Builder {
         private Map<Endpoint, DomainMapping> domainMappings = new HashMap<Endpoint, DomainMapping>();
         private Boolean pinningDisabledInDevelopment;
+        private Integer maxConcurrentUploads;
 
         private Builder() {
         }
@@ -163,6 +184,20 @@ public class NetworkOptions {
             return this;
         }
 
+        /**
+         * Set the maximum number of event batches which will be uploaded concurrently, over
+         * reused keep-alive connections, when more than one batch is ready to be sent. Batches
+         * are still only removed from the local database once their own upload has succeeded.
+         *
+         * @param maxConcurrentUploads the maximum number of concurrent uploads, must be at least 1
+         * @return the instance of the builder, for chaining calls
+         */
+        @NonNull
+        public Builder setMaxConcurrentUploads(int maxConcurrentUploads) {
+            this.maxConcurrentUploads = maxConcurrentUploads;
+            return this;
+        }
+
         @NonNull
         public NetworkOptions build() {
             return new NetworkOptions(this);
@@ -0,0 +1,109 @@
+package com.mparticle.internal;
+
+import android.os.Handler;
+import android.os.Message;
+
+import com.mparticle.MParticleOptions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.api.support.membermodification.MemberMatcher;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Handler.class})
+public class BaseHandlerTest {
+    private static final int DROPPABLE = 1;
+    private static final int REQUIRED = 2;
+    private static final int UPDATE = 3;
+
+    private TestHandler handler;
+
+    @Before
+    public void setup() {
+        //the Handler methods are not available in unit tests, BaseHandler keeps its own record of the queue
+        PowerMockito.suppress(MemberMatcher.methodsDeclaredIn(Handler.class));
+        handler = new TestHandler();
+    }
+
+    @Test
+    public void testDropOldest() {
+        handler.setMaxQueueSize(3, MParticleOptions.MessageQueueOverflowPolicy.DROP_OLDEST);
+        Message first = send(DROPPABLE, "first");
+        Message required = send(REQUIRED, "required");
+        Message second = send(DROPPABLE, "second");
+        assertEquals(3, handler.getQueueDepth());
+
+        Message third = send(DROPPABLE, "third");
+        assertEquals(3, handler.getQueueDepth());
+        assertFalse(handler.getMessageQueue().contains(first));
+        assertTrue(handler.getMessageQueue().contains(required));
+        assertEquals(1, handler.getDroppedMessageCount());
+
+        send(REQUIRED, "required 2");
+        assertFalse(handler.getMessageQueue().contains(second));
+        assertTrue(handler.getMessageQueue().contains(third));
+        assertEquals(2, handler.getDroppedMessageCount());
+
+        //a message which was removed is no longer a candidate to be dropped
+        handler.removeMessage(DROPPABLE);
+        assertEquals(2, handler.getQueueDepth());
+        send(REQUIRED, "required 3");
+        send(REQUIRED, "required 4");
+        assertEquals(4, handler.getQueueDepth());
+        assertEquals(2, handler.getDroppedMessageCount());
+        assertEquals(0, handler.getCoalescedMessageCount());
+    }
+
+    @Test
+    public void testCoalesce() {
+        handler.setMaxQueueSize(2, MParticleOptions.MessageQueueOverflowPolicy.COALESCE);
+        Message update = send(UPDATE, "session 1");
+        Message droppable = send(DROPPABLE, "droppable");
+
+        Message newerUpdate = send(UPDATE, "session 1");
+        assertEquals(2, handler.getQueueDepth());
+        assertFalse(handler.getMessageQueue().contains(update));
+        assertTrue(handler.getMessageQueue().contains(droppable));
+        assertTrue(handler.getMessageQueue().contains(newerUpdate));
+        assertEquals(1, handler.getCoalescedMessageCount());
+        assertEquals(0, handler.getDroppedMessageCount());
+
+        //nothing to coalesce with, so the oldest droppable message makes room instead
+        Message otherUpdate = send(UPDATE, "session 2");
+        assertEquals(2, handler.getQueueDepth());
+        assertFalse(handler.getMessageQueue().contains(droppable));
+        assertTrue(handler.getMessageQueue().contains(newerUpdate));
+        assertTrue(handler.getMessageQueue().contains(otherUpdate));
+        assertEquals(1, handler.getCoalescedMessageCount());
+        assertEquals(1, handler.getDroppedMessageCount());
+    }
+
+    private Message send(int what, Object obj) {
+        Message message = new Message();
+        message.what = what;
+        message.obj = obj;
+        handler.sendMessageAtTime(message, 0);
+        return message;
+    }
+
+    static class TestHandler extends BaseHandler {
+
+        @Override
+        protected boolean isDroppable(Message msg) {
+            return msg.what == DROPPABLE;
+        }
+
+        @Override
+        protected boolean supersedes(Message incoming, Message queued) {
+            return incoming.what == UPDATE && incoming.obj.equals(queued.obj);
+        }
+    }
+}
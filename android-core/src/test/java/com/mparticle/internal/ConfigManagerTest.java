@@ -5,6 +5,8 @@ import android.content.SharedPreferences;
 
 import com.mparticle.MParticle;
 import com.mparticle.MockMParticle;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.consent.GDPRConsent;
 import com.mparticle.identity.IdentityApi;
 import com.mparticle.internal.messages.BaseMPMessage;
 import com.mparticle.testutils.AndroidUtils;
@@ -14,9 +16,12 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -27,7 +32,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class ConfigManagerTest {
@@ -37,11 +44,18 @@ public class ConfigManagerTest {
     private MParticle mockMp;
     private Random ran = new Random();
     private RandomUtils randomUtils = new RandomUtils();
-
+    @Rule
+    public TemporaryFolder filesDir = new TemporaryFolder();
 
     @Before
     public void setUp() throws Exception {
-        context = new com.mparticle.mock.MockContext();
+        //the config snapshot is written to the files directory, which is deleted after each test
+        context = new com.mparticle.mock.MockContext() {
+            @Override
+            public File getFilesDir() {
+                return filesDir.getRoot();
+            }
+        };
         manager = new ConfigManager(context, MParticle.Environment.Production, "some api key", "some api secret", null, null, null, null, null);
         mockMp = new MockMParticle();
         MParticle.setInstance(mockMp);
@@ -689,4 +703,69 @@ public class ConfigManagerTest {
         assertEquals("12345", manager.getIfModified());
         assertNotNull(manager.getConfigTimestamp());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConsentStateParsedOnce() {
+        long mpid = ran.nextLong();
+        ConsentState consentState = manager.getConsentState(mpid);
+        assertEquals(0, consentState.getGDPRConsentState().size());
+        assertSame(consentState, manager.getConsentState(mpid));
+
+        ConsentState.Builder builder = ConsentState.builder()
+                .addGDPRConsentState("Purpose 1", GDPRConsent.builder(true).build());
+        manager.setConsentState(builder.build(), mpid);
+        ConsentState updated = manager.getConsentState(mpid);
+        assertNotSame(consentState, updated);
+        assertTrue(updated.getGDPRConsentState().get("purpose 1").isConsented());
+        assertSame(updated, manager.getConsentState(mpid));
+
+        //a ConsentState does not change when the builder it came from is reused
+        ConsentState built = builder.build();
+        builder.addGDPRConsentState("Purpose 2", GDPRConsent.builder(false).build());
+        assertEquals(1, built.getGDPRConsentState().size());
+    }
+
+    @Test
+    public void testConfigSnapshot() throws JSONException {
+        JSONObject config = new JSONObject()
+                .put(ConfigManager.KEY_SESSION_TIMEOUT, 120)
+                .put(ConfigManager.KEY_UPLOAD_INTERVAL, 30)
+                .put(ConfigManager.KEY_INFLUENCE_OPEN, 15)
+                .put(ConfigManager.KEY_OPT_OUT, true)
+                .put(ConfigManager.KEY_RAMP, 50)
+                .put(ConfigManager.ALIAS_MAX_WINDOW, 7)
+                .put(ConfigManager.KEY_TRIGGER_ITEMS, new JSONObject()
+                        .put(ConfigManager.KEY_TRIGGER_ITEM_HASHES, new JSONArray().put(1).put(2)));
+        manager.updateConfig(config, "snapshot ETag", null);
+        File snapshotFile = new File(context.getFilesDir(), ConfigSnapshot.FILE_NAME);
+        String storedConfig = manager.getConfig();
+
+        ConfigSnapshot snapshot = ConfigSnapshot.read(snapshotFile, "snapshot ETag", storedConfig);
+        assertNotNull(snapshot);
+        assertEquals(120, snapshot.sessionTimeoutInterval);
+        assertEquals(30, snapshot.uploadInterval);
+        assertEquals(15 * 60 * 1000, snapshot.influenceOpenTimeout);
+        assertTrue(snapshot.sendOoEvents);
+        assertEquals(50, snapshot.rampValue);
+        assertEquals(Integer.valueOf(7), snapshot.aliasMaxWindow);
+        assertEquals("[1,2]", snapshot.triggerMessageHashes.toString());
+        assertNull(snapshot.triggerMessageMatches);
+        assertNull(snapshot.providerPersistence);
+        assertNull(snapshot.dataplan);
+
+        //the snapshot is only used for the ETag and stored config it was written for
+        assertNull(ConfigSnapshot.read(snapshotFile, "another ETag", storedConfig));
+        assertNull(ConfigSnapshot.read(snapshotFile, "snapshot ETag", "{}"));
+
+        //restoring from the snapshot applies the same settings as the stored JSON
+        ConfigManager restored = new ConfigManager(context, MParticle.Environment.Production, "some api key", "some api secret", null, null, null, null, null);
+        restored.onMParticleStarted();
+        assertEquals(120 * 1000, restored.getSessionTimeout());
+        assertEquals(manager.getInfluenceOpenTimeoutMillis(), restored.getInfluenceOpenTimeoutMillis());
+        assertEquals(7, restored.getAliasMaxWindow());
+        assertEquals(manager.getTriggerMessageHashes().toString(), restored.getTriggerMessageHashes().toString());
+
+        manager.clearConfig();
+        assertFalse(snapshotFile.exists());
+    }
+}
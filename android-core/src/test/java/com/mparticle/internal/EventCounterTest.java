@@ -0,0 +1,73 @@
+package com.mparticle.internal;
+
+import android.content.SharedPreferences;
+
+import com.mparticle.mock.MockSharedPreferences;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EventCounterTest {
+
+    @Test
+    public void testPersistsLazily() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        EventCounter counter = new EventCounter(preferences);
+        assertEquals(0, counter.getAndIncrement());
+        assertEquals(1, counter.getAndIncrement());
+        assertEquals(2, counter.get());
+        assertEquals(0, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0));
+
+        counter.persist();
+        assertEquals(2, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0));
+        assertEquals(2, new EventCounter(preferences).get());
+    }
+
+    @Test
+    public void testReset() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        EventCounter counter = new EventCounter(preferences);
+        counter.getAndIncrement();
+        counter.getAndIncrement();
+        assertEquals(2, counter.getAndReset());
+        assertEquals(0, counter.get());
+        assertEquals(0, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+    }
+
+    @Test
+    public void testRecover() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        EventCounter counter = new EventCounter(preferences);
+        counter.getAndIncrement();
+        counter.recover(10);
+        assertEquals(10, counter.get());
+        assertEquals(10, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0));
+
+        //never move the counter backwards
+        counter.recover(4);
+        assertEquals(10, counter.get());
+    }
+
+    @Test
+    public void testClear() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        EventCounter counter = EventCounter.getInstance(preferences);
+        counter.getAndIncrement();
+        counter.getAndIncrement();
+        counter.persist();
+        assertSame(counter, EventCounter.getInstance(preferences));
+
+        preferences.edit().clear().commit();
+        EventCounter.clear();
+        counter = EventCounter.getInstance(preferences);
+        assertEquals(0, counter.getAndIncrement());
+        counter.getAndIncrement();
+
+        //the new instance must not think the old count was already written
+        counter.persist();
+        assertEquals(2, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        EventCounter.clear();
+    }
+}
@@ -0,0 +1,28 @@
+package com.mparticle.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JsonScannerTest {
+
+    @Test
+    public void testFindTopLevelString() {
+        assertEquals("e", JsonScanner.findTopLevelString("{\"a\":{\"dt\":\"x\"},\"dt\":\"e\"}", "dt"));
+        assertEquals("uac", JsonScanner.findTopLevelString("{\"ui\":[1,\"dt\",{}], \"dt\" : \"uac\" }", "dt"));
+        assertEquals("ss", JsonScanner.findTopLevelString("{\"n\":12,\"b\":true,\"dt\":\"ss\",\"z\":null}", "dt"));
+        assertEquals("q", JsonScanner.findTopLevelString("{\"x\":\"}\\\\\",\"dt\":\"q\"}", "dt"));
+    }
+
+    @Test
+    public void testFindTopLevelStringMissing() {
+        assertNull(JsonScanner.findTopLevelString("{}", "dt"));
+        assertNull(JsonScanner.findTopLevelString("{\"a\":{\"dt\":\"x\"}}", "dt"));
+        assertNull(JsonScanner.findTopLevelString("{\"dt\":5}", "dt"));
+        assertNull(JsonScanner.findTopLevelString("{\"dt\":\"a\\\"b\"}", "dt"));
+        assertNull(JsonScanner.findTopLevelString("[\"dt\"]", "dt"));
+        assertNull(JsonScanner.findTopLevelString("{\"dt\":\"unterminated", "dt"));
+        assertNull(JsonScanner.findTopLevelString(null, "dt"));
+    }
+}
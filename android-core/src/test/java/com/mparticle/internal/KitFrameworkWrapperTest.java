@@ -10,6 +10,8 @@ import com.mparticle.MParticle;
 import com.mparticle.MParticleOptions;
 import com.mparticle.MockMParticle;
 import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.internal.listeners.InternalListener;
+import com.mparticle.internal.listeners.InternalListenerManager;
 import com.mparticle.testutils.RandomUtils;
 
 import org.json.JSONArray;
@@ -22,6 +24,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
@@ -75,6 +78,44 @@ public class KitFrameworkWrapperTest {
         assertNull(wrapper.getAttributeQueue());
     }
 
+    @Test
+    @PrepareForTest({InternalListenerManager.class})
+    public void testKitApiCallsAreTaggedWithInvokingMethod() throws Exception {
+        final KitFrameworkWrapper wrapper = new KitFrameworkWrapper(Mockito.mock(Context.class),
+                Mockito.mock(ReportingManager.class),
+                Mockito.mock(ConfigManager.class),
+                Mockito.mock(AppStateManager.class),
+                true,
+                Mockito.mock(MParticleOptions.class));
+        InternalListener listener = Mockito.mock(InternalListener.class);
+        PowerMockito.mockStatic(InternalListenerManager.class);
+        Mockito.when(InternalListenerManager.isEnabled()).thenReturn(true);
+        Mockito.when(InternalListenerManager.getListener()).thenReturn(listener);
+        wrapper.setKitsLoaded(true);
+        KitManager mockKitManager = Mockito.mock(KitManager.class);
+        wrapper.setKitManager(mockKitManager);
+
+        final MPEvent event = new MPEvent.Builder("example").build();
+        Mockito.doAnswer(invocation -> {
+            wrapper.mCoreCallbacks.getKitListener().onKitApiCalled("logEvent()", "KitManagerImpl.logEvent()", 1, true, event);
+            return null;
+        }).when(mockKitManager).logEvent(event);
+        boolean tagged = KitFrameworkWrapper.tagApiCall("MParticle.logEvent()");
+        assertTrue(tagged);
+        //a nested public api call does not replace the outermost one
+        assertFalse(KitFrameworkWrapper.tagApiCall("MParticle.logScreen()"));
+        try {
+            wrapper.logEvent(event);
+        } finally {
+            KitFrameworkWrapper.untagApiCall(tagged);
+        }
+        Mockito.verify(listener).onKitApiCalled("logEvent()", "MParticle.logEvent()", "KitManagerImpl.logEvent()", 1, true, event);
+
+        //the tag is cleared once the call returns
+        wrapper.mCoreCallbacks.getKitListener().onKitApiCalled("logEvent()", "KitManagerImpl.logEvent()", 2, true, event);
+        Mockito.verify(listener).onKitApiCalled("logEvent()", null, "KitManagerImpl.logEvent()", 2, true, event);
+    }
+
     @Test
     @PrepareForTest({CommerceEvent.class})
     public void testReplayEvents() throws Exception {
@@ -256,7 +297,42 @@ public class KitFrameworkWrapperTest {
         for (int i = 0 ; i < 50; i++) {
             wrapper.queueEvent(event);
         }
-        assertEquals(10, wrapper.getEventQueue().size());
+        assertEquals(51, wrapper.getEventQueue().size());
+    }
+
+    @Test
+    public void testQueueEventByteLimit() throws Exception {
+        KitFrameworkWrapper wrapper = new KitFrameworkWrapper(Mockito.mock(Context.class),
+                Mockito.mock(ReportingManager.class),
+                Mockito.mock(ConfigManager.class),
+                Mockito.mock(AppStateManager.class),
+                true,
+                Mockito.mock(MParticleOptions.class));
+        wrapper.setKitsLoaded(false);
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            attributes.put("attribute key " + i, "attribute value " + i);
+        }
+        MPEvent event = new MPEvent.Builder("example").customAttributes(attributes).build();
+        long size = KitFrameworkWrapper.estimateSize(event);
+        int capacity = (int) (KitFrameworkWrapper.MAX_QUEUED_EVENT_BYTES / size);
+        for (int i = 0; i < capacity + 5; i++) {
+            assertTrue(wrapper.queueEvent(event));
+        }
+        assertEquals(capacity, wrapper.getEventQueue().size());
+        assertEquals(5, wrapper.getDroppedEventCount());
+
+        KitManager mockKitManager = Mockito.mock(KitManager.class);
+        Mockito.doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(mockKitManager).runOnKitThread(Mockito.any(Runnable.class));
+        wrapper.setKitManager(mockKitManager);
+        wrapper.setKitsLoaded(true);
+        Mockito.verify(mockKitManager, Mockito.times(capacity)).logEvent(event);
+        assertEquals(capacity, wrapper.getReplayedEventCount());
+        assertNull(wrapper.getEventQueue());
+        assertFalse(wrapper.queueEvent(event));
     }
 
     @Test
@@ -308,7 +384,7 @@ public class KitFrameworkWrapperTest {
         for (int i = 0 ; i < 50; i++) {
             wrapper.logEvent(event);
         }
-        assertEquals(10, wrapper.getEventQueue().size());
+        assertEquals(51, wrapper.getEventQueue().size());
 
         wrapper.setKitsLoaded(true);
 
@@ -346,7 +422,7 @@ public class KitFrameworkWrapperTest {
         for (int i = 0 ; i < 50; i++) {
             wrapper.logEvent(event);
         }
-        assertEquals(10, wrapper.getEventQueue().size());
+        assertEquals(51, wrapper.getEventQueue().size());
 
         wrapper.setKitsLoaded(true);
 
@@ -384,7 +460,7 @@ public class KitFrameworkWrapperTest {
         for (int i = 0 ; i < 50; i++) {
             wrapper.logEvent(event);
         }
-        assertEquals(10, wrapper.getEventQueue().size());
+        assertEquals(51, wrapper.getEventQueue().size());
 
         wrapper.setKitsLoaded(true);
 
@@ -422,7 +498,7 @@ public class KitFrameworkWrapperTest {
         for (int i = 0 ; i < 50; i++) {
             wrapper.logScreen(event);
         }
-        assertEquals(10, wrapper.getEventQueue().size());
+        assertEquals(51, wrapper.getEventQueue().size());
 
         wrapper.setKitsLoaded(true);
 
@@ -13,6 +13,7 @@ import org.json.JSONObject;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -219,6 +220,46 @@ public class MPUtilityTest {
         }
     }
 
+    @Test
+    public void testHmacSha256Encode() throws Exception {
+        //RFC 4231, test case 2
+        assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+                MPUtility.hmacSha256Encode("Jefe", "what do ya want for nothing?").toLowerCase());
+        assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+                MPUtility.hmacSha256Encode("Jefe", "what do ya want ", "for nothing?").toLowerCase());
+    }
+
+    @Test
+    public void testStreamedHmacMatchesConcatenation() throws Exception {
+        String key = "secret \u00e9\u4e2d";
+        String data = "POST\n1234\n/v2/us1-abc/events";
+        List<String> messages = new ArrayList<String>();
+        messages.add("");
+        messages.add("{\"msgs\":[]}");
+        messages.add("{\"n\":\"caf\u00e9 \u4e2d\u6587 \ud83d\ude00\"}");
+        //long enough to be encoded in several chunks, with multi-byte characters across the chunk boundaries
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 40 * 1024) {
+            builder.append("abc\u00e9\u4e2d\ud83d\ude00");
+        }
+        messages.add(builder.toString());
+        for (String message : messages) {
+            assertEquals(MPUtility.hmacSha256Encode(key, data + message), MPUtility.hmacSha256Encode(key, data, message));
+        }
+    }
+
+    @Test
+    public void testWriteUtf8() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 40 * 1024) {
+            builder.append("abc\u00e9\u4e2d\ud83d\ude00");
+        }
+        String message = builder.toString();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MPUtility.writeUtf8(message, outputStream);
+        assertArrayEquals(message.getBytes("UTF-8"), outputStream.toByteArray());
+    }
+
     private List<Object> toList(JSONArray jsonArray) {
         List<Object> list = new ArrayList<Object>();
         for (int i = 0; i < jsonArray.length(); i++) {
@@ -63,6 +63,7 @@ public class MParticleApiClientImplTest {
 
         PowerMockito.mockStatic(MPUtility.class);
         Mockito.when(MPUtility.hmacSha256Encode(Mockito.anyString(), Mockito.anyString())).thenReturn("encoded");
+        Mockito.when(MPUtility.hmacSha256Encode(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn("encoded");
         ArgumentCaptor<String> headerCapture = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<String> headerValueCapture = ArgumentCaptor.forClass(String.class);
         client.addMessageSignature(mockConnection, "this is a sample batch");
@@ -6,6 +6,7 @@ import com.mparticle.consent.ConsentState;
 import com.mparticle.consent.GDPRConsent;
 import com.mparticle.mock.MockContext;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -105,4 +106,33 @@ public class MessageBatchTest {
         assertEquals("bar hardware id", consent.getString(Constants.MessageKey.CONSENT_STATE_HARDWARE_ID));
         assertEquals("bar document", consent.getString(Constants.MessageKey.CONSENT_STATE_DOCUMENT));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAddRawMessages() throws Exception {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+        ConfigManager manager = new ConfigManager(new MockContext(), MParticle.Environment.Production, "some api key", "some api secret", null, null, null, null, null);
+        BatchId batchId = new BatchId(manager.getMpid(), null, null, null);
+        MessageBatch batch = MessageBatch.create(false, manager, new JSONObject(), batchId);
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"first\"}");
+        batch.addMessage("{\"dt\":\"uac\",\"ua\":{\"foo\":\"bar\"}}");
+        batch.addMessage(new JSONObject().put("dt", "e").put("n", "third"));
+
+        assertNull(batch.getMessages());
+        assertEquals("bar", batch.getUserAttributeState().getString("foo"));
+        assertNull(batch.getIdentityState());
+
+        JSONObject serialized = new JSONObject(batch.toString());
+        assertEquals(batch.getString("id"), serialized.getString("id"));
+        JSONArray messages = serialized.getJSONArray("msgs");
+        assertEquals(3, messages.length());
+        assertEquals("first", messages.getJSONObject(0).getString("n"));
+        assertFalse(messages.getJSONObject(1).has("ua"));
+        assertEquals("third", messages.getJSONObject(2).getString("n"));
+
+        batch.parseRawMessages();
+        assertEquals(3, batch.getMessages().length());
+        assertEquals(3, new JSONObject(batch.toString()).getJSONArray("msgs").length());
+    }
+}
@@ -7,6 +7,7 @@ import com.mparticle.MockMParticle;
 import com.mparticle.identity.AliasRequest;
 import com.mparticle.internal.database.MPDatabase;
 import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.messages.BaseMPMessage;
 import com.mparticle.internal.messages.MPAliasMessage;
 import com.mparticle.mock.MockContext;
 import com.mparticle.testutils.AndroidUtils;
@@ -17,13 +18,27 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
 import static com.mparticle.internal.Constants.MessageKey.REQUEST_ID;
 import static com.mparticle.testutils.TestingUtils.assertJsonEqual;
 import static junit.framework.TestCase.assertNull;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(PowerMockRunner.class)
 public class MessageHandlerTest {
@@ -85,4 +100,165 @@ public class MessageHandlerTest {
         insertedAliasRequest.value.remove(REQUEST_ID);
         assertJsonEqual(aliasMessage, insertedAliasRequest.value);
     }
+
+    @Test
+    public void testOverflowPolicyMessages() throws JSONException {
+        Message event = createMessage(MessageHandler.STORE_MESSAGE, new BaseMPMessage.Builder(Constants.MessageType.EVENT).build(new InternalSession(), null, 1));
+        Message sessionStart = createMessage(MessageHandler.STORE_MESSAGE, new BaseMPMessage.Builder(Constants.MessageType.SESSION_START).build(new InternalSession(), null, 1));
+        Message identityChange = createMessage(MessageHandler.STORE_MESSAGE, new BaseMPMessage.Builder(Constants.MessageType.USER_IDENTITY_CHANGE).build(new InternalSession(), null, 1));
+        Message sessionEnd = createMessage(MessageHandler.CREATE_SESSION_END_MESSAGE, null);
+        assertTrue(handler.isDroppable(event));
+        assertTrue(handler.isDroppable(createMessage(MessageHandler.STORE_BREADCRUMB, null)));
+        assertFalse(handler.isDroppable(sessionStart));
+        assertFalse(handler.isDroppable(identityChange));
+        assertFalse(handler.isDroppable(sessionEnd));
+
+        InternalSession session = new InternalSession();
+        assertTrue(handler.supersedes(createMessage(MessageHandler.UPDATE_SESSION_END, session), createMessage(MessageHandler.UPDATE_SESSION_END, session)));
+        assertFalse(handler.supersedes(createMessage(MessageHandler.UPDATE_SESSION_END, session), createMessage(MessageHandler.UPDATE_SESSION_END, new InternalSession())));
+        JSONObject attributes = new JSONObject().put(Constants.MessageKey.SESSION_ID, "1");
+        JSONObject sameSession = new JSONObject().put(Constants.MessageKey.SESSION_ID, "1");
+        JSONObject otherSession = new JSONObject().put(Constants.MessageKey.SESSION_ID, "2");
+        assertTrue(handler.supersedes(createMessage(MessageHandler.UPDATE_SESSION_ATTRIBUTES, attributes), createMessage(MessageHandler.UPDATE_SESSION_ATTRIBUTES, sameSession)));
+        assertFalse(handler.supersedes(createMessage(MessageHandler.UPDATE_SESSION_ATTRIBUTES, attributes), createMessage(MessageHandler.UPDATE_SESSION_ATTRIBUTES, otherSession)));
+        assertFalse(handler.supersedes(event, createMessage(MessageHandler.STORE_MESSAGE, event.obj)));
+    }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testGroupCommitFlushesAtBatchSize() throws JSONException {
+        PowerMockito.mockStatic(MessageManager.class);
+        MPDatabase database = Mockito.mock(MPDatabase.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(database);
+        TestMessageHandler handler = new TestMessageHandler(3, 1000);
+        InternalSession session = createSession();
+
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 1)));
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 2)));
+        Mockito.verify(mParticleDatabaseManager, Mockito.never()).insertMessage(Mockito.anyString(), Mockito.any(BaseMPMessage.class), Mockito.anyString(), Mockito.anyInt());
+        //the linger flush is only scheduled once per batch
+        assertEquals(1, handler.scheduledFlushes.size());
+        assertEquals(Long.valueOf(1000), handler.scheduledFlushes.get(0));
+
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 3)));
+        Mockito.verify(mParticleDatabaseManager, Mockito.times(3)).insertMessage(Mockito.anyString(), Mockito.any(BaseMPMessage.class), Mockito.anyString(), Mockito.anyInt());
+        Mockito.verify(database, Mockito.times(1)).beginTransaction();
+        Mockito.verify(database, Mockito.times(1)).setTransactionSuccessful();
+        Mockito.verify(database, Mockito.times(1)).endTransaction();
+        Mockito.verify(mMessageManager, Mockito.times(3)).checkForTrigger(Mockito.any(BaseMPMessage.class));
+    }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testGroupCommitFlushesAfterLinger() throws JSONException {
+        PowerMockito.mockStatic(MessageManager.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(Mockito.mock(MPDatabase.class));
+        TestMessageHandler handler = new TestMessageHandler(10, 500);
+        InternalSession session = createSession();
+
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 1)));
+        Mockito.verify(mParticleDatabaseManager, Mockito.never()).insertMessage(Mockito.anyString(), Mockito.any(BaseMPMessage.class), Mockito.anyString(), Mockito.anyInt());
+        assertEquals(1, handler.scheduledFlushes.size());
+        assertEquals(Long.valueOf(500), handler.scheduledFlushes.get(0));
+
+        handler.handleMessageImpl(createMessage(MessageHandler.FLUSH_STORED_MESSAGES, null));
+        Mockito.verify(mParticleDatabaseManager, Mockito.times(1)).insertMessage(Mockito.anyString(), Mockito.any(BaseMPMessage.class), Mockito.anyString(), Mockito.anyInt());
+
+        //once the scheduled flush has run, the next message schedules another
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 2)));
+        assertEquals(2, handler.scheduledFlushes.size());
+    }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testGroupCommitCollapsesSessionEndTime() throws JSONException {
+        PowerMockito.mockStatic(MessageManager.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(Mockito.mock(MPDatabase.class));
+        TestMessageHandler handler = new TestMessageHandler(3, 1000);
+        InternalSession session = createSession();
+        InternalSession otherSession = createSession();
+
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 300)));
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(session, 100)));
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, createEvent(otherSession, 200)));
+
+        Mockito.verify(mParticleDatabaseManager, Mockito.times(2)).updateSessionEndTime(Mockito.anyString(), Mockito.anyLong(), Mockito.anyLong());
+        Mockito.verify(mParticleDatabaseManager).updateSessionEndTime(session.mSessionID, 300, 0);
+        Mockito.verify(mParticleDatabaseManager).updateSessionEndTime(otherSession.mSessionID, 200, 0);
+    }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testGroupCommitFlushesBeforeSessionEnd() throws JSONException {
+        PowerMockito.mockStatic(MessageManager.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(Mockito.mock(MPDatabase.class));
+        TestMessageHandler handler = new TestMessageHandler(10, 1000);
+        InternalSession session = createSession();
+        BaseMPMessage event = createEvent(session, 1);
+
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, event));
+        Map.Entry<String, Set<Long>> entry = new HashMap.SimpleEntry<String, Set<Long>>(session.mSessionID, Collections.singleton(1L));
+        handler.handleMessageImpl(createMessage(MessageHandler.CREATE_SESSION_END_MESSAGE, entry));
+
+        InOrder inOrder = Mockito.inOrder(mParticleDatabaseManager);
+        inOrder.verify(mParticleDatabaseManager).insertMessage("apiKey", event, "dataplan1", 1);
+        inOrder.verify(mParticleDatabaseManager).getSessionForSessionEndMessage(Mockito.eq(session.mSessionID), Mockito.any(), Mockito.<Set<Long>>any());
+    }
+
+    @Test
+    @PrepareForTest({MessageManager.class})
+    public void testGroupCommitFlushesBeforeUpload() throws JSONException {
+        PowerMockito.mockStatic(MessageManager.class);
+        Mockito.when(mParticleDatabaseManager.getDatabase()).thenReturn(Mockito.mock(MPDatabase.class));
+        TestMessageHandler handler = new TestMessageHandler(10, 1000);
+        InternalSession session = createSession();
+        BaseMPMessage event = createEvent(session, 1);
+
+        handler.handleMessageImpl(createMessage(MessageHandler.STORE_MESSAGE, event));
+        handler.handleMessageImpl(createMessage(MessageHandler.CLEAR_MESSAGES_FOR_UPLOAD, null));
+
+        InOrder inOrder = Mockito.inOrder(mParticleDatabaseManager, mMessageManager);
+        inOrder.verify(mParticleDatabaseManager).insertMessage("apiKey", event, "dataplan1", 1);
+        inOrder.verify(mMessageManager).messagesClearedForUpload();
+    }
+
+    private InternalSession createSession() {
+        InternalSession session = new InternalSession();
+        session.mSessionID = UUID.randomUUID().toString();
+        return session;
+    }
+
+    private BaseMPMessage createEvent(InternalSession session, long timestamp) throws JSONException {
+        return new BaseMPMessage.Builder(Constants.MessageType.EVENT)
+                .timestamp(timestamp)
+                .build(session, null, 1);
+    }
+
+    private Message createMessage(int what, Object obj) {
+        Message message = Mockito.mock(Message.class);
+        message.what = what;
+        message.obj = obj;
+        return message;
+    }
+
+    /**
+     * records the linger flushes which would have been posted, rather than posting them
+     */
+    class TestMessageHandler extends MessageHandler {
+        List<Long> scheduledFlushes = new ArrayList<Long>();
+
+        TestMessageHandler(int maxStoreBatchSize, long maxStoreLingerMillis) {
+            super(mMessageManager, new MockContext(), mParticleDatabaseManager, "dataplan1", 1, maxStoreBatchSize, maxStoreLingerMillis);
+        }
+
+        @Override
+        boolean databaseAvailable() {
+            return true;
+        }
+
+        @Override
+        void scheduleFlush(long delayMillis) {
+            scheduledFlushes.add(delayMillis);
+        }
+    }
 }
@@ -44,7 +44,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(PowerMockRunner.class)
@@ -104,6 +106,24 @@ public class MessageManagerTest {
         assertNotNull(stateInfo.getInt(Constants.MessageKey.STATE_INFO_NETWORK_TYPE));
     }
 
+    @Test
+    @PrepareForTest({MessageManager.class, MPUtility.class})
+    public void testDeviceStateSnapshotReuse() throws Exception {
+        PowerMockito.mockStatic(MPUtility.class, Answers.RETURNS_MOCKS.get());
+        DeviceStateSampler sampler = new DeviceStateSampler(context);
+        DeviceStateSampler.Snapshot snapshot = sampler.getSnapshot(false);
+        assertFalse(snapshot.hasDisk);
+        assertSame(snapshot, sampler.getSnapshot(false));
+
+        DeviceStateSampler.Snapshot diskSnapshot = sampler.getSnapshot(true);
+        assertNotSame(snapshot, diskSnapshot);
+        assertTrue(diskSnapshot.hasDisk);
+        assertSame(diskSnapshot, sampler.getSnapshot(false));
+
+        sampler.invalidate();
+        assertNotSame(diskSnapshot, sampler.getSnapshot(false));
+    }
+
     @Test
     @PrepareForTest({MessageManager.class, MPUtility.class})
     public void testGetTotalMemory() throws Exception {
@@ -214,7 +234,8 @@ public class MessageManagerTest {
         assertEquals("test event name", message.getName());
         assertEquals(message.get(Constants.MessageKey.EVENT_TYPE), MParticle.EventType.Location);
         assertEquals("test screen name", message.getString(Constants.MessageKey.CURRENT_ACTIVITY));
-        assertEquals(1, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        assertEquals(0, message.getInt(Constants.MessageKey.EVENT_COUNTER));
+        assertEquals(1, EventCounter.getInstance(context.getSharedPreferences("name", 0)).get());
         for (int i = 0; i < 100; i++){
             manager.logEvent(event, "test screen name");
         }
@@ -226,10 +247,37 @@ public class MessageManagerTest {
         JSONArray flag2 = flags.getJSONArray("flag 2");
         assertEquals(flag2.length(), 1);
         assertEquals(flag2.get(0), "value 3");
+        assertEquals(101, EventCounter.getInstance(context.getSharedPreferences("name", 0)).get());
+        EventCounter.getInstance(context.getSharedPreferences("name", 0)).persist();
         assertEquals(101, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
         Mockito.verify(messageHandler, Mockito.times(101)).sendMessage(Mockito.any(Message.class));
     }
 
+    @Test
+    public void testEventCounterAfterReset() throws Exception {
+        SharedPreferences preferences = context.getSharedPreferences("name", 0);
+        appStateManager.getSession().start(context);
+        MPEvent event = new MPEvent.Builder("test event name", MParticle.EventType.Other).build();
+        for (int i = 0; i < 5; i++) {
+            manager.logEvent(event, null);
+        }
+        EventCounter.getInstance(preferences).persist();
+        assertEquals(5, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+
+        //what MParticle.reset does: clear the same SharedPreferences object the counter was created with,
+        //then drop the counter
+        preferences.edit().clear().commit();
+        EventCounter.clear();
+
+        BaseMPMessage message = manager.logEvent(event, null);
+        assertEquals(0, message.getInt(Constants.MessageKey.EVENT_COUNTER));
+        for (int i = 0; i < 4; i++) {
+            manager.logEvent(event, null);
+        }
+        EventCounter.getInstance(preferences).persist();
+        assertEquals(5, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+    }
+
     @Test
     public void testLogCommerceEventWithNullUser() throws Exception {
         CommerceEvent event = new CommerceEvent.Builder(Product.ADD_TO_CART, new Product.Builder("foo", "bar", 10).build()).build();
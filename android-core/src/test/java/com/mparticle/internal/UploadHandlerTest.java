@@ -32,6 +32,9 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -289,6 +292,40 @@ public class UploadHandlerTest {
         assertNotNull(deletedUpload.value);
     }
 
+    @Test
+    public void testConcurrentUploadDeleteLogic() throws Exception {
+        final List<Integer> deletedUploads = Collections.synchronizedList(new ArrayList<Integer>());
+
+        MParticleDBManager database = new MParticleDBManager(new MockContext()) {
+            @Override
+            public int deleteUpload(int id) {
+                deletedUploads.add(id);
+                return id;
+            }
+        };
+
+        UploadHandler uploadHandler = new UploadHandler(new MockContext(),
+                Mockito.mock(ConfigManager.class),
+                Mockito.mock(AppStateManager.class),
+                Mockito.mock(MessageManager.class),
+                database, Mockito.mock(KitFrameworkWrapper.class));
+
+        MParticleApiClient mockApiClient = Mockito.mock(MParticleApiClient.class);
+        Mockito.when(mockApiClient.sendMessageBatch("batch 1")).thenReturn(202);
+        Mockito.when(mockApiClient.sendMessageBatch("batch 2")).thenReturn(500);
+        Mockito.when(mockApiClient.sendMessageBatch("batch 3")).thenReturn(200);
+        uploadHandler.setApiClient(mockApiClient);
+
+        List<MParticleDBManager.ReadyUpload> readyUploads = new ArrayList<MParticleDBManager.ReadyUpload>();
+        readyUploads.add(new MParticleDBManager.ReadyUpload(1, false, "batch 1"));
+        readyUploads.add(new MParticleDBManager.ReadyUpload(2, false, "batch 2"));
+        readyUploads.add(new MParticleDBManager.ReadyUpload(3, false, "batch 3"));
+        uploadHandler.uploadMessagesConcurrently(readyUploads, 2);
+
+        Mockito.verify(mockApiClient, Mockito.times(3)).sendMessageBatch(Mockito.anyString());
+        assertEquals(Arrays.asList(1, 3), deletedUploads);
+    }
+
     @PrepareForTest({MPUtility.class})
     public void testAliasCallback() throws MParticleApiClientImpl.MPRampException, MParticleApiClientImpl.MPThrottleException, JSONException, IOException {
         RandomUtils ran = new RandomUtils();
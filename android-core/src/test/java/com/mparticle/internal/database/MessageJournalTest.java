@@ -0,0 +1,206 @@
+package com.mparticle.internal.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageJournalTest {
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("message_journal", null);
+        file.delete();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        MessageJournal journal = new MessageJournal(file, 4096);
+        assertTrue(journal.isEmpty());
+        assertTrue(journal.append(new MessageJournal.Entry("key", 1000, "session", 5, "plan", 2, "{\"n\":\"one\"}", 1, 7)));
+        assertTrue(journal.append(new MessageJournal.Entry("key", 2000, "session", 5, null, null, "{\"n\":\"two\"}", 3)));
+        assertFalse(journal.isEmpty());
+
+        List<MessageJournal.Entry> entries = new MessageJournal(file, 4096).snapshot().getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("key", entries.get(0).apiKey);
+        assertEquals(1000, entries.get(0).createdAt);
+        assertEquals("session", entries.get(0).sessionId);
+        assertEquals(5, entries.get(0).mpId);
+        assertEquals("plan", entries.get(0).dataplanId);
+        assertEquals(Integer.valueOf(2), entries.get(0).dataplanVersion);
+        assertEquals("{\"n\":\"one\"}", entries.get(0).message);
+        assertEquals(1, entries.get(0).status);
+        assertEquals(Integer.valueOf(7), entries.get(0).eventCounter);
+        assertNull(entries.get(1).dataplanId);
+        assertNull(entries.get(1).dataplanVersion);
+        assertEquals("{\"n\":\"two\"}", entries.get(1).message);
+        assertEquals(3, entries.get(1).status);
+        assertNull(entries.get(1).eventCounter);
+    }
+
+    @Test
+    public void testRecordWithoutEventCounter() {
+        //records written before the event counter was journaled end right after the message
+        byte[] bytes = new MessageJournal.Entry("key", 1000, "session", 5, null, null, "one", 1, 7).toBytes(3);
+        byte[] legacy = new byte[bytes.length - 5 - 8];
+        System.arraycopy(bytes, 0, legacy, 0, legacy.length);
+        MessageJournal.Entry entry = MessageJournal.Entry.fromBytes(legacy);
+        assertEquals("one", entry.message);
+        assertEquals(1, entry.status);
+        assertNull(entry.eventCounter);
+        assertEquals(MessageJournal.Entry.NO_SEQUENCE, entry.sequence);
+    }
+
+    @Test
+    public void testSequence() throws IOException {
+        MessageJournal journal = new MessageJournal(file, 4096);
+        journal.append(createEntry("one"));
+        journal.append(createEntry("two"));
+        List<MessageJournal.Entry> entries = journal.snapshot().getEntries();
+        assertEquals(1, entries.get(0).sequence);
+        assertEquals(2, entries.get(1).sequence);
+
+        //numbering continues from the records found when the journal is reopened
+        journal = new MessageJournal(file, 4096);
+        journal.append(createEntry("three"));
+        assertEquals(3, journal.snapshot().getEntries().get(2).sequence);
+
+        //and from the last committed record once they have all been discarded
+        journal.discard(journal.snapshot());
+        journal = new MessageJournal(file, 4096);
+        journal.setMinimumSequence(3);
+        journal.setMinimumSequence(1);
+        journal.append(createEntry("four"));
+        assertEquals(4, journal.snapshot().getEntries().get(0).sequence);
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        MessageJournal journal = new MessageJournal(file, 4096);
+        journal.append(createEntry("one"));
+        journal.append(createEntry("two"));
+
+        //corrupt the last byte of the second record's payload
+        int end = MessageJournal.FILE_HEADER_SIZE + 2 * (8 + createEntry("one").toBytes(1).length);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(end - 1);
+        raf.write(0);
+        raf.close();
+
+        journal = new MessageJournal(file, 4096);
+        List<MessageJournal.Entry> entries = journal.snapshot().getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("one", entries.get(0).message);
+
+        //the torn record is overwritten by the next append
+        journal.append(createEntry("three"));
+        entries = new MessageJournal(file, 4096).snapshot().getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("three", entries.get(1).message);
+    }
+
+    @Test
+    public void testDiscardKeepsLaterRecords() throws IOException {
+        MessageJournal journal = new MessageJournal(file, 4096);
+        journal.append(createEntry("one"));
+        journal.append(createEntry("two"));
+        MessageJournal.Snapshot snapshot = journal.snapshot();
+        journal.append(createEntry("three"));
+
+        journal.discard(snapshot);
+        assertFalse(journal.isEmpty());
+        List<MessageJournal.Entry> entries = journal.snapshot().getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("three", entries.get(0).message);
+        entries = new MessageJournal(file, 4096).snapshot().getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("three", entries.get(0).message);
+
+        journal.discard(journal.snapshot());
+        assertTrue(journal.isEmpty());
+        assertTrue(new MessageJournal(file, 4096).isEmpty());
+    }
+
+    @Test
+    public void testInterruptedDiscard() throws IOException {
+        MessageJournal journal = new MessageJournal(file, 4096);
+        journal.append(createEntry("one"));
+        journal.append(createEntry("two"));
+        MessageJournal.Snapshot snapshot = journal.snapshot();
+        journal.append(createEntry("three"));
+        journal.discard(snapshot);
+
+        //a crash after the committed records were skipped, but before the later ones were switched over to
+        //the other segment, leaves them in place in the original segment
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeInt(MessageJournal.FILE_HEADER_SIZE + 2 * (8 + createEntry("one").toBytes(1).length));
+        raf.close();
+        List<MessageJournal.Entry> entries = new MessageJournal(file, 4096).snapshot().getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("three", entries.get(0).message);
+
+        //a crash before anything was written leaves every record, none are lost
+        journal = new MessageJournal(file, 4096);
+        journal.discard(journal.snapshot());
+        journal.append(createEntry("four"));
+        journal.append(createEntry("five"));
+        raf = new RandomAccessFile(file, "rw");
+        int head = raf.readInt();
+        raf.close();
+        snapshot = journal.snapshot();
+        journal.append(createEntry("six"));
+        journal.discard(snapshot);
+        raf = new RandomAccessFile(file, "rw");
+        raf.writeInt(head);
+        raf.close();
+        entries = new MessageJournal(file, 4096).snapshot().getEntries();
+        assertEquals(3, entries.size());
+        assertEquals("four", entries.get(0).message);
+        assertEquals("six", entries.get(2).message);
+    }
+
+    @Test
+    public void testFullSegment() throws IOException {
+        MessageJournal journal = new MessageJournal(file, 256);
+        int count = 0;
+        while (journal.append(createEntry("message " + count))) {
+            count++;
+        }
+        assertTrue(count > 0);
+        assertEquals(count, journal.snapshot().getEntries().size());
+
+        journal.discard(journal.snapshot());
+        assertTrue(journal.append(createEntry("after")));
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            builder.append('a');
+        }
+        journal.discard(journal.snapshot());
+        try {
+            journal.append(createEntry(builder.toString()));
+            throw new AssertionError("expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private MessageJournal.Entry createEntry(String message) {
+        return new MessageJournal.Entry("key", 1000, "session", 5, null, null, message, 1);
+    }
+}
@@ -6,6 +6,7 @@ import com.mparticle.SdkListener;
 import com.mparticle.internal.MPUtility;
 import com.mparticle.mock.MockContext;
 
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
@@ -13,6 +14,11 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -82,6 +88,40 @@ public class InternalListenerManagerTest {
     }
 
 
+    @Test
+    @PrepareForTest({MPUtility.class})
+    public void testConcurrentNetworkRequestDurations() throws Exception {
+        DevStateMockContext mockContext = new DevStateMockContext();
+        mockContext.setDebuggable(true);
+        PowerMockito.mockStatic(MPUtility.class);
+        Mockito.when(MPUtility.getProp(Mockito.anyString())).thenReturn(mockContext.getPackageName());
+        InternalListenerManager manager = InternalListenerManager.start(mockContext);
+
+        final Map<String, Long> durations = new ConcurrentHashMap<String, Long>();
+        final CountDownLatch finished = new CountDownLatch(2);
+        SdkListener listener = new SdkListener() {
+            @Override
+            public void onNetworkRequestFinished(Endpoint type, String url, JSONObject response, int responseCode, long durationMillis) {
+                durations.put(url, durationMillis);
+                finished.countDown();
+            }
+        };
+        manager.addListener(listener);
+
+        long secondStart = System.nanoTime();
+        long firstStart = secondStart - TimeUnit.SECONDS.toNanos(5);
+        manager.onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, "first", new JSONObject());
+        manager.onNetworkRequestStarted(SdkListener.Endpoint.EVENTS, "second", new JSONObject());
+        //the first upload is still in flight when the second one to the same endpoint starts
+        manager.onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, "first", new JSONObject(), 202, firstStart);
+        manager.onNetworkRequestFinished(SdkListener.Endpoint.EVENTS, "second", new JSONObject(), 202, secondStart);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        manager.removeListener(listener);
+
+        assertTrue(durations.get("first") >= 5000);
+        assertTrue(durations.get("second") < 5000);
+    }
+
     @Test
     public void assertAppDebuggable() {
         DevStateMockContext context = new DevStateMockContext();
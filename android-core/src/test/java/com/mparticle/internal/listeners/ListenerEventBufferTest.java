@@ -0,0 +1,88 @@
+package com.mparticle.internal.listeners;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ListenerEventBufferTest {
+
+    @Test
+    public void testEventsDeliveredInOrder() {
+        final List<String> delivered = new ArrayList<String>();
+        ManualExecutor executor = new ManualExecutor();
+        ListenerEventBuffer buffer = new ListenerEventBuffer(8, new ListenerEventBuffer.Dispatcher() {
+            @Override
+            public void dispatch(ListenerEventBuffer.Event event) {
+                delivered.add(event.name + ":" + event.intValue);
+            }
+        }, executor);
+
+        buffer.recordKitApiCall("logEvent()", "MParticle.logEvent()", "KitManagerImpl.logEvent()", 1, true, new Object[0]);
+        buffer.recordThreadMessageProcessed("handler", 2, 0, 0, 5);
+        buffer.recordKitApiCall("logScreen()", "MParticle.logScreen()", "KitManagerImpl.logScreen()", 3, false, new Object[0]);
+
+        //only one drain is scheduled, however many events are waiting
+        assertEquals(1, executor.runnables.size());
+        assertEquals(0, delivered.size());
+        executor.runAll();
+        assertEquals(3, delivered.size());
+        assertEquals("logEvent():1", delivered.get(0));
+        assertEquals("handler:2", delivered.get(1));
+        assertEquals("logScreen():3", delivered.get(2));
+
+        buffer.recordKitApiCall("setOptOut()", "MParticle.setOptOut()", "KitManagerImpl.setOptOut()", 4, true, new Object[0]);
+        assertEquals(1, executor.runnables.size());
+        executor.runAll();
+        assertEquals("setOptOut():4", delivered.get(3));
+    }
+
+    @Test
+    public void testEventsDroppedWhenFull() {
+        final List<ListenerEventBuffer.Event> delivered = new ArrayList<ListenerEventBuffer.Event>();
+        ManualExecutor executor = new ManualExecutor();
+        ListenerEventBuffer buffer = new ListenerEventBuffer(4, new ListenerEventBuffer.Dispatcher() {
+            @Override
+            public void dispatch(ListenerEventBuffer.Event event) {
+                delivered.add(event);
+            }
+        }, executor);
+
+        for (int i = 0; i < 6; i++) {
+            buffer.recordKitApiCall("logEvent()", null, null, i, true, new Object[0]);
+        }
+        assertEquals(2, buffer.getDroppedCount());
+        executor.runAll();
+        assertEquals(4, delivered.size());
+
+        //slots are cleared once they have been dispatched
+        assertNull(delivered.get(0).name);
+
+        //and are available to be reused
+        buffer.recordKitApiCall("logEvent()", null, null, 6, true, new Object[0]);
+        executor.runAll();
+        assertEquals(5, delivered.size());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    static class ManualExecutor implements Executor {
+        List<Runnable> runnables = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnables.add(runnable);
+        }
+
+        void runAll() {
+            List<Runnable> pending = runnables;
+            runnables = new ArrayList<Runnable>();
+            for (Runnable runnable : pending) {
+                runnable.run();
+            }
+        }
+    }
+}
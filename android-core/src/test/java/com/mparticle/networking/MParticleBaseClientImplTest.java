@@ -3,6 +3,7 @@ package com.mparticle.networking;
 import androidx.annotation.NonNull;
 
 import com.mparticle.internal.ConfigManager;
+import com.mparticle.mock.MockContext;
 import com.mparticle.mock.MockSharedPreferences;
 
 import org.junit.Test;
@@ -67,4 +68,32 @@ public class MParticleBaseClientImplTest {
         assertTrue(getSocketFactoryCalled[0]);
         assertTrue(writeCalled[0]);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCancelRequests() throws Exception {
+        ConfigManager mockConfigManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(mockConfigManager.getApiKey()).thenReturn("foo");
+        MParticleBaseClientImpl client = new MParticleBaseClientImpl(new MockContext(), mockConfigManager);
+        client.setRequestHandler(Mockito.mock(BaseNetworkConnection.class));
+
+        MPConnection firstConnection = Mockito.mock(MPConnection.class);
+        MPConnection secondConnection = Mockito.mock(MPConnection.class);
+        client.makeUrlRequest(MParticleBaseClientImpl.Endpoint.EVENTS, firstConnection, "message", true);
+        client.makeUrlRequest(MParticleBaseClientImpl.Endpoint.EVENTS, secondConnection, "message", true);
+
+        //requests made by another client, such as identity requests, are left alone
+        MParticleBaseClientImpl otherClient = new MParticleBaseClientImpl(new MockContext(), mockConfigManager);
+        otherClient.setRequestHandler(Mockito.mock(BaseNetworkConnection.class));
+        MPConnection otherConnection = Mockito.mock(MPConnection.class);
+        otherClient.makeUrlRequest(MParticleBaseClientImpl.Endpoint.IDENTITY, otherConnection, "message", true);
+
+        client.cancelRequests();
+        Mockito.verify(firstConnection).disconnect();
+        Mockito.verify(secondConnection).disconnect();
+        Mockito.verify(otherConnection, Mockito.never()).disconnect();
+
+        //connections are only cancelled once
+        client.cancelRequests();
+        Mockito.verify(firstConnection, Mockito.times(1)).disconnect();
+    }
+}
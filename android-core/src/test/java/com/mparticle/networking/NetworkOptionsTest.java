@@ -6,6 +6,7 @@ import org.junit.Test;
 
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -33,12 +34,21 @@ public class NetworkOptionsTest {
                                 .addCertificate("random5", random.getAlphaNumericString(24, 256))
                                 .build())
                 .setPinningDisabledInDevelopment(true)
+                .setMaxConcurrentUploads(4)
                 .build();
         String optionsString = options.toString();
         NetworkOptions optionsDeserialized = NetworkOptions.withNetworkOptions(optionsString);
         assertTrue(equals(options, optionsDeserialized));
     }
 
+    @Test
+    public void testMaxConcurrentUploads() {
+        assertEquals(1, NetworkOptions.builder().build().getMaxConcurrentUploads());
+        assertEquals(3, NetworkOptions.builder().setMaxConcurrentUploads(3).build().getMaxConcurrentUploads());
+        assertEquals(1, NetworkOptions.builder().setMaxConcurrentUploads(0).build().getMaxConcurrentUploads());
+        assertEquals(1, NetworkOptions.builder().setMaxConcurrentUploads(-5).build().getMaxConcurrentUploads());
+    }
+
     public static boolean equals(NetworkOptions networkOptions1, NetworkOptions networkOptions2) {
         if (networkOptions1 == networkOptions2) {
             return true;
@@ -46,6 +56,9 @@ public class NetworkOptionsTest {
         if (networkOptions1.pinningDisabledInDevelopment != networkOptions2.pinningDisabledInDevelopment) {
             return false;
         }
+        if (networkOptions1.maxConcurrentUploads != networkOptions2.maxConcurrentUploads) {
+            return false;
+        }
         for (Map.Entry<MParticleBaseClientImpl.Endpoint, DomainMapping> entry : networkOptions1.domainMappings.entrySet()) {
             DomainMapping other = networkOptions2.domainMappings.get(entry.getKey());
             if (other == null || !equals(entry.getValue(), other)) {
@@ -0,0 +1,36 @@
+package com.mparticle.kits;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Filtering hashes for a single event, shared by every kit the event is forwarded to.
+ *
+ * The strings which are hashed for filtering (event type, event name, attribute keys) are the same for every kit,
+ * only the filters differ, so KitManagerImpl creates one cache per event and passes it to each kit's
+ * {@link KitConfiguration}. Each distinct string is hashed once per event instead of once per kit.
+ *
+ * This is not thread-safe, and should not outlive the event it was created for.
+ */
+final class EventHashCache {
+    private final Map<String, Map<String, Integer>> mHashes = new HashMap<String, Map<String, Integer>>(4);
+
+    /**
+     * @return {@link KitUtils#hashForFiltering(String)} of prefix + value, or of value alone if prefix is null
+     */
+    int get(@Nullable String prefix, @Nullable String value) {
+        Map<String, Integer> hashes = mHashes.get(prefix);
+        if (hashes == null) {
+            hashes = new HashMap<String, Integer>();
+            mHashes.put(prefix, hashes);
+        }
+        Integer hash = hashes.get(value);
+        if (hash == null) {
+            hash = KitUtils.hashForFiltering(prefix == null ? value : prefix + value);
+            hashes.put(value, hash);
+        }
+        return hash;
+    }
+}
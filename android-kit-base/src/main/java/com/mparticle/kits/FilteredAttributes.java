@@ -0,0 +1,151 @@
+package com.mparticle.kits;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A kit's view of an event's attributes, with the keys that its filters exclude masked out.
+ *
+ * Every kit an event is forwarded to shares the same underlying attribute map, so forwarding an event no longer
+ * copies its attributes once per kit. A kit which modifies its view, directly or through the entry set, gets a
+ * private copy at that point and no other kit sees the change.
+ */
+final class FilteredAttributes extends AbstractMap<String, String> {
+    private final Map<String, String> mSource;
+    private final Set<String> mExcluded;
+    private Map<String, String> mCopy;
+
+    /**
+     * @param source   the event's attributes, which must not be modified while this view is in use
+     * @param excluded keys of source which are filtered out
+     */
+    FilteredAttributes(Map<String, String> source, Set<String> excluded) {
+        mSource = source;
+        mExcluded = excluded == null ? Collections.<String>emptySet() : excluded;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (mCopy != null) {
+            return mCopy.get(key);
+        }
+        return mExcluded.contains(key) ? null : mSource.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (mCopy != null) {
+            return mCopy.containsKey(key);
+        }
+        return !mExcluded.contains(key) && mSource.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        if (mCopy != null) {
+            return mCopy.size();
+        }
+        return mSource.size() - mExcluded.size();
+    }
+
+    @Override
+    public String put(String key, String value) {
+        return materialize().put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        return materialize().remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> map) {
+        materialize().putAll(map);
+    }
+
+    @Override
+    public void clear() {
+        materialize().clear();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (mCopy != null) {
+            return mCopy.entrySet();
+        }
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return FilteredAttributes.this.size();
+            }
+        };
+    }
+
+    private Map<String, String> materialize() {
+        if (mCopy == null) {
+            Map<String, String> copy = new HashMap<String, String>(mSource.size());
+            for (Entry<String, String> entry : mSource.entrySet()) {
+                if (!mExcluded.contains(entry.getKey())) {
+                    copy.put(entry.getKey(), entry.getValue());
+                }
+            }
+            mCopy = copy;
+        }
+        return mCopy;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, String>> {
+        private final Iterator<Entry<String, String>> mIterator = mSource.entrySet().iterator();
+        private Entry<String, String> mNext;
+        private String mLastKey;
+
+        @Override
+        public boolean hasNext() {
+            while (mNext == null && mIterator.hasNext()) {
+                Entry<String, String> entry = mIterator.next();
+                if (!mExcluded.contains(entry.getKey())) {
+                    mNext = entry;
+                }
+            }
+            return mNext != null;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final String key = mNext.getKey();
+            final String value = mNext.getValue();
+            mNext = null;
+            mLastKey = key;
+            return new SimpleEntry<String, String>(key, value) {
+                @Override
+                public String setValue(String newValue) {
+                    super.setValue(newValue);
+                    return materialize().put(key, newValue);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (mLastKey == null) {
+                throw new IllegalStateException();
+            }
+            materialize().remove(mLastKey);
+            mLastKey = null;
+        }
+    }
+}
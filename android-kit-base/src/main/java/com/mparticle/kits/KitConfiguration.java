@@ -17,16 +17,21 @@ import com.mparticle.internal.Constants;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 import com.mparticle.kits.mappings.CustomMapping;
+import com.mparticle.kits.mappings.CustomMappingIndex;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class KitConfiguration {
 
@@ -65,6 +70,34 @@ public class KitConfiguration {
     //If set to true, our sdk honor user's optout wish. If false, we still collect data on opt-ed out users, but only for reporting.
     private final static String HONOR_OPT_OUT = "honorOptOut";
     private final static String KEY_PROJECTIONS = "pr";
+
+    //hashes of strings which do not depend on the event, computed once rather than per event per kit
+    private final static int[] EVENT_TYPE_HASHES = new int[MParticle.EventType.values().length];
+    private final static int HASH_PRODUCT_COUPON_CODE = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_COUPON_CODE);
+    private final static int HASH_PRODUCT_POSITION = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_POSITION);
+    private final static int HASH_PRODUCT_VARIANT = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_VARIANT);
+    private final static int HASH_PRODUCT_CATEGORY = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_CATEGORY);
+    private final static int HASH_PRODUCT_BRAND = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_BRAND);
+    private final static int HASH_PROMOTION_ID = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_ID);
+    private final static int HASH_PROMOTION_CREATIVE = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_CREATIVE);
+    private final static int HASH_PROMOTION_NAME = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_NAME);
+    private final static int HASH_PROMOTION_POSITION = KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_POSITION);
+    private final static int HASH_CCPA_CONSENT_PURPOSE = KitUtils.hashForFiltering("2" + Constants.MessageKey.CCPA_CONSENT_KEY);
+    //GDPR purposes are chosen by the app, but there are only ever a handful of them
+    private final static int MAX_GDPR_PURPOSE_HASHES = 100;
+    private final static Map<String, Integer> GDPR_PURPOSE_HASHES = new ConcurrentHashMap<String, Integer>();
+    //per subclass, whether it overrides shouldLogEvent(MPEvent), filterCommerceEvent(CommerceEvent) or shouldLogScreen(String)
+    private final static int OVERRIDES_SHOULD_LOG_EVENT = 1;
+    private final static int OVERRIDES_FILTER_COMMERCE_EVENT = 2;
+    private final static int OVERRIDES_SHOULD_LOG_SCREEN = 4;
+    private final static Map<Class<?>, Integer> FILTER_OVERRIDES = new ConcurrentHashMap<Class<?>, Integer>();
+
+    static {
+        for (MParticle.EventType eventType : MParticle.EventType.values()) {
+            EVENT_TYPE_HASHES[eventType.ordinal()] = KitUtils.hashForFiltering(eventType.ordinal() + "");
+        }
+    }
+
     private boolean avfIsActive = false;
     private boolean avfShouldIncludeMatches = false;
     protected boolean consentForwardingIncludeMatches = false;
@@ -88,6 +121,7 @@ public class KitConfiguration {
     private int lowBracket = 0;
     private int highBracket = 101;
     private LinkedList<CustomMapping> customMappingList;
+    private CustomMappingIndex customMappingIndex;
     private CustomMapping defaultCustomMapping = null;
     private CustomMapping defaultScreenCustomMapping = null;
     private CustomMapping defaultCommerceCustomMapping = null;
@@ -247,6 +281,7 @@ public class KitConfiguration {
                 }
             }
         }
+        customMappingIndex = new CustomMappingIndex(customMappingList);
         mConsentForwardingRules.clear();
         if (json.has(KEY_CONSENT_FORWARDING_RULES)) {
             JSONObject consentForwardingRule = json.getJSONObject(KEY_CONSENT_FORWARDING_RULES);
@@ -264,6 +299,10 @@ public class KitConfiguration {
     }
 
     boolean shouldIncludeFromAttributeValueFiltering(Map<String, String> attributes) {
+        return shouldIncludeFromAttributeValueFiltering(attributes, new EventHashCache());
+    }
+
+    boolean shouldIncludeFromAttributeValueFiltering(Map<String, String> attributes, EventHashCache hashes) {
         boolean shouldInclude = true;
         if (avfIsActive) {
             boolean isMatch = false;
@@ -272,10 +311,10 @@ public class KitConfiguration {
                 while (attIterator.hasNext()) {
                     Map.Entry<String, String> entry = attIterator.next();
                     String key = entry.getKey();
-                    int keyHash = KitUtils.hashForFiltering(key);
+                    int keyHash = hashes.get(null, key);
                     if (keyHash == avfHashedAttribute) {
                         String value = entry.getValue();
-                        int valueHash = KitUtils.hashForFiltering(value);
+                        int valueHash = hashes.get(null, value);
                         if (valueHash == avfHashedValue) {
                             isMatch = true;
                         }
@@ -316,7 +355,7 @@ public class KitConfiguration {
         }
         Map<String, GDPRConsent> gdprConsentState = consentState.getGDPRConsentState();
         for (Map.Entry<String, GDPRConsent> gdprConsent : gdprConsentState.entrySet()) {
-            int consentPurposeHash = KitUtils.hashForFiltering("1" + gdprConsent.getKey());
+            int consentPurposeHash = getGDPRPurposeHash(gdprConsent.getKey());
             Boolean consented = mConsentForwardingRules.get(consentPurposeHash);
             if (consented != null && consented == gdprConsent.getValue().isConsented()) {
                 return true;
@@ -324,8 +363,7 @@ public class KitConfiguration {
         }
         CCPAConsent ccpaConsent = consentState.getCCPAConsentState();
         if (ccpaConsent != null) {
-            int consentPurposeHash = KitUtils.hashForFiltering("2" + Constants.MessageKey.CCPA_CONSENT_KEY);
-            Boolean consented = mConsentForwardingRules.get(consentPurposeHash);
+            Boolean consented = mConsentForwardingRules.get(HASH_CCPA_CONSENT_PURPOSE);
             if (consented != null && consented == ccpaConsent.isConsented()) {
                 return true;
             }
@@ -333,27 +371,67 @@ public class KitConfiguration {
         return false;
     }
 
+    private static int getGDPRPurposeHash(String purpose) {
+        Integer hash = GDPR_PURPOSE_HASHES.get(purpose);
+        if (hash == null) {
+            hash = KitUtils.hashForFiltering("1" + purpose);
+            if (GDPR_PURPOSE_HASHES.size() < MAX_GDPR_PURPOSE_HASHES) {
+                GDPR_PURPOSE_HASHES.put(purpose, hash);
+            }
+        }
+        return hash;
+    }
+
     protected CommerceEvent filterCommerceEvent(CommerceEvent event) {
-        if (!shouldIncludeFromAttributeValueFiltering(event.getCustomAttributeStrings())) {
+        return applyCommerceEventFilters(event, new EventHashCache(), true);
+    }
+
+    /**
+     * The entry point used when forwarding events, which shares hashes with the other kits the event is forwarded to.
+     * A subclass which overrides {@link #filterCommerceEvent(CommerceEvent)} has its override called instead.
+     */
+    final CommerceEvent filterCommerceEvent(CommerceEvent event, EventHashCache hashes) {
+        if (overridesFilter(OVERRIDES_FILTER_COMMERCE_EVENT)) {
+            return filterCommerceEvent(event);
+        }
+        return applyCommerceEventFilters(event, hashes, true);
+    }
+
+    /**
+     * Whether {@link #filterCommerceEvent(CommerceEvent, EventHashCache)} would forward the event at all, without
+     * making the kit's copy of it.
+     */
+    final boolean shouldLogCommerceEvent(CommerceEvent event, EventHashCache hashes) {
+        if (overridesFilter(OVERRIDES_FILTER_COMMERCE_EVENT)) {
+            return filterCommerceEvent(event) != null;
+        }
+        return applyCommerceEventFilters(event, hashes, false) != null;
+    }
+
+    private CommerceEvent applyCommerceEventFilters(CommerceEvent event, EventHashCache hashes, boolean copy) {
+        if (avfIsActive && !shouldIncludeFromAttributeValueFiltering(event.getCustomAttributeStrings(), hashes)) {
             return null;
         }
         if (mTypeFilters != null &&
-                !mTypeFilters.get(KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + ""), true)) {
+                !mTypeFilters.get(hashes.get(null, CommerceEventUtils.getEventType(event) + ""), true)) {
             return null;
         }
-        CommerceEvent filteredEvent = new CommerceEvent.Builder(event).build();
+        //kits may modify the event they are given, so each kit gets a copy of its own rather than the event the app
+        //logged. The filtering steps only make further copies if their filters actually remove something, and may
+        //share the unchanged parts of this copy
+        CommerceEvent filteredEvent = copy ? new CommerceEvent.Builder(event).build() : event;
         filteredEvent = filterCommerceEntities(filteredEvent);
-        filteredEvent = filterCommerceEntityAttributes(filteredEvent);
-        filteredEvent = filterCommerceEventAttributes(filteredEvent);
+        filteredEvent = filterCommerceEntityAttributes(filteredEvent, hashes);
+        filteredEvent = filterCommerceEventAttributes(filteredEvent, hashes);
         return filteredEvent;
     }
 
 
-    private CommerceEvent filterCommerceEntityAttributes(CommerceEvent filteredEvent) {
+    private CommerceEvent filterCommerceEntityAttributes(CommerceEvent filteredEvent, EventHashCache hashes) {
         if (mCommerceEntityAttributeFilters == null || mCommerceEntityAttributeFilters.size() == 0) {
             return filteredEvent;
         }
-        CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
+        CommerceEvent.Builder builder = null;
         for (Map.Entry<Integer, SparseBooleanArray> entry : mCommerceEntityAttributeFilters.entrySet()) {
             int entity = entry.getKey();
             SparseBooleanArray filters = entry.getValue();
@@ -361,113 +439,205 @@ public class KitConfiguration {
                 case ENTITY_PRODUCT:
                     if (filteredEvent.getProducts() != null && filteredEvent.getProducts().size() > 0) {
                         List<Product> filteredProducts = new LinkedList<Product>();
+                        boolean changed = false;
                         for (Product product : filteredEvent.getProducts()) {
-                            Product.Builder productBuilder = new Product.Builder(product);
-                            if (product.getCustomAttributes() != null && product.getCustomAttributes().size() > 0) {
-                                HashMap<String, String> filteredCustomAttributes = new HashMap<String, String>(product.getCustomAttributes().size());
-                                for (Map.Entry<String, String> customAttribute : product.getCustomAttributes().entrySet()) {
-                                    if (filters.get(KitUtils.hashForFiltering(customAttribute.getKey()), true)) {
-                                        filteredCustomAttributes.put(customAttribute.getKey(), customAttribute.getValue());
-                                    }
-                                }
-                                productBuilder.customAttributes(filteredCustomAttributes);
-                            }
-                            if (!MPUtility.isEmpty(product.getCouponCode()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_COUPON_CODE), true)) {
-                                productBuilder.couponCode(product.getCouponCode());
-                            } else {
-                                productBuilder.couponCode(null);
-                            }
-                            if (product.getPosition() != null && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_POSITION), true)) {
-                                productBuilder.position(product.getPosition());
-                            } else {
-                                productBuilder.position(null);
-                            }
-                            if (!MPUtility.isEmpty(product.getVariant()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_VARIANT), true)) {
-                                productBuilder.variant(product.getVariant());
-                            } else {
-                                productBuilder.variant(null);
-                            }
-                            if (!MPUtility.isEmpty(product.getCategory()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_CATEGORY), true)) {
-                                productBuilder.category(product.getCategory());
-                            } else {
-                                productBuilder.category(null);
-                            }
-                            if (!MPUtility.isEmpty(product.getBrand()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PRODUCT_BRAND), true)) {
-                                productBuilder.brand(product.getBrand());
-                            } else {
-                                productBuilder.brand(null);
+                            Product filteredProduct = filterProduct(product, filters, hashes);
+                            changed |= filteredProduct != product;
+                            filteredProducts.add(filteredProduct);
+                        }
+                        if (changed) {
+                            if (builder == null) {
+                                builder = new CommerceEvent.Builder(filteredEvent);
                             }
-                            filteredProducts.add(productBuilder.build());
+                            builder.products(filteredProducts);
                         }
-                        builder.products(filteredProducts);
                     }
                     break;
                 case ENTITY_PROMOTION:
                     if (filteredEvent.getPromotions() != null && filteredEvent.getPromotions().size() > 0) {
                         List<Promotion> filteredPromotions = new LinkedList<Promotion>();
+                        boolean changed = false;
                         for (Promotion promotion : filteredEvent.getPromotions()) {
-                            Promotion filteredPromotion = new Promotion();
-                            if (!MPUtility.isEmpty(promotion.getId()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_ID), true)) {
-                                filteredPromotion.setId(promotion.getId());
-                            }
-                            if (!MPUtility.isEmpty(promotion.getCreative()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_CREATIVE), true)) {
-                                filteredPromotion.setCreative(promotion.getCreative());
-                            }
-                            if (!MPUtility.isEmpty(promotion.getName()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_NAME), true)) {
-                                filteredPromotion.setName(promotion.getName());
-                            }
-                            if (!MPUtility.isEmpty(promotion.getPosition()) && filters.get(KitUtils.hashForFiltering(CommerceEventUtils.Constants.ATT_PROMOTION_POSITION), true)) {
-                                filteredPromotion.setPosition(promotion.getPosition());
-                            }
+                            Promotion filteredPromotion = filterPromotion(promotion, filters);
+                            changed |= filteredPromotion != promotion;
                             filteredPromotions.add(filteredPromotion);
                         }
-                        builder.promotions(filteredPromotions);
+                        if (changed) {
+                            if (builder == null) {
+                                builder = new CommerceEvent.Builder(filteredEvent);
+                            }
+                            builder.promotions(filteredPromotions);
+                        }
                     }
 
                     break;
             }
         }
-        return builder.build();
+        return builder == null ? filteredEvent : builder.build();
+    }
+
+    /**
+     * @return the product itself if none of its fields or attributes are filtered out, otherwise a filtered copy
+     */
+    private Product filterProduct(Product product, SparseBooleanArray filters, EventHashCache hashes) {
+        Map<String, String> customAttributes = product.getCustomAttributes();
+        boolean filterCustomAttributes = false;
+        if (customAttributes != null) {
+            for (String key : customAttributes.keySet()) {
+                if (!filters.get(hashes.get(null, key), true)) {
+                    filterCustomAttributes = true;
+                    break;
+                }
+            }
+        }
+        boolean keepCouponCode = !MPUtility.isEmpty(product.getCouponCode()) && filters.get(HASH_PRODUCT_COUPON_CODE, true);
+        boolean keepPosition = product.getPosition() != null && filters.get(HASH_PRODUCT_POSITION, true);
+        boolean keepVariant = !MPUtility.isEmpty(product.getVariant()) && filters.get(HASH_PRODUCT_VARIANT, true);
+        boolean keepCategory = !MPUtility.isEmpty(product.getCategory()) && filters.get(HASH_PRODUCT_CATEGORY, true);
+        boolean keepBrand = !MPUtility.isEmpty(product.getBrand()) && filters.get(HASH_PRODUCT_BRAND, true);
+        if (!filterCustomAttributes
+                && (keepCouponCode || product.getCouponCode() == null)
+                && (keepPosition || product.getPosition() == null)
+                && (keepVariant || product.getVariant() == null)
+                && (keepCategory || product.getCategory() == null)
+                && (keepBrand || product.getBrand() == null)) {
+            return product;
+        }
+        Product.Builder productBuilder = new Product.Builder(product);
+        if (filterCustomAttributes) {
+            HashMap<String, String> filteredCustomAttributes = new HashMap<String, String>(customAttributes.size());
+            for (Map.Entry<String, String> customAttribute : customAttributes.entrySet()) {
+                if (filters.get(hashes.get(null, customAttribute.getKey()), true)) {
+                    filteredCustomAttributes.put(customAttribute.getKey(), customAttribute.getValue());
+                }
+            }
+            productBuilder.customAttributes(filteredCustomAttributes);
+        }
+        productBuilder.couponCode(keepCouponCode ? product.getCouponCode() : null);
+        productBuilder.position(keepPosition ? product.getPosition() : null);
+        productBuilder.variant(keepVariant ? product.getVariant() : null);
+        productBuilder.category(keepCategory ? product.getCategory() : null);
+        productBuilder.brand(keepBrand ? product.getBrand() : null);
+        return productBuilder.build();
+    }
+
+    /**
+     * @return the promotion itself if none of its fields are filtered out, otherwise a filtered copy
+     */
+    private Promotion filterPromotion(Promotion promotion, SparseBooleanArray filters) {
+        boolean keepId = !MPUtility.isEmpty(promotion.getId()) && filters.get(HASH_PROMOTION_ID, true);
+        boolean keepCreative = !MPUtility.isEmpty(promotion.getCreative()) && filters.get(HASH_PROMOTION_CREATIVE, true);
+        boolean keepName = !MPUtility.isEmpty(promotion.getName()) && filters.get(HASH_PROMOTION_NAME, true);
+        boolean keepPosition = !MPUtility.isEmpty(promotion.getPosition()) && filters.get(HASH_PROMOTION_POSITION, true);
+        if ((keepId || promotion.getId() == null)
+                && (keepCreative || promotion.getCreative() == null)
+                && (keepName || promotion.getName() == null)
+                && (keepPosition || promotion.getPosition() == null)) {
+            return promotion;
+        }
+        Promotion filteredPromotion = new Promotion();
+        if (keepId) {
+            filteredPromotion.setId(promotion.getId());
+        }
+        if (keepCreative) {
+            filteredPromotion.setCreative(promotion.getCreative());
+        }
+        if (keepName) {
+            filteredPromotion.setName(promotion.getName());
+        }
+        if (keepPosition) {
+            filteredPromotion.setPosition(promotion.getPosition());
+        }
+        return filteredPromotion;
     }
 
     public final Map<String, String> filterEventAttributes(MPEvent event) {
-        return filterEventAttributes(event.getEventType(), event.getEventName(), mAttributeFilters, event.getCustomAttributeStrings());
+        return filterEventAttributes(event, new EventHashCache());
+    }
+
+    final Map<String, String> filterEventAttributes(MPEvent event, EventHashCache hashes) {
+        return filterEventAttributes(event.getEventType(), event.getEventName(), mAttributeFilters, event.getCustomAttributeStrings(), hashes);
     }
 
     public final Map<String, String> filterScreenAttributes(MParticle.EventType eventType, String eventName, Map<String, String> eventAttributes) {
-        return filterEventAttributes(eventType, eventName, mScreenNameFilters, eventAttributes);
+        return filterScreenAttributes(eventType, eventName, eventAttributes, new EventHashCache());
+    }
+
+    final Map<String, String> filterScreenAttributes(MParticle.EventType eventType, String eventName, Map<String, String> eventAttributes, EventHashCache hashes) {
+        return filterEventAttributes(eventType, eventName, mScreenNameFilters, eventAttributes, hashes);
     }
 
     public final Map<String, String> filterEventAttributes(MParticle.EventType eventType, String eventName, SparseBooleanArray filter, Map<String, String> eventAttributes) {
-        if (eventAttributes != null && eventAttributes.size() > 0 && filter != null && filter.size() > 0) {
-            String eventTypeStr = "0";
-            if (eventType != null) {
-                eventTypeStr = eventType.ordinal() + "";
-            }
-            Iterator<Map.Entry<String, String>> attIterator = eventAttributes.entrySet().iterator();
-            Map<String, String> newAttributes = new HashMap<String, String>();
-            while (attIterator.hasNext()) {
-                Map.Entry<String, String> entry = attIterator.next();
-                String key = entry.getKey();
-                int hash = KitUtils.hashForFiltering(eventTypeStr + eventName + key);
-                if (filter.get(hash, true)) {
-                    newAttributes.put(key, entry.getValue());
+        return filterEventAttributes(eventType, eventName, filter, eventAttributes, new EventHashCache());
+    }
+
+    private Map<String, String> filterEventAttributes(MParticle.EventType eventType, String eventName, SparseBooleanArray filter, Map<String, String> eventAttributes, EventHashCache hashes) {
+        Set<String> excluded = getExcludedAttributes(eventType, eventName, filter, eventAttributes, hashes);
+        if (excluded.isEmpty()) {
+            return eventAttributes;
+        }
+        Map<String, String> newAttributes = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : eventAttributes.entrySet()) {
+            if (!excluded.contains(entry.getKey())) {
+                newAttributes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return newAttributes;
+    }
+
+    /**
+     * Filter an event's attributes without copying them. The returned view shares eventAttributes with the
+     * views of the other kits the event is forwarded to, which must not be modified afterwards.
+     */
+    final Map<String, String> filterEventAttributes(MPEvent event, Map<String, String> eventAttributes, EventHashCache hashes) {
+        if (eventAttributes == null) {
+            return null;
+        }
+        return new FilteredAttributes(eventAttributes, getExcludedAttributes(event.getEventType(), event.getEventName(), mAttributeFilters, eventAttributes, hashes));
+    }
+
+    /**
+     * Same as {@link #filterEventAttributes(MPEvent, Map, EventHashCache)}, for screen views.
+     */
+    final Map<String, String> filterScreenAttributes(String screenName, Map<String, String> eventAttributes, EventHashCache hashes) {
+        if (eventAttributes == null) {
+            return null;
+        }
+        return new FilteredAttributes(eventAttributes, getExcludedAttributes(null, screenName, mScreenNameFilters, eventAttributes, hashes));
+    }
+
+    private Set<String> getExcludedAttributes(MParticle.EventType eventType, String eventName, SparseBooleanArray filter, Map<String, String> eventAttributes, EventHashCache hashes) {
+        if (eventAttributes == null || eventAttributes.size() == 0 || filter == null || filter.size() == 0) {
+            return Collections.emptySet();
+        }
+        String eventTypeStr = "0";
+        if (eventType != null) {
+            eventTypeStr = eventType.ordinal() + "";
+        }
+        String prefix = eventTypeStr + eventName;
+        Set<String> excluded = null;
+        for (String key : eventAttributes.keySet()) {
+            if (!filter.get(hashes.get(prefix, key), true)) {
+                if (excluded == null) {
+                    excluded = new HashSet<String>();
                 }
+                excluded.add(key);
             }
-            return newAttributes;
-        } else {
-            return eventAttributes;
         }
+        return excluded == null ? Collections.<String>emptySet() : excluded;
     }
 
     private CommerceEvent filterCommerceEntities(CommerceEvent filteredEvent) {
         if (mCommerceEntityFilters == null || mCommerceEntityFilters.size() == 0) {
             return filteredEvent;
         }
+        boolean removeProducts = !mCommerceEntityFilters.get(ENTITY_PRODUCT, true)
+                && (filteredEvent.getProducts() != null || filteredEvent.getImpressions() != null);
+        boolean removePromotions = !mCommerceEntityFilters.get(ENTITY_PROMOTION, true) && filteredEvent.getPromotions() != null;
+        if (!removeProducts && !removePromotions) {
+            return filteredEvent;
+        }
         CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
-
-        boolean removeProducts = !mCommerceEntityFilters.get(ENTITY_PRODUCT, true);
-        boolean removePromotions = !mCommerceEntityFilters.get(ENTITY_PROMOTION, true);
         if (removeProducts) {
             builder.products(new LinkedList<Product>());
             List<Impression> impressionList = filteredEvent.getImpressions();
@@ -504,65 +674,101 @@ public class KitConfiguration {
         return attributeFilters.get(hash, true);
     }
 
-    private CommerceEvent filterCommerceEventAttributes(CommerceEvent filteredEvent) {
+    private CommerceEvent filterCommerceEventAttributes(CommerceEvent filteredEvent, EventHashCache hashes) {
         String eventType = Integer.toString(CommerceEventUtils.getEventType(filteredEvent));
         if (mCommerceAttributeFilters == null || mCommerceAttributeFilters.size() == 0) {
             return filteredEvent;
         }
-        CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
         Map<String, String> customAttributes = filteredEvent.getCustomAttributeStrings();
+        Map<String, String> filteredCustomAttributes = null;
         if (customAttributes != null) {
-            Map<String, String> filteredCustomAttributes = new HashMap<String, String>(customAttributes.size());
             for (Map.Entry<String, String> entry : customAttributes.entrySet()) {
-                if (mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + entry.getKey()), true)) {
-                    filteredCustomAttributes.put(entry.getKey(), entry.getValue());
+                if (!mCommerceAttributeFilters.get(hashes.get(eventType, entry.getKey()), true)) {
+                    if (filteredCustomAttributes == null) {
+                        filteredCustomAttributes = new HashMap<String, String>(customAttributes);
+                    }
+                    filteredCustomAttributes.remove(entry.getKey());
+                }
+            }
+        }
+        boolean removeCheckoutStep = filteredEvent.getCheckoutStep() != null &&
+                !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_STEP), true);
+        boolean removeCheckoutOptions = filteredEvent.getCheckoutOptions() != null &&
+                !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_OPTIONS), true);
+        TransactionAttributes attributes = filteredEvent.getTransactionAttributes();
+        TransactionAttributes filteredAttributes = null;
+        if (attributes != null) {
+            boolean removeCouponCode = attributes.getCouponCode() != null &&
+                    !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_TRANSACTION_COUPON_CODE), true);
+            boolean removeShipping = attributes.getShipping() != null &&
+                    !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_SHIPPING), true);
+            boolean removeTax = attributes.getTax() != null &&
+                    !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_TAX), true);
+            boolean removeRevenue = attributes.getRevenue() != null &&
+                    !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_TOTAL), true);
+            boolean removeId = attributes.getId() != null &&
+                    !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_TRANSACTION_ID), true);
+            boolean removeAffiliation = attributes.getAffiliation() != null &&
+                    !mCommerceAttributeFilters.get(hashes.get(eventType, CommerceEventUtils.Constants.ATT_AFFILIATION), true);
+            if (removeCouponCode || removeShipping || removeTax || removeRevenue || removeId || removeAffiliation) {
+                //the event's TransactionAttributes may be shared with the kit's unfiltered copy, so modify a copy
+                filteredAttributes = new TransactionAttributes(attributes);
+                if (removeCouponCode) {
+                    filteredAttributes.setCouponCode(null);
+                }
+                if (removeShipping) {
+                    filteredAttributes.setShipping(null);
+                }
+                if (removeTax) {
+                    filteredAttributes.setTax(null);
+                }
+                if (removeRevenue) {
+                    filteredAttributes.setRevenue(0.0);
+                }
+                if (removeId) {
+                    filteredAttributes.setId(null);
+                }
+                if (removeAffiliation) {
+                    filteredAttributes.setAffiliation(null);
                 }
             }
-            builder.customAttributes(filteredCustomAttributes);
+        }
+        if (filteredCustomAttributes == null && !removeCheckoutStep && !removeCheckoutOptions && filteredAttributes == null) {
+            return filteredEvent;
         }
 
-        if (filteredEvent.getCheckoutStep() != null &&
-                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_STEP), true)) {
+        CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
+        if (filteredCustomAttributes != null) {
+            builder.customAttributes(filteredCustomAttributes);
+        }
+        if (removeCheckoutStep) {
             builder.checkoutStep(null);
         }
-        if (filteredEvent.getCheckoutOptions() != null &&
-                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_OPTIONS), true)) {
+        if (removeCheckoutOptions) {
             builder.checkoutOptions(null);
         }
-        TransactionAttributes attributes = filteredEvent.getTransactionAttributes();
-        if (attributes != null) {
-            if (attributes.getCouponCode() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_COUPON_CODE), true)) {
-                attributes.setCouponCode(null);
-            }
-            if (attributes.getShipping() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_SHIPPING), true)) {
-                attributes.setShipping(null);
-            }
-            if (attributes.getTax() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TAX), true)) {
-                attributes.setTax(null);
-            }
-            if (attributes.getRevenue() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TOTAL), true)) {
-                attributes.setRevenue(0.0);
-            }
-            if (attributes.getId() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_ID), true)) {
-                attributes.setId(null);
-            }
-            if (attributes.getAffiliation() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_AFFILIATION), true)) {
-                attributes.setAffiliation(null);
-            }
-            builder.transactionAttributes(attributes);
+        if (filteredAttributes != null) {
+            builder.transactionAttributes(filteredAttributes);
         }
-
         return builder.build();
     }
 
     public boolean shouldLogScreen(String screenName) {
-        int nameHash = KitUtils.hashForFiltering("0" + screenName);
+        return applyScreenFilters(screenName, new EventHashCache());
+    }
+
+    /**
+     * The entry point used when forwarding screen views, see {@link #filterCommerceEvent(CommerceEvent, EventHashCache)}.
+     */
+    final boolean shouldLogScreen(String screenName, EventHashCache hashes) {
+        if (overridesFilter(OVERRIDES_SHOULD_LOG_SCREEN)) {
+            return shouldLogScreen(screenName);
+        }
+        return applyScreenFilters(screenName, hashes);
+    }
+
+    private boolean applyScreenFilters(String screenName, EventHashCache hashes) {
+        int nameHash = hashes.get("0", screenName);
         if (mScreenNameFilters.size() > 0 && !mScreenNameFilters.get(nameHash, true)) {
             return false;
         }
@@ -571,13 +777,57 @@ public class KitConfiguration {
 
 
     protected boolean shouldLogEvent(MPEvent event) {
-        if (!shouldIncludeFromAttributeValueFiltering(event.getCustomAttributeStrings())) {
+        return applyEventFilters(event, new EventHashCache());
+    }
+
+    /**
+     * The entry point used when forwarding events, see {@link #filterCommerceEvent(CommerceEvent, EventHashCache)}.
+     */
+    final boolean shouldLogEvent(MPEvent event, EventHashCache hashes) {
+        if (overridesFilter(OVERRIDES_SHOULD_LOG_EVENT)) {
+            return shouldLogEvent(event);
+        }
+        return applyEventFilters(event, hashes);
+    }
+
+    private boolean applyEventFilters(MPEvent event, EventHashCache hashes) {
+        if (avfIsActive && !shouldIncludeFromAttributeValueFiltering(event.getCustomAttributeStrings(), hashes)) {
             return false;
         }
-        int typeHash = KitUtils.hashForFiltering(event.getEventType().ordinal() + "");
+        int typeHash = EVENT_TYPE_HASHES[event.getEventType().ordinal()];
         return mTypeFilters.get(typeHash, true) && mNameFilters.get(event.getEventHash(), true);
     }
 
+    private boolean overridesFilter(int filter) {
+        Class<?> type = getClass();
+        Integer overrides = FILTER_OVERRIDES.get(type);
+        if (overrides == null) {
+            overrides = 0;
+            for (Class<?> declaringClass = type; declaringClass != KitConfiguration.class; declaringClass = declaringClass.getSuperclass()) {
+                if (declares(declaringClass, "shouldLogEvent", MPEvent.class)) {
+                    overrides |= OVERRIDES_SHOULD_LOG_EVENT;
+                }
+                if (declares(declaringClass, "filterCommerceEvent", CommerceEvent.class)) {
+                    overrides |= OVERRIDES_FILTER_COMMERCE_EVENT;
+                }
+                if (declares(declaringClass, "shouldLogScreen", String.class)) {
+                    overrides |= OVERRIDES_SHOULD_LOG_SCREEN;
+                }
+            }
+            FILTER_OVERRIDES.put(type, overrides);
+        }
+        return (overrides & filter) != 0;
+    }
+
+    private static boolean declares(Class<?> type, String name, Class<?> parameterType) {
+        try {
+            type.getDeclaredMethod(name, parameterType);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     public boolean passesBracketing(int userBucket) {
         return userBucket >= lowBracket && userBucket < highBracket;
     }
@@ -612,6 +862,13 @@ public class KitConfiguration {
         return customMappingList;
     }
 
+    /**
+     * The same mappings as {@link #getCustomMappingList()}, indexed for faster matching.
+     */
+    public final CustomMappingIndex getCustomMappingIndex() {
+        return customMappingIndex;
+    }
+
     public final CustomMapping getDefaultEventProjection() {
         return defaultCustomMapping;
     }
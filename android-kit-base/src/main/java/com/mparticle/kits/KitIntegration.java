@@ -93,6 +93,17 @@ public abstract class KitIntegration {
         return null;
     }
 
+    /**
+     * Kits whose underlying SDK must only be called from the main thread should override this method
+     * and return true. When asynchronous event dispatch is enabled in {@link KitOptions}, events will
+     * be forwarded to such kits on the main thread, and to all other kits on a background thread.
+     *
+     * @return true if this kit must receive events on the main thread
+     */
+    public boolean requiresMainThread() {
+        return false;
+    }
+
     public boolean isDisabled() {
         return isDisabled(false);
     }
@@ -600,6 +611,14 @@ public abstract class KitIntegration {
     }
 
     public interface BatchListener {
+
+        /**
+         * Called on the kit thread after a batch has been uploaded.
+         *
+         * @param jsonObject the uploaded batch. The same instance is passed to every BatchListener kit, so it
+         *                   must not be modified
+         * @return a list of ReportingMessages, or null
+         */
         List<ReportingMessage> logBatch(JSONObject jsonObject);
     }
 }
@@ -1,6 +1,12 @@
 package com.mparticle.kits;
 
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.mparticle.MParticle;
 import com.mparticle.internal.Logger;
@@ -13,11 +19,42 @@ import java.util.Map;
 import java.util.Set;
 
 public class KitIntegrationFactory {
+    /**
+     * Prefix of the manifest meta-data, written by the kit Gradle plugin, which registers a kit's ID and class.
+     * For example: {@code <meta-data android:name="com.mparticle.kit.28" android:value="com.mparticle.kits.AppboyKit"/>}
+     */
+    static final String KIT_META_DATA_PREFIX = "com.mparticle.kit.";
+    /**
+     * Boolean manifest meta-data which opts in to also looking up each of the {@link #getKnownIntegrations()} by name
+     * when kits are registered, for apps which bundle kits built before the kit Gradle plugin registered them.
+     * For example: {@code <meta-data android:name="com.mparticle.scanKnownKits" android:value="true"/>}
+     */
+    static final String SCAN_KNOWN_KITS_META_DATA = "com.mparticle.scanKnownKits";
 
     final Map<Integer, Class> supportedKits = new HashMap<>();
 
     public KitIntegrationFactory() {
-        loadIntegrations();
+        this(null);
+    }
+
+    /**
+     * @param context used to read the kits registered in the application's manifest. Only if none are registered,
+     *                or {@link #SCAN_KNOWN_KITS_META_DATA} is set, does the factory look up each of the
+     *                {@link #getKnownIntegrations()} by name
+     */
+    public KitIntegrationFactory(@Nullable Context context) {
+        Bundle metaData = getMetaData(context);
+        Map<Integer, String> registeredIntegrations = parseRegisteredIntegrations(metaData);
+        if (registeredIntegrations.isEmpty()) {
+            loadIntegrations(getKnownIntegrations());
+            return;
+        }
+        if (metaData.getBoolean(SCAN_KNOWN_KITS_META_DATA, false)) {
+            Map<Integer, String> knownIntegrations = new HashMap<Integer, String>(getKnownIntegrations());
+            knownIntegrations.keySet().removeAll(registeredIntegrations.keySet());
+            loadIntegrations(knownIntegrations);
+        }
+        loadIntegrations(registeredIntegrations);
     }
 
     /**
@@ -86,9 +123,52 @@ public class KitIntegrationFactory {
         return null;
     }
 
-    private void loadIntegrations() {
-        Map<Integer, String> knownIntegrations = getKnownIntegrations();
-        for (Map.Entry<Integer, String> entry : knownIntegrations.entrySet()) {
+    /**
+     * Kits registered in the manifest, merged into the application's manifest at build time from each bundled kit.
+     *
+     * @return a mapping of module Ids to kit class names, which is empty if none are registered
+     */
+    Map<Integer, String> getRegisteredIntegrations(@Nullable Context context) {
+        return parseRegisteredIntegrations(getMetaData(context));
+    }
+
+    private Map<Integer, String> parseRegisteredIntegrations(@Nullable Bundle metaData) {
+        Map<Integer, String> kits = new HashMap<Integer, String>();
+        if (metaData == null) {
+            return kits;
+        }
+        try {
+            for (String key : metaData.keySet()) {
+                if (key.startsWith(KIT_META_DATA_PREFIX)) {
+                    Object className = metaData.get(key);
+                    if (className instanceof String) {
+                        kits.put(Integer.parseInt(key.substring(KIT_META_DATA_PREFIX.length())), (String) className);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Logger.debug(e, "Unable to read Kits registered in the manifest");
+            kits.clear();
+        }
+        return kits;
+    }
+
+    @Nullable
+    private Bundle getMetaData(@Nullable Context context) {
+        if (context == null) {
+            return null;
+        }
+        try {
+            ApplicationInfo applicationInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            return applicationInfo.metaData;
+        } catch (Exception e) {
+            Logger.debug(e, "Unable to read Kits registered in the manifest");
+            return null;
+        }
+    }
+
+    private void loadIntegrations(Map<Integer, String> integrations) {
+        for (Map.Entry<Integer, String> entry : integrations.entrySet()) {
             Class kitClass = loadKit(entry.getValue());
             if (kitClass != null) {
                 supportedKits.put(entry.getKey(), kitClass);
@@ -42,7 +42,11 @@ import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -52,6 +56,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class KitManagerImpl implements KitManager, AttributionListener, UserAttributeListener, IdentityStateListener {
 
@@ -60,6 +70,8 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         kitHandlerThread = new HandlerThread("mParticle_kit_thread");
         kitHandlerThread.start();
     }
+    private static final int KIT_STARTUP_KEEP_ALIVE_SECONDS = 30;
+    private static ExecutorService kitStartupExecutor;
 
     private final ReportingManager mReportingManager;
     protected final CoreCallbacks mCoreCallbacks;
@@ -67,8 +79,15 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     KitIntegrationFactory mKitIntegrationFactory;
     private DataplanFilter mDataplanFilter = DataplanFilterImpl.EMPTY;
     private KitOptions mKitOptions;
+    @Nullable
+    private Executor mKitStartupExecutor;
     private volatile List<KitConfiguration> kitConfigurations = new ArrayList<>();
+    /**
+     * content hashes of the kit configuration blocks which {@link #kitConfigurations} were parsed from, only accessed on the kit thread
+     */
+    private Map<Integer, BigInteger> kitConfigurationHashes = new HashMap<>();
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final String RESERVED_KEY_LTV = "$Amount";
     private static final String METHOD_NAME = "$MethodName";
     private static final String LOG_LTV = "LogLTVIncrease";
@@ -78,13 +97,14 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
 
     ConcurrentHashMap<Integer, KitIntegration> providers = new ConcurrentHashMap<Integer, KitIntegration>();
+    final ConcurrentHashMap<Integer, PendingKit> pendingKits = new ConcurrentHashMap<Integer, PendingKit>();
     private final Context mContext;
 
     public KitManagerImpl(Context context, ReportingManager reportingManager, CoreCallbacks coreCallbacks, MParticleOptions options) {
         mContext = context;
         mReportingManager = reportingManager;
         mCoreCallbacks = coreCallbacks;
-        mKitIntegrationFactory = new KitIntegrationFactory();
+        mKitIntegrationFactory = new KitIntegrationFactory(context);
         MParticle instance = MParticle.getInstance();
         if (instance != null) {
             instance.Identity().addIdentityStateListener(this);
@@ -112,6 +132,14 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         mKitIntegrationFactory = kitIntegrationFactory;
     }
 
+    /**
+     * Set the executor kits are initialized on when {@link KitOptions#parallelKitStartup(boolean)} is enabled, null
+     * restores the shared "mParticleKitStartup" pool.
+     */
+    void setKitStartupExecutor(@Nullable Executor executor) {
+        mKitStartupExecutor = executor;
+    }
+
     private ReportingManager getReportingManager() {
         return mReportingManager;
     }
@@ -154,7 +182,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         runOnKitThread(() -> {
                     kitConfigurations = parseKitConfigurations(kitConfigs);
                     runOnMainThread(() -> {
-                        configureKits(kitConfigurations);
+                        configureKits(kitConfigurations, callback);
                         callback.setKitsLoaded();
                     });
                 }
@@ -189,7 +217,15 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
      * <p>
      * Note: This method is meant to always be run on the main thread.
      */
-    protected synchronized void configureKits(@NonNull List<KitConfiguration> kitConfigurations) {
+    protected void configureKits(@NonNull List<KitConfiguration> kitConfigurations) {
+        configureKits(kitConfigurations, null);
+    }
+
+    /**
+     * @param callback notified as each new kit is started, which may be after this returns for kits which
+     *                 are started in parallel or lazily
+     */
+    private synchronized void configureKits(@NonNull List<KitConfiguration> kitConfigurations, @Nullable KitsLoadedCallback callback) {
         if (kitConfigurations == null) {
             kitConfigurations = new ArrayList<>();
         }
@@ -215,7 +251,16 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                         continue;
                     }
                     KitIntegration activeKit = providers.get(currentModuleID);
-                    if (activeKit == null) {
+                    PendingKit pendingKit = pendingKits.get(currentModuleID);
+                    if (activeKit == null && pendingKit != null) {
+                        //still starting, it will be initialized with the new configuration if it hasn't been already
+                        pendingKit.getKit().setConfiguration(configuration);
+                        if (pendingKit.getKit().isDisabled() ||
+                                !configuration.shouldIncludeFromConsentRules(user)) {
+                            continue;
+                        }
+                        activeIds.add(currentModuleID);
+                    } else if (activeKit == null) {
                         activeKit = mKitIntegrationFactory.createInstance(KitManagerImpl.this, configuration);
                         if (activeKit.isDisabled() ||
                                 !configuration.shouldIncludeFromConsentRules(user)) {
@@ -223,17 +268,35 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                             continue;
                         }
                         activeIds.add(currentModuleID);
-                        initializeKit(activeKit);
-                        providers.put(currentModuleID, activeKit);
-                        mCoreCallbacks.getKitListener().kitStarted(currentModuleID);
+                        if (isLazyKit(currentModuleID)) {
+                            Logger.debug("Deferring kit until an event is forwarded to it: " + activeKit.getName());
+                            pendingKits.put(currentModuleID, new PendingKit(activeKit, true, callback));
+                        } else if (isParallelKitStartup() && !activeKit.requiresMainThread()) {
+                            pendingKit = new PendingKit(activeKit, false, callback);
+                            pendingKits.put(currentModuleID, pendingKit);
+                            startKit(pendingKit);
+                        } else {
+                            initializeKit(activeKit);
+                            providers.put(currentModuleID, activeKit);
+                            mCoreCallbacks.getKitListener().kitStarted(currentModuleID);
+                            if (callback != null) {
+                                callback.setKitLoaded(currentModuleID);
+                            }
+                        }
                     } else {
-                        activeKit.setConfiguration(configuration);
+                        //kits whose configuration block has not changed keep the same KitConfiguration instance
+                        boolean settingsUpdated = activeKit.getConfiguration() != configuration;
+                        if (settingsUpdated) {
+                            activeKit.setConfiguration(configuration);
+                        }
                         if (activeKit.isDisabled() ||
                                 !configuration.shouldIncludeFromConsentRules(user)) {
                             continue;
                         }
                         activeIds.add(currentModuleID);
-                        activeKit.onSettingsUpdated(configuration.getSettings());
+                        if (settingsUpdated) {
+                            activeKit.onSettingsUpdated(configuration.getSettings());
+                        }
                     }
                 } catch (Exception e) {
                     mCoreCallbacks.getKitListener().kitExcluded(configuration.getKitId(), "exception while starting. Exception: " + e.getMessage());
@@ -242,6 +305,16 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
             }
         }
 
+        //pending kits must be checked first, since a kit is added to providers before it is removed from pendingKits
+        Iterator<PendingKit> pending = pendingKits.values().iterator();
+        while (pending.hasNext()) {
+            PendingKit pendingKit = pending.next();
+            if (!activeIds.contains(pendingKit.getKitId()) && pendingKit.cancel()) {
+                Logger.debug("Cancelling kit startup: " + pendingKit.getKit().getName());
+                pending.remove();
+            }
+        }
+
         Iterator<Integer> ids = providers.keySet().iterator();
         while (ids.hasNext()) {
             Integer id = ids.next();
@@ -261,6 +334,160 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         onKitsLoaded(new HashMap<>(providers), previousKits, new ArrayList<>(kitConfigurations));
     }
 
+    private boolean isParallelKitStartup() {
+        return mKitOptions != null && mKitOptions.isParallelKitStartup();
+    }
+
+    private boolean isLazyKit(int kitId) {
+        return mKitOptions != null && mKitOptions.getLazyKits().contains(kitId);
+    }
+
+    private Executor getKitStartupExecutor() {
+        Executor executor = mKitStartupExecutor;
+        return executor != null ? executor : getSharedKitStartupExecutor();
+    }
+
+    private static synchronized ExecutorService getSharedKitStartupExecutor() {
+        if (kitStartupExecutor == null) {
+            int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    KIT_STARTUP_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            return new Thread(runnable, "mParticleKitStartup");
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            kitStartupExecutor = executor;
+        }
+        return kitStartupExecutor;
+    }
+
+    /**
+     * Initialize a pending kit on the kit startup pool, or on the main thread if it {@link KitIntegration#requiresMainThread()}.
+     */
+    private void startKit(final PendingKit pendingKit) {
+        if (!pendingKit.setStarting()) {
+            return;
+        }
+        Runnable start = new Runnable() {
+            @Override
+            public void run() {
+                KitIntegration kit = pendingKit.getKit();
+                int kitId = pendingKit.getKitId();
+                if (pendingKit.isCancelled()) {
+                    return;
+                }
+                try {
+                    initializeKit(kit);
+                } catch (Exception e) {
+                    pendingKits.remove(kitId, pendingKit);
+                    pendingKit.cancel();
+                    mCoreCallbacks.getKitListener().kitExcluded(kitId, "exception while starting. Exception: " + e.getMessage());
+                    Logger.error("Exception while starting kit " + kitId + ": " + e.getMessage());
+                    return;
+                }
+                onKitStarted(pendingKit);
+            }
+        };
+        if (pendingKit.getKit().requiresMainThread()) {
+            runOnMainThread(start);
+        } else {
+            getKitStartupExecutor().execute(start);
+        }
+    }
+
+    /**
+     * Replay the events held for a kit which has just been initialized, and make it active. The kit is added
+     * to providers while its events are still held, so every event reaches it exactly once and in order.
+     */
+    private void onKitStarted(PendingKit pendingKit) {
+        KitIntegration kit = pendingKit.getKit();
+        int kitId = pendingKit.getKitId();
+        synchronized (pendingKit) {
+            if (pendingKit.isCancelled()) {
+                Logger.debug("De-initializing kit: " + kit.getName());
+                clearIntegrationAttributes(kit);
+                kit.onKitDestroy();
+                kit.onKitCleanup();
+                return;
+            }
+            List<BaseEvent> events = pendingKit.drain();
+            while (!events.isEmpty()) {
+                List<KitIntegration> kits = Collections.singletonList(kit);
+                for (BaseEvent event : events) {
+                    if (event instanceof MPEvent && ((MPEvent) event).isScreenEvent()) {
+                        logScreen((MPEvent) event, kits);
+                    } else {
+                        logEvent(event, kits);
+                    }
+                }
+                events = pendingKit.drain();
+            }
+            providers.put(kitId, kit);
+            pendingKit.setStarted();
+        }
+        pendingKits.remove(kitId, pendingKit);
+        Logger.debug("Kit started: " + kit.getName());
+        mCoreCallbacks.getKitListener().kitStarted(kitId);
+        if (pendingKit.getCallback() != null) {
+            pendingKit.getCallback().setKitLoaded(kitId);
+        }
+    }
+
+    /**
+     * Hold an event for the kits which are still starting, and start any lazy kit it would be forwarded to.
+     *
+     * @param kits the active kits the event is about to be forwarded to
+     * @param requiresMainThread if not null, only pending kits with a matching {@link KitIntegration#requiresMainThread()} are considered
+     * @return the kits to forward the event to now, which includes any pending kit that finished starting after kits was read
+     */
+    private Collection<KitIntegration> holdForPendingKits(BaseEvent event, Collection<KitIntegration> kits, @Nullable Boolean requiresMainThread) {
+        if (pendingKits.isEmpty()) {
+            return kits;
+        }
+        List<KitIntegration> activeKits = new ArrayList<>(kits);
+        for (PendingKit pendingKit : pendingKits.values()) {
+            KitIntegration kit = pendingKit.getKit();
+            if (requiresMainThread != null && kit.requiresMainThread() != requiresMainThread) {
+                continue;
+            }
+            synchronized (pendingKit) {
+                if (pendingKit.isDeferred()) {
+                    if (!wouldForward(kit, event)) {
+                        continue;
+                    }
+                    pendingKit.hold(event);
+                    startKit(pendingKit);
+                } else if (!pendingKit.hold(event) && !activeKits.contains(kit)) {
+                    activeKits.add(kit);
+                }
+            }
+        }
+        return activeKits;
+    }
+
+    private boolean wouldForward(KitIntegration kit, BaseEvent event) {
+        if (kit.isDisabled()) {
+            return false;
+        }
+        KitConfiguration configuration = kit.getConfiguration();
+        EventHashCache hashes = new EventHashCache();
+        if (event instanceof MPEvent) {
+            MPEvent mpEvent = (MPEvent) event;
+            if (mpEvent.isScreenEvent()) {
+                return kit instanceof KitIntegration.EventListener && configuration.shouldLogScreen(mpEvent.getEventName(), hashes);
+            }
+            return configuration.shouldLogEvent(mpEvent, hashes);
+        }
+        if (event instanceof CommerceEvent) {
+            return configuration.shouldLogCommerceEvent((CommerceEvent) event, hashes);
+        }
+        return true;
+    }
+
     private void initializeKit(KitIntegration activeKit) {
         Logger.debug("Initializing kit: " + activeKit.getName());
         activeKit.onKitCreate(activeKit.getConfiguration().getSettings(), getContext());
@@ -349,7 +576,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
             try {
                 if (!provider.isDisabled()) {
                     provider.setLocation(location);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), true, location);
+                    mCoreCallbacks.getKitListener().onKitApiCalled("setLocation()", "KitManagerImpl.setLocation()", provider.getConfiguration().getKitId(), true, location);
                 }
             } catch (Exception e) {
                 Logger.warning("Failed to call setLocation for kit: " + provider.getName() + ": " + e.getMessage());
@@ -364,7 +591,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 if (!provider.isDisabled()) {
                     List<ReportingMessage> report = provider.logNetworkPerformance(url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
                     getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
+                    mCoreCallbacks.getKitListener().onKitApiCalled("logNetworkPerformance()", "KitManagerImpl.logNetworkPerformance()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), url, startTime, method, length, bytesSent, bytesReceived, requestString, responseCode);
                 }
             } catch (Exception e) {
                 Logger.warning("Failed to call logNetworkPerformance for kit: " + provider.getName() + ": " + e.getMessage());
@@ -392,7 +619,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 if (!provider.isDisabled(true)) {
                     List<ReportingMessage> messages = provider.setOptOut(optOutStatus);
                     getReportingManager().logAll(messages);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), optOutStatus);
+                    mCoreCallbacks.getKitListener().onKitApiCalled("setOptOut()", "KitManagerImpl.setOptOut()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), optOutStatus);
                 }
             } catch (Exception e) {
                 Logger.warning("Failed to call setOptOut for kit: " + provider.getName() + ": " + e.getMessage());
@@ -408,27 +635,111 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
     @Override
     public void logEvent(BaseEvent event) {
+        //transform once, before the event is held or handed to other threads
         if (mDataplanFilter != null) {
             event = mDataplanFilter.transformEventForEvent(event);
             if (event == null) {
                 return;
             }
         }
-        for (KitIntegration provider: providers.values()) {
+        if (isAsyncEventDispatch()) {
+            final BaseEvent finalEvent = event;
+            dispatchToKits(event, new KitDispatch() {
+                @Override
+                public void run(Collection<KitIntegration> kits) {
+                    logEvent(finalEvent, kits);
+                }
+            });
+            return;
+        }
+        if (!pendingKits.isEmpty()) {
+            logEvent(event, holdForPendingKits(event, providers.values(), null));
+            return;
+        }
+        logBaseEvent(event, providers.values());
+        if (event instanceof MPEvent) {
+            logMPEvent((MPEvent) event);
+        } else if (event instanceof CommerceEvent) {
+            logCommerceEvent((CommerceEvent) event);
+        }
+    }
+
+    /**
+     * @param event an event which the data plan has already been applied to
+     */
+    private void logEvent(BaseEvent event, Collection<KitIntegration> kits) {
+        logBaseEvent(event, kits);
+        if (event instanceof MPEvent) {
+            logMPEvent((MPEvent) event, kits);
+        } else if (event instanceof CommerceEvent) {
+            logCommerceEvent((CommerceEvent) event, kits);
+        }
+    }
+
+    private void logBaseEvent(BaseEvent event, Collection<KitIntegration> kits) {
+        for (KitIntegration provider: kits) {
             try {
                 List<ReportingMessage> messages = provider.logBaseEvent(event);
-                mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), event);
+                mCoreCallbacks.getKitListener().onKitApiCalled("logBaseEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), event);
                 mReportingManager.logAll(messages);
             } catch (Exception e) {
                 Logger.warning("Failed to call logMPEvent for kit: " + provider.getName() + ": " + e.getMessage());
-                mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), false, event, e);
+                mCoreCallbacks.getKitListener().onKitApiCalled("logBaseEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), false, event, e);
             }
         }
-        if (event instanceof MPEvent) {
-            logMPEvent((MPEvent) event);
-        } else if (event instanceof CommerceEvent) {
-            logCommerceEvent((CommerceEvent) event);
+    }
+
+    private boolean isAsyncEventDispatch() {
+        return mKitOptions != null && mKitOptions.isAsyncEventDispatch();
+    }
+
+    /**
+     * Hand an event fan-out to the kit thread, for kits which can be called from any thread, and to the
+     * main thread for kits which {@link KitIntegration#requiresMainThread()}. Both are serial, so each kit
+     * still receives events in the order they were logged.
+     */
+    private void dispatchToKits(final BaseEvent event, final KitDispatch dispatch) {
+        boolean hasMainThreadKits = false;
+        for (KitIntegration provider : providers.values()) {
+            if (provider.requiresMainThread()) {
+                hasMainThreadKits = true;
+                break;
+            }
+        }
+        for (PendingKit pendingKit : pendingKits.values()) {
+            if (pendingKit.getKit().requiresMainThread()) {
+                hasMainThreadKits = true;
+                break;
+            }
         }
+        runOnKitThread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch.run(holdForPendingKits(event, getKits(false), false));
+            }
+        });
+        if (hasMainThreadKits) {
+            postToMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch.run(holdForPendingKits(event, getKits(true), true));
+                }
+            });
+        }
+    }
+
+    private List<KitIntegration> getKits(boolean requiresMainThread) {
+        List<KitIntegration> kits = new ArrayList<>(providers.size());
+        for (KitIntegration provider : providers.values()) {
+            if (provider.requiresMainThread() == requiresMainThread) {
+                kits.add(provider);
+            }
+        }
+        return kits;
+    }
+
+    interface KitDispatch {
+        void run(Collection<KitIntegration> kits);
     }
 
     //================================================================================
@@ -436,15 +747,20 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     //================================================================================
 
     protected void logCommerceEvent(CommerceEvent event) {
-        for (KitIntegration provider : providers.values()) {
+        logCommerceEvent(event, providers.values());
+    }
+
+    private void logCommerceEvent(CommerceEvent event, Collection<KitIntegration> kits) {
+        EventHashCache hashes = new EventHashCache();
+        for (KitIntegration provider : kits) {
             try {
                 if (!provider.isDisabled()) {
-                    CommerceEvent filteredEvent = provider.getConfiguration().filterCommerceEvent(event);
+                    CommerceEvent filteredEvent = provider.getConfiguration().filterCommerceEvent(event, hashes);
                     if (filteredEvent != null) {
                         if (provider instanceof KitIntegration.CommerceListener) {
                             List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
                                     filteredEvent,
-                                    provider.getConfiguration().getCustomMappingList(),
+                                    provider.getConfiguration().getCustomMappingIndex(),
                                     provider.getConfiguration().getDefaultCommerceCustomMapping()
                             );
                             if (projectedEvents != null && projectedEvents.size() > 0) {
@@ -457,12 +773,12 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                                     if (result.getMPEvent() != null) {
                                         MPEvent projectedEvent = projectedEvents.get(i).getMPEvent();
                                         report = ((KitIntegration.EventListener) provider).logEvent(projectedEvent);
-                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
                                         messageType = ReportingMessage.MessageType.EVENT;
                                     } else {
                                         CommerceEvent projectedEvent = projectedEvents.get(i).getCommerceEvent();
                                         report = ((KitIntegration.CommerceListener) provider).logEvent(projectedEvent);
-                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+                                        mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
                                         messageType = ReportingMessage.MessageType.COMMERCE_EVENT;
                                     }
                                     if (report != null && report.size() > 0) {
@@ -482,7 +798,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                                 }
                             } else {
                                 List<ReportingMessage> reporting = ((KitIntegration.CommerceListener) provider).logEvent(filteredEvent);
-                                mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), filteredEvent);
+                                mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), filteredEvent);
                                 if (reporting != null && reporting.size() > 0) {
                                     getReportingManager().log(
                                             ReportingMessage.fromEvent(provider, filteredEvent)
@@ -495,7 +811,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                             if (events != null) {
                                 for (MPEvent expandedEvent: events) {
                                     List<ReportingMessage> reporting = ((KitIntegration.EventListener) provider).logEvent(expandedEvent);
-                                    mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), expandedEvent);
+                                    mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(reporting), expandedEvent);
                                     forwarded = forwarded || (reporting != null && reporting.size() > 0);
                                 }
                             }
@@ -524,10 +840,10 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 try {
                     if (!provider.isDisabled()) {
                         boolean willHandlePush = ((KitIntegration.PushListener) provider).willHandlePushMessage(intent);
-                        mCoreCallbacks.getKitListener().onKitApiCalled("willHandlePushMessage()", provider.getConfiguration().getKitId(), willHandlePush, intent);
+                        mCoreCallbacks.getKitListener().onKitApiCalled("willHandlePushMessage()", "KitManagerImpl.onMessageReceived()", provider.getConfiguration().getKitId(), willHandlePush, intent);
                         if (willHandlePush) {
                             ((KitIntegration.PushListener) provider).onPushMessageReceived(context, intent);
-                            mCoreCallbacks.getKitListener().onKitApiCalled("onPushMessageReceived()", provider.getConfiguration().getKitId(), null, context, intent);
+                            mCoreCallbacks.getKitListener().onKitApiCalled("onPushMessageReceived()", "KitManagerImpl.onMessageReceived()", provider.getConfiguration().getKitId(), null, context, intent);
                             ReportingMessage message = ReportingMessage.fromPushMessage(provider, intent);
                             getReportingManager().log(message);
                             return true;
@@ -548,7 +864,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 try {
                     if (!provider.isDisabled()) {
                         boolean onPushRegistration = ((KitIntegration.PushListener) provider).onPushRegistration(token, senderId);
-                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(),onPushRegistration, token, senderId);
+                        mCoreCallbacks.getKitListener().onKitApiCalled("onPushRegistration()", "KitManagerImpl.onPushRegistration()", provider.getConfiguration().getKitId(), onPushRegistration, token, senderId);
                         if (onPushRegistration) {
                             ReportingMessage message = ReportingMessage.fromPushRegistrationMessage(provider);
                             getReportingManager().log(message);
@@ -808,36 +1124,44 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
 
     protected void logMPEvent(MPEvent event) {
+        logMPEvent(event, providers.values());
+    }
+
+    private void logMPEvent(MPEvent event, Collection<KitIntegration> kits) {
         if (event.isScreenEvent()) {
-            logScreen(event);
+            logScreen(event, kits);
             return;
         }
-        for (KitIntegration provider : providers.values()) {
+        EventHashCache hashes = new EventHashCache();
+        //shared by every kit, each kit gets a filtered view which is only copied if the kit modifies it
+        Map<String, String> attributes = event.getCustomAttributeStrings();
+        for (KitIntegration provider : kits) {
             try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogEvent(event)) {
+                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogEvent(event, hashes)) {
                     MPEvent eventCopy = new MPEvent(event);
-                    eventCopy.setCustomAttributes(
-                            provider.getConfiguration().filterEventAttributes(eventCopy)
-                    );
+                    Map<String, String> filteredAttributes = provider.getConfiguration().filterEventAttributes(event, attributes, hashes);
+                    eventCopy.setCustomAttributes(filteredAttributes);
                     List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
                             eventCopy,
-                            provider.getConfiguration().getCustomMappingList(),
-                            provider.getConfiguration().getDefaultEventProjection()
+                            false,
+                            provider.getConfiguration().getCustomMappingIndex(),
+                            provider.getConfiguration().getDefaultEventProjection(),
+                            null
                     );
                     List<ReportingMessage> reportingMessages = new LinkedList<ReportingMessage>();
                     if (projectedEvents == null) {
                         List<ReportingMessage> messages = null;
-                        if (eventCopy.getCustomAttributeStrings() != null
-                                && eventCopy.getCustomAttributeStrings().containsKey(METHOD_NAME)
-                                && eventCopy.getCustomAttributeStrings().get(METHOD_NAME).equals(LOG_LTV)) {
+                        if (filteredAttributes != null
+                                && filteredAttributes.containsKey(METHOD_NAME)
+                                && filteredAttributes.get(METHOD_NAME).equals(LOG_LTV)) {
                             messages = ((KitIntegration.CommerceListener) provider).logLtvIncrease(
-                                    new BigDecimal(eventCopy.getCustomAttributeStrings().get(RESERVED_KEY_LTV)),
-                                    new BigDecimal(eventCopy.getCustomAttributeStrings().get(RESERVED_KEY_LTV)),
+                                    new BigDecimal(filteredAttributes.get(RESERVED_KEY_LTV)),
+                                    new BigDecimal(filteredAttributes.get(RESERVED_KEY_LTV)),
                                     eventCopy.getEventName(),
-                                    eventCopy.getCustomAttributeStrings());
+                                    filteredAttributes);
                         } else {
                             messages = ((KitIntegration.EventListener) provider).logEvent(eventCopy);
-                            mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), eventCopy);
+                            mCoreCallbacks.getKitListener().onKitApiCalled("logEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), eventCopy);
                         }
                         if (messages != null && messages.size() > 0) {
                             reportingMessages.addAll(messages);
@@ -848,7 +1172,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                         for (int i = 0; i < projectedEvents.size(); i++) {
                             MPEvent projectedEvent = projectedEvents.get(i).getMPEvent();
                             List<ReportingMessage> messages = ((KitIntegration.EventListener) provider).logEvent(projectedEvent);
-                            mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), projectedEvent);
+                            mCoreCallbacks.getKitListener().onKitApiCalled("logEvent()", "KitManagerImpl.logEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(messages), projectedEvent);
 
                             if (messages != null && messages.size() > 0) {
                                 forwarded = true;
@@ -875,23 +1199,41 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    /**
+     * Forwards an uploaded batch to every {@link KitIntegration.BatchListener} kit.
+     *
+     * This is called from the upload thread, so the batch is parsed and delivered on the kit thread instead, and
+     * a slow kit cannot delay the next upload. The batch is parsed once, and the same JSONObject is shared by
+     * every listener.
+     */
     @Override
-    public void logBatch(String batch) {
-        for (KitIntegration provider: providers.values()) {
-            try {
+    public void logBatch(final String batch) {
+        runOnKitThread(() -> {
+            List<KitIntegration> listeners = new ArrayList<>();
+            for (KitIntegration provider : providers.values()) {
                 if (provider instanceof KitIntegration.BatchListener) {
-                    JSONObject jsonObject = new JSONObject(batch);
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.BatchListener)provider).logBatch(jsonObject);
-                    getReportingManager().logAll(reportingMessages);
+                    listeners.add(provider);
                 }
             }
-            catch (JSONException jse) {
-                Logger.error(jse, "Failed to call logBatch (unable to deserialize Batch) for kit" + provider.getName() + ": " + jse.getMessage());
+            if (listeners.isEmpty()) {
+                return;
             }
-            catch (Exception e) {
-                Logger.warning("Failed to call logBatch for kit: " + provider.getName() + ": " + e.getMessage());
+            JSONObject jsonObject;
+            try {
+                jsonObject = new JSONObject(batch);
+            } catch (JSONException jse) {
+                Logger.error(jse, "Failed to call logBatch (unable to deserialize Batch): " + jse.getMessage());
+                return;
             }
-        }
+            for (KitIntegration provider : listeners) {
+                try {
+                    List<ReportingMessage> reportingMessages = ((KitIntegration.BatchListener) provider).logBatch(jsonObject);
+                    getReportingManager().logAll(reportingMessages);
+                } catch (Exception e) {
+                    Logger.warning("Failed to call logBatch for kit: " + provider.getName() + ": " + e.getMessage());
+                }
+            }
+        });
     }
 
     @Override
@@ -901,7 +1243,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
                     List<ReportingMessage> report = ((KitIntegration.EventListener) provider).leaveBreadcrumb(breadcrumb);
                     getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), breadcrumb);
+                    mCoreCallbacks.getKitListener().onKitApiCalled("leaveBreadcrumb()", "KitManagerImpl.leaveBreadcrumb()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), breadcrumb);
                 }
             } catch (Exception e) {
                 Logger.warning("Failed to call leaveBreadcrumb for kit: " + provider.getName() + ": " + e.getMessage());
@@ -916,7 +1258,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
                     List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logError(message, eventData);
                     getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), message, eventData);
+                    mCoreCallbacks.getKitListener().onKitApiCalled("logError()", "KitManagerImpl.logError()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), message, eventData);
                 }
             } catch (Exception e) {
                 Logger.warning("Failed to call logError for kit: " + provider.getName() + ": " + e.getMessage());
@@ -931,7 +1273,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 if (provider instanceof KitIntegration.EventListener && !provider.isDisabled()) {
                     List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logException(exception, eventData, message);
                     getReportingManager().logAll(report);
-                    mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), exception, message, eventData);
+                    mCoreCallbacks.getKitListener().onKitApiCalled("logException()", "KitManagerImpl.logException()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), exception, message, eventData);
                 }
             } catch (Exception e) {
                 Logger.warning("Failed to call logException for kit: " + provider.getName() + ": " + e.getMessage());
@@ -947,24 +1289,43 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 return;
             }
         }
-        for (KitIntegration provider : providers.values()) {
+        if (isAsyncEventDispatch()) {
+            final MPEvent finalScreenEvent = screenEvent;
+            dispatchToKits(screenEvent, new KitDispatch() {
+                @Override
+                public void run(Collection<KitIntegration> kits) {
+                    logScreen(finalScreenEvent, kits);
+                }
+            });
+            return;
+        }
+        logScreen(screenEvent, holdForPendingKits(screenEvent, providers.values(), null));
+    }
+
+    /**
+     * @param screenEvent a screen event which the data plan has already been applied to
+     */
+    private void logScreen(MPEvent screenEvent, Collection<KitIntegration> kits) {
+        EventHashCache hashes = new EventHashCache();
+        Map<String, String> attributes = screenEvent.getCustomAttributeStrings();
+        for (KitIntegration provider : kits) {
             try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogScreen(screenEvent.getEventName())) {
+                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogScreen(screenEvent.getEventName(), hashes)) {
                     MPEvent filteredEvent = new MPEvent.Builder(screenEvent)
-                            .customAttributes(provider.getConfiguration().filterScreenAttributes(null, screenEvent.getEventName(), screenEvent.getCustomAttributeStrings()))
+                            .customAttributes(provider.getConfiguration().filterScreenAttributes(screenEvent.getEventName(), attributes, hashes))
                             .build();
 
                     List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
                             filteredEvent,
                             true,
-                            provider.getConfiguration().getCustomMappingList(),
+                            provider.getConfiguration().getCustomMappingIndex(),
                             provider.getConfiguration().getDefaultEventProjection(),
                             provider.getConfiguration().getDefaultScreenCustomMapping());
                     if (projectedEvents == null) {
                         String eventName = filteredEvent.getEventName();
                         Map<String, String> eventInfo = filteredEvent.getCustomAttributeStrings();
                         List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logScreen(eventName, eventInfo);
-                        mCoreCallbacks.getKitListener().onKitApiCalled(provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), eventName, eventInfo);
+                        mCoreCallbacks.getKitListener().onKitApiCalled("logScreen()", "KitManagerImpl.logScreen()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), eventName, eventInfo);
                         if (report != null && report.size() > 0) {
                             for (ReportingMessage message : report) {
                                 message.setMessageType(ReportingMessage.MessageType.SCREEN_VIEW);
@@ -980,7 +1341,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                         boolean forwarded = false;
                         for (CustomMapping.ProjectionResult projectedEvent: projectedEvents) {
                             List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logEvent(projectedEvent.getMPEvent());
-                            mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
+                            mCoreCallbacks.getKitListener().onKitApiCalled("logMPEvent()", "KitManagerImpl.logScreen()", provider.getConfiguration().getKitId(), !MPUtility.isEmpty(report), projectedEvent);
                             if (report != null && report.size() > 0) {
                                 forwarded = true;
                                 for (ReportingMessage message : report) {
@@ -1326,6 +1687,14 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    /**
+     * Unlike {@link #runOnMainThread(Runnable)}, this always posts, even from the main thread, so work posted
+     * from any thread runs in the order it was posted.
+     */
+    protected void postToMainThread(Runnable runnable) {
+        new Handler(Looper.getMainLooper()).post(runnable);
+    }
+
     public boolean isPushEnabled() {
         return mCoreCallbacks.isPushEnabled();
     }
@@ -1383,11 +1752,21 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         }
     }
 
+    /**
+     * Only the kit configuration blocks which have changed since the last update are parsed. Unchanged
+     * blocks keep their previous KitConfiguration, along with its compiled filters, so their kits are not
+     * reconfigured.
+     */
     private List<KitConfiguration> parseKitConfigurations(JSONArray kitConfigs) {
         List<KitConfiguration> configurations = new ArrayList<>();
         if (kitConfigs == null) {
             kitConfigs = new JSONArray();
         }
+        Map<Integer, KitConfiguration> previousConfigurations = new HashMap<>();
+        for (KitConfiguration configuration : kitConfigurations) {
+            previousConfigurations.put(configuration.getKitId(), configuration);
+        }
+        Map<Integer, BigInteger> hashes = new HashMap<>();
         for (int i = 0; i < kitConfigs.length(); i++) {
             JSONObject kitConfig = null;
             try {
@@ -1396,15 +1775,24 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                 Logger.error(e, "Malformed Kit configuration");
             }
             if (kitConfig != null) {
+                int kitId = kitConfig.optInt(KitConfiguration.KEY_ID, -1);
+                BigInteger hash = KitUtils.hashFnv1a(kitConfig.toString().getBytes(UTF_8));
+                KitConfiguration previousConfiguration = previousConfigurations.get(kitId);
+                if (previousConfiguration != null && hash.equals(kitConfigurationHashes.get(kitId))) {
+                    configurations.add(previousConfiguration);
+                    hashes.put(kitId, hash);
+                    continue;
+                }
                 try {
                     configurations.add(createKitConfiguration(kitConfig));
+                    hashes.put(kitId, hash);
                 } catch (JSONException e) {
-                    int kitId = kitConfig.optInt("id", -1);
                     mCoreCallbacks.getKitListener().kitExcluded(kitId, "exception while starting. Exception: " + e.getMessage());
                     Logger.error("Exception while starting kit: " + kitId + ": " + e.getMessage());
                 }
             }
         }
+        kitConfigurationHashes = hashes;
         return configurations;
     }
 
@@ -0,0 +1,124 @@
+package com.mparticle.kits;
+
+import androidx.annotation.Nullable;
+
+import com.mparticle.BaseEvent;
+import com.mparticle.internal.KitsLoadedCallback;
+import com.mparticle.internal.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A kit which has been configured but has not started yet, either because it is being initialized off the main
+ * thread or because it is lazy and no event has been forwarded to it yet.
+ *
+ * Events logged while the kit is starting are held here, and replayed to it in order before it is added to the
+ * active kits. All state is guarded by this object's monitor.
+ */
+final class PendingKit {
+    static final int MAX_HELD_EVENTS = 100;
+
+    private final KitIntegration mKit;
+    private final boolean mLazy;
+    @Nullable
+    private final KitsLoadedCallback mCallback;
+    private List<BaseEvent> mEvents = new ArrayList<BaseEvent>();
+    private boolean mStarting;
+    private boolean mStarted;
+    private boolean mCancelled;
+
+    PendingKit(KitIntegration kit, boolean lazy, @Nullable KitsLoadedCallback callback) {
+        mKit = kit;
+        mLazy = lazy;
+        mCallback = callback;
+    }
+
+    KitIntegration getKit() {
+        return mKit;
+    }
+
+    int getKitId() {
+        return mKit.getConfiguration().getKitId();
+    }
+
+    @Nullable
+    KitsLoadedCallback getCallback() {
+        return mCallback;
+    }
+
+    /**
+     * @return true if the kit is lazy, and is waiting for the first event which would be forwarded to it
+     */
+    synchronized boolean isDeferred() {
+        return mLazy && !mStarting;
+    }
+
+    /**
+     * @return false if the kit has already been started, or cancelled, or was already starting
+     */
+    synchronized boolean setStarting() {
+        if (mStarting || mCancelled) {
+            return false;
+        }
+        mStarting = true;
+        return true;
+    }
+
+    synchronized boolean isStarted() {
+        return mStarted;
+    }
+
+    synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Hold an event until the kit has started.
+     *
+     * @return false if the kit has already started, in which case the event should be forwarded to it directly
+     */
+    synchronized boolean hold(BaseEvent event) {
+        if (mStarted) {
+            return false;
+        }
+        if (!mCancelled) {
+            if (mEvents.size() < MAX_HELD_EVENTS) {
+                mEvents.add(event);
+            } else {
+                Logger.warning("Dropping event held for kit " + mKit.getName() + ", too many events were logged while it was starting");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the events held since the last call, in the order they were logged
+     */
+    synchronized List<BaseEvent> drain() {
+        if (mEvents.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<BaseEvent> events = mEvents;
+        mEvents = new ArrayList<BaseEvent>();
+        return events;
+    }
+
+    synchronized void setStarted() {
+        mStarted = true;
+        mEvents.clear();
+    }
+
+    /**
+     * @return false if the kit has already started, and has to be removed from the active kits instead
+     */
+    synchronized boolean cancel() {
+        if (mStarted) {
+            return false;
+        }
+        mCancelled = true;
+        mEvents.clear();
+        return true;
+    }
+}
@@ -409,10 +409,23 @@ public class CustomMapping {
         if (CommerceEventUtils.getEventType(event) == CommerceEventUtils.Constants.EVENT_TYPE_IMPRESSION) {
             return null;
         }
-        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+        return projectEvents(new EventWrapper.CommerceEventWrapper(event), customMappingList, defaultCommerceCustomMapping);
+    }
+
+    /**
+     * Same as {@link #projectEvents(CommerceEvent, List, CustomMapping)}, but only checks the mappings in the index which could match the event.
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(CommerceEvent event, CustomMappingIndex customMappingIndex, CustomMapping defaultCommerceCustomMapping) {
+        if (CommerceEventUtils.getEventType(event) == CommerceEventUtils.Constants.EVENT_TYPE_IMPRESSION) {
+            return null;
+        }
         EventWrapper.CommerceEventWrapper wrapper = new EventWrapper.CommerceEventWrapper(event);
-        for (int i = 0; i < customMappingList.size(); i++) {
-            CustomMapping customMapping = customMappingList.get(i);
+        return projectEvents(wrapper, getCandidates(customMappingIndex, wrapper), defaultCommerceCustomMapping);
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectEvents(EventWrapper.CommerceEventWrapper wrapper, List<CustomMapping> customMappingList, CustomMapping defaultCommerceCustomMapping) {
+        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+        for (CustomMapping customMapping : customMappingList) {
             if (customMapping.isMatch(wrapper)) {
                 List<CustomMapping.ProjectionResult> results = customMapping.project(wrapper);
                 if (results != null) {
@@ -430,6 +443,13 @@ public class CustomMapping {
         return events;
     }
 
+    private static List<CustomMapping> getCandidates(CustomMappingIndex customMappingIndex, EventWrapper wrapper) {
+        if (customMappingIndex == null) {
+            return Collections.emptyList();
+        }
+        return customMappingIndex.getCandidates(wrapper);
+    }
+
     boolean isMatch(EventWrapper wrapper) {
         if (mIsDefault) {
             return true;
@@ -443,11 +463,21 @@ public class CustomMapping {
     }
 
     public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, boolean isScreenEvent, List<CustomMapping> customMappingList, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
-        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+        return projectEvents(new EventWrapper.MPEventWrapper(event, isScreenEvent), isScreenEvent, customMappingList, defaultCustomMapping, defaultScreenCustomMapping);
+    }
 
+    /**
+     * Same as {@link #projectEvents(MPEvent, boolean, List, CustomMapping, CustomMapping)}, but only checks the mappings in the index which could match the event.
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, boolean isScreenEvent, CustomMappingIndex customMappingIndex, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
         EventWrapper.MPEventWrapper wrapper = new EventWrapper.MPEventWrapper(event, isScreenEvent);
-        for (int i = 0; i < customMappingList.size(); i++) {
-            CustomMapping customMapping = customMappingList.get(i);
+        return projectEvents(wrapper, isScreenEvent, getCandidates(customMappingIndex, wrapper), defaultCustomMapping, defaultScreenCustomMapping);
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectEvents(EventWrapper.MPEventWrapper wrapper, boolean isScreenEvent, List<CustomMapping> customMappingList, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
+        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+
+        for (CustomMapping customMapping : customMappingList) {
             if (customMapping.isMatch(wrapper)) {
                 List<CustomMapping.ProjectionResult> newEvents = customMapping.project(wrapper);
                 if (newEvents != null) {
@@ -0,0 +1,150 @@
+package com.mparticle.kits.mappings;
+
+import com.mparticle.MPEvent;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A kit's custom mappings, indexed by the first match of each mapping so that an event only has to be checked
+ * against the mappings which could possibly apply to it.
+ *
+ * Mappings whose first match is on an event hash are indexed by message type and hash. Mappings whose first match
+ * is on an event name and attribute value are indexed by message type, event name, attribute key and attribute value.
+ * Everything else, such as commerce field and attribute matches, is only indexed by message type. Candidates are
+ * returned in their original order and still go through {@link CustomMapping#isMatch(EventWrapper)}, so the
+ * projections produced are exactly those of a linear scan of the list.
+ */
+public final class CustomMappingIndex {
+    private static final int MESSAGE_TYPE_COMMERCE = 16;
+
+    private final List<CustomMapping> mMappings;
+    private final List<Integer> mUnindexed = new ArrayList<Integer>();
+    private final Map<Integer, List<Integer>> mByMessageType = new HashMap<Integer, List<Integer>>();
+    private final Map<Integer, Map<Integer, List<Integer>>> mByEventHash = new HashMap<Integer, Map<Integer, List<Integer>>>();
+    private final Map<Integer, Map<String, Map<String, Map<String, List<Integer>>>>> mByEventName = new HashMap<Integer, Map<String, Map<String, Map<String, List<Integer>>>>>();
+
+    public CustomMappingIndex(List<CustomMapping> mappings) {
+        mMappings = new ArrayList<CustomMapping>(mappings);
+        for (int i = 0; i < mMappings.size(); i++) {
+            index(i, mMappings.get(i));
+        }
+    }
+
+    public List<CustomMapping> getMappings() {
+        return Collections.unmodifiableList(mMappings);
+    }
+
+    public int size() {
+        return mMappings.size();
+    }
+
+    private void index(int position, CustomMapping mapping) {
+        List<CustomMappingMatch> matches = mapping.getMatchList();
+        if (mapping.isDefault() || matches == null || matches.isEmpty()) {
+            mUnindexed.add(position);
+            return;
+        }
+        //only the first match can be indexed, since a failed match is the only kind which is guaranteed not to modify the event
+        CustomMappingMatch match = matches.get(0);
+        int messageType = match.mMessageType;
+        if (messageType == MESSAGE_TYPE_COMMERCE) {
+            if (match.commerceMatchProperty == null || match.commerceMatchPropertyName == null) {
+                if (match.mMatchType.startsWith(CustomMappingMatch.MATCH_TYPE_HASH)) {
+                    add(getOrCreate(mByEventHash, messageType), match.mEventHash, position);
+                    return;
+                }
+            }
+        } else if (match.mMatchType.startsWith(CustomMappingMatch.MATCH_TYPE_HASH)) {
+            add(getOrCreate(mByEventHash, messageType), match.mEventHash, position);
+            return;
+        } else if (match.mMatchType.startsWith(CustomMappingMatch.MATCH_TYPE_STRING)
+                && match.mEventName != null && match.mAttributeKey != null && match.getAttributeValues() != null) {
+            Map<String, Map<String, List<Integer>>> attributes = getOrCreate(getOrCreate(mByEventName, messageType), normalizeEventName(match.mEventName));
+            Map<String, List<Integer>> values = getOrCreate(attributes, match.mAttributeKey);
+            for (String value : match.getAttributeValues()) {
+                add(values, value, position);
+            }
+            return;
+        }
+        add(mByMessageType, messageType, position);
+    }
+
+    /**
+     * @return the mappings which may match the event, in their original order
+     */
+    List<CustomMapping> getCandidates(EventWrapper wrapper) {
+        BitSet positions = new BitSet(mMappings.size());
+        int messageType = wrapper.getMessageType();
+        set(positions, mUnindexed);
+        set(positions, mByMessageType.get(messageType));
+        Map<Integer, List<Integer>> hashes = mByEventHash.get(messageType);
+        if (hashes != null) {
+            set(positions, hashes.get(wrapper.getEventHash()));
+        }
+        Map<String, Map<String, Map<String, List<Integer>>>> names = mByEventName.get(messageType);
+        if (names != null && wrapper instanceof EventWrapper.MPEventWrapper) {
+            MPEvent event = ((EventWrapper.MPEventWrapper) wrapper).getEvent();
+            Map<String, String> eventAttributes = event.getCustomAttributeStrings();
+            if (event.getEventName() != null && eventAttributes != null) {
+                Map<String, Map<String, List<Integer>>> attributes = names.get(normalizeEventName(event.getEventName()));
+                if (attributes != null) {
+                    for (Map.Entry<String, Map<String, List<Integer>>> attribute : attributes.entrySet()) {
+                        String value = eventAttributes.get(attribute.getKey());
+                        if (value != null) {
+                            set(positions, attribute.getValue().get(value.toLowerCase(Locale.US)));
+                        }
+                    }
+                }
+            }
+        }
+        List<CustomMapping> candidates = new ArrayList<CustomMapping>(positions.cardinality());
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            candidates.add(mMappings.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * Two names normalize to the same String if and only if they are equal according to {@link String#equalsIgnoreCase(String)},
+     * which is how event names are compared when matching.
+     */
+    static String normalizeEventName(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static void set(BitSet positions, List<Integer> values) {
+        if (values != null) {
+            for (Integer value : values) {
+                positions.set(value);
+            }
+        }
+    }
+
+    private static <K> void add(Map<K, List<Integer>> map, K key, int position) {
+        List<Integer> positions = map.get(key);
+        if (positions == null) {
+            positions = new ArrayList<Integer>(1);
+            map.put(key, positions);
+        }
+        positions.add(position);
+    }
+
+    private static <K, L, V> Map<L, V> getOrCreate(Map<K, Map<L, V>> map, K key) {
+        Map<L, V> value = map.get(key);
+        if (value == null) {
+            value = new HashMap<L, V>();
+            map.put(key, value);
+        }
+        return value;
+    }
+}
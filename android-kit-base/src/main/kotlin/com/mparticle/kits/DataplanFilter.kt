@@ -9,6 +9,7 @@ import com.mparticle.identity.MParticleIdentityClientImpl
 import com.mparticle.internal.Logger
 import org.json.JSONArray
 import org.json.JSONObject
+import java.util.BitSet
 
 internal interface DataplanFilter {
     fun <T : BaseEvent> transformEventForEvent(event: T?): T?
@@ -53,73 +54,78 @@ Data Plan parsed for Kit Filtering:
         )
     }
 
+    // the dataplan compiled for per-event lookups, so filtering an event does not build its DataPoint key.
+    // every attribute key in the plan is interned as an index into attributeIndex, and each data point
+    // stores the attribute keys it allows as a BitSet of those indexes
+    private val attributeIndex = HashMap<String, Int>()
+    private val customEvents = HashMap<String, HashMap<String, CompiledDataPoint>>()
+    private val screenEvents = HashMap<String, CompiledDataPoint>()
+    private val productActions = HashMap<String, CompiledDataPoint>()
+    private val promotionActions = HashMap<String, CompiledDataPoint>()
+    private var productImpressions: CompiledDataPoint? = null
+    private val userAttributesDataPoint = dataPoints[USER_ATTRIBUTES_KEY]
+    private val userIdentitiesDataPoint = dataPoints[USER_IDENTITIES_KEY]
+
+    init {
+        dataPoints.forEach { (key, allowedKeys) -> compileDataPoint(key, allowedKeys) }
+    }
+
     /**
      * filters out events and their attributes if
      * 1) they are not defined within the dataplan
      * 2) the corresponding flag for the filtering area is true
      *
-     * note: this will NOT return a copy of the event, it will return either the original event filtered or null
+     * note: this will NOT return a copy of the event, it will return either the original event filtered or null.
+     * An event's attributes are only replaced if at least one of them is blocked
      */
     override fun <T : BaseEvent> transformEventForEvent(event: T?): T? {
         if (event == null) {
             return null
         }
         if (blockEvents || blockEventAttributes) {
-            val dataPointKey = when {
+            val dataPoint = when {
                 event is MPEvent ->
                     when {
-                        event.isScreenEvent -> DataPoint(SCREEN_EVENT_KEY, event.eventName)
-                        else -> DataPoint(CUSTOM_EVENT_KEY, event.eventName, event.eventType.getEventsApiName())
+                        event.isScreenEvent -> screenEvents[event.eventName]
+                        else -> customEvents[event.eventType.getEventsApiName()]?.get(event.eventName)
                     }
                 event is CommerceEvent ->
                     when {
-                        !event.productAction.isNullOrBlank() -> DataPoint(PRODUCT_ACTION_KEY, event.productAction)
-                        !event.promotionAction.isNullOrBlank() -> DataPoint(PROMOTION_ACTION_KEY, event.promotionAction)
-                        !event.impressions.isNullOrEmpty() -> DataPoint(PRODUCT_IMPRESSION_KEY)
-                        else -> null
+                        !event.productAction.isNullOrBlank() -> productActions[event.productAction]
+                        !event.promotionAction.isNullOrBlank() -> promotionActions[event.promotionAction]
+                        !event.impressions.isNullOrEmpty() -> productImpressions
+                        else -> return event
                     }
-                else -> null
+                // shouldn't happen but we have to handle it
+                else -> return event
             }
-            // shouldn't happen but we have to handle it
-            dataPointKey ?: return event
             // if there is no valid datapoint then it is an unplanned event
-            if (blockEvents && !dataPoints.containsKey(dataPointKey.toString())) {
-                Logger.verbose("Blocking unplanned event: $dataPointKey")
+            if (blockEvents && dataPoint?.planned != true) {
+                Logger.verbose("Blocking unplanned event: ${getDataPointKey(event)}")
                 return null
             }
-            val dataPoint = dataPoints[dataPointKey.toString()]
-            if (blockEventAttributes) {
-                event.customAttributes = event.customAttributeStrings?.filterKeys {
-                    // null dataPoint means there are no constraints for custom attributes
-                    if (dataPoint == null || dataPoint.contains(it)) {
-                        true
-                    } else {
-                        Logger.verbose("Blocking unplanned attribute: $it")
-                        false
+            // null dataPoint means there are no constraints for custom attributes or product attributes
+            if (blockEventAttributes && dataPoint != null && !dataPoint.allowsAll) {
+                val attributes = dataPoint.attributes
+                if (attributes != null && event.customAttributes?.keys?.any { !attributes.allows(it) } == true) {
+                    event.customAttributes = event.customAttributeStrings?.filterKeys {
+                        attributes.allows(it).also { allowed ->
+                            if (!allowed) {
+                                Logger.verbose("Blocking unplanned attribute: $it")
+                            }
+                        }
                     }
                 }
                 if (event is CommerceEvent) {
-                    val productActionDatapoint = dataPoints["$dataPointKey.$PRODUCT_ACTION_PRODUCTS"]
-                    event.products?.forEach { product ->
-                        product?.customAttributes?.apply {
-                            val filteredAttributes = filterKeys {
-                                productActionDatapoint?.contains(it) ?: true
-                            }
-                            clear()
-                            putAll(filteredAttributes)
+                    dataPoint.productActionProducts?.let { productAttributes ->
+                        event.products?.forEach { product ->
+                            product?.customAttributes?.filterBlocked(productAttributes)
                         }
                     }
-                    val productImpressionDatapoint = dataPoints["$dataPointKey.$PRODUCT_IMPRESSION_PRODUCTS"]
-                    if (event.impressions?.size ?: 0 > 0) {
+                    dataPoint.productImpressionProducts?.let { productAttributes ->
                         event.impressions?.forEach {
                             it.products.forEach { product ->
-                                product?.customAttributes?.apply {
-                                    val filteredAttributes = filterKeys {
-                                        productImpressionDatapoint?.contains(it) ?: true
-                                    }
-                                    clear()
-                                    putAll(filteredAttributes)
-                                }
+                                product?.customAttributes?.filterBlocked(productAttributes)
                             }
                         }
                     }
@@ -130,12 +136,89 @@ Data Plan parsed for Kit Filtering:
         return event
     }
 
+    private fun BitSet.allows(key: String): Boolean {
+        val index = attributeIndex[key] ?: return false
+        return get(index)
+    }
+
+    private fun MutableMap<String, String>.filterBlocked(allowed: BitSet) {
+        val iterator = keys.iterator()
+        while (iterator.hasNext()) {
+            if (!allowed.allows(iterator.next())) {
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun compileDataPoint(key: String, allowedKeys: Set<String>?) {
+        val productAttributeType = when {
+            key.endsWith(".$PRODUCT_ACTION_PRODUCTS") -> PRODUCT_ACTION_PRODUCTS
+            key.endsWith(".$PRODUCT_IMPRESSION_PRODUCTS") -> PRODUCT_IMPRESSION_PRODUCTS
+            else -> null
+        }
+        val eventKey = productAttributeType?.let { key.substring(0, key.length - it.length - 1) } ?: key
+        val type = eventKey.substringBefore('.')
+        val name = if (eventKey.length > type.length) eventKey.substring(type.length + 1) else null
+        val dataPoint = when (type) {
+            CUSTOM_EVENT_KEY -> {
+                // the custom event type never contains a period, but the event name may
+                val separator = name?.lastIndexOf('.') ?: -1
+                if (separator < 0) {
+                    return
+                }
+                customEvents
+                    .getOrPut(name!!.substring(separator + 1)) { HashMap() }
+                    .getOrPut(name.substring(0, separator)) { CompiledDataPoint() }
+            }
+            SCREEN_EVENT_KEY -> screenEvents.getOrPut(name ?: return) { CompiledDataPoint() }
+            PRODUCT_ACTION_KEY -> productActions.getOrPut(name ?: return) { CompiledDataPoint() }
+            PROMOTION_ACTION_KEY -> promotionActions.getOrPut(name ?: return) { CompiledDataPoint() }
+            PRODUCT_IMPRESSION_KEY -> {
+                if (name != null) {
+                    return
+                }
+                productImpressions ?: CompiledDataPoint().also { productImpressions = it }
+            }
+            else -> return
+        }
+        val allowed = allowedKeys?.let { keys ->
+            BitSet().apply {
+                keys.forEach { set(attributeIndex.getOrPut(it) { attributeIndex.size }) }
+            }
+        }
+        when (productAttributeType) {
+            PRODUCT_ACTION_PRODUCTS -> dataPoint.productActionProducts = allowed
+            PRODUCT_IMPRESSION_PRODUCTS -> dataPoint.productImpressionProducts = allowed
+            else -> {
+                dataPoint.planned = true
+                dataPoint.attributes = allowed
+            }
+        }
+    }
+
+    private fun getDataPointKey(event: BaseEvent): DataPoint? =
+        when {
+            event is MPEvent ->
+                when {
+                    event.isScreenEvent -> DataPoint(SCREEN_EVENT_KEY, event.eventName)
+                    else -> DataPoint(CUSTOM_EVENT_KEY, event.eventName, event.eventType.getEventsApiName())
+                }
+            event is CommerceEvent ->
+                when {
+                    !event.productAction.isNullOrBlank() -> DataPoint(PRODUCT_ACTION_KEY, event.productAction)
+                    !event.promotionAction.isNullOrBlank() -> DataPoint(PROMOTION_ACTION_KEY, event.promotionAction)
+                    !event.impressions.isNullOrEmpty() -> DataPoint(PRODUCT_IMPRESSION_KEY)
+                    else -> null
+                }
+            else -> null
+        }
+
     override fun transformIdentities(identities: Map<MParticle.IdentityType, String?>?): Map<MParticle.IdentityType, String?>? {
         if (identities == null) {
             return null
         }
         if (blockUserIdentities) {
-            val datapoint = dataPoints[USER_IDENTITIES_KEY]
+            val datapoint = userIdentitiesDataPoint
             if (datapoint != null) {
                 return identities.filterKeys { identity ->
                     datapoint.contains(MParticleIdentityClientImpl.getStringValue(identity)).also {
@@ -154,7 +237,7 @@ Data Plan parsed for Kit Filtering:
             return null
         }
         if (blockUserAttributes) {
-            val datapoint = dataPoints[USER_ATTRIBUTES_KEY]
+            val datapoint = userAttributesDataPoint
             if (datapoint != null) {
                 return attributes.filterKeys { attribute ->
                     datapoint.contains(attribute).also {
@@ -170,7 +253,7 @@ Data Plan parsed for Kit Filtering:
 
     override fun isUserAttributeBlocked(key: String?): Boolean {
         if (blockUserAttributes && key != null) {
-            val datapoint = dataPoints[USER_ATTRIBUTES_KEY]
+            val datapoint = userAttributesDataPoint
             if (datapoint != null) {
                 return !datapoint.contains(key).also {
                     if (!it) {
@@ -184,7 +267,7 @@ Data Plan parsed for Kit Filtering:
 
     override fun isUserIdentityBlocked(key: MParticle.IdentityType?): Boolean {
         if (blockUserIdentities && key != null) {
-            val datapoint = dataPoints[USER_IDENTITIES_KEY]
+            val datapoint = userIdentitiesDataPoint
             if (datapoint != null) {
                 return !datapoint.contains(MParticleIdentityClientImpl.getStringValue(key)).also {
                     if (!it) {
@@ -433,6 +516,20 @@ Data Plan parsed for Kit Filtering:
         override fun toString() = "$type${if (name != null) ".$name" else ""}${if (eventType != null) ".$eventType" else ""}${productAttributeType?.let { ".$it" } ?: ""}"
     }
 
+    /**
+     * A data point compiled from [dataPoints]. `planned` is false when the plan only defines product
+     * attributes for this event. A null BitSet means all keys are allowed
+     */
+    private class CompiledDataPoint {
+        var planned = false
+        var attributes: BitSet? = null
+        var productActionProducts: BitSet? = null
+        var productImpressionProducts: BitSet? = null
+
+        val allowsAll: Boolean
+            get() = attributes == null && productActionProducts == null && productImpressionProducts == null
+    }
+
     class EmptyDataplanFilter : DataplanFilter {
         override fun <T : BaseEvent> transformEventForEvent(event: T?) = event
         override fun transformIdentities(identities: Map<MParticle.IdentityType, String?>?) = identities
@@ -4,6 +4,11 @@ import com.mparticle.Configuration
 
 open class KitOptions(initializer: KitOptions.() -> Unit = {}) : Configuration<KitManagerImpl> {
     val kits: MutableMap<Int, Class<out KitIntegration>> = mutableMapOf()
+    val lazyKits: MutableSet<Int> = mutableSetOf()
+    var isAsyncEventDispatch: Boolean = false
+        private set
+    var isParallelKitStartup: Boolean = false
+        private set
 
     init {
         this.initializer()
@@ -14,6 +19,34 @@ open class KitOptions(initializer: KitOptions.() -> Unit = {}) : Configuration<K
         return this
     }
 
+    /**
+     * Forward logged events to kits from a background thread, rather than on the thread which logged them.
+     * Kits which override [KitIntegration.requiresMainThread] continue to receive events on the main thread.
+     * Events must not be modified after they have been logged when this is enabled.
+     */
+    open fun asyncEventDispatch(enabled: Boolean): KitOptions {
+        isAsyncEventDispatch = enabled
+        return this
+    }
+
+    /**
+     * Initialize kits which do not [KitIntegration.requiresMainThread] on a background pool, in parallel,
+     * instead of one after another on the main thread. Events logged while a kit is starting are held
+     * and forwarded to it once it has started.
+     */
+    open fun parallelKitStartup(enabled: Boolean): KitOptions {
+        isParallelKitStartup = enabled
+        return this
+    }
+
+    /**
+     * Defer initializing a kit until the first event which would be forwarded to it is logged.
+     */
+    open fun lazyKit(kitId: Int): KitOptions {
+        lazyKits.add(kitId)
+        return this
+    }
+
     override fun configures(): Class<KitManagerImpl> {
         return KitManagerImpl::class.java
     }
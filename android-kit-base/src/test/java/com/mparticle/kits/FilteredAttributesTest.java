@@ -0,0 +1,70 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FilteredAttributesTest {
+
+    @Test
+    public void testExcludedKeys() {
+        Map<String, String> source = createSource();
+        Map<String, String> view = new FilteredAttributes(source, new HashSet<String>(Collections.singletonList("b")));
+        assertEquals(2, view.size());
+        assertEquals("1", view.get("a"));
+        assertNull(view.get("b"));
+        assertFalse(view.containsKey("b"));
+        assertTrue(view.containsKey("c"));
+        Map<String, String> expected = new HashMap<String, String>(source);
+        expected.remove("b");
+        assertEquals(expected, view);
+        assertEquals(expected, new HashMap<String, String>(view));
+    }
+
+    @Test
+    public void testModificationsAreNotShared() {
+        Map<String, String> source = createSource();
+        Map<String, String> first = new FilteredAttributes(source, null);
+        Map<String, String> second = new FilteredAttributes(source, new HashSet<String>(Collections.singletonList("a")));
+
+        first.put("d", "4");
+        second.remove("c");
+        assertEquals(4, first.size());
+        assertEquals("4", first.get("d"));
+        assertEquals(1, second.size());
+        assertEquals("2", second.get("b"));
+        assertEquals(createSource(), source);
+
+        Map<String, String> third = new FilteredAttributes(source, null);
+        Iterator<Map.Entry<String, String>> iterator = third.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (entry.getKey().equals("a")) {
+                iterator.remove();
+            } else if (entry.getKey().equals("b")) {
+                entry.setValue("changed");
+            }
+        }
+        assertEquals(2, third.size());
+        assertEquals("changed", third.get("b"));
+        assertFalse(third.containsKey("a"));
+        assertEquals(createSource(), source);
+    }
+
+    private Map<String, String> createSource() {
+        Map<String, String> source = new HashMap<String, String>();
+        source.put("a", "1");
+        source.put("b", "2");
+        source.put("c", "3");
+        return source;
+    }
+}
@@ -1,5 +1,6 @@
 package com.mparticle.kits;
 
+import com.mparticle.MPEvent;
 import com.mparticle.MParticle;
 import com.mparticle.commerce.CommerceEvent;
 import com.mparticle.commerce.Impression;
@@ -29,6 +30,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 
@@ -230,6 +232,46 @@ public class KitConfigurationTest {
         assertNull(filteredEvent.getProducts().get(0).getBrand());
     }
 
+    @Test
+    public void testFilterCommerceEventDoesNotMutateEvent() throws Exception {
+        Map<String, String> productAttributes = new HashMap<String, String>();
+        productAttributes.put("my custom product attribute", "whatever");
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("my custom attribute", "whatever");
+        CommerceEvent event = new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("name", "sku", 5)
+                .customAttributes(productAttributes)
+                .brand("cool brand").build())
+                .customAttributes(attributes)
+                .transactionAttributes(new TransactionAttributes().setId("some id").setAffiliation("cool affiliation"))
+                .build();
+
+        CommerceEvent filteredEvent = MockKitConfiguration.createKitConfiguration(new JSONObject(COMMERCE_FILTERS)).filterCommerceEvent(event);
+        assertNull(filteredEvent.getTransactionAttributes().getAffiliation());
+        filteredEvent = MockKitConfiguration.createKitConfiguration(new JSONObject(COMMERCE_FILTERS_2)).filterCommerceEvent(event);
+        assertNull(filteredEvent.getProducts().get(0).getBrand());
+        assertNull(filteredEvent.getProducts().get(0).getCustomAttributes().get("my custom product attribute"));
+
+        //the event which was logged, and is shared with the other kits, is unchanged
+        assertEquals("cool affiliation", event.getTransactionAttributes().getAffiliation());
+        assertEquals("some id", event.getTransactionAttributes().getId());
+        assertEquals(1, event.getProducts().size());
+        assertEquals("cool brand", event.getProducts().get(0).getBrand());
+        assertEquals("whatever", event.getProducts().get(0).getCustomAttributes().get("my custom product attribute"));
+        assertEquals("whatever", event.getCustomAttributeStrings().get("my custom attribute"));
+
+        //an event which no filter applies to is still copied, so a kit modifying it can't affect the app or other kits
+        filteredEvent = MockKitConfiguration.createKitConfiguration().filterCommerceEvent(event);
+        assertNotSame(event, filteredEvent);
+        assertEquals(event.getProducts().size(), filteredEvent.getProducts().size());
+        assertNotSame(event.getProducts().get(0), filteredEvent.getProducts().get(0));
+        assertNotSame(event.getProducts().get(0).getCustomAttributes(), filteredEvent.getProducts().get(0).getCustomAttributes());
+        assertNotSame(event.getTransactionAttributes(), filteredEvent.getTransactionAttributes());
+        filteredEvent.getTransactionAttributes().setAffiliation("changed by a kit");
+        filteredEvent.getProducts().get(0).getCustomAttributes().put("my custom product attribute", "changed by a kit");
+        assertEquals("cool affiliation", event.getTransactionAttributes().getAffiliation());
+        assertEquals("whatever", event.getProducts().get(0).getCustomAttributes().get("my custom product attribute"));
+    }
+
     @Test
     public void testFilterCommerceEventType() throws Exception {
         //CUSTOM ATTRIBUTES
@@ -563,6 +605,60 @@ public class KitConfigurationTest {
     /**
      * This tests parsing of the attributeAddToUser ("eea"), attributeRemoveFromUser("ear") and attributeSingleItemUser("eas")
      */
+    @Test
+    public void testSharedEventHashes() throws Exception {
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("first", "one");
+        attributes.put("second", "two");
+        MPEvent event = new MPEvent.Builder("an event", MParticle.EventType.Navigation).customAttributes(attributes).build();
+        String prefix = MParticle.EventType.Navigation.ordinal() + "an event";
+        KitConfiguration firstConfiguration = MockKitConfiguration.createKitConfiguration(new JSONObject("{\"id\":1, \"hs\":{\"ea\":{\"" + KitUtils.hashForFiltering(prefix + "first") + "\":0}}}"));
+        KitConfiguration secondConfiguration = MockKitConfiguration.createKitConfiguration(new JSONObject("{\"id\":2, \"hs\":{\"ea\":{\"" + KitUtils.hashForFiltering(prefix + "second") + "\":0}, \"et\":{\"" + KitUtils.hashForFiltering(MParticle.EventType.Navigation.ordinal() + "") + "\":0}}}"));
+
+        EventHashCache hashes = new EventHashCache();
+        assertTrue(firstConfiguration.shouldLogEvent(event, hashes));
+        Map<String, String> filtered = firstConfiguration.filterEventAttributes(event, hashes);
+        assertEquals(1, filtered.size());
+        assertEquals("two", filtered.get("second"));
+        assertFalse(secondConfiguration.shouldLogEvent(event, hashes));
+        filtered = secondConfiguration.filterEventAttributes(event, hashes);
+        assertEquals(1, filtered.size());
+        assertEquals("one", filtered.get("first"));
+        assertEquals(firstConfiguration.filterEventAttributes(event), firstConfiguration.filterEventAttributes(event, hashes));
+    }
+
+    @Test
+    public void testOverriddenFiltersAreUsedWhenForwarding() throws Exception {
+        KitConfiguration configuration = new MockKitConfiguration() {
+            @Override
+            protected boolean shouldLogEvent(MPEvent event) {
+                return !"blocked".equals(event.getEventName());
+            }
+
+            @Override
+            protected CommerceEvent filterCommerceEvent(CommerceEvent event) {
+                return null;
+            }
+
+            @Override
+            public boolean shouldLogScreen(String screenName) {
+                return false;
+            }
+        }.parseConfiguration(new JSONObject("{\"id\":1}"));
+        EventHashCache hashes = new EventHashCache();
+        assertTrue(configuration.shouldLogEvent(new MPEvent.Builder("allowed").build(), hashes));
+        assertFalse(configuration.shouldLogEvent(new MPEvent.Builder("blocked").build(), hashes));
+        CommerceEvent commerceEvent = new CommerceEvent.Builder(Product.CHECKOUT, new Product.Builder("name", "sku", 100).build()).build();
+        assertNull(configuration.filterCommerceEvent(commerceEvent, hashes));
+        assertFalse(configuration.shouldLogScreen("screen", hashes));
+
+        //without overrides, the forwarding entry points agree with the protected methods
+        KitConfiguration defaultConfiguration = MockKitConfiguration.createKitConfiguration();
+        assertTrue(defaultConfiguration.shouldLogEvent(new MPEvent.Builder("blocked").build(), hashes));
+        assertNotNull(defaultConfiguration.filterCommerceEvent(commerceEvent, hashes));
+        assertTrue(defaultConfiguration.shouldLogScreen("screen", hashes));
+    }
+
     @Test
     public void testAttributeToUser() throws JSONException {
         JSONObject kitConfig = new JSONObject()
@@ -0,0 +1,141 @@
+package com.mparticle.kits;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+
+import com.mparticle.mock.MockKit;
+import com.mparticle.mock.MockKitIntegrationFactory;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Bundle.class})
+public class KitIntegrationFactoryTest {
+
+    @Test
+    public void testGetRegisteredIntegrations() throws Exception {
+        Map<String, Object> metaData = new HashMap<>();
+        metaData.put("com.mparticle.kit.28", "com.mparticle.kits.AppboyKit");
+        metaData.put("com.mparticle.kit.92", "com.mparticle.kits.SwrveKit");
+        metaData.put("com.google.android.gms.version", 12451000);
+        metaData.put("com.mparticle.kit.50", 50);
+        Context context = mockContext(metaData);
+
+        Map<Integer, String> kits = new KitIntegrationFactory().getRegisteredIntegrations(context);
+        assertEquals(2, kits.size());
+        assertEquals("com.mparticle.kits.AppboyKit", kits.get(28));
+        assertEquals("com.mparticle.kits.SwrveKit", kits.get(92));
+    }
+
+    @Test
+    public void testGetRegisteredIntegrationsWithoutMetaData() throws Exception {
+        KitIntegrationFactory factory = new KitIntegrationFactory();
+        assertTrue(factory.getRegisteredIntegrations(null).isEmpty());
+        assertTrue(factory.getRegisteredIntegrations(mockContext(null)).isEmpty());
+
+        //a malformed kit ID does not register any of the kits
+        Map<String, Object> metaData = new HashMap<>();
+        metaData.put("com.mparticle.kit.28", "com.mparticle.kits.AppboyKit");
+        metaData.put("com.mparticle.kit.abc", "com.mparticle.kits.SwrveKit");
+        assertTrue(factory.getRegisteredIntegrations(mockContext(metaData)).isEmpty());
+
+        Context context = Mockito.mock(Context.class);
+        PackageManager packageManager = Mockito.mock(PackageManager.class);
+        Mockito.when(context.getPackageName()).thenReturn("com.mparticle.test");
+        Mockito.when(context.getPackageManager()).thenReturn(packageManager);
+        Mockito.when(packageManager.getApplicationInfo(Mockito.anyString(), Mockito.anyInt())).thenThrow(new PackageManager.NameNotFoundException());
+        assertTrue(factory.getRegisteredIntegrations(context).isEmpty());
+    }
+
+    @Test
+    public void testRegisteredIntegrationsSkipKnownIntegrations() throws Exception {
+        Map<String, Object> metaData = new HashMap<>();
+        metaData.put("com.mparticle.kit.1", MockKit.class.getName());
+        final boolean[] scanned = new boolean[1];
+        KitIntegrationFactory factory = new KitIntegrationFactory(mockContext(metaData)) {
+            @Override
+            protected Map<Integer, String> getKnownIntegrations() {
+                scanned[0] = true;
+                return knownIntegrations();
+            }
+        };
+        //the known kit names are not looked up once any kit is registered
+        assertFalse(scanned[0]);
+        assertEquals(new HashSet<>(Arrays.asList(1)), factory.getSupportedKits());
+        assertEquals(MockKit.class, factory.supportedKits.get(1));
+
+        //without any registered kits they are
+        factory = new KitIntegrationFactory(mockContext(new HashMap<String, Object>())) {
+            @Override
+            protected Map<Integer, String> getKnownIntegrations() {
+                scanned[0] = true;
+                return knownIntegrations();
+            }
+        };
+        assertTrue(scanned[0]);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), factory.getSupportedKits());
+    }
+
+    @Test
+    public void testScanKnownIntegrationsOptIn() throws Exception {
+        Map<String, Object> metaData = new HashMap<>();
+        metaData.put("com.mparticle.kit.1", MockKit.class.getName());
+        metaData.put(KitIntegrationFactory.SCAN_KNOWN_KITS_META_DATA, true);
+        KitIntegrationFactory factory = new KitIntegrationFactory(mockContext(metaData)) {
+            @Override
+            protected Map<Integer, String> getKnownIntegrations() {
+                return knownIntegrations();
+            }
+        };
+        //a kit built before kits were registered in the manifest is still found by name
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), factory.getSupportedKits());
+        //registered kits take precedence
+        assertEquals(MockKit.class, factory.supportedKits.get(1));
+        assertEquals(MockKit.class, factory.supportedKits.get(2));
+        assertFalse(factory.isSupported(3));
+    }
+
+    private static Map<Integer, String> knownIntegrations() {
+        Map<Integer, String> kits = new HashMap<>();
+        kits.put(1, MockKitIntegrationFactory.class.getName());
+        kits.put(2, MockKit.class.getName());
+        kits.put(3, "com.mparticle.kits.NotBundledKit");
+        return kits;
+    }
+
+    private Context mockContext(Map<String, Object> metaData) throws Exception {
+        Context context = Mockito.mock(Context.class);
+        PackageManager packageManager = Mockito.mock(PackageManager.class);
+        ApplicationInfo applicationInfo = Mockito.mock(ApplicationInfo.class);
+        Mockito.when(context.getPackageName()).thenReturn("com.mparticle.test");
+        Mockito.when(context.getPackageManager()).thenReturn(packageManager);
+        Mockito.when(packageManager.getApplicationInfo("com.mparticle.test", PackageManager.GET_META_DATA)).thenReturn(applicationInfo);
+        if (metaData != null) {
+            Bundle bundle = PowerMockito.mock(Bundle.class);
+            Mockito.when(bundle.keySet()).thenReturn(metaData.keySet());
+            for (Map.Entry<String, Object> entry : metaData.entrySet()) {
+                Mockito.when(bundle.get(entry.getKey())).thenReturn(entry.getValue());
+            }
+            Mockito.when(bundle.getBoolean(KitIntegrationFactory.SCAN_KNOWN_KITS_META_DATA, false))
+                    .thenReturn(Boolean.TRUE.equals(metaData.get(KitIntegrationFactory.SCAN_KNOWN_KITS_META_DATA)));
+            applicationInfo.metaData = bundle;
+        }
+        return context;
+    }
+}
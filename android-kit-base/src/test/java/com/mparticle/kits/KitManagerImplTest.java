@@ -2,6 +2,7 @@ package com.mparticle.kits;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
 
 import com.mparticle.BaseEvent;
@@ -26,12 +27,18 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class KitManagerImplTest {
     MParticle mparticle;
@@ -75,6 +82,213 @@ public class KitManagerImplTest {
         assertEquals(mockKit, manager.providers.values().iterator().next());
     }
 
+    @Test
+    public void testLazyKitStartsOnFirstEvent() throws Exception {
+        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
+        Mockito.when(mockUser.getConsentState()).thenReturn(ConsentState.builder().build());
+        Mockito.when(mockIdentity.getCurrentUser()).thenReturn(mockUser);
+        KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().lazyKit(1));
+        JSONArray kitConfiguration = new JSONArray();
+        kitConfiguration.put(new JSONObject("{\"id\":1}"));
+        KitIntegrationFactory factory = Mockito.mock(KitIntegrationFactory.class);
+        manager.setKitFactory(factory);
+        Mockito.when(factory.isSupported(Mockito.anyInt())).thenReturn(true);
+        KitIntegration mockKit = Mockito.mock(KitIntegration.class);
+        KitConfiguration mockConfiguration = Mockito.mock(KitConfiguration.class);
+        Mockito.when(mockConfiguration.getKitId()).thenReturn(1);
+        Mockito.when(mockKit.getConfiguration()).thenReturn(mockConfiguration);
+        Mockito.when(mockKit.requiresMainThread()).thenReturn(true);
+        Mockito.when(factory.createInstance(Mockito.any(KitManagerImpl.class), Mockito.any(KitConfiguration.class))).thenReturn(mockKit);
+
+        final List<Integer> loadedKits = new LinkedList<>();
+        manager.updateKits(kitConfiguration).onKitLoaded(kitId -> loadedKits.add(kitId));
+        assertEquals(0, manager.providers.size());
+        assertEquals(1, manager.pendingKits.size());
+        Mockito.verify(mockKit, Mockito.never()).onKitCreate(Mockito.any(), Mockito.any());
+
+        MPEvent filteredEvent = new MPEvent.Builder("filtered").build();
+        manager.logEvent(filteredEvent);
+        assertEquals(0, manager.providers.size());
+
+        MPEvent event = new MPEvent.Builder("forwarded").build();
+        Mockito.when(mockConfiguration.shouldLogEvent(event)).thenReturn(true);
+        manager.logEvent(event);
+        assertEquals(mockKit, manager.providers.get(1));
+        assertEquals(0, manager.pendingKits.size());
+        assertEquals(1, loadedKits.size());
+        Mockito.verify(mockKit).onKitCreate(Mockito.any(), Mockito.any());
+        Mockito.verify(mockKit).logBaseEvent(event);
+        Mockito.verify(mockKit, Mockito.never()).logBaseEvent(filteredEvent);
+    }
+
+    @Test
+    public void testParallelKitStartup() throws Exception {
+        KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().parallelKitStartup(true));
+        final AtomicReference<String> startupThread = new AtomicReference<>();
+        KitIntegration mockKit = createKit(manager, 1);
+        Mockito.doAnswer(invocation -> {
+            startupThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(mockKit).onKitCreate(Mockito.any(), Mockito.any());
+
+        final CountDownLatch started = new CountDownLatch(1);
+        manager.updateKits(kitConfigurations(1)).onKitLoaded(kitId -> started.countDown());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals("mParticleKitStartup", startupThread.get());
+        assertEquals(mockKit, manager.providers.get(1));
+        assertEquals(0, manager.pendingKits.size());
+    }
+
+    @Test
+    public void testParallelKitStartupReplaysHeldEvents() throws Exception {
+        KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().parallelKitStartup(true));
+        List<Runnable> startupPool = new LinkedList<>();
+        manager.setKitStartupExecutor(startupPool::add);
+        KitIntegration mockKit = createKit(manager, 1);
+
+        final List<Integer> loadedKits = new LinkedList<>();
+        manager.updateKits(kitConfigurations(1)).onKitLoaded(kitId -> loadedKits.add(kitId));
+        assertEquals(1, startupPool.size());
+        assertEquals(0, manager.providers.size());
+        assertEquals(1, manager.pendingKits.size());
+
+        MPEvent first = new MPEvent.Builder("first").build();
+        MPEvent second = new MPEvent.Builder("second").build();
+        manager.logEvent(first);
+        manager.logEvent(second);
+        Mockito.verify(mockKit, Mockito.never()).onKitCreate(Mockito.any(), Mockito.any());
+        Mockito.verify(mockKit, Mockito.never()).logBaseEvent(Mockito.any(BaseEvent.class));
+
+        startupPool.remove(0).run();
+        assertEquals(mockKit, manager.providers.get(1));
+        assertEquals(0, manager.pendingKits.size());
+        assertEquals(1, loadedKits.size());
+        MPEvent third = new MPEvent.Builder("third").build();
+        manager.logEvent(third);
+        InOrder inOrder = Mockito.inOrder(mockKit);
+        inOrder.verify(mockKit).onKitCreate(Mockito.any(), Mockito.any());
+        inOrder.verify(mockKit).logBaseEvent(first);
+        inOrder.verify(mockKit).logBaseEvent(second);
+        inOrder.verify(mockKit).logBaseEvent(third);
+        Mockito.verify(mockKit, Mockito.times(3)).logBaseEvent(Mockito.any(BaseEvent.class));
+    }
+
+    @Test
+    public void testParallelKitStartupHeldEventsPrecedeLiveEvents() throws Exception {
+        final KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().parallelKitStartup(true));
+        List<Runnable> startupPool = new LinkedList<>();
+        manager.setKitStartupExecutor(startupPool::add);
+        KitIntegration mockKit = createKit(manager, 1);
+
+        final MPEvent held = new MPEvent.Builder("held").build();
+        final MPEvent duringStartup = new MPEvent.Builder("during startup").build();
+        final MPEvent duringReplay = new MPEvent.Builder("during replay").build();
+        MPEvent live = new MPEvent.Builder("live").build();
+        //events logged by other threads while the kit is initializing, or while its held events are being replayed
+        Mockito.doAnswer(invocation -> {
+            manager.logEvent(duringStartup);
+            return null;
+        }).when(mockKit).onKitCreate(Mockito.any(), Mockito.any());
+        Mockito.doAnswer(invocation -> {
+            manager.logEvent(duringReplay);
+            return null;
+        }).when(mockKit).logBaseEvent(held);
+
+        manager.updateKits(kitConfigurations(1));
+        manager.logEvent(held);
+        startupPool.remove(0).run();
+        manager.logEvent(live);
+
+        InOrder inOrder = Mockito.inOrder(mockKit);
+        inOrder.verify(mockKit).logBaseEvent(held);
+        inOrder.verify(mockKit).logBaseEvent(duringStartup);
+        inOrder.verify(mockKit).logBaseEvent(duringReplay);
+        inOrder.verify(mockKit).logBaseEvent(live);
+        Mockito.verify(mockKit, Mockito.times(4)).logBaseEvent(Mockito.any(BaseEvent.class));
+    }
+
+    @Test
+    public void testParallelKitStartupHeldEventLimit() throws Exception {
+        KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().parallelKitStartup(true));
+        List<Runnable> startupPool = new LinkedList<>();
+        manager.setKitStartupExecutor(startupPool::add);
+        KitIntegration mockKit = createKit(manager, 1);
+
+        manager.updateKits(kitConfigurations(1));
+        List<MPEvent> events = new ArrayList<>();
+        for (int i = 0; i <= PendingKit.MAX_HELD_EVENTS; i++) {
+            MPEvent event = new MPEvent.Builder("event " + i).build();
+            events.add(event);
+            manager.logEvent(event);
+        }
+        startupPool.remove(0).run();
+
+        //the oldest events are kept, the ones logged after the limit was reached are dropped
+        Mockito.verify(mockKit, Mockito.times(PendingKit.MAX_HELD_EVENTS)).logBaseEvent(Mockito.any(BaseEvent.class));
+        Mockito.verify(mockKit).logBaseEvent(events.get(0));
+        Mockito.verify(mockKit).logBaseEvent(events.get(PendingKit.MAX_HELD_EVENTS - 1));
+        Mockito.verify(mockKit, Mockito.never()).logBaseEvent(events.get(PendingKit.MAX_HELD_EVENTS));
+
+        MPEvent live = new MPEvent.Builder("live").build();
+        manager.logEvent(live);
+        Mockito.verify(mockKit).logBaseEvent(live);
+    }
+
+    @Test
+    public void testParallelKitStartupCancelledByConfigUpdate() throws Exception {
+        KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().parallelKitStartup(true));
+        List<Runnable> startupPool = new LinkedList<>();
+        manager.setKitStartupExecutor(startupPool::add);
+        KitIntegration mockKit = createKit(manager, 1);
+
+        final List<Integer> loadedKits = new LinkedList<>();
+        manager.updateKits(kitConfigurations(1)).onKitLoaded(kitId -> loadedKits.add(kitId));
+        MPEvent held = new MPEvent.Builder("held").build();
+        manager.logEvent(held);
+
+        //the kit is removed from the configuration before the pool gets to it
+        manager.updateKits(new JSONArray());
+        assertEquals(0, manager.pendingKits.size());
+        startupPool.remove(0).run();
+        assertEquals(0, manager.providers.size());
+        assertEquals(0, loadedKits.size());
+        Mockito.verify(mockKit, Mockito.never()).onKitCreate(Mockito.any(), Mockito.any());
+        Mockito.verify(mockKit, Mockito.never()).logBaseEvent(Mockito.any(BaseEvent.class));
+    }
+
+    @Test
+    public void testParallelKitStartupCancelledWhileInitializing() throws Exception {
+        final KitManagerImpl manager = new MockKitManagerImpl();
+        manager.setKitOptions(new KitOptions().parallelKitStartup(true));
+        List<Runnable> startupPool = new LinkedList<>();
+        manager.setKitStartupExecutor(startupPool::add);
+        KitIntegration mockKit = createKit(manager, 1);
+        //the kit is removed from the configuration while its onKitCreate is running
+        Mockito.doAnswer(invocation -> {
+            manager.updateKits(new JSONArray());
+            return null;
+        }).when(mockKit).onKitCreate(Mockito.any(), Mockito.any());
+
+        final List<Integer> loadedKits = new LinkedList<>();
+        manager.updateKits(kitConfigurations(1)).onKitLoaded(kitId -> loadedKits.add(kitId));
+        MPEvent held = new MPEvent.Builder("held").build();
+        manager.logEvent(held);
+        startupPool.remove(0).run();
+
+        assertEquals(0, manager.providers.size());
+        assertEquals(0, manager.pendingKits.size());
+        assertEquals(0, loadedKits.size());
+        Mockito.verify(mockKit, Mockito.never()).logBaseEvent(Mockito.any(BaseEvent.class));
+        Mockito.verify(mockKit).onKitDestroy();
+        Mockito.verify(mockKit).onKitCleanup();
+    }
+
     @Test
     public void testShouldNotEnableKitBasedOnConsent() throws Exception {
         MParticleUser mockUser = Mockito.mock(MParticleUser.class);
@@ -145,6 +359,43 @@ public class KitManagerImplTest {
         assertEquals(1, manager.providers.size());
     }
 
+    @Test
+    public void testOnlyChangedKitsAreReconfigured() throws Exception {
+        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
+        Mockito.when(mockUser.getConsentState()).thenReturn(ConsentState.builder().build());
+        Mockito.when(mockIdentity.getCurrentUser()).thenReturn(mockUser);
+        KitManagerImpl manager = new MockKitManagerImpl();
+        KitIntegrationFactory factory = Mockito.mock(KitIntegrationFactory.class);
+        manager.setKitFactory(factory);
+        Mockito.when(factory.isSupported(Mockito.anyInt())).thenReturn(true);
+        final Map<Integer, KitIntegration> kits = new HashMap<>();
+        for (int kitId = 1; kitId <= 2; kitId++) {
+            KitIntegration mockKit = Mockito.mock(KitIntegration.class);
+            Mockito.doCallRealMethod().when(mockKit).getConfiguration();
+            kits.put(kitId, mockKit);
+        }
+        Mockito.when(factory.createInstance(Mockito.any(KitManagerImpl.class), Mockito.any(KitConfiguration.class))).thenAnswer(invocation -> {
+            KitConfiguration configuration = invocation.getArgument(1);
+            return kits.get(configuration.getKitId()).setConfiguration(configuration);
+        });
+        JSONArray kitConfiguration = new JSONArray();
+        kitConfiguration.put(new JSONObject("{ \"id\":1, \"as\":{ \"foo\":\"bar\" } }"));
+        kitConfiguration.put(new JSONObject("{ \"id\":2, \"as\":{ \"foo\":\"bar\" } }"));
+        manager.updateKits(kitConfiguration);
+        assertEquals(2, manager.providers.size());
+        KitConfiguration unchangedConfiguration = kits.get(1).getConfiguration();
+
+        kitConfiguration = new JSONArray();
+        kitConfiguration.put(new JSONObject("{ \"id\":1, \"as\":{ \"foo\":\"bar\" } }"));
+        kitConfiguration.put(new JSONObject("{ \"id\":2, \"as\":{ \"foo\":\"baz\" } }"));
+        manager.updateKits(kitConfiguration);
+        assertEquals(2, manager.providers.size());
+        assertSame(unchangedConfiguration, kits.get(1).getConfiguration());
+        Mockito.verify(kits.get(1), Mockito.never()).onSettingsUpdated(Mockito.any());
+        assertEquals("baz", kits.get(2).getConfiguration().getSettings().get("foo"));
+        Mockito.verify(kits.get(2)).onSettingsUpdated(kits.get(2).getConfiguration().getSettings());
+    }
+
     @Test
     public void testShouldEnableKitBasedOnActiveUser() throws Exception {
        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
@@ -362,6 +613,128 @@ public class KitManagerImplTest {
         assertEquals(1, manager.logCommerceEventCalled);
     }
 
+    @Test
+    public void testAsyncEventDispatch() throws Exception {
+        QueuedKitManager manager = new QueuedKitManager();
+        manager.setKitOptions(new KitOptions().asyncEventDispatch(true));
+        KitIntegration backgroundKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(backgroundKit.getConfiguration()).thenReturn(MockKitConfiguration.createKitConfiguration());
+        KitIntegration mainThreadKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(mainThreadKit.getConfiguration()).thenReturn(MockKitConfiguration.createKitConfiguration());
+        Mockito.when(mainThreadKit.requiresMainThread()).thenReturn(true);
+        manager.providers.put(5, backgroundKit);
+        manager.providers.put(6, mainThreadKit);
+
+        MPEvent first = new MPEvent.Builder("first").build();
+        MPEvent second = new MPEvent.Builder("second").build();
+        CommerceEvent third = new CommerceEvent.Builder(Product.CHECKOUT, new Product.Builder("name", "sku", 100).build()).build();
+        manager.logEvent(first);
+        manager.logEvent(second);
+        manager.logEvent(third);
+        //nothing is forwarded on the thread which logged the events
+        Mockito.verify(backgroundKit, Mockito.never()).logBaseEvent(Mockito.any(BaseEvent.class));
+        Mockito.verify(mainThreadKit, Mockito.never()).logBaseEvent(Mockito.any(BaseEvent.class));
+        assertEquals(3, manager.kitThread.size());
+        assertEquals(3, manager.mainThread.size());
+
+        manager.runKitThread();
+        InOrder backgroundOrder = Mockito.inOrder(backgroundKit);
+        backgroundOrder.verify(backgroundKit).logBaseEvent(first);
+        backgroundOrder.verify(backgroundKit).logBaseEvent(second);
+        backgroundOrder.verify(backgroundKit).logBaseEvent(third);
+        Mockito.verify(mainThreadKit, Mockito.never()).logBaseEvent(Mockito.any(BaseEvent.class));
+
+        manager.runMainThread();
+        InOrder mainThreadOrder = Mockito.inOrder(mainThreadKit);
+        mainThreadOrder.verify(mainThreadKit).logBaseEvent(first);
+        mainThreadOrder.verify(mainThreadKit).logBaseEvent(second);
+        mainThreadOrder.verify(mainThreadKit).logBaseEvent(third);
+        Mockito.verify(backgroundKit, Mockito.times(3)).logBaseEvent(Mockito.any(BaseEvent.class));
+    }
+
+    @Test
+    public void testAsyncEventDispatchWithoutMainThreadKits() throws Exception {
+        QueuedKitManager manager = new QueuedKitManager();
+        manager.setKitOptions(new KitOptions().asyncEventDispatch(true));
+        KitIntegration backgroundKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(backgroundKit.getConfiguration()).thenReturn(MockKitConfiguration.createKitConfiguration());
+        manager.providers.put(5, backgroundKit);
+
+        MPEvent event = new MPEvent.Builder("event").build();
+        manager.logEvent(event);
+        assertEquals(1, manager.kitThread.size());
+        assertEquals(0, manager.mainThread.size());
+        manager.runKitThread();
+        Mockito.verify(backgroundKit).logBaseEvent(event);
+    }
+
+    @Test
+    public void testAsyncEventDispatchAppliesDataplanOnce() throws Exception {
+        QueuedKitManager manager = new QueuedKitManager();
+        manager.setKitOptions(new KitOptions().asyncEventDispatch(true));
+        KitIntegration backgroundKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(backgroundKit.getConfiguration()).thenReturn(MockKitConfiguration.createKitConfiguration());
+        KitIntegration mainThreadKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(mainThreadKit.getConfiguration()).thenReturn(MockKitConfiguration.createKitConfiguration());
+        Mockito.when(mainThreadKit.requiresMainThread()).thenReturn(true);
+        manager.providers.put(5, backgroundKit);
+        manager.providers.put(6, mainThreadKit);
+        DataplanFilter dataplanFilter = Mockito.mock(DataplanFilter.class);
+        manager.setDataplanFilter(dataplanFilter);
+
+        MPEvent event = new MPEvent.Builder("event").build();
+        MPEvent transformed = new MPEvent.Builder("transformed").build();
+        Mockito.when(dataplanFilter.transformEventForEvent(event)).thenReturn(transformed);
+        manager.logEvent(event);
+        manager.runKitThread();
+        manager.runMainThread();
+        Mockito.verify(dataplanFilter, Mockito.times(1)).transformEventForEvent(Mockito.any(BaseEvent.class));
+        Mockito.verify(backgroundKit).logBaseEvent(transformed);
+        Mockito.verify(mainThreadKit).logBaseEvent(transformed);
+        Mockito.verify(backgroundKit, Mockito.never()).logBaseEvent(event);
+
+        //an event the data plan blocks is not handed to either thread
+        MPEvent blocked = new MPEvent.Builder("blocked").build();
+        Mockito.when(dataplanFilter.transformEventForEvent(blocked)).thenReturn(null);
+        manager.logEvent(blocked);
+        manager.logScreen(blocked);
+        assertEquals(0, manager.kitThread.size());
+        assertEquals(0, manager.mainThread.size());
+    }
+
+    @Test
+    public void testLogBatch() throws Exception {
+        QueuedKitManager manager = new QueuedKitManager();
+        KitIntegration failingKit = Mockito.mock(KitIntegration.class, Mockito.withSettings().extraInterfaces(KitIntegration.BatchListener.class));
+        KitIntegration batchKit = Mockito.mock(KitIntegration.class, Mockito.withSettings().extraInterfaces(KitIntegration.BatchListener.class));
+        KitIntegration otherKit = Mockito.mock(KitIntegration.class);
+        Mockito.when(((KitIntegration.BatchListener) failingKit).logBatch(Mockito.any(JSONObject.class))).thenAnswer(invocation -> {
+            throw new JSONException("kit failed to read the batch");
+        });
+        manager.providers.put(1, failingKit);
+        manager.providers.put(2, batchKit);
+        manager.providers.put(3, otherKit);
+
+        manager.logBatch("{\"id\":\"batch\"}");
+        //the batch is delivered on the kit thread, not the upload thread which logged it
+        Mockito.verify((KitIntegration.BatchListener) batchKit, Mockito.never()).logBatch(Mockito.any(JSONObject.class));
+        assertEquals(1, manager.kitThread.size());
+        manager.runKitThread();
+
+        ArgumentCaptor<JSONObject> failingBatch = ArgumentCaptor.forClass(JSONObject.class);
+        ArgumentCaptor<JSONObject> batch = ArgumentCaptor.forClass(JSONObject.class);
+        Mockito.verify((KitIntegration.BatchListener) failingKit).logBatch(failingBatch.capture());
+        //one kit throwing does not stop delivery to the others, and every kit gets the same parsed batch
+        Mockito.verify((KitIntegration.BatchListener) batchKit).logBatch(batch.capture());
+        assertSame(failingBatch.getValue(), batch.getValue());
+        assertEquals("batch", batch.getValue().getString("id"));
+
+        //a batch which can't be parsed is not delivered at all
+        manager.logBatch("not a batch");
+        manager.runKitThread();
+        Mockito.verify((KitIntegration.BatchListener) batchKit, Mockito.times(1)).logBatch(Mockito.any(JSONObject.class));
+    }
+
     @Test
     public void testShouldEnableKitOnOptIn() throws Exception {
         MParticleUser mockUser = Mockito.mock(MParticleUser.class);
@@ -390,6 +763,32 @@ public class KitManagerImplTest {
         Assert.assertEquals(2, manager.providers.size());
     }
 
+    /**
+     * @return the kit the factory will create for kitId, with a current user whose consent state allows it
+     */
+    private KitIntegration createKit(KitManagerImpl manager, int kitId) {
+        MParticleUser mockUser = Mockito.mock(MParticleUser.class);
+        Mockito.when(mockUser.getConsentState()).thenReturn(ConsentState.builder().build());
+        Mockito.when(mockIdentity.getCurrentUser()).thenReturn(mockUser);
+        KitIntegrationFactory factory = Mockito.mock(KitIntegrationFactory.class);
+        manager.setKitFactory(factory);
+        Mockito.when(factory.isSupported(kitId)).thenReturn(true);
+        KitIntegration mockKit = Mockito.mock(KitIntegration.class);
+        KitConfiguration mockConfiguration = Mockito.mock(KitConfiguration.class);
+        Mockito.when(mockConfiguration.getKitId()).thenReturn(kitId);
+        Mockito.when(mockKit.getConfiguration()).thenReturn(mockConfiguration);
+        Mockito.when(factory.createInstance(Mockito.any(KitManagerImpl.class), Mockito.any(KitConfiguration.class))).thenReturn(mockKit);
+        return mockKit;
+    }
+
+    private JSONArray kitConfigurations(int... kitIds) throws JSONException {
+        JSONArray kitConfigurations = new JSONArray();
+        for (int kitId : kitIds) {
+            kitConfigurations.put(new JSONObject().put("id", kitId));
+        }
+        return kitConfigurations;
+    }
+
     class KitManagerEventCounter extends MockKitManagerImpl {
             int logBaseEventCalled = 0;
             int logCommerceEventCalled = 0;
@@ -413,4 +812,34 @@ public class KitManagerImplTest {
             logCommerceEventCalled++;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Queues work for the kit and main threads, instead of running it inline, until the test runs it.
+     */
+    class QueuedKitManager extends MockKitManagerImpl {
+        List<Runnable> kitThread = new LinkedList<>();
+        List<Runnable> mainThread = new LinkedList<>();
+
+        @Override
+        public void runOnKitThread(Runnable runnable) {
+            kitThread.add(runnable);
+        }
+
+        @Override
+        protected void postToMainThread(Runnable runnable) {
+            mainThread.add(runnable);
+        }
+
+        void runKitThread() {
+            while (!kitThread.isEmpty()) {
+                kitThread.remove(0).run();
+            }
+        }
+
+        void runMainThread() {
+            while (!mainThread.isEmpty()) {
+                mainThread.remove(0).run();
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -778,4 +779,64 @@ public class CustomMappingTest {
         event = new MPEvent.Builder("SUBSCRIPTION_END").customAttributes(info).build();
         assertFalse(mapping.isMatch(new EventWrapper.MPEventWrapper(event)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCustomMappingIndex() throws Exception {
+        String[] commerceActions = new String[]{Product.DETAIL, Product.PURCHASE, Product.ADD_TO_CART};
+        List<CustomMapping> mappings = new ArrayList<CustomMapping>();
+        for (int i = 0; i < 500; i++) {
+            JSONObject match = new JSONObject();
+            switch (i % 4) {
+                case 0:
+                    match.put("message_type", 4).put("event_match_type", "String").put("event", "Event " + (i % 25))
+                            .put("attribute_key", "key").put("attribute_values", new JSONArray().put("V" + (i % 5)));
+                    break;
+                case 1:
+                    match.put("message_type", 4).put("event_match_type", "Hash")
+                            .put("event", Integer.toString(KitUtils.hashForFiltering(MParticle.EventType.Other.ordinal() + "event " + (i % 25))));
+                    break;
+                default:
+                    CommerceEvent commerceEvent = new CommerceEvent.Builder(commerceActions[i % 3], new Product.Builder("name", "sku", 1).build()).build();
+                    int eventHash = new EventWrapper.CommerceEventWrapper(commerceEvent).getEventHash();
+                    match.put("message_type", 16).put("event_match_type", "Hash").put("event", Integer.toString(eventHash));
+                    if (i % 4 == 3) {
+                        match.put("property", "EventAttribute")
+                                .put("property_name", Integer.toString(KitUtils.hashForFiltering(CommerceEventUtils.getEventType(commerceEvent) + "key")))
+                                .put("property_values", new JSONArray().put("v" + (i % 5)));
+                    }
+            }
+            JSONObject mapping = new JSONObject()
+                    .put("id", i)
+                    .put("matches", new JSONArray().put(match))
+                    .put("action", new JSONObject().put("projected_event_name", "projected " + i).put("attribute_maps", new JSONArray()));
+            mappings.add(new CustomMapping(mapping));
+        }
+        CustomMappingIndex index = new CustomMappingIndex(mappings);
+        assertEquals(500, index.size());
+
+        for (int i = 0; i < 30; i++) {
+            Map<String, String> attributes = new HashMap<String, String>();
+            attributes.put("key", "v" + (i % 5));
+            MPEvent event = new MPEvent.Builder(i % 2 == 0 ? "event " + i : "EVENT " + i, MParticle.EventType.Other).customAttributes(attributes).build();
+            assertSameProjections(CustomMapping.projectEvents(event, false, mappings, null, null), CustomMapping.projectEvents(event, false, index, null, null));
+            assertSameProjections(CustomMapping.projectEvents(event, true, mappings, null, null), CustomMapping.projectEvents(event, true, index, null, null));
+
+            CommerceEvent commerceEvent = new CommerceEvent.Builder(commerceActions[i % 3], new Product.Builder("name", "sku", 1).build()).customAttributes(attributes).build();
+            assertSameProjections(CustomMapping.projectEvents(commerceEvent, mappings, null), CustomMapping.projectEvents(commerceEvent, index, null));
+        }
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("key", "v1");
+        assertTrue(index.getCandidates(new EventWrapper.MPEventWrapper(new MPEvent.Builder("Event 6", MParticle.EventType.Other).customAttributes(attributes).build())).size() < 50);
+    }
+
+    private void assertSameProjections(List<CustomMapping.ProjectionResult> expected, List<CustomMapping.ProjectionResult> actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProjectionId(), actual.get(i).getProjectionId());
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.mparticle.kits.DataplanFilterImpl.Companion.getEventsApiName
 import org.json.JSONObject
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Test
@@ -292,6 +293,31 @@ class DataplanFilterImplTest {
         }
     }
 
+    @Test
+    fun `test allowed attributes are not replaced`() {
+        val attributes = mutableMapOf<String, Any>("a" to "1", "b" to "2")
+        val event = MPEvent.Builder("name.with.periods", MParticle.EventType.Navigation).build().apply {
+            customAttributes = attributes
+        }
+        dataplanPoints = mutableMapOf("$CUSTOM_EVENT_KEY.name.with.periods.navigation" to hashSetOf("a", "b", "c"))
+        val dataplanFilter = DataplanFilterImpl(dataplanPoints, true, true, false, false)
+        assertSame(attributes, dataplanFilter.transformEventForEvent(event)?.customAttributes)
+
+        attributes["d"] = "4"
+        assertEquals(mapOf("a" to "1", "b" to "2"), dataplanFilter.transformEventForEvent(event)?.customAttributeStrings)
+
+        val product = Product.Builder("a", "b", 1.0).customAttributes(mutableMapOf("a" to "1", "z" to "26")).build()
+        val commerceEvent = CommerceEvent.Builder(Product.ADD_TO_CART, product).build()
+        dataplanPoints = mutableMapOf(
+            "$PRODUCT_ACTION_KEY.${Product.ADD_TO_CART}.$PRODUCT_ACTION_PRODUCTS" to hashSetOf("a")
+        )
+        assertEquals(
+            mapOf("a" to "1"),
+            DataplanFilterImpl(dataplanPoints, false, true, false, false).transformEventForEvent(commerceEvent)?.products?.get(0)?.customAttributes
+        )
+        assertNull(DataplanFilterImpl(dataplanPoints, true, true, false, false).transformEventForEvent(commerceEvent))
+    }
+
     private val types = setOf(CUSTOM_EVENT_KEY, PRODUCT_ACTION_KEY, PROMOTION_ACTION_KEY, PRODUCT_IMPRESSION_KEY, SCREEN_EVENT_KEY)
 
     fun getRandomEvent(datapoint: DataplanPoint): BaseEvent {
@@ -35,12 +35,15 @@ class KitPlugin implements Plugin<Project> {
         androidLib.buildTypes.release.minifyEnabled false
         androidLib.buildTypes.release.consumerProguardFiles 'consumer-proguard.pro'
         androidLib.lintOptions.abortOnError true
+        File kitManifest = addKitManifest(target, androidLib)
 
         //formerly in maven.gradle
         target.apply(plugin: 'maven-publish')
         target.apply(plugin: 'signing')
 
         target.afterEvaluate {
+            registerKit(target, androidLib, kitManifest)
+
             PublishingExtension publishing = target.extensions.findByName('publishing')
             publishing.publications.create("release", MavenPublication.class) {
                 groupId = "com.mparticle"
@@ -149,5 +152,51 @@ class KitPlugin implements Plugin<Project> {
         target.task("publishLocal") { dependsOn "publishDebugPublicationToMavenLocal"}
         target.task("publishReleaseLocal") { dependsOn "publishReleasePublicationToMavenLocal"}
     }
-}
 
+    /**
+     * Adds a generated manifest to each build type, which is merged with the kit's own. It has to be added when
+     * the plugin is applied, since AGP reads the build type manifests when it creates its variants, which can be
+     * before this plugin's afterEvaluate runs. Its contents are written once the kit's ID is known, see registerKit.
+     */
+    static File addKitManifest(Project target, LibraryExtension androidLib) {
+        File manifest = new File(target.buildDir, "generated/mparticle/AndroidManifest.xml")
+        writeKitManifest(manifest, "")
+        androidLib.buildTypes.all { buildType ->
+            def sourceSet = androidLib.sourceSets.maybeCreate(buildType.name)
+            if (!sourceSet.manifest.srcFile.exists()) {
+                sourceSet.manifest.srcFile(manifest)
+            }
+        }
+        return manifest
+    }
+
+    /**
+     * Adds the kit's ID and class name to the generated manifest as meta-data. The application's merged manifest
+     * then lists every bundled kit, which KitIntegrationFactory reads at runtime instead of probing for each known
+     * kit class.
+     */
+    static void registerKit(Project target, LibraryExtension androidLib, File manifest) {
+        Integer kitId = target.mparticle.kitId
+        String kitClass = target.mparticle.kitClass
+        if (kitId == null || kitClass == null) {
+            return
+        }
+        androidLib.buildTypes.each { buildType ->
+            if (androidLib.sourceSets.getByName(buildType.name).manifest.srcFile != manifest) {
+                target.logger.warn("${target.name} has its own ${buildType.name} manifest, add the meta-data for kit ${kitId} to it to register the kit")
+            }
+        }
+        writeKitManifest(manifest, """
+        <meta-data android:name="com.mparticle.kit.${kitId}" android:value="${kitClass}" />""")
+    }
+
+    private static void writeKitManifest(File manifest, String metaData) {
+        manifest.parentFile.mkdirs()
+        manifest.text = """<?xml version="1.0" encoding="utf-8"?>
+<manifest xmlns:android="http://schemas.android.com/apk/res/android">
+    <application>${metaData}
+    </application>
+</manifest>
+"""
+    }
+}
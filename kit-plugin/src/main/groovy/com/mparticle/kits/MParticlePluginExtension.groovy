@@ -5,4 +5,10 @@ package com.mparticle.kits
  */
 class MParticlePluginExtension {
     public String kitDescription
+    /**
+     * The kit's module ID and KitIntegration class name. When both are set, the kit is registered in its
+     * manifest so the SDK can find it without looking up every known kit class by name.
+     */
+    public Integer kitId
+    public String kitClass
 }
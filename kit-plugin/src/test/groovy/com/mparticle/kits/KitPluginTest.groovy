@@ -1,10 +1,21 @@
 package com.mparticle.kits
 
 import org.gradle.api.Project
+import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.testfixtures.ProjectBuilder
+import org.junit.Assume
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
 
 class KitPluginTest {
+    @Rule
+    public TemporaryFolder projectDir = new TemporaryFolder()
+
     @Test
     public void greeterPluginAddsGreetingTaskToProject() {
         Project project = ProjectBuilder.builder().build()
@@ -14,4 +25,60 @@ class KitPluginTest {
         project.mparticle.kitDescription = 'This is a sample kit description.'
 
     }
+
+    @Test
+    public void testRegisterKit() {
+        Project project = createKitProject()
+        project.mparticle.kitId = 28
+        project.mparticle.kitClass = 'com.mparticle.kits.AppboyKit'
+        ((ProjectInternal) project).evaluate()
+
+        File manifest = new File(project.buildDir, 'generated/mparticle/AndroidManifest.xml')
+        assertTrue(manifest.text.contains('<meta-data android:name="com.mparticle.kit.28" android:value="com.mparticle.kits.AppboyKit" />'))
+        //the manifest has to be in place before AGP creates its variants for it to be merged
+        ['debug', 'release'].each { buildType ->
+            def processManifest = project.tasks.getByName("process${buildType.capitalize()}Manifest")
+            assertTrue(processManifest.manifestOverlays.get().contains(manifest))
+        }
+    }
+
+    @Test
+    public void testUnregisteredKit() {
+        Project project = createKitProject()
+        ((ProjectInternal) project).evaluate()
+
+        File manifest = new File(project.buildDir, 'generated/mparticle/AndroidManifest.xml')
+        assertFalse(manifest.text.contains('meta-data'))
+    }
+
+    @Test
+    public void testKitWithItsOwnBuildTypeManifest() {
+        File debugManifest = new File(projectDir.root, 'src/debug/AndroidManifest.xml')
+        debugManifest.parentFile.mkdirs()
+        debugManifest.text = '<manifest xmlns:android="http://schemas.android.com/apk/res/android" />'
+        Project project = createKitProject()
+        project.mparticle.kitId = 28
+        project.mparticle.kitClass = 'com.mparticle.kits.AppboyKit'
+        ((ProjectInternal) project).evaluate()
+
+        assertEquals(debugManifest.canonicalFile, project.android.sourceSets.debug.manifest.srcFile.canonicalFile)
+        assertEquals(new File(project.buildDir, 'generated/mparticle/AndroidManifest.xml').canonicalFile, project.android.sourceSets.release.manifest.srcFile.canonicalFile)
+    }
+
+    /**
+     * AGP needs an Android SDK to create its variants, these tests are skipped where none is installed.
+     */
+    private Project createKitProject() {
+        String sdkDir = System.getenv('ANDROID_SDK_ROOT') ?: System.getenv('ANDROID_HOME')
+        Assume.assumeTrue(sdkDir != null)
+        File root = projectDir.root
+        new File(root, 'local.properties').text = "sdk.dir=${sdkDir.replace('\\', '/')}\n"
+        File mainManifest = new File(root, 'src/main/AndroidManifest.xml')
+        mainManifest.parentFile.mkdirs()
+        mainManifest.text = '<manifest xmlns:android="http://schemas.android.com/apk/res/android" package="com.mparticle.kits.test" />'
+        Project project = ProjectBuilder.builder().withProjectDir(root).build()
+        project.version = '1.0.0'
+        project.pluginManager.apply 'com.mparticle.kit'
+        return project
+    }
 }
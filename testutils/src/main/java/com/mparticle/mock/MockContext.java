@@ -46,6 +46,7 @@ public class MockContext extends Context {
     SharedPreferences sharedPreferences = new MockSharedPreferences();
     Resources resources = new MockResources();
     MockApplication application = null;
+    private File filesDir;
 
     public void setSharedPreferences(SharedPreferences prefs){
         sharedPreferences = prefs;
@@ -402,9 +403,22 @@ public class MockContext extends Context {
         return null;
     }
 
+    /**
+     * A new temporary directory for each MockContext, so files written in one test are not read in the next.
+     */
     @Override
     public File getFilesDir() {
-        return new File("test_dir");
+        if (filesDir == null) {
+            try {
+                filesDir = File.createTempFile("mparticle_test", "");
+                filesDir.delete();
+                filesDir.mkdirs();
+                filesDir.deleteOnExit();
+            } catch (IOException e) {
+                fail(e.toString());
+            }
+        }
+        return filesDir;
     }
 
     @Override
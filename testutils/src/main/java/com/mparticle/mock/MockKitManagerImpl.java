@@ -42,4 +42,9 @@ public class MockKitManagerImpl extends KitManagerImpl {
     public void runOnMainThread(Runnable runnable) {
         runnable.run();
     }
+
+    @Override
+    protected void postToMainThread(Runnable runnable) {
+        runnable.run();
+    }
 }
@@ -68,6 +68,11 @@ public class MPConnectionTestImpl implements MPConnection {
         requestProperties.put(key, values);
     }
 
+    @Override
+    public void setChunkedStreamingMode(int chunkLength) {
+        //the request body is captured in memory for testing
+    }
+
     public void setResponseCode(int responseCode) {
         this.responseCode = responseCode;
     }
@@ -148,6 +153,10 @@ public class MPConnectionTestImpl implements MPConnection {
         return sslSocketFactory;
     }
 
+    @Override
+    public void disconnect() {
+    }
+
     public String getBody() {
         if (outputStream == null) {
             return "{}";